@@ -8,16 +8,17 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
-import com.example.trakify.HomeFragment.Album;
+import com.example.trakify.model.Album;
 
+import java.util.ArrayList;
 import java.util.List;
 
-public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHolder> {
+public class AlbumAdapter extends ListAdapter<Album, AlbumAdapter.AlbumViewHolder> {
 
-    private List<Album> albums;
     private final OnAlbumClickListener listener;
 
     public interface OnAlbumClickListener {
@@ -25,13 +26,20 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
     }
 
     public AlbumAdapter(List<Album> albums, OnAlbumClickListener listener) {
-        this.albums = albums;
+        super(Diffing.config(Diffing.ALBUMS));
         this.listener = listener;
+        setHasStableIds(true);
+        setItems(albums);
     }
 
+    /** Diffed against the current list in the background; only changed rows are rebound. */
     public void setItems(List<Album> newAlbums) {
-        this.albums = newAlbums;
-        notifyDataSetChanged();
+        submitList(newAlbums != null ? new ArrayList<>(newAlbums) : null);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return Diffing.stableId(Diffing.keyOf(getItem(position)));
     }
 
     @NonNull
@@ -39,17 +47,28 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
     public AlbumViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_album, parent, false);
-        return new AlbumViewHolder(view);
+        AlbumViewHolder holder = new AlbumViewHolder(view);
+        holder.itemView.setOnClickListener(v -> {
+            int pos = holder.getBindingAdapterPosition();
+            if (listener != null && pos != RecyclerView.NO_POSITION) listener.onAlbumClick(getItem(pos));
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull AlbumViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(Diffing.PAYLOAD_TEXT)) {
+            bindText(holder, getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
     }
 
     @Override
     public void onBindViewHolder(@NonNull AlbumViewHolder holder, int position) {
-        Album album = albums.get(position);
-        holder.tvAlbumName.setText(album.name);
-        holder.tvArtist.setText(album.artist);
+        Album album = getItem(position);
+        bindText(holder, album);
 
-        // TODO: Load image with Glide or Picasso if you add those libraries
-        // For now, use placeholder
         if (!album.imageUrl.isEmpty()) {
             Glide.with(holder.itemView.getContext())
                     .load(album.imageUrl)
@@ -58,14 +77,11 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
         } else {
             holder.ivAlbum.setImageResource(R.drawable.ic_album_placeholder);
         }
-        holder.itemView.setOnClickListener(v -> {
-            if (listener != null) listener.onAlbumClick(album);
-        });
     }
 
-    @Override
-    public int getItemCount() {
-        return albums != null ? albums.size() : 0;
+    private static void bindText(AlbumViewHolder holder, Album album) {
+        holder.tvAlbumName.setText(album.name);
+        holder.tvArtist.setText(album.artist);
     }
 
     static class AlbumViewHolder extends RecyclerView.ViewHolder {
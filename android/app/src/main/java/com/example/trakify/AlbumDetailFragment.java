@@ -18,15 +18,13 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 
-import java.io.File;
+import com.example.trakify.model.Track;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class AlbumDetailFragment extends Fragment {
 
@@ -45,10 +43,11 @@ public class AlbumDetailFragment extends Fragment {
     private ImageButton btnBack;
     private RecyclerView rvTracks;
     private ProgressBar progressBar;
-    List<AlbumTrack> tracks = null;
+    List<Track> tracks = null;
 
     private AlbumTrackAdapter trackAdapter;
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private TaskScope tasks;
 
     public static AlbumDetailFragment newInstance(String albumId, String albumName, String artistName,String AlbumURl) {
         AlbumDetailFragment fragment = new AlbumDetailFragment();
@@ -82,6 +81,7 @@ public class AlbumDetailFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
+        tasks = TaskScope.of(getViewLifecycleOwner());
 
         tvAlbumName = view.findViewById(R.id.tvAlbumDetailName);
         tvArtistName = view.findViewById(R.id.tvAlbumDetailArtist);
@@ -95,6 +95,7 @@ public class AlbumDetailFragment extends Fragment {
         btnBack.setOnClickListener(v -> requireActivity().onBackPressed());
 
         rvTracks.setLayoutManager(new LinearLayoutManager(getContext()));
+        rvTracks.setHasFixedSize(true);
 
         trackAdapter = new AlbumTrackAdapter(new ArrayList<>(), track -> {
             downloadAndPlay(track);
@@ -108,37 +109,22 @@ public class AlbumDetailFragment extends Fragment {
     private void loadAlbumTracks() {
         progressBar.setVisibility(View.VISIBLE);
 
-        new Thread(() -> {
-            try {
-                Python py = Python.getInstance();
-                PyObject module = py.getModule("api_spotify");
-
-                PyObject result = module.callAttr("get_album_tracks", albumId);
-                String json = result.toString();
-
-                Log.d(TAG, "Album tracks JSON: " + json);
-
-                tracks = parseTracks(json);
-
-                mainHandler.post(() -> {
-                    trackAdapter.setItems(tracks);
-                    progressBar.setVisibility(View.GONE);
-
-                    // Add all tracks to queue when album loads
-                });
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error loading album tracks", e);
-                e.printStackTrace();
-                mainHandler.post(() -> {
+        tasks.execute(AppExecutors.Pool.NETWORK,
+                () -> CatalogRepository.getInstance().getAlbumTracks(albumId, (loaded, fromCache) ->
+                        tasks.post(() -> {
+                            tracks = loaded;
+                            trackAdapter.setItems(tracks);
+                            progressBar.setVisibility(View.GONE);
+                        })),
+                e -> {
+                    Log.e(TAG, "Error loading album tracks", e);
                     progressBar.setVisibility(View.GONE);
-                    Toast.makeText(getContext(), "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                    Toast.makeText(requireContext(), "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
                 });
-            }
-        }).start();
     }
 
-    private void addTracksToQueue(List<AlbumTrack> tracks,String url) {
+    // tapped: the track the user waits for, downloaded on its own before the rest (may be null)
+    private void addTracksToQueue(List<Track> tracks, String url, Track tapped) {
         if (tracks == null || tracks.isEmpty()) {
             Log.w(TAG, "Brak utworów do dodania do kolejki");
             return;
@@ -147,148 +133,108 @@ public class AlbumDetailFragment extends Fragment {
         MusicPlayerManager player = MusicPlayerManager.getInstance();
         player.clearQueue();
 
-        File dir = requireActivity().getExternalFilesDir("Music");
-        if (dir == null) {
+        DownloadEngine engine = DownloadEngine.getInstance();
+        if (engine.getMusicDir() == null) {
             Toast.makeText(getContext(), "Brak dostępu do pamięci", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // Dodaj wszystko do kolejki od razu (bez pobierania)
-        for (AlbumTrack track : tracks) {
-            String filename = (track.artist + "_" + track.name)
-                    .replaceAll("[^a-zA-Z0-9_\\-]", "_") + ".mp3";
-            File localFile = new File(dir, filename);
-
-            String path = localFile.exists() ? localFile.getAbsolutePath() : null;
-            player.addToQueue(path, track.name, track.artist,url);
+        // Dodaj wszystko do kolejki od razu (bez pobierania); czy plik już jest, TrackStore wie z pamięci
+        for (Track track : tracks) {
+            String path = engine.lookup(identityOf(track));
+            player.addToQueue(path, track.name, track.artist, url, track.id);
         }
 
         Log.d(TAG, "Dodano " + tracks.size() + " utworów do kolejki");
 
         // 🔥 Uruchom asynchroniczne pobieranie w tle
-        new Thread(() -> preloadTracks(tracks, dir)).start();
+        preloadTracks(tracks, tapped);
     }
 
-    private void preloadTracks(List<AlbumTrack> tracks, File dir) {
-        Python py = Python.getInstance();
-        PyObject mainModule = py.getModule("main");
-
-        for (AlbumTrack track : tracks) {
-            try {
-                String filename = (track.artist + "_" + track.name)
-                        .replaceAll("[^a-zA-Z0-9_\\-]", "_") + ".mp3";
-                File outFile = new File(dir, filename);
-
-                if (outFile.exists()) {
-                    Log.d(TAG, "Plik już istnieje: " + filename);
-                    continue; // pomiń, jeśli już pobrano
-                }
-
-                String query = track.artist + " " + track.name;
-                String outputPath = outFile.getAbsolutePath();
-
-                Log.d(TAG, "Pobieram w tle: " + track.name);
-
-                PyObject result = mainModule.callAttr("play_song", query, outputPath);
-                String path = (result != null) ? result.toString() : null;
-
-                if (path != null && !path.isEmpty()) {
+    private void preloadTracks(List<Track> tracks, Track tapped) {
+        DownloadEngine engine = DownloadEngine.getInstance();
+        List<Track> rest = new ArrayList<>();
+        List<TrackIdentity> ids = new ArrayList<>();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        if (tapped != null) {
+            // the tapped track goes first, in its own NOW_PLAYING job: a batch row the Python side
+            // already claimed could not be promoted any more and would download throttled
+            rest.add(tapped);
+            futures.add(engine.request(identityOf(tapped), DownloadEngine.Priority.NOW_PLAYING));
+        }
+        for (Track track : tracks) {
+            if (track == tapped) continue;
+            rest.add(track);
+            ids.add(identityOf(track));
+        }
+        // one batch call for the rest of the album: searches run at once, a few downloads in
+        // parallel, and every track lands in the queue as soon as its file is there
+        futures.addAll(engine.requestBatch(ids, DownloadEngine.Priority.PRELOAD));
+        MusicPlayerManager player = MusicPlayerManager.getInstance();
+        for (int i = 0; i < rest.size(); i++) {
+            Track track = rest.get(i);
+            TrackIdentity id = identityOf(track);
+            futures.get(i).whenComplete((path, error) -> {
+                if (error != null) {
+                    Log.e(TAG, "Błąd podczas pobierania w tle: " + track.name, error);
+                } else if (path != null && !path.isEmpty()) {
                     Log.d(TAG, "Pobrano: " + track.name);
+                    player.onTrackDownloaded(id, path);
                 } else {
                     Log.w(TAG, "Nie udało się pobrać: " + track.name);
                 }
-
-                // mała pauza, by nie przeciążać sieci/CPU
-                Thread.sleep(1500);
-
-            } catch (Exception e) {
-                Log.e(TAG, "Błąd podczas pobierania w tle: " + track.name, e);
-            }
+            });
         }
-
-        Log.d(TAG, "Preload zakończony.");
     }
 
 
 
-    private void downloadAndPlay(AlbumTrack track) {
-        String query = artistName + " " + track.name;
-        Toast.makeText(getContext(), "Downloading: " + track.name, Toast.LENGTH_SHORT).show();
-        addTracksToQueue(tracks,albumimageurl);
-
-        new Thread(() -> {
-            try {
-                Python py = Python.getInstance();
-                PyObject mainModule = py.getModule("main");
-
-                File dir = requireActivity().getExternalFilesDir("Music");
-                if (dir == null) {
-                    mainHandler.post(() ->
-                            Toast.makeText(getContext(), "Storage error", Toast.LENGTH_SHORT).show());
-                    return;
-                }
-                Log.d("dupa", "cos dziala");
-                String filename = (artistName + "_" + track.name)
-                        .replaceAll("[^a-zA-Z0-9_\\-]", "_") + ".mp3";
-                File outFile = new File(dir, filename);
-                String outputPath = outFile.getAbsolutePath();
-
-                PyObject result = mainModule.callAttr("play_song", query, outputPath);
-                String path = (result != null) ? result.toString() : null;
-
-                if (path != null && !path.isEmpty()) {
-                    mainHandler.post(() -> {
-                        Toast.makeText(getContext(), "Playing: " + track.name, Toast.LENGTH_SHORT).show();
-                        Log.d("dupa", "dziala");
-                        MusicPlayerManager player = MusicPlayerManager.getInstance();
-                        player.setCurrentImageUrl(albumimageurl);
-                        player.setCurrentAlbumImageUrl(albumimageurl);
-                        player.updateTrackPath(track.name, path, albumimageurl); // dodaj taką metodę w MusicPlayerManager
-
-
-                        player.play(path, track.name,albumimageurl);
-                        if (getActivity() instanceof MainActivity) {
-                            ((MainActivity) getActivity()).showMiniPlayer(track.name);
-                        }
-                    });
-                } else {
-                    mainHandler.post(() ->
-                            Toast.makeText(getContext(), "Download failed", Toast.LENGTH_SHORT).show());
-                }
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error downloading track", e);
-                mainHandler.post(() ->
-                        Toast.makeText(getContext(), "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
-            }
-        }).start();
+    // the track's own artist, not the album's: that is what the queue and the preloads ask for
+    private static TrackIdentity identityOf(Track track) {
+        return TrackIdentity.of(track.id, track.artist, track.name);
     }
 
-    private List<AlbumTrack> parseTracks(String json) throws Exception {
-        List<AlbumTrack> tracks = new ArrayList<>();
-        JSONObject root = new JSONObject(json);
-        JSONArray tracksArray = root.getJSONArray("tracks");
-
-        for (int i = 0; i < tracksArray.length(); i++) {
-            JSONObject obj = tracksArray.getJSONObject(i);
-            AlbumTrack track = new AlbumTrack();
-            track.id = obj.getString("id");
-            track.name = obj.getString("name");
-            track.artist = obj.getString("artist");
-            track.durationMs = obj.optInt("duration_ms", 0);
-            track.trackNumber = obj.optInt("track_number", 0);
-            tracks.add(track);
+    private void downloadAndPlay(Track track) {
+        Toast.makeText(getContext(), "Downloading: " + track.name, Toast.LENGTH_SHORT).show();
+        // ask for the tapped track before the album batch exists, so it is never part of it
+        CompletableFuture<String> playable = DownloadEngine.getInstance()
+                .requestPlayable(identityOf(track), DownloadEngine.Priority.NOW_PLAYING);
+        addTracksToQueue(tracks, albumimageurl, track);
+        if (tracks != null) {
+            // point the queue at the tapped track so the prefetch window looks ahead from it
+            MusicPlayerManager.getInstance().setCurrentQueueIndex(tracks.indexOf(track));
         }
 
-        return tracks;
-    }
-
-    // Simple track class for album tracks
-    public static class AlbumTrack {
-        public String id;
-        public String name;
-        public String artist;
-        public int durationMs;
-        public int trackNumber;
+        playable
+                .whenComplete((path, error) -> {
+                    if (error != null) {
+                        Log.e(TAG, "Error downloading track", error);
+                        tasks.post(() ->
+                                Toast.makeText(requireContext(), "Error: " + error.getMessage(), Toast.LENGTH_SHORT).show());
+                        return;
+                    }
+
+                    if (path != null && !path.isEmpty()) {
+                        // playback must start even if the user already left this screen
+                        mainHandler.post(() -> {
+                            MusicPlayerManager player = MusicPlayerManager.getInstance();
+                            player.setCurrentImageUrl(albumimageurl);
+                            player.setCurrentAlbumImageUrl(albumimageurl);
+                            player.updateTrackPath(track.name, path, albumimageurl); // tylko ścieżka, gra play() niżej
+
+                            player.play(path, track.name,albumimageurl);
+                        });
+
+                        tasks.post(() -> {
+                            Toast.makeText(requireContext(), "Playing: " + track.name, Toast.LENGTH_SHORT).show();
+                            if (getActivity() instanceof MainActivity) {
+                                ((MainActivity) getActivity()).showMiniPlayer(track.name);
+                            }
+                        });
+                    } else {
+                        tasks.post(() ->
+                                Toast.makeText(requireContext(), "Download failed", Toast.LENGTH_SHORT).show());
+                    }
+                });
     }
-}
\ No newline at end of file
+}
@@ -7,29 +7,37 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.example.trakify.AlbumDetailFragment.AlbumTrack;
+import com.example.trakify.model.Track;
 
+import java.util.ArrayList;
 import java.util.List;
 
-public class AlbumTrackAdapter extends RecyclerView.Adapter<AlbumTrackAdapter.TrackViewHolder> {
+public class AlbumTrackAdapter extends ListAdapter<Track, AlbumTrackAdapter.TrackViewHolder> {
 
-    private List<AlbumTrack> tracks;
     private final OnTrackClickListener listener;
 
     public interface OnTrackClickListener {
-        void onTrackClick(AlbumTrack track);
+        void onTrackClick(Track track);
     }
 
-    public AlbumTrackAdapter(List<AlbumTrack> tracks, OnTrackClickListener listener) {
-        this.tracks = tracks;
+    public AlbumTrackAdapter(List<Track> tracks, OnTrackClickListener listener) {
+        super(Diffing.config(Diffing.TRACKS));
         this.listener = listener;
+        setHasStableIds(true);
+        setItems(tracks);
     }
 
-    public void setItems(List<AlbumTrack> newTracks) {
-        this.tracks = newTracks;
-        notifyDataSetChanged();
+    /** Diffed against the current list in the background; only changed rows are rebound. */
+    public void setItems(List<Track> newTracks) {
+        submitList(newTracks != null ? new ArrayList<>(newTracks) : null);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return Diffing.stableId(Diffing.keyOf(getItem(position)));
     }
 
     @NonNull
@@ -37,12 +45,23 @@ public class AlbumTrackAdapter extends RecyclerView.Adapter<AlbumTrackAdapter.Tr
     public TrackViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_album_track, parent, false);
-        return new TrackViewHolder(view);
+        TrackViewHolder holder = new TrackViewHolder(view);
+        View.OnClickListener click = v -> {
+            int pos = holder.getBindingAdapterPosition();
+            if (listener == null || pos == RecyclerView.NO_POSITION) return;
+            Track track = getItem(pos);
+            // time to first audio is measured from this tap
+            PlaybackTrace.getInstance().tap(TrackIdentity.of(track.id, track.artist, track.name));
+            listener.onTrackClick(track);
+        };
+        holder.itemView.setOnClickListener(click);
+        holder.btnDownload.setOnClickListener(click);
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull TrackViewHolder holder, int position) {
-        AlbumTrack track = tracks.get(position);
+        Track track = getItem(position);
 
         holder.tvTrackNumber.setText(String.valueOf(track.trackNumber));
         holder.tvTrackName.setText(track.name);
@@ -56,19 +75,6 @@ public class AlbumTrackAdapter extends RecyclerView.Adapter<AlbumTrackAdapter.Tr
         } else {
             holder.tvDuration.setText("");
         }
-
-        holder.itemView.setOnClickListener(v -> {
-            if (listener != null) listener.onTrackClick(track);
-        });
-
-        holder.btnDownload.setOnClickListener(v -> {
-            if (listener != null) listener.onTrackClick(track);
-        });
-    }
-
-    @Override
-    public int getItemCount() {
-        return tracks != null ? tracks.size() : 0;
     }
 
     static class TrackViewHolder extends RecyclerView.ViewHolder {
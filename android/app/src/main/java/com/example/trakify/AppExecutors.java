@@ -0,0 +1,75 @@
+package com.example.trakify;
+
+import android.os.Looper;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded background pools shared by the whole app, one per kind of work. Screens use them
+ * through {@link TaskScope}; Python itself runs on {@link PythonScheduler}, so NETWORK threads
+ * only wait on it.
+ */
+public class AppExecutors {
+    private static AppExecutors instance;
+
+    public enum Pool {
+        // HTTP + waiting on Python results
+        NETWORK(4),
+        // file listing, deletes, cache files
+        DISK(2),
+        // parsing, filtering, sorting in memory
+        CPU(Math.max(2, Runtime.getRuntime().availableProcessors() - 1));
+
+        final int threads;
+
+        Pool(int threads) {
+            this.threads = threads;
+        }
+    }
+
+    private static final long KEEP_ALIVE_SEC = 30;
+
+    private final Map<Pool, ExecutorService> executors = new EnumMap<>(Pool.class);
+
+    private AppExecutors() {
+        for (Pool pool : Pool.values()) {
+            executors.put(pool, newPool(pool.name().toLowerCase(), pool.threads));
+        }
+    }
+
+    public static synchronized AppExecutors getInstance() {
+        if (instance == null) instance = new AppExecutors();
+        return instance;
+    }
+
+    public ExecutorService get(Pool pool) {
+        return executors.get(pool);
+    }
+
+    /** Fails fast if a blocking call (network, Python, disk) is made from the UI thread. */
+    public static void checkNotMainThread(String what) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException(what + " must not run on the main thread");
+        }
+    }
+
+    private static ExecutorService newPool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SEC, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -1,8 +1,6 @@
 package com.example.trakify;
 
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -18,14 +16,9 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import java.util.ArrayList;
-import java.util.List;
 
 public class ArtistDetailFragment extends Fragment {
 
@@ -42,7 +35,7 @@ public class ArtistDetailFragment extends Fragment {
     private ProgressBar progressBar;
 
     private AlbumAdapter albumAdapter;
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private TaskScope tasks;
 
     public static ArtistDetailFragment newInstance(String artistId, String artistName) {
         ArtistDetailFragment fragment = new ArtistDetailFragment();
@@ -72,6 +65,7 @@ public class ArtistDetailFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
+        tasks = TaskScope.of(getViewLifecycleOwner());
 
         tvArtistName = view.findViewById(R.id.tvArtistDetailName);
         btnBack = view.findViewById(R.id.btnBack);
@@ -82,7 +76,13 @@ public class ArtistDetailFragment extends Fragment {
 
         btnBack.setOnClickListener(v -> requireActivity().onBackPressed());
 
-        rvAlbums.setLayoutManager(new LinearLayoutManager(getContext()));
+        LinearLayoutManager albumsLayout = new LinearLayoutManager(getContext());
+        albumsLayout.setRecycleChildrenOnDetach(true);
+        rvAlbums.setLayoutManager(albumsLayout);
+        rvAlbums.setHasFixedSize(true);
+        if (getActivity() instanceof MainActivity) {
+            rvAlbums.setRecycledViewPool(((MainActivity) getActivity()).getAlbumViewPool());
+        }
 
         albumAdapter = new AlbumAdapter(new ArrayList<>(), album -> {
             // Navigate to album detail
@@ -103,46 +103,16 @@ public class ArtistDetailFragment extends Fragment {
     private void loadArtistAlbums() {
         progressBar.setVisibility(View.VISIBLE);
 
-        new Thread(() -> {
-            try {
-                Python py = Python.getInstance();
-                PyObject module = py.getModule("api_spotify");
-
-                PyObject result = module.callAttr("get_artist_albums", artistId);
-                String json = result.toString();
-
-                List<HomeFragment.Album> albums = parseAlbums(json);
-
-                mainHandler.post(() -> {
-                    albumAdapter.setItems(albums);
+        tasks.execute(AppExecutors.Pool.NETWORK,
+                () -> CatalogRepository.getInstance().getArtistAlbums(artistId, artistName, (albums, fromCache) ->
+                        tasks.post(() -> {
+                            albumAdapter.setItems(albums);
+                            progressBar.setVisibility(View.GONE);
+                        })),
+                e -> {
+                    Log.e(TAG, "Error loading artist albums", e);
                     progressBar.setVisibility(View.GONE);
+                    Toast.makeText(requireContext(), "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
                 });
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error loading artist albums", e);
-                mainHandler.post(() -> {
-                    progressBar.setVisibility(View.GONE);
-                    Toast.makeText(getContext(), "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                });
-            }
-        }).start();
-    }
-
-    private List<HomeFragment.Album> parseAlbums(String json) throws Exception {
-        List<HomeFragment.Album> albums = new ArrayList<>();
-        JSONObject root = new JSONObject(json);
-        JSONArray albumsArray = root.getJSONArray("albums");
-
-        for (int i = 0; i < albumsArray.length(); i++) {
-            JSONObject obj = albumsArray.getJSONObject(i);
-            HomeFragment.Album album = new HomeFragment.Album();
-            album.id = obj.getString("id");
-            album.name = obj.getString("name");
-            album.artist = artistName;
-            album.imageUrl = obj.optString("image", "");
-            albums.add(album);
-        }
-
-        return albums;
     }
-}
\ No newline at end of file
+}
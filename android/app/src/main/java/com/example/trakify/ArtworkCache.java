@@ -0,0 +1,166 @@
+package com.example.trakify;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.request.transition.Transition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Album art for the notification and the lock screen, owned by {@link MusicPlayerService}.
+ *
+ * Covers are decoded by Glide at the notification large-icon size (not Spotify's 640 px
+ * original) and the last {@link #MAX_ENTRIES} are kept, so the art of a track we prefetched
+ * or just played is there without a network round trip. The placeholder is rendered once at
+ * the same size. Main thread only; Glide delivers its callbacks there too.
+ */
+final class ArtworkCache {
+    private static final String TAG = "ArtworkCache";
+    private static final int MAX_ENTRIES = 8;
+
+    interface Callback {
+        void onArtwork(String url, Bitmap bitmap);
+    }
+
+    private final Context context;
+    private final int size;
+    private Bitmap placeholder;
+
+    // the target stays referenced until eviction: clearing it hands the bitmap back to Glide's pool
+    private final LruCache<String, Target> cache = new LruCache<String, Target>(MAX_ENTRIES) {
+        @Override
+        protected void entryRemoved(boolean evicted, String url, Target old, Target replacement) {
+            if (old != replacement) Glide.with(context).clear(old);
+        }
+    };
+    private final Map<String, Target> loading = new HashMap<>();
+
+    ArtworkCache(Context context) {
+        this.context = context.getApplicationContext();
+        this.size = Math.max(
+                context.getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width),
+                context.getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_height));
+    }
+
+    /** The decoded cover when it is already here, otherwise null. */
+    @Nullable
+    Bitmap get(@Nullable String url) {
+        if (url == null || url.isEmpty()) return null;
+        Target t = cache.get(url);
+        return t != null ? t.bitmap : null;
+    }
+
+    /**
+     * Delivers the cover for {@code url}: right away when cached, otherwise once Glide has it.
+     * A failed load delivers the placeholder and is not cached.
+     */
+    void load(@Nullable String url, @Nullable Callback callback) {
+        if (url == null || url.isEmpty()) {
+            if (callback != null) callback.onArtwork(url, placeholder());
+            return;
+        }
+        Bitmap cached = get(url);
+        if (cached != null) {
+            if (callback != null) callback.onArtwork(url, cached);
+            return;
+        }
+        Target running = loading.get(url);
+        if (running != null) {
+            if (callback != null) running.waiters.add(callback);
+            return;
+        }
+
+        Target target = new Target(url, size);
+        if (callback != null) target.waiters.add(callback);
+        loading.put(url, target);
+        try {
+            Glide.with(context)
+                    .asBitmap()
+                    .load(url)
+                    .override(size, size)
+                    .centerCrop()
+                    .into(target);
+        } catch (Exception e) {
+            Log.e(TAG, "load error " + url, e);
+            loading.remove(url);
+            target.deliver(placeholder());
+        }
+    }
+
+    /** Warms the cache for a queue item that is about to play. */
+    void prefetch(@Nullable String url) {
+        if (url != null && !url.isEmpty() && get(url) == null && !loading.containsKey(url)) {
+            load(url, null);
+        }
+    }
+
+    /** ic_album_placeholder is a vector, so it is drawn once into a bitmap of the icon size. */
+    Bitmap placeholder() {
+        if (placeholder == null) {
+            placeholder = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            Drawable d = ContextCompat.getDrawable(context, R.drawable.ic_album_placeholder);
+            if (d != null) {
+                Canvas canvas = new Canvas(placeholder);
+                d.setBounds(0, 0, size, size);
+                d.draw(canvas);
+            }
+        }
+        return placeholder;
+    }
+
+    void clear() {
+        cache.evictAll();
+        for (Target t : loading.values()) Glide.with(context).clear(t);
+        loading.clear();
+    }
+
+    private final class Target extends CustomTarget<Bitmap> {
+        final String url;
+        final List<Callback> waiters = new ArrayList<>(1);
+        Bitmap bitmap;
+
+        Target(String url, int size) {
+            super(size, size);
+            this.url = url;
+        }
+
+        @Override
+        public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
+            if (loading.remove(url) != this) return; // cleared meanwhile
+            bitmap = resource;
+            cache.put(url, this);
+            deliver(resource);
+        }
+
+        @Override
+        public void onLoadFailed(@Nullable Drawable errorDrawable) {
+            if (loading.remove(url) != this) return;
+            Log.w(TAG, "load failed " + url);
+            deliver(placeholder());
+        }
+
+        @Override
+        public void onLoadCleared(@Nullable Drawable placeholder) {
+            bitmap = null;
+        }
+
+        void deliver(Bitmap b) {
+            for (Callback c : waiters) c.onArtwork(url, b);
+            waiters.clear();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.trakify;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.trakify.model.LibrarySong;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the music dir under a byte quota.
+ *
+ * Plays are recorded in {@link LibraryIndex}; when the indexed total goes over the quota the
+ * least recently used songs (fewest plays on a tie) are deleted. Songs in the player's queue
+ * and songs the user keeps are never evicted. Trimming runs on the DISK pool in small batches,
+ * each batch re-submitting the next one, so it never holds the pool for a long sweep. Leftover
+ * yt-dlp temp files of interrupted runs are swept at startup.
+ */
+public class AudioCache {
+    private static final String TAG = "AudioCache";
+    private static AudioCache instance;
+
+    private static final String PREFS = "trakify_prefs";
+    private static final String PREF_QUOTA = "audio_cache_quota_bytes";
+    public static final long DEFAULT_QUOTA_BYTES = 2L * 1024 * 1024 * 1024; // 2 GB
+    private static final int BATCH = 8;
+    // a temp file this old cannot belong to a download that is still running
+    private static final long STALE_TEMP_MS = 60 * 60 * 1000L;
+    // a segmented download resumes from its .part and .segments sidecar (see api_yt.py), so it keeps much longer
+    private static final long STALE_RESUMABLE_MS = 7 * 24 * 60 * 60 * 1000L;
+    private static final String SEGMENTS = ".segments";
+    private static final String[] TEMP_MARKERS = {".part", ".ytdl", ".temp", ".tmp"};
+
+    private final LibraryIndex index = LibraryIndex.getInstance();
+    private final AtomicBoolean trimScheduled = new AtomicBoolean();
+    private SharedPreferences prefs;
+    private File musicDir;
+
+    private AudioCache() {}
+
+    public static synchronized AudioCache getInstance() {
+        if (instance == null) instance = new AudioCache();
+        return instance;
+    }
+
+    /** Call after LibraryIndex.init: sweeps temp files and trims to the quota in the background. */
+    public synchronized void init(Context ctx) {
+        if (ctx == null || prefs != null) return;
+        Context app = ctx.getApplicationContext();
+        prefs = app.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        musicDir = app.getExternalFilesDir("Music");
+        disk().execute(this::sweepTempFiles);
+        trimSoon();
+    }
+
+    public long getQuotaBytes() {
+        return prefs != null ? prefs.getLong(PREF_QUOTA, DEFAULT_QUOTA_BYTES) : DEFAULT_QUOTA_BYTES;
+    }
+
+    public void setQuotaBytes(long bytes) {
+        if (prefs == null) return;
+        prefs.edit().putLong(PREF_QUOTA, Math.max(0, bytes)).apply();
+        trimSoon();
+    }
+
+    /** The player started this file. */
+    public void onPlayed(String path) {
+        if (path == null) return;
+        disk().execute(() -> index.markPlayed(path));
+    }
+
+    /** Kept songs ("liked") are never evicted. */
+    public void setKept(String path, boolean kept) {
+        if (path == null) return;
+        disk().execute(() -> {
+            index.setKept(path, kept);
+            if (!kept) trimSoon();
+        });
+    }
+
+    /** Something was added (or the quota shrank): trim in the background if needed. */
+    public void trimSoon() {
+        if (trimScheduled.compareAndSet(false, true)) disk().execute(this::trimStep);
+    }
+
+    // one batch; schedules the next one while still over quota
+    private void trimStep() {
+        trimScheduled.set(false);
+        long quota = getQuotaBytes();
+        long total = index.totalSize();
+        if (total <= quota) return;
+
+        List<LibrarySong> victims = index.evictionCandidates(BATCH, pinnedPaths());
+        if (victims.isEmpty()) {
+            Log.w(TAG, "over quota (" + total + " > " + quota + ") but everything left is pinned");
+            return;
+        }
+        int deleted = 0;
+        for (LibrarySong s : victims) {
+            if (total <= quota) break;
+            File f = s.file();
+            if (f.delete() || !f.exists()) {
+                index.remove(f);
+                total -= s.size;
+                deleted++;
+            }
+        }
+        Log.d(TAG, "trim: deleted " + deleted + ", " + total + " / " + quota + " bytes");
+        if (deleted > 0 && total > quota) trimSoon();
+    }
+
+    // the queue (incl. what is playing now) must stay on disk
+    private static Set<String> pinnedPaths() {
+        MusicPlayerManager player = MusicPlayerManager.getInstance();
+        Set<String> pinned = new HashSet<>();
+        for (MusicPlayerManager.QueueItem item : player.getQueue()) {
+            if (item.path != null) pinned.add(new File(item.path).getAbsolutePath());
+        }
+        String current = player.getCurrentPath();
+        if (current != null) pinned.add(new File(current).getAbsolutePath());
+        return pinned;
+    }
+
+    private void sweepTempFiles() {
+        File dir = musicDir;
+        File[] files = dir != null ? dir.listFiles() : null;
+        if (files == null) return;
+        long now = System.currentTimeMillis();
+        Set<String> names = new HashSet<>();
+        for (File f : files) names.add(f.getName());
+        int swept = 0;
+        for (File f : files) {
+            if (!f.isFile() || !isTemp(f.getName())) continue;
+            long maxAge = isResumable(f.getName(), names) ? STALE_RESUMABLE_MS : STALE_TEMP_MS;
+            if (f.lastModified() < now - maxAge && f.delete()) swept++;
+        }
+        if (swept > 0) Log.d(TAG, "swept " + swept + " leftover temp files");
+    }
+
+    static boolean isTemp(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (String marker : TEMP_MARKERS) {
+            if (lower.contains(marker)) return true;
+        }
+        return false;
+    }
+
+    /** A .part with its .segments sidecar, or that sidecar: an interrupted segmented download. */
+    static boolean isResumable(String name, Set<String> names) {
+        if (name.endsWith(".part" + SEGMENTS)) {
+            return names.contains(name.substring(0, name.length() - SEGMENTS.length()));
+        }
+        return name.endsWith(".part") && names.contains(name + SEGMENTS);
+    }
+
+    private static Executor disk() {
+        return AppExecutors.getInstance().get(AppExecutors.Pool.DISK);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.trakify;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Two-level (memory + disk) cache for catalog responses, used by {@link CatalogRepository}.
+ *
+ * Entries are never dropped because they are old: the repository shows whatever is cached and
+ * uses the per-endpoint TTL only to decide whether to revalidate in the background
+ * (stale-while-revalidate). Disk files live in cacheDir/catalog, one file per key, so the
+ * system may reclaim them under storage pressure.
+ */
+public class CatalogCache {
+    private static final String TAG = "CatalogCache";
+    private static CatalogCache instance;
+
+    // per-endpoint TTLs
+    public static final long TTL_NEW_RELEASES = 6 * 60 * 60 * 1000L;
+    public static final long TTL_TOP_TRACKS = 60 * 60 * 1000L;
+    public static final long TTL_ALBUM_TRACKS = 7 * 24 * 60 * 60 * 1000L;
+    public static final long TTL_ARTIST_ALBUMS = 24 * 60 * 60 * 1000L;
+
+    private static final int MEMORY_ENTRIES = 64;
+
+    private final LruCache<String, Entry> memory = new LruCache<>(MEMORY_ENTRIES);
+    private File dir;
+
+    public static class Entry {
+        public final String payload;
+        public final long storedAt;
+
+        Entry(String payload, long storedAt) {
+            this.payload = payload;
+            this.storedAt = storedAt;
+        }
+
+        public boolean isFresh(long ttlMs) {
+            return System.currentTimeMillis() - storedAt < ttlMs;
+        }
+    }
+
+    private CatalogCache() {}
+
+    public static synchronized CatalogCache getInstance() {
+        if (instance == null) instance = new CatalogCache();
+        return instance;
+    }
+
+    public synchronized void init(Context ctx) {
+        if (ctx == null || dir != null) return;
+        dir = new File(ctx.getApplicationContext().getCacheDir(), "catalog");
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Could not create cache dir " + dir);
+        }
+    }
+
+    /** Memory first, then disk (promoted into memory). Null if never stored. */
+    public Entry get(String key) {
+        Entry e = memory.get(key);
+        if (e != null) return e;
+
+        File f = fileFor(key);
+        if (f == null || !f.exists()) return null;
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+            long storedAt = Long.parseLong(in.readLine().trim());
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[4096];
+            int n;
+            while ((n = in.read(buf)) != -1) sb.append(buf, 0, n);
+            e = new Entry(sb.toString(), storedAt);
+            memory.put(key, e);
+            return e;
+        } catch (Exception ex) {
+            Log.w(TAG, "Dropping unreadable cache file " + f.getName(), ex);
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+            return null;
+        }
+    }
+
+    public void put(String key, String payload) {
+        Entry e = new Entry(payload, System.currentTimeMillis());
+        memory.put(key, e);
+
+        File f = fileFor(key);
+        if (f == null) return;
+        // write to a temp file and rename so a crash never leaves half a payload behind
+        File tmp = new File(f.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            out.write(Long.toString(e.storedAt));
+            out.write('\n');
+            out.write(payload);
+        } catch (IOException ex) {
+            Log.w(TAG, "Could not write cache entry " + key, ex);
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(f)) {
+            Log.w(TAG, "Could not commit cache entry " + key);
+        }
+    }
+
+    public void clear() {
+        memory.evictAll();
+        File[] files = dir != null ? dir.listFiles() : null;
+        if (files == null) return;
+        for (File f : files) {
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+    }
+
+    private File fileFor(String key) {
+        if (dir == null) return null;
+        return new File(dir, key.replaceAll("[^a-zA-Z0-9_\\-]", "_") + ".json");
+    }
+}
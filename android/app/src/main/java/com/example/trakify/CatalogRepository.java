@@ -0,0 +1,267 @@
+package com.example.trakify;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.trakify.model.Album;
+import com.example.trakify.model.CatalogJson;
+import com.example.trakify.model.SearchResult;
+import com.example.trakify.model.Track;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * What the catalog screens talk to. Every call goes to the native {@link SpotifyCatalogClient}
+ * first; if that fails (no credentials, network/HTTP error) it falls back to the old
+ * api_spotify.py path through {@link PythonBridge} (packed rows from bridge.py). Client
+ * responses and cache files are parsed by {@link CatalogJson}.
+ *
+ * Home/album/artist endpoints are served stale-while-revalidate from {@link CatalogCache}:
+ * the listener first gets whatever is cached (even if older than the TTL), and only if the
+ * entry is missing or expired is the network asked, with a second delivery when the data
+ * actually changed.
+ *
+ * All methods block and must be called off the main thread; listeners run on the calling thread.
+ */
+public class CatalogRepository {
+    private static final String TAG = "CatalogRepository";
+    private static CatalogRepository instance;
+
+    private SpotifyCatalogClient client;
+    private final PythonBridge bridge = PythonBridge.getInstance();
+    private final CatalogCache cache = CatalogCache.getInstance();
+
+    public interface Listener<T> {
+        // called once with cached data and/or once with fresh data
+        void onData(T data, boolean fromCache);
+    }
+
+    private interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    private interface Codec<T> {
+        String encode(T data) throws Exception;
+        T decode(String payload) throws Exception;
+    }
+
+    private CatalogRepository() {}
+
+    public void init(Context ctx) {
+        cache.init(ctx);
+    }
+
+    public static synchronized CatalogRepository getInstance() {
+        if (instance == null) instance = new CatalogRepository();
+        return instance;
+    }
+
+    // credentials stay in one place (api_spotify.py), the Java client just reads them
+    private synchronized SpotifyCatalogClient client() {
+        if (client == null) {
+            client = new SpotifyCatalogClient(
+                    bridge.attr("api_spotify", "SPOTIFY_CLIENT_ID"),
+                    bridge.attr("api_spotify", "SPOTIFY_CLIENT_SECRET"));
+        }
+        return client;
+    }
+
+    public void getNewReleases(int limit, Listener<List<Album>> listener) throws Exception {
+        cached("new_releases_" + limit, CatalogCache.TTL_NEW_RELEASES, ALBUMS,
+                () -> fetchNewReleases(limit), listener);
+    }
+
+    public void getTopTracks(String country, int limit, Listener<List<Track>> listener) throws Exception {
+        cached("top_" + country + "_" + limit, CatalogCache.TTL_TOP_TRACKS, TRACKS,
+                () -> fetchTopTracks(country, limit), listener);
+    }
+
+    public void getAlbumTracks(String albumId, Listener<List<Track>> listener) throws Exception {
+        cached("album_" + albumId, CatalogCache.TTL_ALBUM_TRACKS, TRACKS,
+                () -> fetchAlbumTracks(albumId), listener);
+    }
+
+    public void getArtistAlbums(String artistId, String artistName,
+                                Listener<List<Album>> listener) throws Exception {
+        cached("artist_albums_" + artistId, CatalogCache.TTL_ARTIST_ALBUMS, ALBUMS,
+                () -> fetchArtistAlbums(artistId, artistName), listener);
+    }
+
+    private <T extends List<?>> void cached(String key, long ttlMs, Codec<T> codec, Loader<T> loader,
+                                            Listener<T> listener) throws Exception {
+        CatalogCache.Entry entry = cache.get(key);
+        T cachedData = null;
+        if (entry != null) {
+            try {
+                cachedData = codec.decode(entry.payload);
+            } catch (Exception e) {
+                Log.w(TAG, "Ignoring undecodable cache entry " + key, e);
+            }
+        }
+        if (cachedData != null) {
+            listener.onData(cachedData, true);
+            if (entry.isFresh(ttlMs)) return;
+            Log.d(TAG, "Revalidating stale " + key);
+        }
+
+        T fresh;
+        try {
+            fresh = loader.load();
+        } catch (Exception e) {
+            // offline / API trouble: the stale copy on screen is better than an error
+            if (cachedData != null) {
+                Log.w(TAG, "Revalidation failed for " + key + ", keeping cached data", e);
+                return;
+            }
+            throw e;
+        }
+
+        // empty lists are how the backends report "nothing found"/errors -> never cache them
+        String payload = codec.encode(fresh);
+        if (!fresh.isEmpty()) cache.put(key, payload);
+        if (cachedData == null || !payload.equals(entry.payload)) {
+            listener.onData(fresh, false);
+        }
+    }
+
+    private List<Album> fetchNewReleases(int limit) throws Exception {
+        try {
+            return client().getNewReleases(limit);
+        } catch (Exception e) {
+            Log.w(TAG, "getNewReleases: native client failed, using Python", e);
+        }
+        return toAlbums(python(null, () -> bridge.callRows("new_releases", limit)));
+    }
+
+    private List<Track> fetchTopTracks(String country, int limit) throws Exception {
+        try {
+            return client().getTopTracks(country, limit);
+        } catch (Exception e) {
+            Log.w(TAG, "getTopTracks: native client failed, using Python", e);
+        }
+        // switching country supersedes the previous top-tracks call
+        return toTracks(python("top_tracks", () -> bridge.callRows("top_tracks", country, limit)));
+    }
+
+    private List<Track> fetchAlbumTracks(String albumId) throws Exception {
+        try {
+            return client().getAlbumTracks(albumId);
+        } catch (Exception e) {
+            Log.w(TAG, "getAlbumTracks: native client failed, using Python", e);
+        }
+        return toTracks(python(null, () -> bridge.callRows("album_tracks", albumId)));
+    }
+
+    private List<Album> fetchArtistAlbums(String artistId, String artistName) throws Exception {
+        try {
+            return client().getArtistAlbums(artistId, artistName, 20);
+        } catch (Exception e) {
+            Log.w(TAG, "getArtistAlbums: native client failed, using Python", e);
+        }
+        // get_artist_albums doesn't include the artist, the caller knows it
+        List<Album> albums = toAlbums(python(null, () -> bridge.callRows("artist_albums", artistId)));
+        for (Album album : albums) album.artist = artistName;
+        return albums;
+    }
+
+    public List<SearchResult> search(String query, int limit) throws Exception {
+        try {
+            return client().search(query, limit);
+        } catch (Exception e) {
+            // superseded by a newer query: don't fall back, nobody wants this result
+            if (Thread.currentThread().isInterrupted()) throw new CancellationException("search superseded");
+            Log.w(TAG, "search: native client failed, using Python", e);
+        }
+        // a newer keystroke supersedes a search still waiting for the interpreter
+        return toSearchResults(python("search", () -> bridge.callRows("search", query, limit)));
+    }
+
+    // ---------- Python fallback (packed rows from bridge.py) ----------
+
+    // catalog calls run in the interactive lane, ahead of downloads and preload
+    private static PythonBridge.Rows python(String supersedeKey, Callable<PythonBridge.Rows> call) throws Exception {
+        return PythonScheduler.getInstance().call(PythonScheduler.Lane.INTERACTIVE, supersedeKey, call);
+    }
+
+    private static List<Album> toAlbums(PythonBridge.Rows rows) {
+        int id = rows.column("id"), name = rows.column("name");
+        int artist = rows.column("artist"), image = rows.column("image");
+        List<Album> albums = new ArrayList<>(rows.rows.size());
+        for (String[] row : rows.rows) {
+            Album album = new Album();
+            album.id = PythonBridge.Rows.get(row, id);
+            album.name = PythonBridge.Rows.get(row, name);
+            album.artist = PythonBridge.Rows.get(row, artist);
+            album.imageUrl = PythonBridge.Rows.get(row, image);
+            albums.add(album);
+        }
+        return albums;
+    }
+
+    private static List<Track> toTracks(PythonBridge.Rows rows) {
+        int id = rows.column("id"), name = rows.column("name"), artist = rows.column("artist");
+        int album = rows.column("album"), image = rows.column("image");
+        int duration = rows.column("duration_ms"), number = rows.column("track_number");
+        List<Track> tracks = new ArrayList<>(rows.rows.size());
+        for (String[] row : rows.rows) {
+            Track track = new Track();
+            track.id = PythonBridge.Rows.get(row, id);
+            track.name = PythonBridge.Rows.get(row, name);
+            track.artist = PythonBridge.Rows.get(row, artist);
+            track.album = PythonBridge.Rows.get(row, album);
+            track.imageUrl = PythonBridge.Rows.get(row, image);
+            track.durationMs = PythonBridge.Rows.getInt(row, duration);
+            track.trackNumber = PythonBridge.Rows.getInt(row, number);
+            tracks.add(track);
+        }
+        return tracks;
+    }
+
+    private static List<SearchResult> toSearchResults(PythonBridge.Rows rows) {
+        int type = rows.column("type"), id = rows.column("id"), name = rows.column("name");
+        int artist = rows.column("artist"), album = rows.column("album");
+        int image = rows.column("image"), duration = rows.column("duration_ms");
+        List<SearchResult> results = new ArrayList<>(rows.rows.size());
+        for (String[] row : rows.rows) {
+            SearchResult result = new SearchResult();
+            result.type = PythonBridge.Rows.get(row, type);
+            result.id = PythonBridge.Rows.get(row, id);
+            result.name = PythonBridge.Rows.get(row, name);
+            result.artist = PythonBridge.Rows.get(row, artist);
+            result.album = SearchResult.TYPE_TRACK.equals(result.type) ? PythonBridge.Rows.get(row, album) : null;
+            result.imageUrl = PythonBridge.Rows.get(row, image);
+            result.durationMs = PythonBridge.Rows.getInt(row, duration);
+            results.add(result);
+        }
+        return results;
+    }
+
+    // ---------- cache codecs ----------
+
+    private static final Codec<List<Album>> ALBUMS = new Codec<List<Album>>() {
+        @Override
+        public String encode(List<Album> albums) throws Exception {
+            return CatalogJson.writeAlbums(albums);
+        }
+
+        @Override
+        public List<Album> decode(String payload) throws Exception {
+            return CatalogJson.readAlbums(CatalogJson.reader(payload), "albums");
+        }
+    };
+
+    private static final Codec<List<Track>> TRACKS = new Codec<List<Track>>() {
+        @Override
+        public String encode(List<Track> tracks) throws Exception {
+            return CatalogJson.writeTracks(tracks);
+        }
+
+        @Override
+        public List<Track> decode(String payload) throws Exception {
+            return CatalogJson.readTracks(CatalogJson.reader(payload), "tracks");
+        }
+    };
+}
@@ -0,0 +1,128 @@
+package com.example.trakify;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.example.trakify.model.Album;
+import com.example.trakify.model.LibrarySong;
+import com.example.trakify.model.SearchResult;
+import com.example.trakify.model.Track;
+
+import java.util.Objects;
+
+/**
+ * What the list adapters share: diff callbacks per model, stable ids and the partial-bind
+ * payload. Diffs run on the CPU pool (see {@link #config}), so a new list never blocks the UI
+ * thread and only rows that really changed are rebound.
+ */
+public final class Diffing {
+
+    /** Payload for a row whose text changed but whose artwork didn't: skip the image reload. */
+    public static final Object PAYLOAD_TEXT = new Object();
+
+    private Diffing() {}
+
+    public static <T> AsyncDifferConfig<T> config(DiffUtil.ItemCallback<T> callback) {
+        return new AsyncDifferConfig.Builder<>(callback)
+                .setBackgroundThreadExecutor(AppExecutors.getInstance().get(AppExecutors.Pool.CPU))
+                .build();
+    }
+
+    /** 64-bit FNV-1a of the row's key, for setHasStableIds adapters. */
+    public static long stableId(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // id when there is one, otherwise what the row shows
+    static String key(String id, String... fallback) {
+        if (id != null && !id.isEmpty()) return id;
+        return String.join("\u001f", fallback);
+    }
+
+    public static final DiffUtil.ItemCallback<Album> ALBUMS = new DiffUtil.ItemCallback<Album>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Album a, @NonNull Album b) {
+            return keyOf(a).equals(keyOf(b));
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Album a, @NonNull Album b) {
+            return Objects.equals(a.name, b.name) && Objects.equals(a.artist, b.artist)
+                    && Objects.equals(a.imageUrl, b.imageUrl);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Album a, @NonNull Album b) {
+            return Objects.equals(a.imageUrl, b.imageUrl) ? PAYLOAD_TEXT : null;
+        }
+    };
+
+    public static final DiffUtil.ItemCallback<Track> TRACKS = new DiffUtil.ItemCallback<Track>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Track a, @NonNull Track b) {
+            return keyOf(a).equals(keyOf(b));
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Track a, @NonNull Track b) {
+            return Objects.equals(a.name, b.name) && Objects.equals(a.artist, b.artist)
+                    && Objects.equals(a.album, b.album) && Objects.equals(a.imageUrl, b.imageUrl)
+                    && a.durationMs == b.durationMs && a.trackNumber == b.trackNumber;
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Track a, @NonNull Track b) {
+            return Objects.equals(a.imageUrl, b.imageUrl) ? PAYLOAD_TEXT : null;
+        }
+    };
+
+    public static final DiffUtil.ItemCallback<SearchResult> SEARCH_RESULTS = new DiffUtil.ItemCallback<SearchResult>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull SearchResult a, @NonNull SearchResult b) {
+            return keyOf(a).equals(keyOf(b));
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull SearchResult a, @NonNull SearchResult b) {
+            return Objects.equals(a.name, b.name) && Objects.equals(a.artist, b.artist)
+                    && Objects.equals(a.album, b.album) && Objects.equals(a.imageUrl, b.imageUrl)
+                    && a.durationMs == b.durationMs;
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull SearchResult a, @NonNull SearchResult b) {
+            return Objects.equals(a.imageUrl, b.imageUrl) ? PAYLOAD_TEXT : null;
+        }
+    };
+
+    public static final DiffUtil.ItemCallback<LibrarySong> LIBRARY_SONGS = new DiffUtil.ItemCallback<LibrarySong>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull LibrarySong a, @NonNull LibrarySong b) {
+            return a.path.equals(b.path);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull LibrarySong a, @NonNull LibrarySong b) {
+            return Objects.equals(a.fileName, b.fileName) && Objects.equals(a.title, b.title)
+                    && Objects.equals(a.artist, b.artist) && a.kept == b.kept;
+        }
+    };
+
+    public static String keyOf(Album a) {
+        return key(a.id, a.name, a.artist);
+    }
+
+    public static String keyOf(Track t) {
+        return key(t.id, t.name, t.artist);
+    }
+
+    public static String keyOf(SearchResult r) {
+        return r.type + ":" + key(r.id, r.name, r.artist);
+    }
+}
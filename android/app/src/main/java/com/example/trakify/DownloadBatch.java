@@ -0,0 +1,115 @@
+package com.example.trakify;
+
+import java.util.List;
+
+/**
+ * Several tracks downloaded by one main.play_songs call; the methods are called from Python.
+ *
+ * Python resolves every query concurrently, then downloads with a small worker pool and
+ * reports each track through {@link #onResult} as soon as it lands. Before downloading an item
+ * it {@link #claim}s it: an item that was detached in the meantime (someone wants to hear it
+ * now, so {@link DownloadEngine} gave it its own job in the playback lane) is skipped.
+ */
+public final class DownloadBatch {
+
+    interface ResultListener {
+        void onBatchResult(DownloadBatch batch, int index, String path);
+    }
+
+    private final String[] queries;
+    private final String[] outputPaths;
+    private final String[] videoIds;
+    private final PartialDownload[] partials;
+    private final DownloadStats[] stats;
+    private final DownloadProfile profile;
+    private final ResultListener listener;
+
+    private final boolean[] claimed;
+    private final boolean[] detached;
+    private final boolean[] reported;
+
+    DownloadBatch(List<String> queries, List<String> outputPaths, List<PartialDownload> partials,
+                  List<DownloadStats> stats, DownloadProfile profile, ResultListener listener) {
+        int n = queries.size();
+        this.queries = queries.toArray(new String[0]);
+        this.outputPaths = outputPaths.toArray(new String[0]);
+        this.partials = partials.toArray(new PartialDownload[0]);
+        this.stats = stats.toArray(new DownloadStats[0]);
+        this.videoIds = new String[n];
+        this.profile = profile;
+        this.listener = listener;
+        this.claimed = new boolean[n];
+        this.detached = new boolean[n];
+        this.reported = new boolean[n];
+    }
+
+    public int size() {
+        return queries.length;
+    }
+
+    public String query(int i) {
+        return queries[i];
+    }
+
+    public String outputPath(int i) {
+        return outputPaths[i];
+    }
+
+    /** Video resolved on an earlier download (ResolutionCache), or null to search. */
+    public String videoId(int i) {
+        return videoIds[i];
+    }
+
+    public PartialDownload progress(int i) {
+        return partials[i];
+    }
+
+    public DownloadStats stats(int i) {
+        return stats[i];
+    }
+
+    public DownloadProfile profile() {
+        return profile;
+    }
+
+    /** False when the item left the batch; Python then neither searches nor downloads it. */
+    public synchronized boolean wanted(int i) {
+        return !detached[i] && !reported[i];
+    }
+
+    /** Python is about to download item i; false means skip it. */
+    public synchronized boolean claim(int i) {
+        if (detached[i] || reported[i]) return false;
+        claimed[i] = true;
+        return true;
+    }
+
+    /** Item i finished: its path, or null when it could not be downloaded. */
+    public void onResult(int i, String path) {
+        synchronized (this) {
+            if (detached[i] || reported[i]) return;
+            reported[i] = true;
+        }
+        listener.onBatchResult(this, i, path != null && !path.isEmpty() ? path : null);
+    }
+
+    void setVideoId(int i, String videoId) {
+        videoIds[i] = videoId;
+    }
+
+    /** Takes item i out of the batch unless Python already started it. */
+    synchronized boolean detach(int i) {
+        if (claimed[i] || reported[i] || detached[i]) return false;
+        detached[i] = true;
+        return true;
+    }
+
+    /** Neither claimed nor detached yet (e.g. Python stopped early); detaches it. */
+    synchronized boolean detachUnclaimed(int i) {
+        return detach(i);
+    }
+
+    synchronized boolean isReported(int i) {
+        return reported[i];
+    }
+}
@@ -0,0 +1,584 @@
+package com.example.trakify;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Single app-wide entry point for getting a track onto disk.
+ *
+ * Every screen and the player manager ask this class instead of calling main.play_song
+ * themselves. Tracks are identified by {@link TrackIdentity} and stored where {@link TrackStore}
+ * says, so the same song asked for from two screens is one file and one in-flight job (and one
+ * future), whichever spelling of the artist each screen had. Jobs run
+ * on {@link PythonScheduler}: now playing / next up in the PLAYBACK lane (in that order), preload
+ * in BACKGROUND, so a bulk album preload never blocks the track the user actually wants to
+ * hear and neither of them blocks interactive catalog work. How hard each download pulls
+ * (connections, chunk size, rate) comes from the {@link DownloadProfile} of its priority.
+ * Whole albums go through {@link #requestBatch}: one main.play_songs call that resolves all
+ * queries at once and downloads a few tracks in parallel. {@link ProgressListener}s see every
+ * progress report and stage timing; finished downloads are added to {@link DownloadMetrics}.
+ * Only the latest NOW_PLAYING request keeps its claim on the playback lane: the one it replaces
+ * moves to the preload lane if it is still queued, or is asked to stop if it already runs, so
+ * quick skips never leave the playback workers busy with tracks the user left behind.
+ */
+public class DownloadEngine {
+    private static final String TAG = "DownloadEngine";
+    private static DownloadEngine instance;
+
+    public enum Priority {
+        NOW_PLAYING,
+        NEXT_UP,
+        PRELOAD
+    }
+
+    /** Live view of running downloads; called on download threads, keep it cheap. */
+    public interface ProgressListener {
+        /** {@code bufferPercent} is how far the track is from being playable (100 = playable). */
+        void onProgress(TrackIdentity id, Priority priority, long written, long total, int bufferPercent);
+
+        /** A stage of the pipeline (see {@link DownloadStats.Stage}) ended after {@code elapsedMs}. */
+        default void onStage(TrackIdentity id, Priority priority, DownloadStats.Stage stage, long elapsedMs) {}
+    }
+
+    private final PythonScheduler scheduler = PythonScheduler.getInstance();
+    private final TrackStore store = TrackStore.getInstance();
+    private final ResolutionCache resolutions = ResolutionCache.getInstance();
+    private final Map<String, Job> inFlight = new HashMap<>();
+    private Job nowPlaying; // the latest NOW_PLAYING request, guarded by inFlight
+    private long requests; // guarded by inFlight, like diskHits
+    private long diskHits;
+    private final Map<Priority, DownloadProfile> profiles = new EnumMap<>(Priority.class);
+    private final ArrayDeque<DownloadStats> recentStats = new ArrayDeque<>();
+    private final List<ProgressListener> listeners = new CopyOnWriteArrayList<>();
+    private static final int MAX_RECENT_STATS = 20;
+    // parallel downloads inside one batch call (queries are all resolved at once anyway)
+    private static final int BATCH_WORKERS = 3;
+
+    private DownloadEngine() {
+        // conservative until the player sets its policy (MusicPlayerManager.init)
+        for (Priority p : Priority.values()) profiles.put(p, DownloadProfile.GENTLE);
+    }
+
+    public static synchronized DownloadEngine getInstance() {
+        if (instance == null) instance = new DownloadEngine();
+        return instance;
+    }
+
+    public void init(Context ctx) {
+        store.init(ctx);
+        resolutions.init(ctx);
+    }
+
+    /**
+     * Requests the track file. If it is already on disk the returned future is complete,
+     * if another caller already asked for it the same (shared) future is returned and the job
+     * is promoted to the higher of the two priorities. The future completes with the local
+     * path, or null when the download failed. Callers must not cancel it.
+     */
+    public CompletableFuture<String> request(TrackIdentity id, Priority priority) {
+        File outFile = store.outputFileFor(id);
+        if (outFile == null) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Storage unavailable for downloads"));
+            return failed;
+        }
+        String existing = store.lookup(id);
+        synchronized (inFlight) {
+            requests++;
+            if (existing != null) {
+                diskHits++;
+                if (priority == Priority.NOW_PLAYING) supersedeNowPlaying(null);
+            }
+        }
+        if (existing != null) {
+            return CompletableFuture.completedFuture(existing);
+        }
+
+        String key = id.nameKey();
+        synchronized (inFlight) {
+            Job job = inFlight.get(key);
+            if (job != null) {
+                wantAgain(job);
+                promote(job, priority);
+                if (priority == Priority.NOW_PLAYING) supersedeNowPlaying(job);
+                Log.d(TAG, "request: joined in-flight " + key + " (" + job.priority + ")");
+                return job.future;
+            }
+
+            job = newJob(key, id, outFile, priority);
+            inFlight.put(key, job);
+            schedule(job);
+            if (priority == Priority.NOW_PLAYING) supersedeNowPlaying(job);
+            Log.d(TAG, "request: scheduled " + key + " (" + priority + ")");
+            return job.future;
+        }
+    }
+
+    /**
+     * Like {@link #request(TrackIdentity, Priority)}, but completes as soon as the track can
+     * start playing: with the final path when it is already on disk (or the download beats the
+     * start threshold), otherwise with a {@link PartialDownload} key the player streams from
+     * while the file is still being written.
+     */
+    public CompletableFuture<String> requestPlayable(TrackIdentity id, Priority priority) {
+        PlaybackTrace trace = PlaybackTrace.getInstance();
+        CompletableFuture<String> done = request(id, priority);
+        trace.mark(id, PlaybackTrace.Span.SCHEDULED);
+        boolean onDisk = done.isDone();
+        CompletableFuture<String> playable = done;
+        if (!onDisk) {
+            synchronized (inFlight) {
+                Job job = inFlight.get(id.nameKey());
+                if (job != null && job.future == done) playable = job.partial.playable();
+            }
+        }
+        playable.thenAccept(path -> trace.fileReady(id, path, onDisk));
+        return playable;
+    }
+
+    /**
+     * Requests many tracks at once, e.g. a whole album. Tracks already on disk or in flight are
+     * handled like {@link #request}; the rest become one main.play_songs call in the lane of
+     * {@code priority}, which reports each track as soon as it lands. Returns one future per
+     * identity, in order. A member asked for at a higher priority before the batch got to it
+     * leaves the batch and is downloaded on its own.
+     */
+    public List<CompletableFuture<String>> requestBatch(List<TrackIdentity> ids, Priority priority) {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        List<Job> fresh = new ArrayList<>();
+        synchronized (inFlight) {
+            for (TrackIdentity id : ids) {
+                File outFile = store.outputFileFor(id);
+                if (outFile == null) {
+                    CompletableFuture<String> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(new IllegalStateException("Storage unavailable for downloads"));
+                    futures.add(failed);
+                    continue;
+                }
+                String existing = store.lookup(id);
+                requests++;
+                if (existing != null) {
+                    diskHits++;
+                    futures.add(CompletableFuture.completedFuture(existing));
+                    continue;
+                }
+                String key = id.nameKey();
+                Job job = inFlight.get(key);
+                if (job != null) {
+                    wantAgain(job);
+                    promote(job, priority);
+                    futures.add(job.future);
+                    continue;
+                }
+                job = newJob(key, id, outFile, priority);
+                inFlight.put(key, job);
+                fresh.add(job);
+                futures.add(job.future);
+            }
+
+            if (fresh.size() == 1) {
+                schedule(fresh.get(0));
+            } else if (!fresh.isEmpty()) {
+                submitBatch(fresh, priority);
+            }
+        }
+        Log.d(TAG, "requestBatch: " + ids.size() + " tracks, " + fresh.size() + " to download (" + priority + ")");
+        return futures;
+    }
+
+    /** For callers that only know artist and title. */
+    public CompletableFuture<String> request(String artist, String title, Priority priority) {
+        return request(TrackIdentity.of(artist, title), priority);
+    }
+
+    /** Local path when the track is already downloaded, otherwise null. No disk access. */
+    public String lookup(TrackIdentity id) {
+        return store.lookup(id);
+    }
+
+    /**
+     * Moves a still-queued job back to the preload lane, e.g. when it fell out of the
+     * player's look-ahead window. Jobs that already started are left alone.
+     */
+    public void demote(TrackIdentity id) {
+        String key = id.nameKey();
+        synchronized (inFlight) {
+            Job job = inFlight.get(key);
+            if (job == null || job.priority == Priority.PRELOAD || job.batch != null) return;
+
+            if (scheduler.move(job.task, laneFor(Priority.PRELOAD), rankFor(Priority.PRELOAD))) {
+                job.priority = Priority.PRELOAD;
+                Log.d(TAG, "demote: " + key + " -> " + Priority.PRELOAD);
+            }
+        }
+    }
+
+    public boolean isInFlight(TrackIdentity id) {
+        synchronized (inFlight) {
+            return inFlight.containsKey(id.nameKey());
+        }
+    }
+
+    /** Settings for downloads that start at this priority (a queued job uses its priority at start). */
+    public void setProfile(Priority priority, DownloadProfile profile) {
+        if (priority == null || profile == null) return;
+        synchronized (profiles) {
+            profiles.put(priority, profile);
+        }
+    }
+
+    public DownloadProfile getProfile(Priority priority) {
+        synchronized (profiles) {
+            return profiles.get(priority);
+        }
+    }
+
+    public void addProgressListener(ProgressListener l) {
+        if (l != null && !listeners.contains(l)) listeners.add(l);
+    }
+
+    public void removeProgressListener(ProgressListener l) {
+        listeners.remove(l);
+    }
+
+    /** The last finished downloads, oldest first. */
+    public List<DownloadStats> getRecentStats() {
+        synchronized (recentStats) {
+            return new ArrayList<>(recentStats);
+        }
+    }
+
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+
+    /** Share of {@link #request} calls answered from disk, 0..1 (0 before the first request). */
+    public double getDiskHitRate() {
+        synchronized (inFlight) {
+            return requests > 0 ? (double) diskHits / requests : 0;
+        }
+    }
+
+    public long getRequestCount() {
+        synchronized (inFlight) {
+            return requests;
+        }
+    }
+
+    public File getMusicDir() {
+        return store.getMusicDir();
+    }
+
+    public static String queryFor(String artist, String title) {
+        String a = artist != null ? artist.trim() : "";
+        String t = title != null ? title.trim() : "";
+        return (a.isEmpty() ? t : (a + " " + t)).trim();
+    }
+
+    // must hold inFlight lock
+    private void promote(Job job, Priority priority) {
+        if (priority.ordinal() >= job.priority.ordinal()) return;
+
+        if (job.batch != null) {
+            // still waiting inside a batch: take it out and give it its own job
+            if (job.batch.detach(job.batchIndex)) {
+                job.batch = null;
+                job.priority = priority;
+                schedule(job);
+                Log.d(TAG, "promote: " + job.key + " left its batch -> " + priority);
+            }
+            return;
+        }
+        if (scheduler.move(job.task, laneFor(priority), rankFor(priority))) {
+            job.priority = priority;
+            Log.d(TAG, "promote: " + job.key + " -> " + priority);
+        }
+    }
+
+    // must hold inFlight lock; job is null when the new now-playing track was already on disk
+    private void supersedeNowPlaying(Job job) {
+        Job previous = nowPlaying;
+        nowPlaying = job;
+        if (previous == null || previous == job || previous.future.isDone()) return;
+        if (previous.priority != Priority.NOW_PLAYING || previous.task == null || previous.batch != null) return;
+
+        if (scheduler.move(previous.task, laneFor(Priority.PRELOAD), rankFor(Priority.PRELOAD))) {
+            previous.priority = Priority.PRELOAD;
+            Log.d(TAG, "superseded: " + previous.key + " -> " + Priority.PRELOAD);
+        } else {
+            // already running: Python stops at its next check, the .part stays for a resume
+            previous.superseded = true;
+            previous.partial.cancel();
+            Log.d(TAG, "superseded: " + previous.key + " asked to stop");
+        }
+    }
+
+    // must hold inFlight lock; someone asked for a superseded job again before it stopped
+    private void wantAgain(Job job) {
+        if (!job.superseded) return;
+        job.superseded = false;
+        job.partial.uncancel();
+        Log.d(TAG, "request: " + job.key + " wanted again, keeps running");
+    }
+
+    private Job newJob(String key, TrackIdentity id, File outFile, Priority priority) {
+        Job job = new Job(key, id, outFile, priority);
+        job.partial.setListener(new PartialDownload.Listener() {
+            @Override
+            public void onProgress(PartialDownload download, long written, long total) {
+                if (listeners.isEmpty()) return;
+                Priority p = priorityOf(job);
+                int percent = download.bufferPercent();
+                for (ProgressListener l : listeners) l.onProgress(job.id, p, written, total, percent);
+            }
+
+            @Override
+            public void onStage(PartialDownload download, String stage, long elapsedMs) {
+                DownloadStats.Stage s = DownloadStats.Stage.of(stage);
+                if (s == null) return;
+                Log.d(TAG, "stage " + s + " " + elapsedMs + " ms: " + job.key);
+                if (s == DownloadStats.Stage.RESOLVE) PlaybackTrace.getInstance().mark(job.id, PlaybackTrace.Span.RESOLVED);
+                Priority p = priorityOf(job);
+                for (ProgressListener l : listeners) l.onStage(job.id, p, s, elapsedMs);
+            }
+        });
+        return job;
+    }
+
+    private Priority priorityOf(Job job) {
+        synchronized (inFlight) {
+            return job.priority;
+        }
+    }
+
+    // must hold inFlight lock
+    private void schedule(Job job) {
+        job.task = scheduler.submit(laneFor(job.priority), rankFor(job.priority), null, () -> download(job));
+        job.task.future().whenComplete((path, error) -> complete(job, path, error));
+    }
+
+    private void complete(Job job, String path, Throwable error) {
+        synchronized (inFlight) {
+            inFlight.remove(job.key, job);
+            if (nowPlaying == job) nowPlaying = null;
+        }
+        if (error instanceof CancellationException) {
+            Log.d(TAG, "download cancelled: " + job.key);
+            job.partial.fail(error);
+            job.future.completeExceptionally(error);
+        } else if (error != null) {
+            Log.e(TAG, "download failed: " + job.key, error);
+            job.partial.fail(error);
+            job.future.completeExceptionally(error);
+        } else {
+            if (path == null) Log.w(TAG, "download returned no path for " + job.key);
+            else indexDownload(path, job);
+            // a streaming player switches to the final file before anyone else sees it
+            job.partial.finish(path);
+            job.future.complete(path);
+        }
+    }
+
+    // must hold inFlight lock
+    private void submitBatch(List<Job> jobs, Priority priority) {
+        DownloadProfile profile = getProfile(priority);
+        List<String> queries = new ArrayList<>();
+        List<String> outputs = new ArrayList<>();
+        List<PartialDownload> partials = new ArrayList<>();
+        List<DownloadStats> stats = new ArrayList<>();
+        for (Job job : jobs) {
+            queries.add(queryFor(job.id.artist, job.id.title));
+            outputs.add(job.outFile.getAbsolutePath());
+            partials.add(job.partial);
+            stats.add(new DownloadStats(job.key, priority, profile));
+        }
+        DownloadBatch batch = new DownloadBatch(queries, outputs, partials, stats, profile,
+                (b, i, path) -> onBatchResult(b, jobs.get(i), i, path));
+        for (int i = 0; i < jobs.size(); i++) {
+            jobs.get(i).batch = batch;
+            jobs.get(i).batchIndex = i;
+        }
+        scheduler.submit(laneFor(priority), rankFor(priority), null, () -> runBatch(batch, jobs))
+                .future().whenComplete((summary, error) -> {
+                    if (error != null) Log.e(TAG, "batch failed", error);
+                    else Log.d(TAG, "batch done: " + summary);
+                    // whatever Python never got to: on its own, like a plain request
+                    synchronized (inFlight) {
+                        for (int i = 0; i < jobs.size(); i++) {
+                            Job job = jobs.get(i);
+                            if (batch.detachUnclaimed(i)) {
+                                job.batch = null;
+                                schedule(job);
+                            }
+                        }
+                    }
+                    for (int i = 0; i < jobs.size(); i++) {
+                        // claimed but never reported: the call died mid-download
+                        batch.onResult(i, null);
+                    }
+                });
+    }
+
+    private String runBatch(DownloadBatch batch, List<Job> jobs) {
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            String existing = store.lookup(job.id);
+            if (existing != null) {
+                if (batch.claim(i)) batch.onResult(i, existing);
+                continue;
+            }
+            ResolutionCache.Resolution cached = resolutions.get(job.id);
+            if (cached != null) {
+                batch.setVideoId(i, cached.videoId);
+                batch.stats(i).resolvedFromCache = true;
+            }
+        }
+        Log.d(TAG, "batch: " + batch.size() + " tracks " + batch.profile());
+        return PythonBridge.getInstance().callString("main", "play_songs", batch, BATCH_WORKERS);
+    }
+
+    // a Python worker thread, once per track
+    private void onBatchResult(DownloadBatch batch, Job job, int index, String path) {
+        DownloadStats stats = batch.stats(index);
+        if (path == null && stats.resolvedFromCache) {
+            // the remembered video did not work out: search again, on its own
+            Log.w(TAG, "cached video " + batch.videoId(index) + " failed for " + job.key + ", searching again");
+            resolutions.invalidate(job.id);
+            synchronized (inFlight) {
+                job.batch = null;
+                schedule(job);
+            }
+            return;
+        }
+        job.videoId = stats.videoId;
+        if (path != null && !stats.resolvedFromCache && stats.videoId != null) {
+            resolutions.put(job.id, stats.videoId, stats.durationSec, stats.formatId, stats.ext);
+        }
+        Log.d(TAG, "batch: " + stats);
+        recordStats(stats, path != null);
+        complete(job, path, null);
+    }
+
+    // the library tab reads from the index, so record the artist/title we asked for;
+    // the new file may push the music dir over its quota
+    private void indexDownload(String path, Job job) {
+        store.record(job.id, path);
+        AppExecutors.getInstance().get(AppExecutors.Pool.DISK).execute(() -> {
+            LibraryIndex.getInstance().onDownloaded(path, job.id.artist, job.id.title, job.id.trackId, job.videoId);
+            AudioCache.getInstance().trimSoon();
+        });
+    }
+
+    private static PythonScheduler.Lane laneFor(Priority priority) {
+        return priority == Priority.PRELOAD ? PythonScheduler.Lane.BACKGROUND : PythonScheduler.Lane.PLAYBACK;
+    }
+
+    // now playing overtakes next up inside the playback lane
+    private static int rankFor(Priority priority) {
+        return priority == Priority.NEXT_UP ? 1 : 0;
+    }
+
+    private String download(Job job) {
+        while (true) {
+            try {
+                return downloadOnce(job);
+            } catch (RuntimeException e) {
+                if (!job.partial.takeCancelSeen()) throw e;
+                synchronized (inFlight) {
+                    if (job.superseded) throw new CancellationException("superseded: " + job.key);
+                }
+                // asked to stop, then wanted again before the worker was let go: resume from the .part
+                Log.d(TAG, "download: " + job.key + " resumes after a cancel");
+            }
+        }
+    }
+
+    private String downloadOnce(Job job) {
+        // someone (e.g. an old run) may have finished the file while we were queued
+        String existing = store.lookup(job.id);
+        if (existing != null) return existing;
+
+        Priority priority;
+        synchronized (inFlight) {
+            priority = job.priority; // promotions up to now count
+        }
+        DownloadProfile profile = getProfile(priority);
+        DownloadStats stats = new DownloadStats(job.key, priority, profile);
+
+        String query = queryFor(job.id.artist, job.id.title);
+        Log.d(TAG, "download: " + query + " -> " + job.outFile.getAbsolutePath() + " " + profile);
+
+        // resolved before (e.g. the file was evicted since): skip ytsearch, go straight to the video
+        ResolutionCache.Resolution cached = resolutions.get(job.id);
+        String path = null;
+        if (cached != null) {
+            stats.resolvedFromCache = true;
+            path = playSong(job, query, cached.videoId, profile, stats);
+            if (path == null) {
+                Log.w(TAG, "cached video " + cached.videoId + " failed for " + job.key + ", searching again");
+                resolutions.invalidate(job.id);
+                stats.resolvedFromCache = false;
+            }
+        }
+        if (path == null) path = playSong(job, query, null, profile, stats);
+        job.videoId = stats.videoId;
+        if (path != null && !stats.resolvedFromCache && stats.videoId != null) {
+            resolutions.put(job.id, stats.videoId, stats.durationSec, stats.formatId, stats.ext);
+        }
+
+        Log.d(TAG, "download: " + stats);
+        recordStats(stats, path != null);
+        return path;
+    }
+
+    private void recordStats(DownloadStats stats, boolean ok) {
+        DownloadMetrics.getInstance().record(stats, ok);
+        synchronized (recentStats) {
+            recentStats.addLast(stats);
+            if (recentStats.size() > MAX_RECENT_STATS) recentStats.removeFirst();
+        }
+    }
+
+    // the progress hook feeds the partial download, so playback can start mid-download
+    private static String playSong(Job job, String query, String videoId, DownloadProfile profile, DownloadStats stats) {
+        String path = PythonBridge.getInstance().callString("main", "play_song", query,
+                job.outFile.getAbsolutePath(), job.partial, profile, stats, videoId);
+        return (path != null && !path.isEmpty()) ? path : null;
+    }
+
+    private static final class Job {
+        final String key;
+        final TrackIdentity id;
+        final File outFile;
+        final PartialDownload partial;
+        volatile String videoId; // known after the download
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        Priority priority;
+        boolean superseded; // asked to stop by a newer NOW_PLAYING request
+        PythonScheduler.Task<String> task;
+        // set while the job waits inside a batch (task stays null then)
+        DownloadBatch batch;
+        int batchIndex;
+
+        Job(String key, TrackIdentity id, File outFile, Priority priority) {
+            this.key = key;
+            this.id = id;
+            this.outFile = outFile;
+            this.partial = new PartialDownload(outFile.getAbsolutePath());
+            this.priority = priority;
+        }
+    }
+}
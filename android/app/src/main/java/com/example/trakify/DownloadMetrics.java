@@ -0,0 +1,119 @@
+package com.example.trakify;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Running totals over every finished download: per-stage latency (count, average, max) and
+ * transfer throughput. Tells whether slow starts are search-bound or bandwidth-bound without
+ * reading logcat. Fed by {@link DownloadEngine} with each {@link DownloadStats}.
+ */
+public final class DownloadMetrics {
+    private static DownloadMetrics instance;
+
+    /** Totals of one stage. */
+    public static final class StageTotals {
+        public final int count;
+        public final long totalMs;
+        public final long maxMs;
+
+        StageTotals(int count, long totalMs, long maxMs) {
+            this.count = count;
+            this.totalMs = totalMs;
+            this.maxMs = maxMs;
+        }
+
+        public long averageMs() {
+            return count > 0 ? totalMs / count : 0;
+        }
+
+        @Override
+        public String toString() {
+            return count + "x avg " + averageMs() + " ms, max " + maxMs + " ms";
+        }
+    }
+
+    private final int[] counts = new int[DownloadStats.Stage.values().length];
+    private final long[] totals = new long[counts.length];
+    private final long[] maxima = new long[counts.length];
+    private int downloads;
+    private int failures;
+    private int cachedResolutions;
+    private long bytes;
+    private long transferMs;
+
+    DownloadMetrics() {}
+
+    public static synchronized DownloadMetrics getInstance() {
+        if (instance == null) instance = new DownloadMetrics();
+        return instance;
+    }
+
+    /** Adds one finished (or failed, {@code ok} false) download. */
+    public synchronized void record(DownloadStats stats, boolean ok) {
+        downloads++;
+        if (!ok) failures++;
+        if (stats.resolvedFromCache) cachedResolutions++;
+        for (DownloadStats.Stage s : DownloadStats.Stage.values()) {
+            long ms = stats.stageMs(s);
+            if (ms < 0) continue;
+            int i = s.ordinal();
+            counts[i]++;
+            totals[i] += ms;
+            maxima[i] = Math.max(maxima[i], ms);
+        }
+        if (ok && stats.bytes > 0 && stats.elapsedMs > 0) {
+            bytes += stats.bytes;
+            transferMs += stats.elapsedMs;
+        }
+    }
+
+    public synchronized StageTotals stage(DownloadStats.Stage stage) {
+        int i = stage.ordinal();
+        return new StageTotals(counts[i], totals[i], maxima[i]);
+    }
+
+    public synchronized Map<DownloadStats.Stage, StageTotals> stages() {
+        Map<DownloadStats.Stage, StageTotals> out = new EnumMap<>(DownloadStats.Stage.class);
+        for (DownloadStats.Stage s : DownloadStats.Stage.values()) out.put(s, stage(s));
+        return out;
+    }
+
+    /** Average bytes per second over all transfers, 0 before the first one. */
+    public synchronized long throughput() {
+        return transferMs > 0 ? bytes * 1000 / transferMs : 0;
+    }
+
+    public synchronized int downloads() {
+        return downloads;
+    }
+
+    public synchronized int failures() {
+        return failures;
+    }
+
+    public synchronized int cachedResolutions() {
+        return cachedResolutions;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(totals, 0);
+        Arrays.fill(maxima, 0);
+        downloads = failures = cachedResolutions = 0;
+        bytes = transferMs = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("DownloadMetrics{downloads=").append(downloads)
+                .append(", failed=").append(failures)
+                .append(", cachedResolutions=").append(cachedResolutions)
+                .append(", ").append(throughput() / 1024).append(" KB/s");
+        for (DownloadStats.Stage s : DownloadStats.Stage.values()) {
+            sb.append(", ").append(s.name().toLowerCase()).append(": ").append(stage(s));
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.trakify;
+
+/**
+ * How hard a single download may pull, read by api_yt (fields are accessed from Python).
+ *
+ * connections > 1 fetches byte ranges of {@link #chunkBytes} over that many connections;
+ * chunks are handed out in file order, so the beginning still arrives first and a partial
+ * download stays playable. chunkBytes 0 keeps yt-dlp's default, rateLimitBytes 0 is unlimited.
+ * Interrupted downloads resume from their .part file either way.
+ */
+public final class DownloadProfile {
+
+    /** The track the user is waiting for: small chunks for a fast start, several connections. */
+    public static final DownloadProfile AGGRESSIVE = new DownloadProfile(4, 512 * 1024, 10, 0);
+    /** Next up: a bit of parallelism, still unthrottled. */
+    public static final DownloadProfile BALANCED = new DownloadProfile(2, 1024 * 1024, 10, 0);
+    /** Background preloads: one connection, throttled so playback keeps the bandwidth. */
+    public static final DownloadProfile GENTLE = new DownloadProfile(1, 0, 5, 1024 * 1024);
+
+    public final int connections;
+    public final long chunkBytes;
+    public final int retries;
+    public final long rateLimitBytes; // per second, 0 = unlimited
+
+    public DownloadProfile(int connections, long chunkBytes, int retries, long rateLimitBytes) {
+        this.connections = Math.max(1, connections);
+        this.chunkBytes = Math.max(0, chunkBytes);
+        this.retries = Math.max(0, retries);
+        this.rateLimitBytes = Math.max(0, rateLimitBytes);
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadProfile{connections=" + connections + ", chunk=" + chunkBytes
+                + ", retries=" + retries + ", rate=" + rateLimitBytes + "}";
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.trakify;
+
+/**
+ * What one download actually did, filled in by api_yt through {@link #record} and
+ * {@link #recordStage}. {@link DownloadEngine#getRecentStats()} keeps the last few for
+ * inspection, {@link DownloadMetrics} adds them up.
+ */
+public final class DownloadStats {
+
+    /** Where the time of a download goes, in pipeline order. */
+    public enum Stage {
+        SEARCH,   // query -> video (skipped when the video was cached)
+        RESOLVE,  // video page -> audio format and URL
+        TRANSFER, // the bytes
+        FINALIZE; // finding / renaming the finished file
+
+        /** The name api_yt reports, or null. */
+        static Stage of(String name) {
+            if (name == null) return null;
+            for (Stage s : values()) {
+                if (s.name().equalsIgnoreCase(name)) return s;
+            }
+            return null;
+        }
+    }
+
+    public final String key;
+    public final DownloadEngine.Priority priority;
+    public final DownloadProfile profile;
+
+    // written once by the download thread, read after the job's future completed
+    public volatile String mode = "none"; // "segmented", "ytdlp", "pytube"
+    public volatile long bytes;           // fetched by this run
+    public volatile long resumedBytes;    // already on disk from an earlier run
+    public volatile long elapsedMs;
+    public volatile int connections;
+    public volatile long chunkBytes;
+    // what the query resolved to
+    public volatile boolean resolvedFromCache;
+    public volatile String videoId;
+    public volatile long durationSec;
+    public volatile String formatId;
+    public volatile String ext;
+    // ms per Stage, -1 for stages that did not run
+    private final long[] stageMs = {-1, -1, -1, -1};
+
+    DownloadStats(String key, DownloadEngine.Priority priority, DownloadProfile profile) {
+        this.key = key;
+        this.priority = priority;
+        this.profile = profile;
+    }
+
+    /** Called from Python when the transfer ended. */
+    public void record(String mode, long bytes, long resumedBytes, long elapsedMs, int connections, long chunkBytes) {
+        this.mode = mode;
+        this.bytes = bytes;
+        this.resumedBytes = resumedBytes;
+        this.elapsedMs = elapsedMs;
+        this.connections = connections;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /** Called from Python once the video and its audio format are known. */
+    public void recordResolution(String videoId, long durationSec, String formatId, String ext) {
+        this.videoId = videoId;
+        this.durationSec = durationSec;
+        this.formatId = formatId;
+        this.ext = ext;
+    }
+
+    /** Called from Python when a stage ended; a repeated stage (retry) adds up. */
+    public void recordStage(String stage, long elapsedMs) {
+        Stage s = Stage.of(stage);
+        if (s == null || elapsedMs < 0) return;
+        synchronized (stageMs) {
+            stageMs[s.ordinal()] = Math.max(0, stageMs[s.ordinal()]) + elapsedMs;
+        }
+    }
+
+    /** Time spent in {@code stage}, -1 when it did not run. */
+    public long stageMs(Stage stage) {
+        synchronized (stageMs) {
+            return stageMs[stage.ordinal()];
+        }
+    }
+
+    /** Bytes per second of this run, 0 when nothing was fetched. */
+    public long throughput() {
+        return elapsedMs > 0 ? bytes * 1000 / elapsedMs : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadStats{" + key + " " + priority + " video=" + videoId
+                + (resolvedFromCache ? " (cached)" : "") + " mode=" + mode + " bytes=" + bytes
+                + " resumed=" + resumedBytes + " " + elapsedMs + " ms, " + throughput() / 1024
+                + " KB/s, connections=" + connections + ", chunk=" + chunkBytes
+                + ", stages=" + stagesString() + "}";
+    }
+
+    private String stagesString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage s : Stage.values()) {
+            long ms = stageMs(s);
+            if (ms < 0) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(s.name().toLowerCase()).append('=').append(ms);
+        }
+        return sb.length() > 0 ? sb.toString() : "-";
+    }
+}
@@ -19,13 +19,11 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 
-import java.io.File;
+import com.example.trakify.model.Album;
+import com.example.trakify.model.Track;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -45,6 +43,7 @@ public class HomeFragment extends Fragment {
     private Button btnGL;
 
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private TaskScope tasks;
 
     @Nullable
     @Override
@@ -56,9 +55,8 @@ public class HomeFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
+        tasks = TaskScope.of(getViewLifecycleOwner());
 
-        Python py = Python.getInstance();
-        PyObject module = py.getModule("api_spotify");
         rvNewReleases = view.findViewById(R.id.rvNewReleases);
         rvTopTracks = view.findViewById(R.id.rvTopTracks);
         progressBar = view.findViewById(R.id.progressBar);
@@ -67,10 +65,8 @@ public class HomeFragment extends Fragment {
             @Override
             public void onClick(View v) {
                 kraj = "PL";
-                load_top(module);
-                mainHandler.post(() -> updateButtonColors(btnPL));
-
-
+                updateButtonColors(btnPL);
+                load_top();
             }
         });
         btnUS = view.findViewById(R.id.btnUS);
@@ -78,9 +74,8 @@ public class HomeFragment extends Fragment {
             @Override
             public void onClick(View v) {
                 kraj = "US";
-                load_top(module);
-                mainHandler.post(() -> updateButtonColors(btnUS));
-
+                updateButtonColors(btnUS);
+                load_top();
             }
         });
         btnGL = view.findViewById(R.id.btnGL);
@@ -88,19 +83,26 @@ public class HomeFragment extends Fragment {
             @Override
             public void onClick(View v) {
                 kraj = "GLOBAL";
-                mainHandler.post(() -> updateButtonColors(btnGL));
-                load_top(module);
+                updateButtonColors(btnGL);
+                load_top();
             }
         });
 
 
         // Setup horizontal RecyclerView for albums
-        rvNewReleases.setLayoutManager(
-                new LinearLayoutManager(getContext(), LinearLayoutManager.HORIZONTAL, false)
-        );
+        LinearLayoutManager releasesLayout =
+                new LinearLayoutManager(getContext(), LinearLayoutManager.HORIZONTAL, false);
+        // give the album views back to the shared pool when this screen goes away
+        releasesLayout.setRecycleChildrenOnDetach(true);
+        releasesLayout.setInitialPrefetchItemCount(4);
+        rvNewReleases.setLayoutManager(releasesLayout);
+        if (getActivity() instanceof MainActivity) {
+            rvNewReleases.setRecycledViewPool(((MainActivity) getActivity()).getAlbumViewPool());
+        }
 
-        // Setup vertical RecyclerView for tracks
+        // Setup vertical RecyclerView for tracks (scrolls with the NestedScrollView)
         rvTopTracks.setLayoutManager(new LinearLayoutManager(getContext()));
+        rvTopTracks.setNestedScrollingEnabled(false);
 
         // Setup adapters with click listeners
         albumAdapter = new AlbumAdapter(new ArrayList<>(), album -> {
@@ -140,267 +142,156 @@ public class HomeFragment extends Fragment {
 
     // Przykład użycia:
 
-    private void load_top(PyObject module){
-        PyObject topTracksResult = module.callAttr("get_top_tracks",kraj, 40);
-        String topTracksJson = topTracksResult.toString();
-        try {
-            List<Track> tracks = parseTracks(topTracksJson);
-            mainHandler.post(() -> {
-                trackAdapter.setItems(tracks);
-            });
-        } catch (Exception e) {
-            Log.e(TAG, "Error parsing tracks", e);
-        }
+    private void load_top(){
+        String country = kraj;
+        tasks.execute(AppExecutors.Pool.NETWORK, () ->
+                CatalogRepository.getInstance().getTopTracks(country, 40, (tracks, fromCache) ->
+                        tasks.post(() -> trackAdapter.setItems(tracks))),
+                e -> Log.e(TAG, "Error loading top tracks", e));
     }
 
     private void loadSpotifyData() {
         progressBar.setVisibility(View.VISIBLE);
 
-        new Thread(() -> {
-            try {
-                Python py = Python.getInstance();
-                PyObject module = py.getModule("api_spotify");
-
-                // Get new releases
-                load_top(module);
-                PyObject newReleasesResult = module.callAttr("get_new_releases", 20);
-                String newReleasesJson = newReleasesResult.toString();
-
-                // Get top tracks
-//
-//                PyObject topTracksResult = module.callAttr("get_top_tracks",kraj, 40);
-//                String topTracksJson = topTracksResult.toString();
-//                Log.d(TAG, "TOP TRACKS JSON: " + topTracksJson);
-                load_top(module);
-                // Parse and update UI
-                List<Album> albums = parseAlbums(newReleasesJson);
-//                List<Track> tracks = parseTracks(topTracksJson);
-
-                mainHandler.post(() -> {
-                    albumAdapter.setItems(albums);
-//                    trackAdapter.setItems(tracks);
-                    progressBar.setVisibility(View.GONE);
-                });
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error loading Spotify data", e);
-                mainHandler.post(() -> {
+        // Get top tracks
+        load_top();
+
+        // Get new releases (cached copy first, then revalidated if stale)
+        tasks.execute(AppExecutors.Pool.NETWORK, () ->
+                CatalogRepository.getInstance().getNewReleases(20, (albums, fromCache) ->
+                        tasks.post(() -> {
+                            albumAdapter.setItems(albums);
+                            progressBar.setVisibility(View.GONE);
+                        })),
+                e -> {
+                    Log.e(TAG, "Error loading Spotify data", e);
                     progressBar.setVisibility(View.GONE);
-                    Toast.makeText(getContext(), "Error loading data: " + e.getMessage(),
+                    Toast.makeText(requireContext(), "Error loading data: " + e.getMessage(),
                             Toast.LENGTH_SHORT).show();
                 });
-            }
-        }).start();
     }
 
     private void loadAlbumTracks(String albumId, String albumName, String imgUrl) {
         progressBar.setVisibility(View.VISIBLE);
 
-        new Thread(() -> {
-            try {
-                Python py = Python.getInstance();
-                PyObject module = py.getModule("api_spotify");
+        // the listener may fire twice (cache, then revalidated) -> only start playback once;
+        // read and written on the main thread only
+        boolean[] queued = {false};
+        tasks.execute(AppExecutors.Pool.NETWORK, () ->
+                CatalogRepository.getInstance().getAlbumTracks(albumId, (albumTracks, fromCache) -> {
+                    List<Track> tracks = toTracks(albumTracks, albumName, imgUrl);
+
+                    tasks.post(() -> {
+                        trackAdapter.setItems(tracks);
+                        progressBar.setVisibility(View.GONE);
+                        if (!queued[0]) {
+                            queued[0] = true;
+                            playAlbum(tracks, albumName, imgUrl);
+                        }
+                    });
+                }),
+                e -> {
+                    Log.e(TAG, "Error loading album tracks", e);
+                    progressBar.setVisibility(View.GONE);
+                    Toast.makeText(requireContext(), "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                });
+    }
+
+    private void playAlbum(List<Track> tracks, String albumName, String imgUrl) {
+        Toast.makeText(getContext(), "Playing album: " + albumName, Toast.LENGTH_SHORT).show();
 
-                PyObject result = module.callAttr("get_album_tracks", albumId);
-                String json = result.toString();
+        if (tracks.isEmpty()) {
+            Toast.makeText(getContext(), "No songs found in album", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
-                List<Track> tracks = parseAlbumTracks(json, albumName, imgUrl);
+        // 🎶 Ustaw cover albumu dla całej kolejki
+        MusicPlayerManager manager = MusicPlayerManager.getInstance();
+        manager.setCurrentAlbumImageUrl(imgUrl);
 
-                mainHandler.post(() -> {
-                    trackAdapter.setItems(tracks);
-                    progressBar.setVisibility(View.GONE);
-                    Toast.makeText(getContext(), "Playing album: " + albumName, Toast.LENGTH_SHORT).show();
+        // 🧩 Zbuduj kolejkę
+        // 🔥 Zbuduj kolejkę — ale jeszcze bez lokalnych ścieżek
+        List<MusicPlayerManager.QueueItem> queue = new ArrayList<>();
+        for (Track t : tracks) {
+            queue.add(new MusicPlayerManager.QueueItem(null, t.name, t.artist, imgUrl, t.id));
+        }
 
-                    if (tracks.isEmpty()) {
-                        Toast.makeText(getContext(), "No songs found in album", Toast.LENGTH_SHORT).show();
-                        return;
-                    }
+        // Ustaw kolejkę z albumu
+        manager.setQueue(queue);
 
-                    // 🎶 Ustaw cover albumu dla całej kolejki
-                    MusicPlayerManager manager = MusicPlayerManager.getInstance();
-                    manager.setCurrentAlbumImageUrl(imgUrl);
+        // Pobierz pierwszy utwór i zaktualizuj dane
+        Track firstTrack = tracks.get(0);
 
-                    // 🧩 Zbuduj kolejkę
-                    // 🔥 Zbuduj kolejkę — ale jeszcze bez lokalnych ścieżek
-                    List<MusicPlayerManager.QueueItem> queue = new ArrayList<>();
-                    for (Track t : tracks) {
-                        queue.add(new MusicPlayerManager.QueueItem(null, t.name, t.artist, imgUrl));
+        // 🔽 Pobieramy pierwszy utwór, a gdy się ściągnie, podmieniamy path w kolejce
+        TrackIdentity firstId = TrackIdentity.of(firstTrack.id, firstTrack.artist, firstTrack.name);
+        DownloadEngine.getInstance()
+                .requestPlayable(firstId, DownloadEngine.Priority.NOW_PLAYING)
+                .whenComplete((path, error) -> {
+                    if (error != null) {
+                        Log.e(TAG, "Error downloading first track", error);
+                        return;
                     }
-
-// Ustaw kolejkę z albumu
-                    manager.setQueue(queue);
-
-// Pobierz pierwszy utwór i zaktualizuj dane
-                    Track firstTrack = tracks.get(0);
-
-// 🔽 Pobieramy pierwszy utwór, a gdy się ściągnie, podmieniamy path w kolejce
-                    new Thread(() -> {
-                        try {
-                            PyObject mainModule = py.getModule("main");
-                            File dir = requireActivity().getExternalFilesDir("Music");
-                            File outFile = new File(dir,
-                                    (firstTrack.artist + "_" + firstTrack.name).replaceAll("[^a-zA-Z0-9_\\-]", "_") + ".mp3");
-                            String outputPath = outFile.getAbsolutePath();
-
-                            PyObject res = mainModule.callAttr("play_song",
-                                    firstTrack.artist + " " + firstTrack.name, outputPath);
-                            String path = (res != null) ? result.toString() : null;
-
-                            if (path != null && !path.isEmpty()) {
-                                // Ustaw ścieżkę w kolejce
-                                queue.get(0).path = path;
-                                manager.setQueue(queue); // aktualizacja
-
-                                mainHandler.post(() -> {
-                                    MusicPlayerManager.getInstance().play(path, firstTrack.name, imgUrl);
-                                    if (getActivity() instanceof MainActivity) {
-                                        ((MainActivity) getActivity()).showMiniPlayer(firstTrack.name);
-                                    }
-                                });
+                    if (path != null && !path.isEmpty()) {
+                        // playback doesn't depend on this screen still being open, the UI part does;
+                        // only that item's path changes, a skip made while buffering stays
+                        mainHandler.post(() -> {
+                            MusicPlayerManager player = MusicPlayerManager.getInstance();
+                            player.onTrackDownloaded(firstId, path);
+                            if (player.getCurrentQueueIndex() == 0) player.play(path, firstTrack.name, imgUrl);
+                        });
+                        tasks.post(() -> {
+                            if (getActivity() instanceof MainActivity) {
+                                ((MainActivity) getActivity()).showMiniPlayer(firstTrack.name);
                             }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error downloading first track", e);
-                        }
-                    }).start();
-
-
-                    // Pokaż mini player jeśli go ukryty
-                    if (getActivity() instanceof MainActivity) {
-                        ((MainActivity) getActivity()).showMiniPlayer(firstTrack.name);
+                        });
                     }
                 });
 
-            } catch (Exception e) {
-                Log.e(TAG, "Error loading album tracks", e);
-                mainHandler.post(() -> {
-                    progressBar.setVisibility(View.GONE);
-                    Toast.makeText(getContext(), "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                });
-            }
-        }).start();
-    }
 
+        // Pokaż mini player jeśli go ukryty
+        if (getActivity() instanceof MainActivity) {
+            ((MainActivity) getActivity()).showMiniPlayer(firstTrack.name);
+        }
+    }
 
     private void downloadAndPlay(Track track) {
         Toast.makeText(getContext(), "Downloading: " + track.name, Toast.LENGTH_SHORT).show();
 
-        new Thread(() -> {
-            try {
-                Python py = Python.getInstance();
-                PyObject mainModule = py.getModule("main");
-
-                File dir = requireActivity().getExternalFilesDir("Music");
-                if (dir == null) {
-                    mainHandler.post(() ->
-                            Toast.makeText(getContext(), "Storage error", Toast.LENGTH_SHORT).show());
-                    return;
-                }
-
-                String query = track.artist + " " + track.name;
-                File outFile = new File(dir,
-                        (track.artist + "_" + track.name).replaceAll("[^a-zA-Z0-9_\\-]", "_") + ".mp3");
-                String outputPath = outFile.getAbsolutePath();
-
-                PyObject result = mainModule.callAttr("play_song", query, outputPath);
-                String path = (result != null) ? result.toString() : null;
-
-                if (path != null && !path.isEmpty()) {
-                    mainHandler.post(() -> {
-                        Toast.makeText(getContext(), "Playing: " + track.name, Toast.LENGTH_SHORT).show();
+        DownloadEngine.getInstance()
+                .requestPlayable(TrackIdentity.of(track.id, track.artist, track.name), DownloadEngine.Priority.NOW_PLAYING)
+                .whenComplete((path, error) -> {
+                    if (error != null) {
+                        Log.e(TAG, "Error downloading track", error);
+                        tasks.post(() ->
+                                Toast.makeText(requireContext(), "Error: " + error.getMessage(), Toast.LENGTH_SHORT).show());
+                        return;
+                    }
 
+                    if (path != null && !path.isEmpty()) {
                         // Play the track
-                        MusicPlayerManager.getInstance().play(path, track.name,track.imageUrl);
-
-                        // Show mini player
-                        if (getActivity() instanceof MainActivity) {
-                            ((MainActivity) getActivity()).showMiniPlayer(track.name);
-                        }
-                    });
-                } else {
-                    mainHandler.post(() ->
-                            Toast.makeText(getContext(), "Download failed", Toast.LENGTH_SHORT).show());
-                }
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error downloading track", e);
-                mainHandler.post(() ->
-                        Toast.makeText(getContext(), "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
-            }
-        }).start();
-    }
-
-    private List<Album> parseAlbums(String json) throws Exception {
-        List<Album> albums = new ArrayList<>();
-        JSONObject root = new JSONObject(json);
-        JSONArray albumsArray = root.getJSONArray("albums");
-
-        for (int i = 0; i < albumsArray.length(); i++) {
-            JSONObject obj = albumsArray.getJSONObject(i);
-            Album album = new Album();
-            album.id = obj.getString("id");
-            album.name = obj.getString("name");
-            album.artist = obj.getString("artist");
-            album.imageUrl = obj.optString("image", "");
-            albums.add(album);
-        }
+                        mainHandler.post(() -> MusicPlayerManager.getInstance().play(path, track.name,track.imageUrl));
 
-        return albums;
-    }
+                        tasks.post(() -> {
+                            Toast.makeText(requireContext(), "Playing: " + track.name, Toast.LENGTH_SHORT).show();
 
-    private List<Track> parseTracks(String json) throws Exception {
-        List<Track> tracks = new ArrayList<>();
-        JSONObject root = new JSONObject(json);
-        JSONArray tracksArray = root.getJSONArray("tracks");
-
-        for (int i = 0; i < tracksArray.length(); i++) {
-            JSONObject obj = tracksArray.getJSONObject(i);
-            Track track = new Track();
-            track.id = obj.getString("id");
-            track.name = obj.getString("name");
-            track.artist = obj.getString("artist");
-            track.album = obj.optString("album", "");
-            track.imageUrl = obj.optString("image", "");
-            track.durationMs = obj.optInt("duration_ms", 0);
-            tracks.add(track);
-        }
-
-        return tracks;
+                            // Show mini player
+                            if (getActivity() instanceof MainActivity) {
+                                ((MainActivity) getActivity()).showMiniPlayer(track.name);
+                            }
+                        });
+                    } else {
+                        tasks.post(() ->
+                                Toast.makeText(requireContext(), "Download failed", Toast.LENGTH_SHORT).show());
+                    }
+                });
     }
 
-    private List<Track> parseAlbumTracks(String json, String albumName,String ImgUrl) throws Exception {
-        List<Track> tracks = new ArrayList<>();
-        JSONObject root = new JSONObject(json);
-        JSONArray tracksArray = root.getJSONArray("tracks");
-
-        for (int i = 0; i < tracksArray.length(); i++) {
-            JSONObject obj = tracksArray.getJSONObject(i);
-            Track track = new Track();
-            track.id = obj.getString("id");
-            track.name = obj.getString("name");
-            track.artist = obj.getString("artist");
+    // album listings don't carry the album itself -> fill in what the row was showing
+    private List<Track> toTracks(List<Track> albumTracks, String albumName, String imgUrl) {
+        for (Track track : albumTracks) {
             track.album = albumName;
-            track.imageUrl = ImgUrl;
-            track.durationMs = obj.optInt("duration_ms", 0);
-            tracks.add(track);
+            track.imageUrl = imgUrl;
         }
-
-        return tracks;
-    }
-
-    // Data classes
-    public static class Album {
-        public String id;
-        public String name;
-        public String artist;
-        public String imageUrl;
-    }
-
-    public static class Track {
-        public String id;
-        public String name;
-        public String artist;
-        public String album;
-        public String imageUrl;
-        public int durationMs;
+        return albumTracks;
     }
-}
\ No newline at end of file
+}
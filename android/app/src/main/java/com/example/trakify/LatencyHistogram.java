@@ -0,0 +1,83 @@
+package com.example.trakify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Latencies in milliseconds, bucketed so percentiles are cheap and memory stays fixed.
+ *
+ * Buckets grow by ~20 % from 1 ms to 10 minutes, so a percentile is off by at most one
+ * bucket (and never above the largest value seen). Thread-safe.
+ */
+public final class LatencyHistogram {
+
+    private static final long[] BOUNDS = buildBounds();
+
+    private final long[] counts = new long[BOUNDS.length + 1]; // the last one: above 10 min
+    private long count;
+    private long sumMs;
+    private long maxMs;
+
+    private static long[] buildBounds() {
+        List<Long> bounds = new ArrayList<>();
+        for (long b = 1; b < 600_000; b = Math.max(b + 1, b * 6 / 5)) bounds.add(b);
+        bounds.add(600_000L);
+        long[] out = new long[bounds.size()];
+        for (int i = 0; i < out.length; i++) out[i] = bounds.get(i);
+        return out;
+    }
+
+    public synchronized void record(long ms) {
+        ms = Math.max(0, ms);
+        counts[bucketOf(ms)]++;
+        count++;
+        sumMs += ms;
+        maxMs = Math.max(maxMs, ms);
+    }
+
+    /** Upper bound of the bucket holding the p-th percentile (0 < p <= 100), 0 when empty. */
+    public synchronized long percentile(double p) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return i < BOUNDS.length ? Math.min(BOUNDS[i], maxMs) : maxMs;
+        }
+        return maxMs;
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    public synchronized long meanMs() {
+        return count > 0 ? sumMs / count : 0;
+    }
+
+    public synchronized long maxMs() {
+        return maxMs;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(counts, 0);
+        count = sumMs = maxMs = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "n=" + count + " p50=" + percentile(50) + " p95=" + percentile(95)
+                + " p99=" + percentile(99) + " max=" + maxMs;
+    }
+
+    private static int bucketOf(long ms) {
+        int lo = 0, hi = BOUNDS.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (BOUNDS[mid] < ms) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -23,10 +23,11 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.trakify.model.LibrarySong;
+
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 public class LibraryFragment extends Fragment {
@@ -38,28 +39,29 @@ public class LibraryFragment extends Fragment {
     private EditText etSearch;
 
     private SongAdapter adapter;
-    private File musicDir;
+    private final LibraryIndex index = LibraryIndex.getInstance();
 
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
-    private final Handler searchHandler = new Handler(Looper.getMainLooper());
-    private Runnable searchRunnable;
+    private final Handler refreshHandler = new Handler(Looper.getMainLooper());
+    private TaskScope tasks;
+    private Runnable refreshRunnable;
+    private String currentQuery = "";
+    private long refreshSeq = 0; // starsze listy nie nadpisują nowszych
+    private long filterSeq = 0;  // to samo dla wyników wyszukiwania
+    private LibrarySearch searchIndex; // indeks trigramów dla aktualnej listy, null dopóki się buduje
 
-    private List<File> allSongs = new ArrayList<>(); // pełna lista (niefiltrowana)
+    // pobrania i usunięcia przychodzą z tła; odśwież listę (z debounce)
+    private final LibraryIndex.Listener indexListener = () -> {
+        TaskScope scope = tasks;
+        if (scope != null) scope.post(this::scheduleRefresh);
+    };
 
-    private static final int SEARCH_DELAY_MS = 300;
+    private static final int REFRESH_DELAY_MS = 300;
 
     private static final String PREFS = "trakify_prefs";
     private static final String PREF_SORT = "library_sort";
 
-    // sort modes
-    private static final int SORT_NAME_ASC = 0;
-    private static final int SORT_NAME_DESC = 1;
-    private static final int SORT_DATE_NEWEST = 2;
-    private static final int SORT_DATE_OLDEST = 3;
-    private static final int SORT_SIZE_LARGEST = 4;
-    private static final int SORT_SIZE_SMALLEST = 5;
-
-    private int currentSortMode = SORT_DATE_NEWEST; // domyślnie
+    // tryby sortowania: LibraryIndex.SORT_*
+    private int currentSortMode = LibraryIndex.SORT_DATE_NEWEST; // domyślnie
 
     public LibraryFragment() { /* required empty */ }
 
@@ -77,15 +79,24 @@ public class LibraryFragment extends Fragment {
         etSearch = view.findViewById(R.id.etSearch);    // dodaj EditText do layoutu fragment_library.xml
 
         rvSongs.setLayoutManager(new LinearLayoutManager(getContext()));
+        rvSongs.setHasFixedSize(true);
         adapter = new SongAdapter(getContext(), new ArrayList<>(), new SongAdapter.SongActionListener() {
             @Override
-            public void onPlay(File file) {
-                playFile(file);
+            public void onPlay(LibrarySong song) {
+                playFile(song);
+            }
+
+            @Override
+            public void onDelete(LibrarySong song, int position) {
+                confirmDelete(song, position);
             }
 
             @Override
-            public void onDelete(File file, int position) {
-                confirmDelete(file, position);
+            public void onToggleKeep(LibrarySong song) {
+                // indeks powiadomi listenera, lista odświeży się z nową flagą
+                AudioCache.getInstance().setKept(song.path, !song.kept);
+                Toast.makeText(getContext(), song.kept ? "Nie zachowuj: " + song.displayName()
+                        : "Zachowano: " + song.displayName(), Toast.LENGTH_SHORT).show();
             }
         });
         rvSongs.setAdapter(adapter);
@@ -107,26 +118,38 @@ public class LibraryFragment extends Fragment {
 
         // wczytaj zapisany tryb sortowania
         currentSortMode = requireContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE)
-                .getInt(PREF_SORT, SORT_DATE_NEWEST);
+                .getInt(PREF_SORT, LibraryIndex.SORT_DATE_NEWEST);
 
-        // TextWatcher + debounce dla etSearch
+        // wyszukiwanie w pamięci mieści się w klatce, więc bez debounce
         if (etSearch != null) {
             etSearch.addTextChangedListener(new TextWatcher() {
                 @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
                 @Override public void onTextChanged(CharSequence s, int start, int before, int count) {
-                    if (searchRunnable != null) searchHandler.removeCallbacks(searchRunnable);
-                    final String q = s.toString();
-                    searchRunnable = () -> filterAndShow(q);
-                    searchHandler.postDelayed(searchRunnable, SEARCH_DELAY_MS);
+                    currentQuery = s.toString();
+                    filter();
                 }
                 @Override public void afterTextChanged(Editable s) {}
             });
         }
 
-        loadSongsAsync();
         return view;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        tasks = TaskScope.of(getViewLifecycleOwner());
+        index.addListener(indexListener);
+        refresh();
+    }
+
+    @Override
+    public void onDestroyView() {
+        index.removeListener(indexListener);
+        if (refreshRunnable != null) refreshHandler.removeCallbacks(refreshRunnable);
+        super.onDestroyView();
+    }
+
     private void showSortDialog() {
         final String[] options = new String[]{
                 "Nazwa (A → Z)",
@@ -147,114 +170,49 @@ public class LibraryFragment extends Fragment {
                     requireContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE)
                             .edit().putInt(PREF_SORT, currentSortMode).apply();
                     // posortuj aktualną (filtrowaną) listę i odśwież UI
-                    sortCurrentAdapterList();
+                    refresh();
                     dialog.dismiss();
                 })
                 .setNegativeButton("Anuluj", null)
                 .show();
     }
 
-    private void loadSongsAsync() {
-        new Thread(() -> {
-            Context ctx = requireContext();
-            musicDir = ctx.getExternalFilesDir("Music");
-            List<File> songs = new ArrayList<>();
-            if (musicDir != null && musicDir.exists() && musicDir.isDirectory()) {
-                File[] files = musicDir.listFiles();
-                if (files != null) {
-                    Collections.addAll(songs, files);
-                }
-            }
-
-            // zapisz pełną listę
-            allSongs.clear();
-            allSongs.addAll(songs);
-
-            // posortuj pełną listę wg ustawienia
-            sortListInPlace(allSongs, currentSortMode);
-
-            // pokaż (bez filtra -> całość)
-            final List<File> toShow = new ArrayList<>(allSongs);
-
-            mainHandler.post(() -> {
-                adapter.setItems(toShow);
-                updateEmptyView();
-            });
-        }).start();
-    }
-
-    private void filterAndShow(String query) {
-        try {
-            String q = query == null ? "" : query.trim().toLowerCase();
-            List<File> filtered;
-            if (q.isEmpty()) {
-                filtered = new ArrayList<>(allSongs);
-            } else {
-                filtered = new ArrayList<>();
-                for (File f : allSongs) {
-                    String name = f.getName().toLowerCase();
-                    // usuń rozszerzenie przy porównaniu (opcjonalnie)
-                    String nameNoExt = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
-                    if (name.contains(q) || nameNoExt.contains(q)) {
-                        filtered.add(f);
-                    }
-                }
-            }
-
-            // posortuj wynik
-            sortListInPlace(filtered, currentSortMode);
-
-            final List<File> show = filtered;
-            mainHandler.post(() -> {
-                adapter.setItems(show);
-                updateEmptyView();
-            });
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /**
+     * Czyta listę z indeksu (sortowanie w SQL, bez listowania katalogu) w puli DISK, a indeks
+     * trigramów buduje w puli CPU — z poprzedniego bierze to, co się nie zmieniło, więc jedno
+     * pobranie czy "zachowaj" nie liczy całej biblioteki od nowa.
+     */
+    private void refresh() {
+        final int sortMode = currentSortMode;
+        final long seq = ++refreshSeq;
+        tasks.submit(AppExecutors.Pool.DISK, () -> index.query(null, sortMode), songs -> {
+            if (seq != refreshSeq) return;
+            final LibrarySearch previous = searchIndex;
+            tasks.submit(AppExecutors.Pool.CPU, () -> LibrarySearch.build(songs, previous), built -> {
+                if (seq != refreshSeq) return;
+                searchIndex = built;
+                // pokaż z aktualnym zapytaniem (mogło się zmienić w trakcie budowania)
+                filter();
+            }, e -> Log.e("LibraryFragment", "Error indexing songs", e));
+        }, e -> Log.e("LibraryFragment", "Error loading songs", e));
     }
 
-
-    private void sortCurrentAdapterList() {
-        List<File> current = adapter.getItems(); // upewnij się, że adapter ma getItems()
-        if (current == null) {
-            loadSongsAsync();
-            return;
-        }
-        sortListInPlace(current, currentSortMode);
-        adapter.setItems(current);
-        updateEmptyView();
+    /** Fuzzy wyszukiwanie po tytule/artyście/albumie w puli CPU; pokazuje tylko najnowszy wynik. */
+    private void filter() {
+        final LibrarySearch search = searchIndex;
+        if (search == null) return; // refresh() przefiltruje po zbudowaniu
+        final String q = currentQuery;
+        final long seq = ++filterSeq;
+        tasks.submit(AppExecutors.Pool.CPU, () -> search.search(q), songs -> {
+            if (seq != filterSeq) return;
+            adapter.setItems(songs, this::updateEmptyView);
+        }, e -> Log.e("LibraryFragment", "Error filtering songs", e));
     }
 
-    /**
-     * Sortuje listę plików inplace według trybu sortowania.
-     */
-    private void sortListInPlace(List<File> list, int sortMode) {
-        if (list == null || list.isEmpty()) return;
-
-        switch (sortMode) {
-            case SORT_NAME_ASC:
-                Collections.sort(list, (a, b) -> a.getName().compareToIgnoreCase(b.getName()));
-                break;
-            case SORT_NAME_DESC:
-                Collections.sort(list, (a, b) -> b.getName().compareToIgnoreCase(a.getName()));
-                break;
-            case SORT_DATE_NEWEST:
-                Collections.sort(list, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
-                break;
-            case SORT_DATE_OLDEST:
-                Collections.sort(list, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
-                break;
-            case SORT_SIZE_LARGEST:
-                Collections.sort(list, (a, b) -> Long.compare(b.length(), a.length()));
-                break;
-            case SORT_SIZE_SMALLEST:
-                Collections.sort(list, (a, b) -> Long.compare(a.length(), b.length()));
-                break;
-            default:
-                Collections.sort(list, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
-                break;
-        }
+    private void scheduleRefresh() {
+        if (refreshRunnable == null) refreshRunnable = this::refresh;
+        refreshHandler.removeCallbacks(refreshRunnable);
+        refreshHandler.postDelayed(refreshRunnable, REFRESH_DELAY_MS);
     }
 
     private void updateEmptyView() {
@@ -269,30 +227,27 @@ public class LibraryFragment extends Fragment {
 
     // Add this method to your LibraryFragment.java:
 
-    private void playFile(File file) {
-        if (file == null || !file.exists()) {
-            Toast.makeText(getContext(), "Plik nie istnieje", Toast.LENGTH_SHORT).show();
-            return;
-        }
+    private void playFile(LibrarySong song) {
+        if (song == null) return;
 
         MusicPlayerManager player = MusicPlayerManager.getInstance();
-        String path = file.getAbsolutePath();
-        String title = file.getName();
+        String path = song.path;
+        String title = song.displayName();
 
         // Clear queue and add all songs from current filtered list
         player.clearQueue();
 
-        List<File> currentSongs = adapter.getItems();
+        List<LibrarySong> currentSongs = adapter.getItems();
         int clickedIndex = -1;
 
         // Add all songs to queue
         for (int i = 0; i < currentSongs.size(); i++) {
-            File f = currentSongs.get(i);
-            if (f.equals(file)) {
+            LibrarySong s = currentSongs.get(i);
+            if (s.equals(song)) {
                 clickedIndex = i;
             }
             // Add to queue with path (already downloaded)
-            player.addToQueue(f.getAbsolutePath(), f.getName(), null,null);
+            player.addToQueue(s.path, s.displayName(), null,null);
         }
 
         // Play the clicked song (starting from that position in queue)
@@ -310,43 +265,37 @@ public class LibraryFragment extends Fragment {
         Log.d("LibraryFragment", "Added " + currentSongs.size() + " songs to queue, starting at index " + clickedIndex);
     }
 
-    private void confirmDelete(File file, int position) {
+    private void confirmDelete(LibrarySong song, int position) {
         new AlertDialog.Builder(requireContext())
                 .setTitle("Usuń plik")
-                .setMessage("Usunąć " + file.getName() + "?")
-                .setPositiveButton("Usuń", (dialog, which) -> deleteFileAsync(file, position))
+                .setMessage("Usunąć " + song.displayName() + "?")
+                .setPositiveButton("Usuń", (dialog, which) -> deleteSongAsync(song))
                 .setNegativeButton("Anuluj", null)
                 .show();
     }
 
-    private void deleteFileAsync(File file, int position) {
-        new Thread(() -> {
-            boolean ok = false;
-            try {
-                ok = file.delete();
-            } catch (Exception e) {
-                ok = false;
+    private void deleteSongAsync(LibrarySong song) {
+        final File file = song.file();
+        tasks.submit(AppExecutors.Pool.DISK, () -> {
+            boolean deleted = file.delete() || !file.exists();
+            if (deleted) index.remove(file);
+            return deleted;
+        }, deleted -> {
+            if (deleted) {
+                adapter.remove(song, this::updateEmptyView);
+                Toast.makeText(requireContext(), "Usunięto " + file.getName(), Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(requireContext(), "Nie udało się usunąć pliku", Toast.LENGTH_SHORT).show();
             }
-            final boolean deleted = ok;
-            mainHandler.post(() -> {
-                if (deleted) {
-                    adapter.removeAt(position);
-                    // usuń też z allSongs
-                    allSongs.remove(file);
-                    Toast.makeText(getContext(), "Usunięto " + file.getName(), Toast.LENGTH_SHORT).show();
-                    updateEmptyView();
-                } else {
-                    Toast.makeText(getContext(), "Nie udało się usunąć pliku", Toast.LENGTH_SHORT).show();
-                }
-            });
-        }).start();
+        }, e -> Toast.makeText(requireContext(), "Nie udało się usunąć pliku", Toast.LENGTH_SHORT).show());
     }
 
     private void clearAllFiles() {
-        new Thread(() -> {
+        final File dir = DownloadEngine.getInstance().getMusicDir();
+        tasks.submit(AppExecutors.Pool.DISK, () -> {
             boolean any = false;
-            if (musicDir != null && musicDir.exists() && musicDir.isDirectory()) {
-                File[] files = musicDir.listFiles();
+            if (dir != null && dir.exists() && dir.isDirectory()) {
+                File[] files = dir.listFiles();
                 if (files != null) {
                     for (File f : files) {
                         try {
@@ -355,17 +304,15 @@ public class LibraryFragment extends Fragment {
                     }
                 }
             }
-            final boolean cleared = any;
-            mainHandler.post(() -> {
-                if (cleared) {
-                    adapter.setItems(new ArrayList<>());
-                    allSongs.clear();
-                    updateEmptyView();
-                    Toast.makeText(getContext(), "Wyczyszczono wszystkie pliki", Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(getContext(), "Brak plików do usunięcia", Toast.LENGTH_SHORT).show();
-                }
-            });
-        }).start();
+            index.clear();
+            return any;
+        }, cleared -> {
+            if (cleared) {
+                adapter.setItems(new ArrayList<>(), this::updateEmptyView);
+                Toast.makeText(requireContext(), "Wyczyszczono wszystkie pliki", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(requireContext(), "Brak plików do usunięcia", Toast.LENGTH_SHORT).show();
+            }
+        }, null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,488 @@
+package com.example.trakify;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.media.MediaMetadataRetriever;
+import android.os.FileObserver;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.trakify.model.LibrarySong;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Persistent index of the downloaded songs (SQLite, filesDir/databases/library.db).
+ *
+ * The library screen reads only from here: sorting and filtering run as queries on indexed
+ * columns, so opening the tab never lists the music dir or stats files one by one. The index
+ * is kept current incrementally - {@link DownloadEngine} reports finished downloads, deletes go
+ * through {@link #remove} - and a {@link FileObserver} on the music dir catches anything else
+ * that changes there. A full reconcile (one listFiles, compared by size + mtime) only runs at
+ * startup and when the observer overflows.
+ *
+ * It also carries what {@link AudioCache} needs to evict: when each song was last played, how
+ * often, and whether the user keeps it.
+ *
+ * All methods do disk I/O; call them off the main thread.
+ */
+public class LibraryIndex {
+    private static final String TAG = "LibraryIndex";
+    private static LibraryIndex instance;
+
+    public static final int SORT_NAME_ASC = 0;
+    public static final int SORT_NAME_DESC = 1;
+    public static final int SORT_DATE_NEWEST = 2;
+    public static final int SORT_DATE_OLDEST = 3;
+    public static final int SORT_SIZE_LARGEST = 4;
+    public static final int SORT_SIZE_SMALLEST = 5;
+
+    private static final String DB_NAME = "library.db";
+    private static final int DB_VERSION = 2;
+    private static final String T = "songs";
+
+    // yt-dlp leaves .part/.ytdl/.temp files around while it works; only finished audio counts
+    private static final String[] AUDIO_EXTENSIONS = {
+            ".mp3", ".m4a", ".aac", ".opus", ".ogg", ".webm", ".flac", ".wav"
+    };
+
+    public interface Listener {
+        /** Called on a background thread after the index changed. */
+        void onLibraryChanged();
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private Helper helper;
+    private File musicDir;
+    // must be referenced, FileObserver stops watching once garbage collected
+    private FileObserver observer;
+
+    private LibraryIndex() {}
+
+    public static synchronized LibraryIndex getInstance() {
+        if (instance == null) instance = new LibraryIndex();
+        return instance;
+    }
+
+    /** Opens the index and starts watching the music dir; the first reconcile runs on DISK. */
+    public synchronized void init(Context ctx) {
+        if (ctx == null || helper != null) return;
+        Context app = ctx.getApplicationContext();
+        helper = new Helper(app);
+        musicDir = app.getExternalFilesDir("Music");
+        if (musicDir == null) return;
+
+        observer = new FileObserver(musicDir, FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO
+                | FileObserver.DELETE | FileObserver.MOVED_FROM) {
+            @Override
+            public void onEvent(int event, @Nullable String name) {
+                if ((event & FileObserver.Q_OVERFLOW) != 0) {
+                    reconcile();
+                    return;
+                }
+                if (name == null || !isAudio(name)) return;
+                File f = new File(musicDir, name);
+                if ((event & (FileObserver.DELETE | FileObserver.MOVED_FROM)) != 0) {
+                    remove(f);
+                } else {
+                    upsert(f, null, null);
+                }
+            }
+        };
+        observer.startWatching();
+        AppExecutors.getInstance().get(AppExecutors.Pool.DISK).execute(this::reconcile);
+    }
+
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Songs matching every word of the filter (against file name, title, artist and album),
+     * in the given SORT_* order.
+     */
+    public List<LibrarySong> query(String filter, int sortMode) {
+        List<LibrarySong> out = new ArrayList<>();
+        SQLiteDatabase db = db();
+        if (db == null) return out;
+
+        StringBuilder where = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        String q = filter == null ? "" : filter.trim().toLowerCase(Locale.ROOT);
+        if (!q.isEmpty()) {
+            for (String word : q.split("\\s+")) {
+                if (where.length() > 0) where.append(" AND ");
+                where.append("search_text LIKE ? ESCAPE '\\'");
+                args.add("%" + word.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+            }
+        }
+
+        try (Cursor c = db.query(T, null, where.length() > 0 ? where.toString() : null,
+                args.toArray(new String[0]), null, null, orderBy(sortMode))) {
+            SongReader reader = new SongReader(c);
+            while (c.moveToNext()) out.add(reader.read());
+        }
+        return out;
+    }
+
+    /**
+     * Songs the cache may delete, least valuable first: not kept, oldest of last play / download
+     * (LRU), fewer plays first on a tie (LFU). Paths in {@code skip} (the player's queue) are
+     * passed over; at most {@code limit} are returned.
+     */
+    public List<LibrarySong> evictionCandidates(int limit, Set<String> skip) {
+        List<LibrarySong> out = new ArrayList<>();
+        SQLiteDatabase db = db();
+        if (db == null) return out;
+        try (Cursor c = db.query(T, null, "kept = 0", null, null, null,
+                "MAX(last_played, mtime) ASC, play_count ASC")) {
+            SongReader reader = new SongReader(c);
+            while (out.size() < limit && c.moveToNext()) {
+                LibrarySong s = reader.read();
+                if (!skip.contains(s.path)) out.add(s);
+            }
+        }
+        return out;
+    }
+
+    /** Bytes of all indexed songs. */
+    public long totalSize() {
+        SQLiteDatabase db = db();
+        if (db == null) return 0;
+        try (Cursor c = db.rawQuery("SELECT COALESCE(SUM(size), 0) FROM " + T, null)) {
+            return c.moveToFirst() ? c.getLong(0) : 0;
+        }
+    }
+
+    public void markPlayed(String path) {
+        SQLiteDatabase db = db();
+        if (db == null || path == null) return;
+        db.execSQL("UPDATE " + T + " SET last_played = ?, play_count = play_count + 1 WHERE path = ?",
+                new Object[]{System.currentTimeMillis(), path});
+    }
+
+    public void setKept(String path, boolean kept) {
+        SQLiteDatabase db = db();
+        if (db == null || path == null) return;
+        ContentValues v = new ContentValues();
+        v.put("kept", kept ? 1 : 0);
+        if (db.update(T, v, "path = ?", new String[]{path}) > 0) notifyChanged();
+    }
+
+    public int count() {
+        SQLiteDatabase db = db();
+        if (db == null) return 0;
+        try (Cursor c = db.rawQuery("SELECT COUNT(*) FROM " + T, null)) {
+            return c.moveToFirst() ? c.getInt(0) : 0;
+        }
+    }
+
+    /** A download finished: index it with what the request knew about the track. */
+    public void onDownloaded(String path, String artist, String title, @Nullable String trackId,
+                             @Nullable String videoId) {
+        if (path == null || path.isEmpty()) return;
+        if (write(new File(path), artist, title, trackId, videoId)) notifyChanged();
+    }
+
+    public void remove(File file) {
+        TrackStore.getInstance().onRemoved(file);
+        SQLiteDatabase db = db();
+        if (db == null) return;
+        if (db.delete(T, "path = ?", new String[]{file.getAbsolutePath()}) > 0) notifyChanged();
+    }
+
+    public void clear() {
+        TrackStore.getInstance().onCleared();
+        SQLiteDatabase db = db();
+        if (db == null) return;
+        db.delete(T, null, null);
+        notifyChanged();
+    }
+
+    /**
+     * Inserts or refreshes one file. Null artist/title keep what the index already has (an
+     * observer event must not wipe what the download request recorded).
+     */
+    void upsert(File file, @Nullable String artist, @Nullable String title) {
+        if (write(file, artist, title, null, null)) notifyChanged();
+    }
+
+    // true if the row changed
+    private boolean write(File file, @Nullable String artist, @Nullable String title,
+                          @Nullable String trackId, @Nullable String videoId) {
+        SQLiteDatabase db = db();
+        if (db == null || !file.isFile()) return false;
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long mtime = file.lastModified();
+
+        ContentValues v = new ContentValues();
+        db.beginTransaction();
+        try (Cursor c = db.query(T, null, "path = ?", new String[]{path}, null, null, null)) {
+            boolean exists = c.moveToFirst();
+            if (exists) {
+                // nothing new: same file, no new metadata
+                if (c.getLong(c.getColumnIndexOrThrow("size")) == size
+                        && c.getLong(c.getColumnIndexOrThrow("mtime")) == mtime
+                        && artist == null && title == null && trackId == null && videoId == null) {
+                    db.setTransactionSuccessful();
+                    return false;
+                }
+                for (String col : new String[]{"title", "artist", "album", "track_id", "video_id"}) {
+                    v.put(col, c.getString(c.getColumnIndexOrThrow(col)));
+                }
+                // REPLACE rewrites the whole row: carry the play history and the kept flag over
+                for (String col : new String[]{"duration_ms", "play_count", "kept"}) {
+                    v.put(col, c.getInt(c.getColumnIndexOrThrow(col)));
+                }
+                v.put("last_played", c.getLong(c.getColumnIndexOrThrow("last_played")));
+            }
+            boolean changed = !exists
+                    || c.getLong(c.getColumnIndexOrThrow("size")) != size
+                    || c.getLong(c.getColumnIndexOrThrow("mtime")) != mtime;
+            if (changed) readTags(file, v);
+            if (artist != null) v.put("artist", artist);
+            if (title != null) v.put("title", title);
+            if (trackId != null) v.put("track_id", trackId);
+            if (videoId != null) v.put("video_id", videoId);
+            if (isEmpty(v.getAsString("title"))) v.put("title", titleFromName(file.getName()));
+
+            v.put("path", path);
+            v.put("file_name", file.getName());
+            v.put("size", size);
+            v.put("mtime", mtime);
+            v.put("search_text", searchText(file.getName(), v.getAsString("title"),
+                    v.getAsString("artist"), v.getAsString("album")));
+            db.insertWithOnConflict(T, null, v, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return true;
+    }
+
+    /** Brings the index in line with the music dir: one listFiles, stats compared by size + mtime. */
+    public void reconcile() {
+        SQLiteDatabase db = db();
+        File dir = musicDir;
+        if (db == null || dir == null) return;
+        long start = System.nanoTime();
+
+        Map<String, long[]> indexed = new HashMap<>();
+        try (Cursor c = db.query(T, new String[]{"path", "size", "mtime"}, null, null, null, null, null)) {
+            while (c.moveToNext()) indexed.put(c.getString(0), new long[]{c.getLong(1), c.getLong(2)});
+        }
+
+        File[] files = dir.listFiles();
+        Set<String> seen = new HashSet<>();
+        int updated = 0;
+        if (files != null) {
+            for (File f : files) {
+                if (!f.isFile() || !isAudio(f.getName())) continue;
+                String path = f.getAbsolutePath();
+                seen.add(path);
+                long[] known = indexed.get(path);
+                if (known == null || known[0] != f.length() || known[1] != f.lastModified()) {
+                    if (write(f, null, null, null, null)) updated++;
+                }
+            }
+        }
+
+        int removed = 0;
+        for (String path : indexed.keySet()) {
+            if (!seen.contains(path)) {
+                TrackStore.getInstance().onRemoved(new File(path));
+                db.delete(T, "path = ?", new String[]{path});
+                removed++;
+            }
+        }
+        if (updated > 0 || removed > 0) notifyChanged();
+        Log.d(TAG, "reconcile: " + seen.size() + " files, " + updated + " updated, " + removed
+                + " removed in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private synchronized SQLiteDatabase db() {
+        if (helper == null) return null;
+        try {
+            return helper.getWritableDatabase();
+        } catch (Exception e) {
+            Log.e(TAG, "Could not open library index", e);
+            return null;
+        }
+    }
+
+    private void notifyChanged() {
+        for (Listener l : listeners) l.onLibraryChanged();
+    }
+
+    private static String orderBy(int sortMode) {
+        switch (sortMode) {
+            case SORT_NAME_ASC:
+                return "file_name COLLATE NOCASE ASC";
+            case SORT_NAME_DESC:
+                return "file_name COLLATE NOCASE DESC";
+            case SORT_DATE_OLDEST:
+                return "mtime ASC";
+            case SORT_SIZE_LARGEST:
+                return "size DESC";
+            case SORT_SIZE_SMALLEST:
+                return "size ASC";
+            case SORT_DATE_NEWEST:
+            default:
+                return "mtime DESC";
+        }
+    }
+
+    // tags written by yt-dlp (if any) and the duration; only when the file is new or changed
+    private static void readTags(File file, ContentValues v) {
+        MediaMetadataRetriever r = new MediaMetadataRetriever();
+        try {
+            r.setDataSource(file.getAbsolutePath());
+            String duration = r.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            if (duration != null) v.put("duration_ms", Integer.parseInt(duration));
+            putIfMissing(v, "title", r.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE));
+            putIfMissing(v, "artist", r.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST));
+            putIfMissing(v, "album", r.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM));
+        } catch (Exception e) {
+            Log.w(TAG, "No tags for " + file.getName() + ": " + e.getMessage());
+        } finally {
+            try {
+                r.release();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    private static void putIfMissing(ContentValues v, String col, String value) {
+        if (!isEmpty(value) && isEmpty(v.getAsString(col))) v.put(col, value);
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.isEmpty();
+    }
+
+    static boolean isAudio(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (String ext : AUDIO_EXTENSIONS) {
+            if (lower.endsWith(ext)) return true;
+        }
+        return false;
+    }
+
+    // "Artist_Some_Song.mp3" -> "Artist Some Song"
+    static String titleFromName(String fileName) {
+        int idx = fileName.indexOf('.');
+        String base = idx > 0 ? fileName.substring(0, idx) : fileName;
+        return base.replace('_', ' ').trim().replaceAll("\\s+", " ");
+    }
+
+    static String searchText(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String p : parts) {
+            if (!isEmpty(p)) sb.append(p.toLowerCase(Locale.ROOT)).append(' ');
+        }
+        // file names use '_' for spaces, so match both spellings
+        return sb.toString().replace('_', ' ');
+    }
+
+    private static final class Helper extends SQLiteOpenHelper {
+        Helper(Context ctx) {
+            super(ctx, DB_NAME, null, DB_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + T + " ("
+                    + "path TEXT PRIMARY KEY, "
+                    + "file_name TEXT NOT NULL, "
+                    + "size INTEGER NOT NULL, "
+                    + "mtime INTEGER NOT NULL, "
+                    + "title TEXT, "
+                    + "artist TEXT, "
+                    + "album TEXT, "
+                    + "duration_ms INTEGER NOT NULL DEFAULT 0, "
+                    + "track_id TEXT, "
+                    + "video_id TEXT, "
+                    + "search_text TEXT NOT NULL, "
+                    + "last_played INTEGER NOT NULL DEFAULT 0, "
+                    + "play_count INTEGER NOT NULL DEFAULT 0, "
+                    + "kept INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("CREATE INDEX songs_name ON " + T + " (file_name COLLATE NOCASE)");
+            db.execSQL("CREATE INDEX songs_mtime ON " + T + " (mtime)");
+            db.execSQL("CREATE INDEX songs_size ON " + T + " (size)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion < 2) {
+                db.execSQL("ALTER TABLE " + T + " ADD COLUMN last_played INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + T + " ADD COLUMN play_count INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + T + " ADD COLUMN kept INTEGER NOT NULL DEFAULT 0");
+            }
+        }
+
+        @Override
+        public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // the file data is only a cache of what's on disk: rebuild, the next reconcile refills it
+            db.execSQL("DROP TABLE IF EXISTS " + T);
+            onCreate(db);
+        }
+    }
+
+    // column indexes looked up once per cursor
+    private static final class SongReader {
+        private final Cursor c;
+        private final int path, name, size, mtime, title, artist, album, duration, trackId, videoId;
+        private final int lastPlayed, playCount, kept;
+
+        SongReader(Cursor c) {
+            this.c = c;
+            path = c.getColumnIndexOrThrow("path");
+            name = c.getColumnIndexOrThrow("file_name");
+            size = c.getColumnIndexOrThrow("size");
+            mtime = c.getColumnIndexOrThrow("mtime");
+            title = c.getColumnIndexOrThrow("title");
+            artist = c.getColumnIndexOrThrow("artist");
+            album = c.getColumnIndexOrThrow("album");
+            duration = c.getColumnIndexOrThrow("duration_ms");
+            trackId = c.getColumnIndexOrThrow("track_id");
+            videoId = c.getColumnIndexOrThrow("video_id");
+            lastPlayed = c.getColumnIndexOrThrow("last_played");
+            playCount = c.getColumnIndexOrThrow("play_count");
+            kept = c.getColumnIndexOrThrow("kept");
+        }
+
+        LibrarySong read() {
+            LibrarySong s = new LibrarySong();
+            s.path = c.getString(path);
+            s.fileName = c.getString(name);
+            s.size = c.getLong(size);
+            s.mtime = c.getLong(mtime);
+            s.title = c.getString(title);
+            s.artist = c.getString(artist);
+            s.album = c.getString(album);
+            s.durationMs = c.getInt(duration);
+            s.trackId = c.getString(trackId);
+            s.videoId = c.getString(videoId);
+            s.lastPlayed = c.getLong(lastPlayed);
+            s.playCount = c.getInt(playCount);
+            s.kept = c.getInt(kept) != 0;
+            return s;
+        }
+    }
+}
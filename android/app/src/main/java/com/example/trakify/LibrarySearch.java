@@ -0,0 +1,376 @@
+package com.example.trakify;
+
+import com.example.trakify.model.LibrarySong;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+
+/**
+ * In-memory trigram index over the library's title / artist / album / file name, for the
+ * search box in {@link LibraryFragment}.
+ *
+ * Every word is padded with spaces and cut into trigrams (" ra", "rad", ... "ad "); a song's
+ * score for a query is the share of the query's trigrams it contains, plus a bonus for a plain
+ * substring hit. Anything scoring at least {@link #MIN_SCORE} is returned, best first and in
+ * the library's sort order within a score, so "radiohed" or "radoihead" still find Radiohead.
+ * Queries shorter than a trigram fall back to a substring scan.
+ *
+ * Typing is incremental: when the new query extends the previous one, only the previous
+ * result set is re-scored instead of walking the posting lists again.
+ *
+ * An instance is immutable apart from that last-query memo; rebuild it when the library
+ * changes, passing the old one to {@link #build(List, LibrarySearch)} so only new or renamed
+ * songs are normalized and cut into trigrams again. Build and search off the main thread.
+ */
+public class LibrarySearch {
+    static final double MIN_SCORE = 0.5;
+    // a plain substring hit ranks above any fuzzy one
+    private static final double SUBSTRING_BONUS = 1.0;
+
+    private final List<LibrarySong> songs;
+    private final String[] texts;
+    private final long[][] grams;
+    // postings in one array: docs containing gram id g are postingDocs[postingStart[g] .. postingStart[g + 1])
+    private final GramTable table;
+    private final int[] postingStart;
+    private final int[] postingDocs;
+
+    private String lastQuery = "";
+    private int[] lastHits;
+
+    private LibrarySearch(List<LibrarySong> songs, String[] texts, long[][] grams,
+                          GramTable table, int[] postingStart, int[] postingDocs) {
+        this.songs = songs;
+        this.texts = texts;
+        this.grams = grams;
+        this.table = table;
+        this.postingStart = postingStart;
+        this.postingDocs = postingDocs;
+    }
+
+    /** Indexes the songs; their order is kept as the tie-break for equal scores. */
+    public static LibrarySearch build(List<LibrarySong> songs) {
+        return build(songs, null);
+    }
+
+    /**
+     * Same, reusing the normalized text and trigrams {@code previous} (may be null) already has
+     * for songs whose title, artist, album and file name did not change. A download or a keep
+     * toggle then costs one song's worth of text work plus re-laying the posting lists.
+     */
+    public static LibrarySearch build(List<LibrarySong> songs, LibrarySearch previous) {
+        List<LibrarySong> copy = new ArrayList<>(songs);
+        int n = copy.size();
+        Map<String, Integer> known = previous != null ? previous.docsByText() : Collections.emptyMap();
+        String[] texts = new String[n];
+        long[][] grams = new long[n][];
+        GramTable table = new GramTable(1024);
+        int total = 0;
+        for (int doc = 0; doc < n; doc++) {
+            LibrarySong s = copy.get(doc);
+            String raw = join(s.title, s.artist, s.album, s.fileName);
+            Integer old = known.get(raw);
+            if (old != null) {
+                texts[doc] = previous.texts[old];
+                grams[doc] = previous.grams[old];
+            } else {
+                texts[doc] = normalize(raw);
+                grams[doc] = gramsOf(texts[doc], true);
+            }
+            for (long g : grams[doc]) table.add(g);
+            total += grams[doc].length;
+        }
+
+        // counting sort of (gram, doc) pairs; docs end up ascending within each gram
+        int[] postingStart = new int[table.size() + 1];
+        for (long[] docGrams : grams) {
+            for (long g : docGrams) postingStart[table.id(g) + 1]++;
+        }
+        for (int g = 0; g < table.size(); g++) postingStart[g + 1] += postingStart[g];
+        int[] fill = Arrays.copyOf(postingStart, table.size());
+        int[] postingDocs = new int[total];
+        for (int doc = 0; doc < n; doc++) {
+            for (long g : grams[doc]) postingDocs[fill[table.id(g)]++] = doc;
+        }
+        return new LibrarySearch(copy, texts, grams, table, postingStart, postingDocs);
+    }
+
+    public int size() {
+        return songs.size();
+    }
+
+    // indexed (un-normalized) text -> doc, for reuse by the next build
+    private Map<String, Integer> docsByText() {
+        Map<String, Integer> out = new HashMap<>(songs.size() * 2);
+        for (int doc = 0; doc < songs.size(); doc++) {
+            LibrarySong s = songs.get(doc);
+            out.put(join(s.title, s.artist, s.album, s.fileName), doc);
+        }
+        return out;
+    }
+
+    /** All songs for an empty query, otherwise the ranked matches. */
+    public synchronized List<LibrarySong> search(String query) {
+        String q = normalize(query);
+        if (q.isEmpty()) {
+            lastQuery = "";
+            lastHits = null;
+            return new ArrayList<>(songs);
+        }
+
+        // a longer version of the last query can only narrow what it found
+        int[] candidates = lastHits != null && !lastQuery.isEmpty() && q.startsWith(lastQuery) ? lastHits : null;
+
+        int[] hits;
+        double[] scores;
+        long[][] qgrams = q.length() < 3 ? new long[0][] : wordGrams(q);
+        if (qgrams.length == 0) {
+            hits = substringHits(q, candidates);
+            scores = null;
+        } else {
+            double[] all = candidates != null ? scoreCandidates(qgrams, candidates) : scorePostings(qgrams);
+            for (int doc = 0; doc < all.length; doc++) {
+                if (all[doc] > 0 && texts[doc].contains(q)) all[doc] += SUBSTRING_BONUS;
+            }
+            IntList matched = new IntList();
+            for (int doc = 0; doc < all.length; doc++) {
+                if (all[doc] >= MIN_SCORE) matched.add(doc);
+            }
+            hits = matched.toArray();
+            scores = all;
+        }
+
+        lastQuery = q;
+        lastHits = hits;
+        return rank(hits, scores);
+    }
+
+    private int[] substringHits(String q, int[] candidates) {
+        IntList out = new IntList();
+        if (candidates != null) {
+            for (int doc : candidates) if (texts[doc].contains(q)) out.add(doc);
+        } else {
+            for (int doc = 0; doc < texts.length; doc++) if (texts[doc].contains(q)) out.add(doc);
+        }
+        return out.toArray();
+    }
+
+    // per query word: its trigrams; a song must share at least one with every word
+    private double[] scorePostings(long[][] qgrams) {
+        int n = texts.length;
+        int[] counts = new int[n];
+        int[] wordsHit = new int[n];
+        for (long[] word : qgrams) {
+            boolean[] seen = new boolean[n];
+            for (long g : word) {
+                int id = table.id(g);
+                if (id < 0) continue;
+                for (int p = postingStart[id]; p < postingStart[id + 1]; p++) {
+                    int doc = postingDocs[p];
+                    counts[doc]++;
+                    if (!seen[doc]) {
+                        seen[doc] = true;
+                        wordsHit[doc]++;
+                    }
+                }
+            }
+        }
+        int total = total(qgrams);
+        double[] scores = new double[n];
+        for (int doc = 0; doc < n; doc++) {
+            if (wordsHit[doc] == qgrams.length) scores[doc] = (double) counts[doc] / total;
+        }
+        return scores;
+    }
+
+    private double[] scoreCandidates(long[][] qgrams, int[] candidates) {
+        int total = total(qgrams);
+        double[] scores = new double[texts.length];
+        for (int doc : candidates) {
+            int count = 0;
+            int wordsHit = 0;
+            for (long[] word : qgrams) {
+                int before = count;
+                for (long g : word) {
+                    if (Arrays.binarySearch(grams[doc], g) >= 0) count++;
+                }
+                if (count > before) wordsHit++;
+            }
+            if (wordsHit == qgrams.length) scores[doc] = (double) count / total;
+        }
+        return scores;
+    }
+
+    private static int total(long[][] qgrams) {
+        int total = 0;
+        for (long[] word : qgrams) total += word.length;
+        return total;
+    }
+
+    private List<LibrarySong> rank(int[] hits, double[] scores) {
+        Integer[] order = new Integer[hits.length];
+        for (int i = 0; i < hits.length; i++) order[i] = hits[i];
+        if (scores != null) {
+            // stable: equal scores keep the library order
+            Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+        }
+        List<LibrarySong> out = new ArrayList<>(hits.length);
+        for (int doc : order) out.add(songs.get(doc));
+        return out;
+    }
+
+    // ---------- text ----------
+
+    /** Lower case, no diacritics, only letters/digits separated by single spaces. */
+    static String normalize(String s) {
+        if (s == null || s.isEmpty()) return "";
+        String lower = s.toLowerCase(Locale.ROOT).replace('ł', 'l');
+        // most names are plain ASCII: skip the decomposition for them
+        String plain = isAscii(lower) ? lower : Normalizer.normalize(lower, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(plain.length());
+        boolean space = true;
+        for (int i = 0; i < plain.length(); i++) {
+            char c = plain.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int len = sb.length();
+        if (len > 0 && sb.charAt(len - 1) == ' ') sb.setLength(len - 1);
+        return sb.toString();
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 128) return false;
+        }
+        return true;
+    }
+
+    /** Sorted, distinct trigrams of every space-padded word. */
+    static long[] gramsOf(String normalized, boolean padLastWord) {
+        if (normalized.isEmpty()) return new long[0];
+        String[] words = normalized.split(" ");
+        long[] out = new long[normalized.length() + 2 * words.length];
+        int n = 0;
+        for (int w = 0; w < words.length; w++) {
+            boolean closing = padLastWord || w < words.length - 1;
+            String padded = " " + words[w] + (closing ? " " : "");
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                out[n++] = gram(padded.charAt(i), padded.charAt(i + 1), padded.charAt(i + 2));
+            }
+        }
+        long[] sorted = Arrays.copyOf(out, n);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) sorted[distinct++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * Trigrams of each query word. The last word is still being typed, so it gets no closing
+     * pad; a last word too short for any trigram is left out.
+     */
+    static long[][] wordGrams(String normalized) {
+        String[] words = normalized.split(" ");
+        List<long[]> out = new ArrayList<>(words.length);
+        for (int w = 0; w < words.length; w++) {
+            long[] g = gramsOf(words[w], w < words.length - 1);
+            if (g.length > 0) out.add(g);
+        }
+        return out.toArray(new long[0][]);
+    }
+
+    private static long gram(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static String join(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String p : parts) {
+            if (p != null && !p.isEmpty()) sb.append(p).append(' ');
+        }
+        return sb.toString();
+    }
+
+    // open-addressing long -> dense id map, so the index holds no boxed keys
+    private static final class GramTable {
+        private static final long EMPTY = -1L;
+        long[] keys;
+        int[] ids;
+        int size;
+
+        GramTable(int capacity) {
+            keys = new long[capacity];
+            ids = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(long key) {
+            if ((size + 1) * 2 > keys.length) grow();
+            int slot = slot(keys, key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                ids[slot] = size++;
+            }
+        }
+
+        int id(long key) {
+            int slot = slot(keys, key);
+            return keys[slot] == EMPTY ? -1 : ids[slot];
+        }
+
+        private static int slot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int i = (int) (key ^ (key >>> 29) ^ (key >>> 17)) * 0x9E3779B1 & mask;
+            while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+            return i;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldIds = ids;
+            keys = new long[oldKeys.length * 2];
+            ids = new int[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) continue;
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+
+    // growable int[] without boxing
+    private static final class IntList {
+        int[] data = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -11,6 +11,7 @@ import android.widget.Toast;
 import androidx.activity.EdgeToEdge;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.chaquo.python.PyObject;
 import com.chaquo.python.android.AndroidPlatform;
@@ -24,12 +25,17 @@ public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
 
     private MusicPlayerManager player;
-    private MusicPlayerManager.PlaybackListener activityListener;
+    private MusicPlayerManager.StateListener activityListener;
+    private PlaybackState miniState; // co pokazuje mini-player
 
     private LinearLayout miniPlayer;
     private TextView txtSongTitle;
+    private TextView txtMiniBuffer;
     private ImageButton btnPlayPause;
 
+    // item_album views shared by the album lists (home new releases, artist albums)
+    private final RecyclerView.RecycledViewPool albumViewPool = new RecyclerView.RecycledViewPool();
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,33 +49,32 @@ public class MainActivity extends AppCompatActivity {
         if (!Python.isStarted()) {
             Python.start(new AndroidPlatform(this));
         }
+        CatalogRepository.getInstance().init(getApplicationContext());
+        LibraryIndex.getInstance().init(getApplicationContext());
+        AudioCache.getInstance().init(getApplicationContext());
+        PlaybackTrace.getInstance().init(getApplicationContext());
 
         // UI
         miniPlayer = findViewById(R.id.mini_player);
         txtSongTitle = findViewById(R.id.txtSongTitle);
+        txtMiniBuffer = findViewById(R.id.txtMiniBuffer);
         btnPlayPause = findViewById(R.id.btnPlayPause);
 
         // Pobierz singleton playera
         player = MusicPlayerManager.getInstance();
 
         // przygotuj listener aktywności (wykona się, gdy player powiadomi)
-        activityListener = new MusicPlayerManager.PlaybackListener() {
-            @Override
-            public void onPrepared() {
-                Log.d(TAG, "activityListener.onPrepared()");
-                runOnUiThread(() -> {
-                    showMiniPlayer(player.getCurrentTitle());
-                    updateMiniPlayPauseIcon();
-                });
+        // listener dostaje stan na main thread; odświeżamy tylko tytuł i ikonę, gdy się zmieniły
+        activityListener = state -> {
+            PlaybackState old = miniState;
+            miniState = state;
+            if (state.title != null && (old == null || !state.title.equals(old.title))) {
+                showMiniPlayer(state.title);
+            } else if (old == null || old.playing != state.playing) {
+                updateMiniPlayPauseIcon();
             }
-
-            @Override
-            public void onPlaybackStateChanged() {
-                Log.d(TAG, "activityListener.onPlaybackStateChanged()");
-                runOnUiThread(() -> {
-                    updateMiniPlayPauseIcon();
-                    // opcjonalnie: showMiniPlayer(player.getCurrentTitle());
-                });
+            if (old == null || old.buffering != state.buffering || old.bufferPercent != state.bufferPercent) {
+                updateMiniBuffer(state);
             }
         };
 
@@ -103,6 +108,18 @@ public class MainActivity extends AppCompatActivity {
                 .replace(R.id.fragment_container, new HomeFragment())
                 .commit();
 
+        // ukryty ekran wydajności: długie przytrzymanie zakładki Home
+        View homeTab = bottomNavigation.findViewById(R.id.nav_home);
+        if (homeTab != null) {
+            homeTab.setOnLongClickListener(v -> {
+                getSupportFragmentManager().beginTransaction()
+                        .replace(R.id.fragment_container, new PerfDebugFragment())
+                        .addToBackStack(null)
+                        .commit();
+                return true;
+            });
+        }
+
         bottomNavigation.setOnItemSelectedListener(item -> {
             Fragment selectedFragment = null;
             int id = item.getItemId();
@@ -128,14 +145,12 @@ public class MainActivity extends AppCompatActivity {
     protected void onStart() {
         super.onStart();
         // rejestruj listener, żeby aktywność reagowała na zmiany w playerze
+        // rejestracja od razu podaje aktualny stan, więc mini-player odświeża się po powrocie
         if (player != null && activityListener != null) {
+            miniState = null;
             player.registerListener(activityListener);
             Log.d(TAG, "Registered activityListener");
         }
-        // odśwież UI mini-playera (np. po powrocie do aktywności)
-        updateMiniPlayPauseIcon();
-        String title = (player != null) ? player.getCurrentTitle() : null;
-        if (title != null) showMiniPlayer(title);
     }
 
     @Override
@@ -161,6 +176,17 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // procent pobierania utworu, na który czekamy; znika, gdy gra
+    private void updateMiniBuffer(PlaybackState state) {
+        if (txtMiniBuffer == null) return;
+        if (state.buffering && state.bufferPercent >= 0) {
+            txtMiniBuffer.setText(state.bufferPercent + "%");
+            txtMiniBuffer.setVisibility(View.VISIBLE);
+        } else {
+            txtMiniBuffer.setVisibility(View.GONE);
+        }
+    }
+
     public void showMiniPlayer(String title) {
         if (miniPlayer == null || txtSongTitle == null) return;
         miniPlayer.setVisibility(View.VISIBLE);
@@ -174,4 +200,8 @@ public class MainActivity extends AppCompatActivity {
             player.stop();  // zatrzymuje muzykę
         }
     }
+
+    public RecyclerView.RecycledViewPool getAlbumViewPool() {
+        return albumViewPool;
+    }
 }
@@ -1,180 +1,231 @@
 package com.example.trakify;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Choreographer;
 
 import androidx.core.content.ContextCompat;
 
-import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
-
-import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MusicPlayerManager {
     private static final String TAG = "MusicPlayerManager";
     private static MusicPlayerManager instance;
-    private final Set<PlaybackListener> listeners = Collections.synchronizedSet(new HashSet<>());
+    private final Set<StateListener> listeners = new CopyOnWriteArraySet<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean dispatchPending = new AtomicBoolean();
+    private PlaybackState state = PlaybackState.EMPTY; // ostatnio wysłany, tylko na main thread
 
     private Context appContext;
-    private boolean isPlaying = false;
-    private int currentPosition = 0;
-    private int duration = 0;
-    private String currentTitle = null;
-    private String currentPath = null;
-    private String currentImageUrl = null;
+    // pisane przez serwis, akcje UI i callbacki pobierania; snapshot() czyta je na main thread
+    private volatile boolean isPlaying = false;
+    private volatile int currentPosition = 0;
+    private volatile long positionAnchor = 0; // elapsedRealtime, w którym currentPosition był aktualny
+    private volatile float playbackSpeed = 1f;
+    private volatile int duration = 0;
+    private volatile String currentTitle = null;
+    private volatile String currentPath = null;
+    private volatile String currentImageUrl = null;
     private String currentAlbumImageUrl = null;
 
     // Queue system
     private final List<QueueItem> queue = new ArrayList<>();
     private final List<QueueItem> history = new ArrayList<>();
     private int currentQueueIndex = -1;
-    private boolean isBuffering = false;
-    private int currentIndex = 0;
-
-
-    // prevent parallel downloads for the same item
-    // implemented per QueueItem via isDownloading flag
-
-    public void registerListener(PlaybackListener l) {
+    private volatile boolean isBuffering = false;
+    private volatile int bufferPercent = -1; // download progress of the track we wait for
+
+    // Look-ahead prefetch: the next N queue items (in the current play direction) are
+    // downloaded while the current one plays, so track boundaries don't stall.
+    private static final int DEFAULT_PREFETCH_WINDOW = 2;
+    private int prefetchWindow = DEFAULT_PREFETCH_WINDOW;
+    private int playDirection = 1; // 1 = forward (playNext), -1 = backward (playPrevious)
+    private final List<QueueItem> prefetchTargets = new ArrayList<>();
+    private final AtomicBoolean prefetchPending = new AtomicBoolean();
+    // what the window already asked the engine for (until the download ends), so a new pass
+    // only requests what is new or moved up a lane
+    private final Map<QueueItem, DownloadEngine.Priority> prefetchRequested = new HashMap<>();
+    private String serviceNextPath; // peekNext() as the service last heard about it
+
+
+    // parallel downloads for the same item are deduplicated by DownloadEngine
+
+    /** Main thread only. The listener gets the current state right away, then every change. */
+    public void registerListener(StateListener l) {
         if (l != null) {
             listeners.add(l);
             Log.d(TAG, "Listener registered. Total listeners: " + listeners.size());
+            l.onStateChanged(getState());
         }
     }
 
-    public void unregisterListener(PlaybackListener l) {
+    public void unregisterListener(StateListener l) {
         if (l != null) {
             listeners.remove(l);
             Log.d(TAG, "Listener unregistered. Total listeners: " + listeners.size());
         }
     }
     public void setQueue(List<QueueItem> q) {
-        queue.clear();
-        queue.addAll(q);
-        currentIndex = 0;
-        for (QueueItem item : queue) {
-            if (item.imageUrl == null || item.imageUrl.isEmpty()) {
-                item.imageUrl = currentAlbumImageUrl; // 👈 ujednolicenie obrazka albumu dla całej kolejki
+        synchronized (queue) {
+            queue.clear();
+            queue.addAll(q);
+            prefetchRequested.clear();
+            currentQueueIndex = queue.isEmpty() ? -1 : 0;
+            playDirection = 1;
+            for (QueueItem item : queue) {
+                if (item.imageUrl == null || item.imageUrl.isEmpty()) {
+                    item.imageUrl = currentAlbumImageUrl; // 👈 ujednolicenie obrazka albumu dla całej kolejki
+                }
+            }
+            retargetPrefetch();
+        }
+    }
+
+    // Marks which queue item is playing when a screen starts playback itself (e.g. album track tap)
+    public void setCurrentQueueIndex(int index) {
+        synchronized (queue) {
+            if (index < 0 || index >= queue.size()) return;
+            currentQueueIndex = index;
+            playDirection = 1;
+            retargetPrefetch();
+        }
+    }
+
+    public void setPrefetchWindow(int size) {
+        synchronized (queue) {
+            prefetchWindow = Math.max(0, size);
+            retargetPrefetch();
+        }
+    }
+
+    public int getPrefetchWindow() {
+        synchronized (queue) { return prefetchWindow; }
+    }
+
+    /** Cover URLs of the look-ahead window, nearest first, so the service can warm its art cache. */
+    public List<String> getUpcomingImageUrls() {
+        synchronized (queue) {
+            List<String> urls = new ArrayList<>(prefetchTargets.size());
+            for (QueueItem item : prefetchTargets) {
+                if (item.imageUrl != null && !item.imageUrl.isEmpty()) urls.add(item.imageUrl);
             }
+            return urls;
         }
     }
     public void setCurrentAlbumImageUrl(String url) {
         currentAlbumImageUrl = url;
     }
+    /**
+     * Marks the state dirty. Any number of calls (from any thread) before the next frame end up
+     * in one snapshot, and listeners only hear about it if it differs from the last one.
+     */
     private void notifyStateChanged() {
-        Log.d(TAG, "notifyStateChanged - listeners: " + listeners.size());
-        for (PlaybackListener l : listeners) {
-            try {
-                l.onPlaybackStateChanged();
-            } catch (Exception e) {
-                Log.e(TAG, "Error in listener", e);
-            }
+        if (!dispatchPending.compareAndSet(false, true)) return;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Choreographer.getInstance().postFrameCallback(dispatchFrame);
+        } else {
+            mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(dispatchFrame));
         }
     }
 
-    private void notifyPrepared() {
-        Log.d(TAG, "notifyPrepared - listeners: " + listeners.size());
-        for (PlaybackListener l : listeners) {
+    private final Choreographer.FrameCallback dispatchFrame = frameTimeNanos -> {
+        // najpierw zdejmij flagę: zmiana w trakcie dispatchu zaplanuje kolejną klatkę
+        dispatchPending.set(false);
+        PlaybackState next = snapshot();
+        if (next.equals(state)) return;
+        state = next;
+        Log.d(TAG, "dispatch " + next + " -> listeners: " + listeners.size());
+        for (StateListener l : listeners) {
             try {
-                l.onPrepared();
+                l.onStateChanged(next);
             } catch (Exception e) {
                 Log.e(TAG, "Error in listener", e);
             }
         }
-    }
-
-    private final BroadcastReceiver receiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent == null || intent.getAction() == null) return;
-            String act = intent.getAction();
-
-            try {
-                // --- PLAYBACK STATE (service mówi czy gra / buffering / title / path / image / error) ---
-                if (MusicPlayerService.BROADCAST_PLAYBACK_STATE.equals(act)) {
-                    boolean newPlaying = intent.getBooleanExtra("playing", false);
-                    // serwis może wysyłać extra buffering/isBuffering
-                    boolean buffering = intent.getBooleanExtra("buffering", false)
-                            || intent.getBooleanExtra("isBuffering", false);
-
-                    String title = intent.getStringExtra("title");
-                    String path = intent.getStringExtra("path");
-                    String image = intent.getStringExtra("image");
-                    String error = intent.getStringExtra("error"); // opcjonalne
-
-                    Log.d(TAG, "Received PLAYBACK_STATE - playing: " + newPlaying
-                            + " buffering: " + buffering
-                            + " title: " + title
-                            + " path: " + path
-                            + " error: " + error);
-
-                    // jeśli serwis raportuje błąd — zatrzymujemy buforowanie/odtwarzanie
-                    if (error != null && !error.isEmpty()) {
-                        isBuffering = false;
-                        isPlaying = false;
-                        if (title != null) currentTitle = title;
-                        notifyStateChanged();
-                        return;
-                    }
-
-                    // aktualizuj path/title/image jeśli są obecne
-                    if (path != null) currentPath = path;
-                    if (title != null) currentTitle = title;
-                    if (image != null) currentImageUrl = image;
-
-                    // priorytet: jeśli serwis mówi że buforuje -> ustaw buffering
-                    if (buffering) {
-                        isBuffering = true;
-                        isPlaying = false;
-                    } else {
-                        // jeśli nie buforuje, ustaw podle playing flagi
-                        isBuffering = false;
-                        isPlaying = newPlaying;
-                    }
-
-                    notifyStateChanged();
-
-                    // --- PLAYBACK POS (pozycja / duration) ---
-                } else if (MusicPlayerService.BROADCAST_PLAYBACK_POS.equals(act)) {
-                    int pos = intent.getIntExtra("position", 0);
-                    int dur = intent.getIntExtra("duration", 0);
+    };
 
-                    Log.v(TAG, "Received PLAYBACK_POS - pos: " + pos + ", dur: " + dur);
+    private PlaybackState snapshot() {
+        return new PlaybackState(currentTitle, currentPath, currentImageUrl, isPlaying, isBuffering, bufferPercent,
+                currentPosition, duration, positionAnchor, playbackSpeed, hasNext(), hasPrevious());
+    }
 
-                    currentPosition = pos;
-                    duration = dur;
+    /** Current state, possibly newer than what listeners were last given. */
+    public PlaybackState getState() {
+        return snapshot();
+    }
 
-                    // Jeżeli serwis raportuje długość > 0 to najpewniej playback jest przygotowany
-                    if (dur > 0) {
-                        isBuffering = false; // service potwierdził, że ma info o czasie -> koniec bufferingu
-                    }
+    private long extrapolatedPosition(long now) {
+        if (!isPlaying || isBuffering || positionAnchor <= 0) return currentPosition;
+        long pos = currentPosition + (long) ((now - positionAnchor) * playbackSpeed);
+        return duration > 0 ? Math.min(pos, duration) : pos;
+    }
 
-                    notifyPrepared();
+    // Moves the position anchor to "now" before isPlaying changes, so extrapolation stays right
+    private void reanchor() {
+        long now = SystemClock.elapsedRealtime();
+        currentPosition = (int) extrapolatedPosition(now);
+        positionAnchor = now;
+    }
 
-                    // --- TRACK COMPLETED (automatyczne przejście do następnego) ---
-                } else if (MusicPlayerService.BROADCAST_TRACK_COMPLETED.equals(act)) {
-                    Log.d(TAG, "Track completed broadcast received -> playNext()");
-                    playNext();
+    // ---------- in-process channel from MusicPlayerService (same process, main thread) ----------
+
+    /**
+     * The service's state after a transition (prepared, play, pause, seek, stop, hand-off),
+     * with the position anchor taken right now. Nothing is sent while playing: listeners
+     * extrapolate the position from the anchor themselves.
+     */
+    void onPlayerState(boolean playing, String title, String path, String image,
+                       int positionMs, int durationMs, float speed) {
+        Log.d(TAG, "onPlayerState - playing: " + playing + " title: " + title
+                + " pos: " + positionMs + "/" + durationMs);
+
+        // aktualizuj path/title/image jeśli są obecne
+        if (path != null) currentPath = path;
+        if (title != null) currentTitle = title;
+        if (image != null) currentImageUrl = image;
+
+        currentPosition = Math.max(0, positionMs);
+        duration = Math.max(0, durationMs);
+        playbackSpeed = speed > 0 ? speed : 1f;
+        positionAnchor = SystemClock.elapsedRealtime();
+
+        // serwis odpowiada tylko z gotowym (albo zatrzymanym) playerem -> koniec bufferingu
+        isBuffering = false;
+        bufferPercent = -1;
+        isPlaying = playing;
+        notifyStateChanged();
+    }
 
-                    // --- fallback / nieobsługiwane akcje ---
-                } else {
-                    Log.v(TAG, "Received unknown broadcast action: " + act);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error in onReceive", e);
-            }
-        }
-    };
+    /** The service could not play the file at all (e.g. no permission to read it). */
+    void onPlayerError(String error) {
+        Log.w(TAG, "onPlayerError: " + error);
+        reanchor();
+        isBuffering = false;
+        bufferPercent = -1;
+        isPlaying = false;
+        notifyStateChanged();
+    }
 
+    /** Natural end of a track that had nothing chained for gapless play. */
+    void onTrackCompleted() {
+        Log.d(TAG, "Track completed -> playNext()");
+        reanchor();
+        isPlaying = false;
+        notifyStateChanged();
+        playNext();
+    }
 
     private MusicPlayerManager() {}
 
@@ -186,34 +237,24 @@ public class MusicPlayerManager {
     public void init(Context ctx) {
         if (ctx == null) return;
         this.appContext = ctx.getApplicationContext();
-
-        IntentFilter f = new IntentFilter();
-        f.addAction(MusicPlayerService.BROADCAST_PLAYBACK_STATE);
-        f.addAction(MusicPlayerService.BROADCAST_PLAYBACK_POS);
-        f.addAction(MusicPlayerService.BROADCAST_TRACK_COMPLETED);
-
-        Log.d(TAG, "Registering broadcast receiver");
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            appContext.registerReceiver(receiver, f, Context.RECEIVER_NOT_EXPORTED);
-        } else {
-            ContextCompat.registerReceiver(appContext, receiver, f, ContextCompat.RECEIVER_NOT_EXPORTED);
-        }
-
+        DownloadEngine engine = DownloadEngine.getInstance();
+        engine.init(appContext);
+        // the track someone waits for gets everything, look-ahead some, preloads stay out of the way
+        engine.setProfile(DownloadEngine.Priority.NOW_PLAYING, DownloadProfile.AGGRESSIVE);
+        engine.setProfile(DownloadEngine.Priority.NEXT_UP, DownloadProfile.BALANCED);
+        engine.setProfile(DownloadEngine.Priority.PRELOAD, DownloadProfile.GENTLE);
+        engine.addProgressListener((id, priority, written, total, percent) -> onDownloadProgress(priority, percent));
         Log.d(TAG, "MusicPlayerManager initialized");
     }
 
-    public void release() {
-        if (appContext != null) {
-            try {
-                appContext.unregisterReceiver(receiver);
-                Log.d(TAG, "Broadcast receiver unregistered");
-            } catch (Exception e) {
-                Log.e(TAG, "Error unregistering receiver", e);
-            }
-        }
+    // download thread: only the track the user is waiting for drives the buffering percentage
+    private void onDownloadProgress(DownloadEngine.Priority priority, int percent) {
+        if (priority != DownloadEngine.Priority.NOW_PLAYING || !isBuffering || percent == bufferPercent) return;
+        bufferPercent = percent;
+        notifyStateChanged();
     }
 
+    // Only records the path; starting playback is the caller's call (one play() per tap)
     public void updateTrackPath(String title, String newPath,String albumimageURL) {
         synchronized (queue) {
             for (QueueItem item : queue) {
@@ -224,25 +265,43 @@ public class MusicPlayerManager {
                         item.imageUrl = albumimageURL;
                     }
                     Log.d(TAG, "Zaktualizowano path dla: " + title + " -> " + newPath);
-                    // jeśli to aktualnie odtwarzany element i jest brak odtwarzania teraz -> spróbuj odtworzyć
-                    if (currentQueueIndex >= 0 && currentQueueIndex < queue.size() && queue.get(currentQueueIndex) == item) {
-                        if (newPath != null) {
-                            play(newPath, item.title, item.imageUrl);
-                        }
-                    }
                     break;
                 }
             }
         }
     }
 
+    /**
+     * A track finished downloading outside the queue's own requests (e.g. an album batch):
+     * point the queue items that still have no file at it.
+     */
+    public void onTrackDownloaded(TrackIdentity id, String path) {
+        if (id == null || path == null) return;
+        boolean changed = false;
+        boolean isNext = false;
+        synchronized (queue) {
+            for (int i = 0; i < queue.size(); i++) {
+                QueueItem item = queue.get(i);
+                if (TrackStore.getInstance().isPresent(item.path)) continue;
+                if (!item.identity().nameKey().equals(id.nameKey())) continue;
+                item.path = path;
+                item.isDownloading = false;
+                changed = true;
+                isNext |= currentQueueIndex >= 0 && (currentQueueIndex + 1) % queue.size() == i;
+            }
+        }
+        if (!changed) return;
+        if (isNext) refreshServiceNextIfChanged();
+        notifyStateChanged();
+    }
+
     public String getCurrentPath() {
         return currentPath;
     }
 
-    public interface PlaybackListener {
-        void onPrepared();
-        void onPlaybackStateChanged();
+    /** Called on the main thread, at most once per frame, with a state that differs from the last one. */
+    public interface StateListener {
+        void onStateChanged(PlaybackState state);
     }
 
     // Play a single track (immediately) - we will NOT call service if path == null
@@ -253,6 +312,15 @@ public class MusicPlayerManager {
     public void play(String path, String title, String imageUrl) {
         if (appContext == null) return;
 
+        // a stream key whose download already finished: play (and cache-track) the final file
+        if (path != null && PartialDownload.get(path) == null) {
+            String resolved = PartialDownload.resolve(path);
+            if (!resolved.equals(path)) {
+                onStreamFinished(path, resolved);
+                path = resolved;
+            }
+        }
+
         // Add current song to history before playing new one
         if (currentPath != null && !currentPath.equals(path)) {
             addToHistory(new QueueItem(currentPath, currentTitle, null ,currentImageUrl));
@@ -263,6 +331,7 @@ public class MusicPlayerManager {
             currentTitle = title != null ? title : currentTitle;
             // set buffering - we're waiting for download
             isBuffering = true;
+            bufferPercent = -1;
             isPlaying = false;
             notifyStateChanged();
             return;
@@ -270,6 +339,7 @@ public class MusicPlayerManager {
 
         // Reset position/duration for new track
         currentPosition = 0;
+        positionAnchor = SystemClock.elapsedRealtime();
         duration = 0;
 
         currentPath = path;
@@ -280,8 +350,16 @@ public class MusicPlayerManager {
         currentImageUrl = imageUrl;
 
         Log.d(TAG, "play() - path: " + path + ", title: " + title + ", imageUrl: " + imageUrl);
+        PartialDownload partial = PartialDownload.get(path);
+        if (partial != null) {
+            // streaming: the cache entry is the final file, which only exists once the download ends
+            String key = path;
+            partial.finished().thenAccept(finalPath -> mainHandler.post(() -> onStreamFinished(key, finalPath)));
+        } else {
+            AudioCache.getInstance().onPlayed(path);
+        }
 
-        // we start the service and wait for service broadcast to mark playing
+        // buffering until the service calls onPlayerState() directly once its player has started
         isBuffering = true;
         isPlaying = false;
 
@@ -304,8 +382,13 @@ public class MusicPlayerManager {
     // Add song to queue
     // note: third parameter is used as "meta" (e.g. artist) in many call sites
     public void addToQueue(String path, String title, String meta,String url) {
+        addToQueue(path, title, meta, url, null);
+    }
+
+    /** Same, with the Spotify track id so the download is found under the same identity everywhere. */
+    public void addToQueue(String path, String title, String meta, String url, String trackId) {
         synchronized (queue) {
-            QueueItem qi = new QueueItem(path, title, meta,url);
+            QueueItem qi = new QueueItem(path, title, meta, url, trackId);
             queue.add(qi);
             Log.d(TAG, "Added to queue: " + title + ". Queue size: " + queue.size());
 
@@ -313,6 +396,7 @@ public class MusicPlayerManager {
             if (currentQueueIndex < 0) {
                 currentQueueIndex = 0;
             }
+            retargetPrefetch();
         }
     }
 
@@ -321,21 +405,18 @@ public class MusicPlayerManager {
         synchronized (queue) {
             if (index >= 0 && index < queue.size()) {
                 currentQueueIndex = index;
+                playDirection = 1;
                 QueueItem item = queue.get(index);
                 Log.d(TAG, "playFromQueue index=" + index + " item=" + item);
                 // if we have valid local file -> play
-                if (item.path != null && new File(item.path).exists()) {
+                if (TrackStore.getInstance().isPresent(item.path)) {
                     play(item.path, item.title, item.imageUrl);
                     Log.d(TAG, "Playing existing file: " + item.path);
                 } else {
-                    // no file yet -> start async download and play when ready
-                    if (!item.isDownloading) {
-                        item.isDownloading = true;
-                        startDownloadForQueueItem(item, index, true);
-                    } else {
-                        Log.d(TAG, "Item is already downloading: " + item.title);
-                    }
+                    // no file yet -> start async download (or join the running one) and play when ready
+                    startDownloadForQueueItem(item, index, true);
                 }
+                retargetPrefetch();
             } else {
                 Log.d(TAG, "playFromQueue: index out of bounds: " + index);
             }
@@ -351,6 +432,7 @@ public class MusicPlayerManager {
             }
 
             currentQueueIndex++;
+            playDirection = 1;
             if (currentQueueIndex >= queue.size()) {
                 currentQueueIndex = 0; // możesz też tu zakończyć odtwarzanie, jeśli nie chcesz zapętlać
             }
@@ -359,20 +441,17 @@ public class MusicPlayerManager {
             Log.d(TAG, "playNext -> NEW index: " + currentQueueIndex + "/" + queue.size());
             Log.d(TAG, "playNext -> will play: " + item);
 
-            if (item.path != null && new File(item.path).exists()) {
+            if (TrackStore.getInstance().isPresent(item.path)) {
                 play(item.path, item.title, item.imageUrl);
             } else {
                 Log.w(TAG, "playNext: no local file, downloading...");
-                if (!item.isDownloading) {
-                    item.isDownloading = true;
-                    startDownloadForQueueItem(item, currentQueueIndex, true);
-                } else {
-                    Log.d(TAG, "playNext: item already downloading -> wait");
-                    isBuffering = true;
-                    isPlaying = false;
-                    notifyStateChanged();
-                }
+                isBuffering = true;
+                bufferPercent = -1;
+                isPlaying = false;
+                startDownloadForQueueItem(item, currentQueueIndex, true);
+                notifyStateChanged();
             }
+            retargetPrefetch();
         }
     }
 
@@ -387,6 +466,7 @@ public class MusicPlayerManager {
             }
 
             currentQueueIndex--;
+            playDirection = -1;
             if (currentQueueIndex < 0) {
                 currentQueueIndex = queue.size() - 1;
             }
@@ -395,24 +475,92 @@ public class MusicPlayerManager {
             Log.d(TAG, "playPrevious -> NEW index: " + currentQueueIndex + "/" + queue.size());
             Log.d(TAG, "playPrevious -> will play: " + item);
 
-            if (item.path != null && new File(item.path).exists()) {
+            if (TrackStore.getInstance().isPresent(item.path)) {
                 play(item.path, item.title, item.imageUrl);
             } else {
                 Log.w(TAG, "playPrevious: no local file, downloading...");
-                if (!item.isDownloading) {
-                    item.isDownloading = true;
-                    startDownloadForQueueItem(item, currentQueueIndex, true);
-                } else {
-                    Log.d(TAG, "playPrevious: item already downloading -> wait");
-                    isBuffering = true;
-                    isPlaying = false;
-                    notifyStateChanged();
-                }
+                isBuffering = true;
+                bufferPercent = -1;
+                isPlaying = false;
+                startDownloadForQueueItem(item, currentQueueIndex, true);
+                notifyStateChanged();
+            }
+            retargetPrefetch();
+        }
+    }
+
+
+
+    /**
+     * The item that playNext() would pick, if its file is already on disk. Used by the service
+     * to prepare the gapless hand-off; null when there is nothing ready to chain.
+     */
+    public QueueItem peekNext() {
+        synchronized (queue) {
+            if (queue.size() < 2 || currentQueueIndex < 0) return null;
+            QueueItem next = queue.get((currentQueueIndex + 1) % queue.size());
+            return TrackStore.getInstance().isPresent(next.path) ? next : null;
+        }
+    }
+
+    /**
+     * Called by the service after it handed playback over to the pre-prepared next player.
+     * Mirrors playNext() without issuing a new play intent.
+     */
+    public void onGaplessAdvance(String path) {
+        synchronized (queue) {
+            if (queue.isEmpty()) return;
+            int nextIndex = (currentQueueIndex + 1) % queue.size();
+            QueueItem item = queue.get(nextIndex);
+            if (path == null || !path.equals(item.path)) {
+                Log.w(TAG, "onGaplessAdvance: queue moved on, path not at next index: " + path);
+                return;
+            }
+
+            if (currentPath != null && !currentPath.equals(path)) {
+                addToHistory(new QueueItem(currentPath, currentTitle, null, currentImageUrl));
             }
+            currentQueueIndex = nextIndex;
+            playDirection = 1;
+            currentPath = item.path;
+            currentTitle = item.title;
+            currentImageUrl = item.imageUrl;
+            currentPosition = 0;
+            positionAnchor = SystemClock.elapsedRealtime();
+            duration = 0;
+            isBuffering = false;
+            bufferPercent = -1;
+            isPlaying = true;
+            Log.d(TAG, "onGaplessAdvance -> index " + currentQueueIndex + ": " + item.title);
+            AudioCache.getInstance().onPlayed(path);
+
+            retargetPrefetch();
         }
+        notifyStateChanged();
     }
 
+    // Only when the item the service would chain (peekNext) is another one than it last heard of
+    private void refreshServiceNextIfChanged() {
+        synchronized (queue) {
+            QueueItem next = peekNext();
+            String path = next != null ? next.path : null;
+            if (Objects.equals(path, serviceNextPath)) return;
+            serviceNextPath = path;
+        }
+        refreshServiceNext();
+    }
 
+    // Asks a running service to (re)chain its next player after the queue or a file changed
+    private void refreshServiceNext() {
+        if (appContext == null || currentPath == null) return;
+        try {
+            Intent i = new Intent(appContext, MusicPlayerService.class);
+            i.setAction(MusicPlayerService.ACTION_PREPARE_NEXT);
+            appContext.startService(i);
+        } catch (Exception e) {
+            Log.w(TAG, "refreshServiceNext: service not reachable", e);
+        }
+    }
 
     // Check if there's a next song
     public boolean hasNext() {
@@ -424,10 +572,31 @@ public class MusicPlayerManager {
     // Check if there's previous in history or queue
     public boolean hasPrevious() {
         synchronized (queue) {
-            return !history.isEmpty() || currentQueueIndex > 0 || currentPosition > 5000;
+            return !history.isEmpty() || currentQueueIndex > 0
+                    || extrapolatedPosition(SystemClock.elapsedRealtime()) > 5000;
         }
     }
 
+    // a track that started as a partial download finished: everything that refers to it by its
+    // stream key now points at the real file (the service keeps reading the same data)
+    private void onStreamFinished(String key, String finalPath) {
+        if (finalPath == null || finalPath.equals(key)) return;
+        synchronized (queue) {
+            for (QueueItem item : queue) {
+                if (key.equals(item.path)) item.path = finalPath;
+            }
+            for (QueueItem item : history) {
+                if (key.equals(item.path)) item.path = finalPath;
+            }
+        }
+        if (key.equals(currentPath)) {
+            currentPath = finalPath;
+            AudioCache.getInstance().onPlayed(finalPath);
+            notifyStateChanged();
+        }
+        Log.d(TAG, "stream finished: " + key + " -> " + finalPath);
+    }
+
     private void addToHistory(QueueItem item) {
         if (item == null) return;
         history.add(item);
@@ -440,7 +609,9 @@ public class MusicPlayerManager {
     public void clearQueue() {
         synchronized (queue) {
             queue.clear();
+            prefetchRequested.clear();
             currentQueueIndex = -1;
+            retargetPrefetch();
         }
         Log.d(TAG, "Queue cleared");
     }
@@ -453,6 +624,7 @@ public class MusicPlayerManager {
         i.setAction(MusicPlayerService.ACTION_PAUSE);
         appContext.startService(i);
 
+        reanchor();
         isPlaying = false;
         notifyStateChanged();
     }
@@ -465,6 +637,7 @@ public class MusicPlayerManager {
         i.setAction(MusicPlayerService.ACTION_PLAY);
         appContext.startService(i);
 
+        reanchor();
         isPlaying = true;
         notifyStateChanged();
     }
@@ -486,11 +659,16 @@ public class MusicPlayerManager {
         i.setAction(MusicPlayerService.ACTION_SEEK);
         i.putExtra(MusicPlayerService.EXTRA_SEEK_MS, ms);
         appContext.startService(i);
+
+        // pokaż nową pozycję od razu, serwis potwierdzi ją po zakończeniu seeka
+        currentPosition = ms;
+        positionAnchor = SystemClock.elapsedRealtime();
+        notifyStateChanged();
     }
 
     // Getters
     public boolean isPlaying() { return isPlaying; }
-    public int getCurrentPosition() { return currentPosition; }
+    public int getCurrentPosition() { return (int) extrapolatedPosition(SystemClock.elapsedRealtime()); }
     public int getDuration() { return duration; }
     public String getCurrentTitle() { return currentTitle; }
     public String getCurrentImageUrl() { return currentImageUrl; }
@@ -498,72 +676,122 @@ public class MusicPlayerManager {
     public void setCurrentImageUrl(String url) { currentImageUrl = url; }
     public List<QueueItem> getQueue() { synchronized (queue) { return new ArrayList<>(queue); } }
     public int getQueueSize() { synchronized (queue) { return queue.size(); } }
+    public int getCurrentQueueIndex() { synchronized (queue) { return currentQueueIndex; } }
 
-    // Async download helper — uses Chaquopy main.play_song(query, outputPath) like your fragments
+    // Async download helper — goes through the shared DownloadEngine, so repeated next/prev
+    // or a parallel album preload never start a second yt-dlp run for the same track
     private void startDownloadForQueueItem(QueueItem item, int index, boolean playWhenReady) {
+        startDownloadForQueueItem(item, index, playWhenReady, playWhenReady
+                ? DownloadEngine.Priority.NOW_PLAYING
+                : DownloadEngine.Priority.NEXT_UP);
+    }
+
+    private void startDownloadForQueueItem(QueueItem item, int index, boolean playWhenReady,
+                                           DownloadEngine.Priority priority) {
         if (item == null) return;
 
-        new Thread(() -> {
-            try {
-                // prepare paths
-                File dir = appContext.getExternalFilesDir("Music");
-                if (dir == null) {
-                    Log.e(TAG, "Storage unavailable for downloads");
-                    item.isDownloading = false;
-                    return;
+        item.isDownloading = true;
+        DownloadEngine engine = DownloadEngine.getInstance();
+        if (playWhenReady) {
+            // start as soon as enough of the file is there; the final path still arrives below
+            engine.requestPlayable(item.identity(), priority).thenAccept(playable -> {
+                if (playable == null) return;
+                synchronized (queue) {
+                    boolean stillCurrent = index == currentQueueIndex
+                            && index < queue.size() && queue.get(index) == item;
+                    if (stillCurrent && !playable.equals(PartialDownload.resolve(currentPath))) {
+                        play(playable, item.title, item.imageUrl);
+                    }
                 }
-
-                // meta often contains artist — fallback to title if not
-                String artist = item.meta != null ? item.meta : "";
-                String filename = (artist + "_" + item.title).replaceAll("[^a-zA-Z0-9_\\-]", "_") + ".mp3";
-                File outFile = new File(dir, filename);
-                String outputPath = outFile.getAbsolutePath();
-
-                // If file already downloaded by someone else while we queued -> just set path
-                if (outFile.exists()) {
-                    item.path = outFile.getAbsolutePath();
+            });
+        }
+        engine.request(item.identity(), priority)
+                .whenComplete((path, error) -> {
                     item.isDownloading = false;
-                    Log.d(TAG, "startDownload: file already exists -> " + item.path);
-                    if (playWhenReady && index == currentQueueIndex) {
-                        play(item.path, item.title, item.imageUrl);
+                    synchronized (queue) {
+                        prefetchRequested.remove(item);
+                    }
+                    if (error != null) {
+                        Log.e(TAG, "Error downloading queue item: " + item.title, error);
+                        return;
+                    }
+                    if (path == null || path.isEmpty()) {
+                        Log.w(TAG, "startDownload: download returned no path for " + item.title);
+                        return;
                     }
-                    notifyStateChanged();
-                    return;
-                }
-
-                // call python main.play_song(query, outputPath)
-                Python py = Python.getInstance();
-                PyObject mainModule = py.getModule("main");
-
-                String query = (artist.isEmpty() ? item.title : (artist + " " + item.title)).trim();
-                Log.d(TAG, "startDownload: downloading: " + query + " -> " + outputPath);
-
-                PyObject result = mainModule.callAttr("play_song", query, outputPath);
-                String path = (result != null) ? result.toString() : null;
 
-                if (path != null && !path.isEmpty()) {
                     item.path = path;
-                    item.isDownloading = false;
                     Log.d(TAG, "startDownload: downloaded -> " + path);
 
-                    // If this is the currently requested to play item, play it now
+                    // playback (if wanted) was started by requestPlayable above
+                    boolean isNext;
                     synchronized (queue) {
-                        if (playWhenReady && index == currentQueueIndex) {
-                            play(path, item.title, item.imageUrl);
-                        }
+                        isNext = !queue.isEmpty() && currentQueueIndex >= 0
+                                && queue.get((currentQueueIndex + 1) % queue.size()) == item;
                     }
+                    // the upcoming file just landed -> let the service chain it for gapless play
+                    if (isNext) refreshServiceNextIfChanged();
 
                     // notify UI
                     notifyStateChanged();
-                } else {
-                    item.isDownloading = false;
-                    Log.w(TAG, "startDownload: download returned no path for " + item.title);
-                }
-            } catch (Exception e) {
-                item.isDownloading = false;
-                Log.e(TAG, "Error downloading queue item: " + item.title, e);
+                });
+    }
+
+    // Schedules one window recomputation on the main thread. Filling a queue item by item (an album,
+    // the whole library) and then pointing it at the tapped track ends up in a single pass that
+    // already sees the real index, and in a single ACTION_PREPARE_NEXT for the service.
+    private void retargetPrefetch() {
+        if (prefetchPending.compareAndSet(false, true)) mainHandler.post(runPrefetch);
+    }
+
+    private final Runnable runPrefetch = () -> {
+        prefetchPending.set(false);
+        synchronized (queue) {
+            prefetchNow();
+        }
+    };
+
+    // Re-computes the look-ahead window around currentQueueIndex (in playDirection) and asks the
+    // DownloadEngine for every item in it that has no file yet. The immediate neighbour gets the
+    // NEXT_UP lane, the rest are background preloads; items that left the window are demoted.
+    // Must be called with the queue lock held.
+    private void prefetchNow() {
+        List<QueueItem> window = new ArrayList<>();
+        int size = queue.size();
+        if (currentQueueIndex >= 0 && size > 1) {
+            int steps = Math.min(prefetchWindow, size - 1);
+            for (int i = 1; i <= steps; i++) {
+                // queue wraps around in playNext/playPrevious, so the window does too
+                int idx = ((currentQueueIndex + playDirection * i) % size + size) % size;
+                window.add(queue.get(idx));
             }
-        }).start();
+        }
+
+        for (QueueItem old : prefetchTargets) {
+            if (!window.contains(old) && !TrackStore.getInstance().isPresent(old.path)) {
+                DownloadEngine.getInstance().demote(old.identity());
+                if (prefetchRequested.containsKey(old)) prefetchRequested.put(old, DownloadEngine.Priority.PRELOAD);
+            }
+        }
+        prefetchTargets.clear();
+        prefetchTargets.addAll(window);
+
+        for (int i = 0; i < window.size(); i++) {
+            QueueItem item = window.get(i);
+            if (TrackStore.getInstance().isPresent(item.path)) continue;
+            DownloadEngine.Priority priority = i == 0
+                    ? DownloadEngine.Priority.NEXT_UP
+                    : DownloadEngine.Priority.PRELOAD;
+            DownloadEngine.Priority requested = prefetchRequested.get(item);
+            if (requested != null && requested.ordinal() <= priority.ordinal()) continue;
+            prefetchRequested.put(item, priority);
+            startDownloadForQueueItem(item, queue.indexOf(item), false, priority);
+        }
+        refreshServiceNextIfChanged();
+        if (!window.isEmpty()) {
+            Log.d(TAG, "retargetPrefetch: index=" + currentQueueIndex + " dir=" + playDirection
+                    + " window=" + window.size());
+        }
     }
 
     public boolean isBuffering() { return isBuffering; }
@@ -573,15 +801,25 @@ public class MusicPlayerManager {
         public String title;
         public String imageUrl;
         public String meta; // used for artist or other metadata
-        public boolean isDownloading = false;
+        public String trackId; // Spotify id when the screen had one
+        public volatile boolean isDownloading = false;
 
         public QueueItem(String path, String title, String meta, String imgurl) {
+            this(path, title, meta, imgurl, null);
+        }
+
+        public QueueItem(String path, String title, String meta, String imgurl, String trackId) {
             this.path = path;
             this.title = title;
             this.imageUrl = imgurl;
             this.meta = meta; // jeśli meta to też artist, nie szkodzi
+            this.trackId = trackId;
         }
 
+        // meta often contains artist
+        TrackIdentity identity() {
+            return TrackIdentity.of(trackId, meta, title);
+        }
 
 
         @Override
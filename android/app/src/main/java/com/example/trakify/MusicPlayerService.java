@@ -9,15 +9,15 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.drawable.Drawable;
 import android.media.AudioAttributes;
 import android.media.MediaPlayer;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.os.PowerManager;
+import android.support.v4.media.MediaMetadataCompat;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -29,12 +29,10 @@ import androidx.media.app.NotificationCompat.MediaStyle;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.CustomTarget;
-import com.bumptech.glide.request.transition.Transition;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Objects;
 
 public class MusicPlayerService extends Service {
     public static final String TAG = "MusicPlayerService";
@@ -46,16 +44,13 @@ public class MusicPlayerService extends Service {
     public static final String ACTION_SEEK = "com.example.trakify.action.SEEK";
     public static final String ACTION_NEXT = "com.example.trakify.action.NEXT";
     public static final String ACTION_PREV = "com.example.trakify.action.PREV";
+    public static final String ACTION_PREPARE_NEXT = "com.example.trakify.action.PREPARE_NEXT";
 
     public static final String EXTRA_PATH = "extra_path";
     public static final String EXTRA_TITLE = "extra_title";
     public static final String EXTRA_SEEK_MS = "extra_seek_ms";
     public static final String EXTRA_IMAGE = "extra_image";
 
-    public static final String BROADCAST_PLAYBACK_STATE = "com.example.trakify.BROADCAST_PLAYBACK_STATE";
-    public static final String BROADCAST_PLAYBACK_POS = "com.example.trakify.BROADCAST_PLAYBACK_POS";
-    public static final String BROADCAST_TRACK_COMPLETED = "com.example.trakify.BROADCAST_TRACK_COMPLETED";
-
     private static final String CHANNEL_ID = "trakify_media_channel";
     private static final int NOTIF_ID = 0x1001;
 
@@ -63,30 +58,34 @@ public class MusicPlayerService extends Service {
     private MediaPlayer mediaPlayer;
     private NotificationManagerCompat notifMgr;
 
+    // Gapless: the upcoming queue item is prepared on a second player and chained with
+    // setNextMediaPlayer, so the hand-off happens inside the framework without a gap.
+    private MediaPlayer nextPlayer;
+    private boolean nextPrepared = false;
+    private String nextPath;
+    private String nextTitle;
+    private String nextImageUrl;
+
     private String currentTitle;
     private String currentPath;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // first-tick polling for PlaybackTrace: the first position > 0 is the first audible frame
+    private static final long FIRST_TICK_POLL_MS = 20;
+    private static final long FIRST_TICK_TIMEOUT_MS = 5_000;
     private Bitmap currentImageBitmap;
     private String currentImageUrl;
     private String currentAlbumImageUrl;
     private boolean albumMode = false;
 
-    private final Handler posHandler = new Handler(Looper.getMainLooper());
-    private final Runnable posRunnable = new Runnable() {
-        @Override
-        public void run() {
-            if (mediaPlayer != null) {
-                try {
-                    sendPositionBroadcast();
-                    // Update notification every 1 second to refresh progress
-                    updateNotification(mediaPlayer.isPlaying());
-                    posHandler.postDelayed(this, 1000);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in posRunnable", e);
-                    posHandler.postDelayed(this, 1000);
-                }
-            }
-        }
-    };
+    // Notification: built only when what it shows changes; the progress bar comes from the
+    // session's PlaybackState (position + speed), which the system UI animates on its own
+    private NotificationCompat.Action actionPrev, actionPlay, actionPause, actionNext;
+    private PendingIntent openAppPending;
+    private ArtworkCache artwork;
+    private boolean foreground = false;
+    private String shownTitle;
+    private boolean shownPlaying;
+    private Bitmap shownArt;
 
     @Override
     public void onCreate() {
@@ -96,6 +95,8 @@ public class MusicPlayerService extends Service {
         notifMgr = NotificationManagerCompat.from(this);
 
         createNotificationChannel();
+        createNotificationActions();
+        artwork = new ArtworkCache(this);
 
         mediaSession = new MediaSessionCompat(this, "TrakifyMediaSession");
         mediaSession.setFlags(MediaSessionCompat.FLAG_HANDLES_MEDIA_BUTTONS | MediaSessionCompat.FLAG_HANDLES_TRANSPORT_CONTROLS);
@@ -183,6 +184,10 @@ public class MusicPlayerService extends Service {
             }
             updateNotification(mediaPlayer != null && mediaPlayer.isPlaying());
 
+        } else if (ACTION_PREPARE_NEXT.equals(action)) {
+            // manager's queue changed or the next file just landed on disk
+            prepareNextPlayer();
+
         } else if (ACTION_PREV.equals(action)) {
             Log.d(TAG, "ACTION_PREV received");
             try {
@@ -198,9 +203,25 @@ public class MusicPlayerService extends Service {
 
     private void playPath(String path, String title, @Nullable String imageUrl) {
         if (path == null) return;
+        // a download still in progress is streamed from its growing temp file; a stream key
+        // whose download finished before this intent arrived maps to the final file
+        PartialDownload partial = PartialDownload.get(path);
+        if (partial == null) path = PartialDownload.resolve(path);
         File f = new File(path);
-        if (!f.exists() || f.isDirectory()) {
+        if (partial == null && (!f.exists() || f.isDirectory())) {
             Log.e(TAG, "playPath: invalid file: " + path);
+            MusicPlayerManager.getInstance().onPlayerError("invalid_file");
+            return;
+        }
+
+        // manual skip to the track we already prepared in the background -> swap instantly
+        if (nextPlayer != null && nextPrepared && path.equals(nextPath)) {
+            nextTitle = title != null ? title : f.getName();
+            nextImageUrl = imageUrl;
+            PlaybackTrace.getInstance().markPath(path, PlaybackTrace.Span.PREPARE);
+            PlaybackTrace.getInstance().markPath(path, PlaybackTrace.Span.PREPARED);
+            switchToNextPlayer(true);
+            awaitFirstTick(mediaPlayer, path);
             return;
         }
 
@@ -208,90 +229,74 @@ public class MusicPlayerService extends Service {
         currentTitle = title != null ? title : f.getName();
         currentImageUrl = imageUrl;
 
+        releaseNextPlayer();
+
         // initialize/reset player safely
         initMediaPlayerIfNeeded();
 
         try {
             mediaPlayer.reset();
-            mediaPlayer.setAudioAttributes(new AudioAttributes.Builder()
-                    .setUsage(AudioAttributes.USAGE_MEDIA)
-                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                    .build());
+            mediaPlayer.setAudioAttributes(MUSIC_ATTRIBUTES);
 
             try {
-                mediaPlayer.setDataSource(path);
+                if (partial != null) {
+                    Log.d(TAG, "playPath: streaming partial download " + path);
+                    mediaPlayer.setDataSource(partial.newSource());
+                } else {
+                    mediaPlayer.setDataSource(path);
+                }
             } catch (SecurityException se) {
                 Log.e(TAG, "SecurityException setDataSource: " + se.getMessage(), se);
                 // notify UI of error
-                Intent b = new Intent(BROADCAST_PLAYBACK_STATE);
-                b.setPackage(getPackageName());
-                b.putExtra("playing", false);
-                b.putExtra("error", "permission_denied");
-                sendBroadcast(b);
+                MusicPlayerManager.getInstance().onPlayerError("permission_denied");
                 return;
             }
 
-            // show initial notification (buffering state)
-            startForeground(NOTIF_ID, buildNotification(false));
+            // initial notification and session metadata (buffering state), with the cover if cached
+            showArtwork(currentImageUrl);
 
             // prepare async
+            PlaybackTrace.getInstance().markPath(path, PlaybackTrace.Span.PREPARE);
             mediaPlayer.prepareAsync();
 
-            // load art async if url given
-            if (currentImageUrl != null && !currentImageUrl.isEmpty()) {
-                loadAlbumArtAsync(currentImageUrl);
-            } else {
-                currentImageBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.ic_album_placeholder);
-                updateNotification(false);
-            }
-
         } catch (IOException | IllegalStateException e) {
             Log.e(TAG, "playPath failed", e);
             stopAndCleanup();
         }
     }
 
-    private void initMediaPlayerIfNeeded() {
-        if (mediaPlayer == null) {
-            mediaPlayer = new MediaPlayer();
-            mediaPlayer.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
-
-            mediaPlayer.setOnPreparedListener(mp -> {
+    // ends a PlaybackTrace once the position moves; nothing to do for untraced tracks
+    private void awaitFirstTick(MediaPlayer mp, String path) {
+        if (mp == null || path == null || !PlaybackTrace.getInstance().isTraced(path)) return;
+        long start = SystemClock.elapsedRealtime();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mp != mediaPlayer || !path.equals(currentPath)) return;
+                int position;
                 try {
-                    mp.start();
-                    updateNotification(true);
-                    sendStateBroadcast(true);
-
-                    // start position updates
-                    posHandler.removeCallbacks(posRunnable);
-                    posHandler.post(posRunnable);
-
-                    // update playback state on media session with proper actions
-                    updateMediaSessionPlaybackState(PlaybackStateCompat.STATE_PLAYING);
-                } catch (Exception e) {
-                    Log.e(TAG, "onPrepared error", e);
+                    position = mp.getCurrentPosition();
+                } catch (IllegalStateException e) {
+                    return;
                 }
-            });
-
-            mediaPlayer.setOnCompletionListener(mp -> {
-                Log.d(TAG, "MediaPlayer onCompletion");
-                sendStateBroadcast(false);
-                posHandler.removeCallbacks(posRunnable);
-
-                // forward to manager so it can start next (and potentially download it)
-                Intent completedIntent = new Intent(BROADCAST_TRACK_COMPLETED);
-                completedIntent.setPackage(getPackageName());
-                sendBroadcast(completedIntent);
+                if (position > 0) {
+                    PlaybackTrace.getInstance().markPath(path, PlaybackTrace.Span.FIRST_TICK);
+                } else if (SystemClock.elapsedRealtime() - start < FIRST_TICK_TIMEOUT_MS) {
+                    handler.postDelayed(this, FIRST_TICK_POLL_MS);
+                }
+            }
+        });
+    }
 
-                // update media session state
-                updateMediaSessionPlaybackState(PlaybackStateCompat.STATE_STOPPED);
-            });
+    private static final AudioAttributes MUSIC_ATTRIBUTES = new AudioAttributes.Builder()
+            .setUsage(AudioAttributes.USAGE_MEDIA)
+            .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+            .build();
 
-            mediaPlayer.setOnErrorListener((mp, what, extra) -> {
-                Log.e(TAG, "MediaPlayer error what=" + what + " extra=" + extra);
-                stopAndCleanup();
-                return true;
-            });
+    private void initMediaPlayerIfNeeded() {
+        if (mediaPlayer == null) {
+            mediaPlayer = newPlayer();
+            attachPlaybackListeners(mediaPlayer);
         } else {
             try {
                 if (mediaPlayer.isPlaying()) mediaPlayer.stop();
@@ -300,22 +305,209 @@ public class MusicPlayerService extends Service {
         }
     }
 
+    private MediaPlayer newPlayer() {
+        MediaPlayer mp = new MediaPlayer();
+        mp.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
+        mp.setAudioAttributes(MUSIC_ATTRIBUTES);
+        return mp;
+    }
+
+    // listeners of the player that is actually audible
+    private void attachPlaybackListeners(MediaPlayer player) {
+        player.setOnPreparedListener(mp -> {
+            try {
+                PlaybackTrace.getInstance().markPath(currentPath, PlaybackTrace.Span.PREPARED);
+                mp.start();
+                awaitFirstTick(mp, currentPath);
+                updateNotification(true);
+                publishState(true);
+
+                // duration is known now; the session's position + speed drive the system progress bar
+                updateMediaSessionMetadata();
+                updateMediaSessionPlaybackState(PlaybackStateCompat.STATE_PLAYING);
+
+                // hide the next track's prepare cost behind this one
+                prepareNextPlayer();
+            } catch (Exception e) {
+                Log.e(TAG, "onPrepared error", e);
+            }
+        });
+
+        player.setOnCompletionListener(mp -> {
+            if (mp != mediaPlayer) return;
+            Log.d(TAG, "MediaPlayer onCompletion");
+
+            // the framework has already started the chained player -> just swap our state
+            if (nextPlayer != null && nextPrepared) {
+                switchToNextPlayer(false);
+                return;
+            }
+
+            // update media session state
+            updateMediaSessionPlaybackState(PlaybackStateCompat.STATE_STOPPED);
+
+            // forward to manager so it can start next (and potentially download it)
+            MusicPlayerManager.getInstance().onTrackCompleted();
+        });
+
+        // the seek landed: re-anchor the position listeners extrapolate from
+        player.setOnSeekCompleteListener(mp -> {
+            if (mp != mediaPlayer) return;
+            try {
+                boolean playing = mp.isPlaying();
+                publishState(playing);
+                updateMediaSessionPlaybackState(playing ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED);
+            } catch (Exception e) {
+                Log.e(TAG, "onSeekComplete error", e);
+            }
+        });
+
+        player.setOnErrorListener((mp, what, extra) -> {
+            Log.e(TAG, "MediaPlayer error what=" + what + " extra=" + extra);
+            stopAndCleanup();
+            return true;
+        });
+    }
+
+    /**
+     * Prepares the manager's upcoming queue item on a second player and chains it to the
+     * current one. No-op when it is already chained, or when the next item has no file yet
+     * (the manager sends ACTION_PREPARE_NEXT once it lands).
+     */
+    private void prepareNextPlayer() {
+        if (mediaPlayer == null || currentPath == null) return;
+        prefetchUpcomingArtwork();
+
+        MusicPlayerManager.QueueItem next = MusicPlayerManager.getInstance().peekNext();
+        String path = next != null ? next.path : null;
+        if (path != null && path.equals(nextPath) && nextPlayer != null) return;
+
+        releaseNextPlayer();
+        if (path == null || path.equals(currentPath) || !new File(path).exists()) return;
+
+        MediaPlayer candidate = newPlayer();
+        nextPlayer = candidate;
+        nextPath = path;
+        nextTitle = next.title;
+        nextImageUrl = next.imageUrl;
+
+        candidate.setOnPreparedListener(mp -> {
+            if (mp != nextPlayer || mediaPlayer == null) return;
+            try {
+                mediaPlayer.setNextMediaPlayer(mp);
+                nextPrepared = true;
+                Log.d(TAG, "Next track chained: " + nextTitle);
+            } catch (Exception e) {
+                Log.e(TAG, "setNextMediaPlayer failed", e);
+                releaseNextPlayer();
+            }
+        });
+        candidate.setOnErrorListener((mp, what, extra) -> {
+            Log.e(TAG, "Next player error what=" + what + " extra=" + extra);
+            if (mp == nextPlayer) releaseNextPlayer();
+            return true;
+        });
+
+        try {
+            candidate.setDataSource(path);
+            candidate.prepareAsync();
+        } catch (IOException | IllegalStateException | SecurityException e) {
+            Log.e(TAG, "prepareNextPlayer failed", e);
+            releaseNextPlayer();
+        }
+    }
+
+    private void releaseNextPlayer() {
+        if (mediaPlayer != null) {
+            try { mediaPlayer.setNextMediaPlayer(null); } catch (Exception ignored) {}
+        }
+        if (nextPlayer != null) {
+            try { nextPlayer.release(); } catch (Exception ignored) {}
+        }
+        nextPlayer = null;
+        nextPrepared = false;
+        nextPath = null;
+        nextTitle = null;
+        nextImageUrl = null;
+    }
+
+    /**
+     * Makes the prepared next player the current one. For a natural completion the framework
+     * already started it; for a manual skip we start it ourselves. State, session metadata and
+     * the notification are swapped once here.
+     */
+    private void switchToNextPlayer(boolean manualSkip) {
+        MediaPlayer previous = mediaPlayer;
+        MediaPlayer promoted = nextPlayer;
+        String previousImageUrl = currentImageUrl;
+
+        currentPath = nextPath;
+        currentTitle = nextTitle != null ? nextTitle : new File(nextPath).getName();
+        currentImageUrl = nextImageUrl != null ? nextImageUrl : currentAlbumImageUrl;
+
+        // detach without releasing the promoted player
+        nextPlayer = null;
+        releaseNextPlayer();
+
+        mediaPlayer = promoted;
+        attachPlaybackListeners(mediaPlayer);
+        if (previous != null) {
+            try { previous.setNextMediaPlayer(null); } catch (Exception ignored) {}
+            try { previous.release(); } catch (Exception ignored) {}
+        }
+        if (manualSkip) {
+            try { mediaPlayer.start(); } catch (Exception e) { Log.e(TAG, "start after skip failed", e); }
+        } else {
+            MusicPlayerManager.getInstance().onGaplessAdvance(currentPath);
+        }
+        Log.d(TAG, "Gapless hand-off -> " + currentTitle);
+
+        publishState(true);
+        updateMediaSessionPlaybackState(PlaybackStateCompat.STATE_PLAYING);
+        updateMediaSessionMetadata();
+
+        // prefetched art is already decoded, so this is normally a single rebuild
+        if (!Objects.equals(currentImageUrl, previousImageUrl)) showArtwork(currentImageUrl);
+        updateNotification(true);
+
+        prepareNextPlayer();
+    }
+
+    private void updateMediaSessionMetadata() {
+        MediaMetadataCompat.Builder meta = new MediaMetadataCompat.Builder()
+                .putString(MediaMetadataCompat.METADATA_KEY_TITLE, currentTitle != null ? currentTitle : "");
+        meta.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, currentArtwork());
+        int duration = 0;
+        try {
+            if (mediaPlayer != null) duration = mediaPlayer.getDuration();
+        } catch (Exception ignored) {} // not prepared yet
+        if (duration > 0) meta.putLong(MediaMetadataCompat.METADATA_KEY_DURATION, duration);
+        mediaSession.setMetadata(meta.build());
+    }
+
+    private static final long SESSION_ACTIONS = PlaybackStateCompat.ACTION_PLAY
+            | PlaybackStateCompat.ACTION_PAUSE
+            | PlaybackStateCompat.ACTION_PLAY_PAUSE
+            | PlaybackStateCompat.ACTION_SKIP_TO_NEXT
+            | PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS
+            | PlaybackStateCompat.ACTION_STOP
+            | PlaybackStateCompat.ACTION_SEEK_TO;
+
+    // Called on transitions only; position + speed let the system UI advance the progress itself
     private void updateMediaSessionPlaybackState(int state) {
-        long position = mediaPlayer != null ? mediaPlayer.getCurrentPosition() : 0;
-
-        PlaybackStateCompat.Builder stateBuilder = new PlaybackStateCompat.Builder()
-                .setState(state, position, 1.0f)
-                .setActions(
-                        PlaybackStateCompat.ACTION_PLAY |
-                                PlaybackStateCompat.ACTION_PAUSE |
-                                PlaybackStateCompat.ACTION_PLAY_PAUSE |
-                                PlaybackStateCompat.ACTION_SKIP_TO_NEXT |
-                                PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS |
-                                PlaybackStateCompat.ACTION_STOP |
-                                PlaybackStateCompat.ACTION_SEEK_TO
-                );
-
-        mediaSession.setPlaybackState(stateBuilder.build());
+        long position = 0;
+        float speed = 1.0f;
+        if (mediaPlayer != null) {
+            try {
+                position = mediaPlayer.getCurrentPosition();
+                speed = mediaPlayer.getPlaybackParams().getSpeed();
+            } catch (Exception ignored) {} // idle after reset()
+        }
+
+        mediaSession.setPlaybackState(new PlaybackStateCompat.Builder()
+                .setState(state, position, speed, SystemClock.elapsedRealtime())
+                .setActions(SESSION_ACTIONS)
+                .build());
     }
 
     private void resume() {
@@ -324,9 +516,7 @@ public class MusicPlayerService extends Service {
             try {
                 mediaPlayer.start();
                 updateNotification(true);
-                sendStateBroadcast(true);
-                posHandler.removeCallbacks(posRunnable);
-                posHandler.post(posRunnable);
+                publishState(true);
                 updateMediaSessionPlaybackState(PlaybackStateCompat.STATE_PLAYING);
             } catch (Exception e) {
                 Log.e(TAG, "resume error", e);
@@ -340,7 +530,7 @@ public class MusicPlayerService extends Service {
             try {
                 mediaPlayer.pause();
                 updateNotification(false);
-                sendStateBroadcast(false);
+                publishState(false);
                 updateMediaSessionPlaybackState(PlaybackStateCompat.STATE_PAUSED);
             } catch (Exception e) {
                 Log.e(TAG, "pause error", e);
@@ -352,11 +542,8 @@ public class MusicPlayerService extends Service {
         Log.d(TAG, "seekTo - ms: " + ms);
         if (mediaPlayer != null) {
             try {
+                // the new anchor (manager and session) is published from onSeekComplete
                 mediaPlayer.seekTo(ms);
-                sendPositionBroadcast();
-                updateMediaSessionPlaybackState(
-                        mediaPlayer.isPlaying() ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED
-                );
             } catch (Exception e) {
                 Log.e(TAG, "seekTo error", e);
             }
@@ -374,42 +561,40 @@ public class MusicPlayerService extends Service {
             Log.e(TAG, "Error stopping mediaPlayer", e);
         }
 
+        releaseNextPlayer();
         albumMode = false;
         currentAlbumImageUrl = null;
-        posHandler.removeCallbacks(posRunnable);
         try {
             stopForeground(true);
         } catch (Exception ignored) {}
+        foreground = false;
+        shownTitle = null;
         stopSelf();
-        sendStateBroadcast(false);
+        publishState(false);
         updateMediaSessionPlaybackState(PlaybackStateCompat.STATE_STOPPED);
     }
 
-    private void sendStateBroadcast(boolean playing) {
-        Intent b = new Intent(BROADCAST_PLAYBACK_STATE);
-        b.setPackage(getPackageName());
-        b.putExtra("playing", playing);
-        if (currentTitle != null) b.putExtra("title", currentTitle);
-        if (currentPath != null) b.putExtra("path", currentPath);
-        if (currentImageUrl != null) b.putExtra("image", currentImageUrl);
-        sendBroadcast(b);
-    }
-
-    private void sendPositionBroadcast() {
-        if (mediaPlayer == null) return;
-        try {
-            int pos = mediaPlayer.getCurrentPosition();
-            int dur = mediaPlayer.getDuration();
-            Intent b = new Intent(BROADCAST_PLAYBACK_POS);
-            b.setPackage(getPackageName());
-            b.putExtra("position", pos);
-            b.putExtra("duration", dur);
-            if (currentPath != null) b.putExtra("path", currentPath);
-            if (currentImageUrl != null) b.putExtra("image", currentImageUrl);
-            sendBroadcast(b);
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending position broadcast", e);
+    /**
+     * Hands the current state and a position anchor (position, duration, speed, taken now) to
+     * MusicPlayerManager. Same process and main thread, so it is a plain call: no Intent, no
+     * binder, and nothing at all while the track simply keeps playing.
+     */
+    private void publishState(boolean playing) {
+        int pos = 0;
+        int dur = 0;
+        float speed = 1f;
+        if (mediaPlayer != null) {
+            // getDuration()/getPlaybackParams() throw in the idle state after reset()
+            try {
+                pos = mediaPlayer.getCurrentPosition();
+                dur = mediaPlayer.getDuration();
+                speed = mediaPlayer.getPlaybackParams().getSpeed();
+            } catch (Exception ignored) {}
         }
+        // a streamed track is reported under its final file once the download finished
+        currentPath = PartialDownload.resolve(currentPath);
+        MusicPlayerManager.getInstance().onPlayerState(playing, currentTitle, currentPath, currentImageUrl,
+                pos, dur, speed);
     }
 
     private void createNotificationChannel() {
@@ -428,30 +613,25 @@ public class MusicPlayerService extends Service {
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
     }
 
-    private Notification buildNotification(boolean isPlaying) {
-        String title = currentTitle != null ? currentTitle : "Brak utworu";
-        String artist = "";
-
+    // PendingIntents and actions never change, so they are created once per service
+    private void createNotificationActions() {
         // Unique request codes to avoid PendingIntent collisions
-        PendingIntent prevPending = makeServicePendingIntent(ACTION_PREV, 101);
-        PendingIntent playPending = makeServicePendingIntent(isPlaying ? ACTION_PAUSE : ACTION_PLAY, 102);
-        PendingIntent nextPending = makeServicePendingIntent(ACTION_NEXT, 103);
-        PendingIntent stopPending = makeServicePendingIntent(ACTION_STOP, 104);
-        PendingIntent openAppPending = PendingIntent.getActivity(this, 105,
+        actionPrev = new NotificationCompat.Action(R.drawable.ic_media_previous, "Previous",
+                makeServicePendingIntent(ACTION_PREV, 101));
+        actionPlay = new NotificationCompat.Action(R.drawable.ic_media_play, "Play",
+                makeServicePendingIntent(ACTION_PLAY, 102));
+        actionPause = new NotificationCompat.Action(R.drawable.ic_media_pause, "Pause",
+                makeServicePendingIntent(ACTION_PAUSE, 106));
+        actionNext = new NotificationCompat.Action(R.drawable.ic_media_next, "Next",
+                makeServicePendingIntent(ACTION_NEXT, 103));
+        openAppPending = PendingIntent.getActivity(this, 105,
                 new Intent(this, MainActivity.class),
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
 
-        // Use custom drawable resources instead of system icons
-        NotificationCompat.Action actionPrev =
-                new NotificationCompat.Action(R.drawable.ic_media_previous, "Previous", prevPending);
-        NotificationCompat.Action actionPlay =
-                new NotificationCompat.Action(
-                        isPlaying ? R.drawable.ic_media_pause : R.drawable.ic_media_play,
-                        isPlaying ? "Pause" : "Play",
-                        playPending
-                );
-        NotificationCompat.Action actionNext =
-                new NotificationCompat.Action(R.drawable.ic_media_next, "Next", nextPending);
+    private Notification buildNotification(boolean isPlaying) {
+        String title = currentTitle != null ? currentTitle : "Brak utworu";
+        String artist = "";
 
         MediaStyle style = new MediaStyle()
                 .setMediaSession(mediaSession.getSessionToken())
@@ -467,59 +647,70 @@ public class MusicPlayerService extends Service {
                 .setPriority(NotificationCompat.PRIORITY_LOW)
                 .setStyle(style)
                 .addAction(actionPrev)
-                .addAction(actionPlay)
+                .addAction(isPlaying ? actionPause : actionPlay)
                 .addAction(actionNext);
 
         // large icon (album art)
-        Bitmap large = currentImageBitmap != null
-                ? currentImageBitmap
-                : BitmapFactory.decodeResource(getResources(), R.drawable.ic_album_placeholder);
-        b.setLargeIcon(large);
+        b.setLargeIcon(currentArtwork());
 
         return b.build();
     }
 
+    /**
+     * Posts the notification if the track, play/pause or artwork changed since the last one;
+     * otherwise does nothing. startForeground() only runs once per foreground period.
+     */
     private void updateNotification(boolean isPlaying) {
+        if (foreground && isPlaying == shownPlaying && currentImageBitmap == shownArt
+                && Objects.equals(currentTitle, shownTitle)) {
+            return;
+        }
         try {
             Notification n = buildNotification(isPlaying);
-            if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
-                return;
+            if (!foreground) {
+                startForeground(NOTIF_ID, n);
+                foreground = true;
+            } else if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
+                notifMgr.notify(NOTIF_ID, n);
             }
-            notifMgr.notify(NOTIF_ID, n);
-            startForeground(NOTIF_ID, n);
+            shownTitle = currentTitle;
+            shownPlaying = isPlaying;
+            shownArt = currentImageBitmap;
         } catch (Exception e) {
             Log.e(TAG, "updateNotification error", e);
         }
     }
 
-    private void loadAlbumArtAsync(String url) {
-        if (url == null || url.isEmpty()) return;
-        try {
-            Glide.with(this)
-                    .asBitmap()
-                    .load(url)
-                    .placeholder(R.drawable.ic_album_placeholder)
-                    .error(R.drawable.ic_album_placeholder)
-                    .into(new CustomTarget<Bitmap>() {
-                        @Override
-                        public void onResourceReady(Bitmap resource, Transition<? super Bitmap> transition) {
-                            currentImageBitmap = resource;
-                            updateNotification(mediaPlayer != null && mediaPlayer.isPlaying());
-                        }
-
-                        @Override
-                        public void onLoadCleared(@Nullable Drawable placeholder) {
-                            // ignore
-                        }
-
-                        @Override
-                        public void onLoadFailed(@Nullable Drawable errorDrawable) {
-                            currentImageBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.ic_album_placeholder);
-                            updateNotification(mediaPlayer != null && mediaPlayer.isPlaying());
-                        }
-                    });
-        } catch (Exception e) {
-            Log.e(TAG, "loadAlbumArtAsync error", e);
+    // evicted cache entries go back to Glide's pool, so never hand out a recycled bitmap
+    private Bitmap currentArtwork() {
+        return currentImageBitmap != null && !currentImageBitmap.isRecycled()
+                ? currentImageBitmap
+                : artwork.placeholder();
+    }
+
+    /**
+     * Points the session and notification at the cover for {@code url}: immediately when the
+     * cache has it (prefetched for queue items), otherwise the placeholder until it arrives.
+     */
+    private void showArtwork(@Nullable String url) {
+        Bitmap cached = artwork.get(url);
+        currentImageBitmap = cached != null ? cached : artwork.placeholder();
+        updateMediaSessionMetadata();
+        updateNotification(mediaPlayer != null && mediaPlayer.isPlaying());
+        if (cached != null) return;
+
+        artwork.load(url, (loadedUrl, bitmap) -> {
+            if (!Objects.equals(loadedUrl, currentImageUrl)) return; // track changed meanwhile
+            currentImageBitmap = bitmap;
+            updateMediaSessionMetadata();
+            updateNotification(mediaPlayer != null && mediaPlayer.isPlaying());
+        });
+    }
+
+    // Art of the next queue items, so the hand-off shows the cover without a network round trip
+    private void prefetchUpcomingArtwork() {
+        for (String url : MusicPlayerManager.getInstance().getUpcomingImageUrls()) {
+            artwork.prefetch(url);
         }
     }
 
@@ -530,7 +721,9 @@ public class MusicPlayerService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        posHandler.removeCallbacks(posRunnable);
+        handler.removeCallbacksAndMessages(null);
+        releaseNextPlayer();
+        artwork.clear();
         try {
             if (mediaPlayer != null) {
                 if (mediaPlayer.isPlaying()) mediaPlayer.stop();
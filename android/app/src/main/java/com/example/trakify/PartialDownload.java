@@ -0,0 +1,260 @@
+package com.example.trakify;
+
+import android.media.MediaDataSource;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A download that can be played before it finishes.
+ *
+ * The yt-dlp progress hook reports the temp file it writes and how much of it is there
+ * ({@link #onProgress}, called from Python). Once {@link #START_BYTES} are on disk
+ * {@link #playable()} completes with {@link #key}, a path that does not exist yet; the service
+ * recognises it with {@link #get} and plays it through {@link #newSource()}, whose reads block
+ * until the bytes they need have been written. yt-dlp renames the temp file when done, which
+ * keeps the already opened descriptor valid, and the finished file lands in the music dir
+ * exactly like a normal download. {@link #resolve} maps the key to that final path.
+ * Progress and the end of each pipeline stage ({@link #onStage}) also go to a {@link Listener}.
+ * {@link #cancel} asks the Python side to give up; it checks {@link #isCancelled} between blocks.
+ */
+public final class PartialDownload {
+    private static final String TAG = "PartialDownload";
+
+    /** Enough for the container header and a few seconds of audio. */
+    static final long START_BYTES = 256 * 1024;
+    // a read waiting longer than this means the download stalled
+    private static final long READ_TIMEOUT_MS = 45_000;
+    private static final int MAX_RESOLVED = 32;
+
+    private static final Map<String, PartialDownload> ACTIVE = new ConcurrentHashMap<>();
+    private static final Map<String, String> RESOLVED = new LinkedHashMap<String, String>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_RESOLVED;
+        }
+    };
+
+    /** Told about progress reports and finished stages, on the download thread. */
+    interface Listener {
+        void onProgress(PartialDownload download, long written, long total);
+
+        void onStage(PartialDownload download, String stage, long elapsedMs);
+    }
+
+    /** Stable path this download is played under until it finishes. */
+    public final String key;
+
+    private final CompletableFuture<String> playable = new CompletableFuture<>();
+    private final CompletableFuture<String> finished = new CompletableFuture<>();
+    private String tempPath;
+    private long written;
+    private long total;       // exact size, 0 while unknown
+    private boolean done;
+    private boolean failed;
+    private volatile Listener listener;
+    private volatile boolean cancelRequested;
+    private volatile boolean cancelSeen; // Python gave up because of it
+
+    PartialDownload(String key) {
+        this.key = key;
+        ACTIVE.put(key, this);
+    }
+
+    /** The download behind a key handed out by {@link #playable()}, or null. */
+    public static PartialDownload get(String path) {
+        return path != null ? ACTIVE.get(path) : null;
+    }
+
+    /** The final file for a stream key once its download finished, otherwise {@code path} itself. */
+    public static String resolve(String path) {
+        if (path == null) return null;
+        synchronized (RESOLVED) {
+            String resolved = RESOLVED.get(path);
+            return resolved != null ? resolved : path;
+        }
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** How far the start buffer is: 0..100, 100 once playable (or done). */
+    public synchronized int bufferPercent() {
+        if (done) return 100;
+        long need = total > 0 ? Math.min(START_BYTES, total) : START_BYTES;
+        return tempPath == null ? 0 : (int) Math.min(100, written * 100 / need);
+    }
+
+    /** Called from Python when a stage (search, resolve, transfer, finalize) ended. */
+    public void onStage(String stage, long elapsedMs) {
+        Listener l = listener;
+        if (l != null) l.onStage(this, stage, elapsedMs);
+    }
+
+    /** Asks the running download to stop at its next check; the .part stays for a later resume. */
+    void cancel() {
+        cancelRequested = true;
+    }
+
+    /** Takes back a {@link #cancel} the download has not acted on yet. */
+    void uncancel() {
+        cancelRequested = false;
+    }
+
+    /** Polled by api_yt while downloading; true means stop now. */
+    public boolean isCancelled() {
+        if (!cancelRequested) return false;
+        cancelSeen = true;
+        return true;
+    }
+
+    /** True once if the download stopped because of {@link #cancel}; clears it. */
+    boolean takeCancelSeen() {
+        boolean seen = cancelSeen;
+        cancelSeen = false;
+        return seen;
+    }
+
+    /** Completes with {@link #key} once playback can start, or with the final path if that came first. */
+    public CompletableFuture<String> playable() {
+        return playable;
+    }
+
+    /** Completes with the final path (null when the backend returned none) or exceptionally. */
+    public CompletableFuture<String> finished() {
+        return finished;
+    }
+
+    /** Called by api_yt's progress hook on the download thread. */
+    public void onProgress(String tempPath, long written, long total) {
+        boolean ready;
+        synchronized (this) {
+            if (done) return;
+            if (tempPath != null && !tempPath.isEmpty()) this.tempPath = tempPath;
+            this.written = Math.max(this.written, written);
+            if (total > 0) this.total = total;
+            ready = this.tempPath != null
+                    && this.written >= (this.total > 0 ? Math.min(START_BYTES, this.total) : START_BYTES);
+            notifyAll();
+        }
+        Listener l = listener;
+        if (l != null) l.onProgress(this, written, total);
+        if (ready && !playable.isDone()) {
+            Log.d(TAG, "playable after " + written + " bytes: " + key);
+            playable.complete(key);
+        }
+    }
+
+    void finish(String finalPath) {
+        // resolvable before any reader wakes up at the end of the file
+        if (finalPath != null) {
+            synchronized (RESOLVED) {
+                RESOLVED.put(key, finalPath);
+            }
+        }
+        synchronized (this) {
+            done = true;
+            failed = finalPath == null;
+            if (finalPath != null) {
+                long length = new File(finalPath).length();
+                written = Math.max(written, length);
+                total = length;
+            }
+            notifyAll();
+        }
+        ACTIVE.remove(key, this);
+        playable.complete(finalPath);
+        finished.complete(finalPath);
+    }
+
+    void fail(Throwable error) {
+        synchronized (this) {
+            done = true;
+            failed = true;
+            notifyAll();
+        }
+        ACTIVE.remove(key, this);
+        playable.completeExceptionally(error);
+        finished.completeExceptionally(error);
+    }
+
+    /** A data source over the growing file, for MediaPlayer.setDataSource. */
+    public MediaDataSource newSource() {
+        return new Source();
+    }
+
+    // blocks until byte `position` is on disk (true) or the download ended before it (false)
+    private synchronized boolean awaitAvailable(long position, Source source) throws IOException {
+        long deadline = System.currentTimeMillis() + READ_TIMEOUT_MS;
+        while (written <= position && !done) {
+            if (source.closed) throw new IOException("closed");
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) throw new IOException("download stalled at " + written + " bytes: " + key);
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", e);
+            }
+        }
+        if (failed && written <= position) throw new IOException("download failed: " + key);
+        return written > position;
+    }
+
+    // MediaPlayer reads from a single thread; close() comes from another one (reset/release)
+    // and must not wait for a read that is blocked on the download
+    private final class Source extends MediaDataSource {
+        private volatile RandomAccessFile file;
+        volatile boolean closed;
+
+        @Override
+        public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+            if (size == 0) return 0;
+            if (!awaitAvailable(position, this)) return -1; // end of the finished file
+            if (closed) throw new IOException("closed");
+            if (file == null) file = open();
+            long available;
+            synchronized (PartialDownload.this) {
+                available = written - position;
+            }
+            file.seek(position);
+            return file.read(buffer, offset, (int) Math.min(size, available));
+        }
+
+        @Override
+        public long getSize() {
+            synchronized (PartialDownload.this) {
+                return total > 0 ? total : -1;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            synchronized (PartialDownload.this) {
+                PartialDownload.this.notifyAll();
+            }
+            RandomAccessFile f = file;
+            if (f != null) f.close();
+        }
+
+        // the temp file, or the final one if the rename already happened
+        private RandomAccessFile open() throws IOException {
+            String temp;
+            synchronized (PartialDownload.this) {
+                temp = tempPath;
+            }
+            if (temp != null && new File(temp).isFile()) return new RandomAccessFile(temp, "r");
+            String resolved = resolve(key);
+            if (!resolved.equals(key) || new File(key).isFile()) return new RandomAccessFile(resolved, "r");
+            throw new IOException("no file for " + key);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.trakify;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import java.util.List;
+
+/**
+ * Hidden debug screen (long press on the Home tab): live counters of the download pipeline
+ * and the time-to-first-audio histograms of {@link PlaybackTrace}. Refreshes once a second
+ * while visible; everything it reads is in memory.
+ */
+public class PerfDebugFragment extends Fragment {
+
+    private static final long REFRESH_MS = 1000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private TextView tvPerf;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            if (tvPerf == null) return;
+            tvPerf.setText(render());
+            handler.postDelayed(this, REFRESH_MS);
+        }
+    };
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_perf_debug, container, false);
+        tvPerf = view.findViewById(R.id.tvPerf);
+        // tylko liczniki pobrań; histogramy TTFA zostają (są też w pliku)
+        view.findViewById(R.id.btnResetMetrics).setOnClickListener(v -> {
+            DownloadMetrics.getInstance().reset();
+            tvPerf.setText(render());
+        });
+        return view;
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        handler.post(refresh);
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        handler.removeCallbacks(refresh);
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        tvPerf = null;
+    }
+
+    private static String render() {
+        StringBuilder sb = new StringBuilder();
+        DownloadEngine engine = DownloadEngine.getInstance();
+        DownloadMetrics metrics = DownloadMetrics.getInstance();
+
+        sb.append("POBIERANIE\n");
+        sb.append("  w toku:            ").append(engine.getInFlightCount()).append('\n');
+        sb.append("  z dysku:           ").append(percent(engine.getDiskHitRate()))
+                .append(" z ").append(engine.getRequestCount()).append(" żądań\n");
+        int downloads = metrics.downloads();
+        sb.append("  wideo z cache:     ")
+                .append(percent(downloads > 0 ? (double) metrics.cachedResolutions() / downloads : 0))
+                .append(" z ").append(downloads).append(" pobrań, błędy ").append(metrics.failures()).append('\n');
+        sb.append("  przepustowość:     ").append(metrics.throughput() / 1024).append(" KB/s\n");
+        for (DownloadStats.Stage s : DownloadStats.Stage.values()) {
+            sb.append("  ").append(pad(s.name().toLowerCase(), 19)).append(metrics.stage(s)).append('\n');
+        }
+
+        sb.append("\nKOLEJKI PYTHONA\n");
+        PythonScheduler scheduler = PythonScheduler.getInstance();
+        for (PythonScheduler.Lane lane : PythonScheduler.Lane.values()) {
+            PythonScheduler.LaneStats s = scheduler.getStats(lane);
+            long waitMs = s.completed > 0 ? s.waitNanos / s.completed / 1_000_000 : 0;
+            sb.append("  ").append(pad(lane.name().toLowerCase(), 12))
+                    .append("czeka ").append(s.queued).append(" (max ").append(s.maxQueued).append(")")
+                    .append(", działa ").append(s.running)
+                    .append(", gotowe ").append(s.completed)
+                    .append(", śr. czekanie ").append(waitMs).append(" ms\n");
+        }
+
+        sb.append("\nWYWOŁANIA PYTHONA\n");
+        List<PythonBridge.CallStats> calls = PythonBridge.getInstance().getStats();
+        if (calls.isEmpty()) sb.append("  -\n");
+        for (PythonBridge.CallStats c : calls) {
+            long avgMs = c.calls > 0 ? c.callNanos / c.calls / 1_000_000 : 0;
+            sb.append("  ").append(pad(c.name, 24)).append(c.calls).append("x, śr. ").append(avgMs).append(" ms\n");
+        }
+
+        PlaybackTrace trace = PlaybackTrace.getInstance();
+        sb.append("\nCZAS DO PIERWSZEGO DŹWIĘKU (ms od dotknięcia)\n");
+        sb.append("  śladów: ").append(trace.getCompleted()).append(" teraz + ").append(trace.getLoaded())
+                .append(" z pliku, otwarte ").append(trace.getActive()).append('\n');
+        for (PlaybackTrace.Span s : PlaybackTrace.Span.values()) {
+            if (s == PlaybackTrace.Span.TAP) continue;
+            sb.append("  ").append(pad(s.name().toLowerCase(), 12)).append(trace.histogram(s)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String percent(double ratio) {
+        return Math.round(ratio * 100) + "%";
+    }
+
+    private static String pad(String s, int width) {
+        StringBuilder sb = new StringBuilder(s);
+        while (sb.length() < width) sb.append(' ');
+        return sb.append(' ').toString();
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.trakify;
+
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of what the player is doing, published by {@link MusicPlayerManager}.
+ *
+ * Position is not pushed continuously: {@link #positionMs} was true at {@link #anchorRealtimeMs}
+ * (SystemClock.elapsedRealtime()), and while playing the current position is extrapolated from
+ * that anchor at {@link #speed} with {@link #positionAt}. A new snapshot only appears when
+ * something really changed (track, play/pause, seek, duration, buffering progress).
+ */
+public final class PlaybackState {
+
+    public static final PlaybackState EMPTY =
+            new PlaybackState(null, null, null, false, false, -1, 0, 0, 0, 1f, false, false);
+
+    public final String title;
+    public final String path;
+    public final String imageUrl;
+    public final boolean playing;
+    public final boolean buffering;
+    /** While buffering: how far the download is from playable (0..100), -1 when unknown. */
+    public final int bufferPercent;
+    public final long positionMs;
+    public final long durationMs;
+    public final long anchorRealtimeMs;
+    public final float speed;
+    public final boolean hasNext;
+    public final boolean hasPrevious;
+
+    public PlaybackState(String title, String path, String imageUrl, boolean playing, boolean buffering,
+                         int bufferPercent, long positionMs, long durationMs, long anchorRealtimeMs, float speed,
+                         boolean hasNext, boolean hasPrevious) {
+        this.title = title;
+        this.path = path;
+        this.imageUrl = imageUrl;
+        this.playing = playing;
+        this.buffering = buffering;
+        this.bufferPercent = bufferPercent;
+        this.positionMs = positionMs;
+        this.durationMs = durationMs;
+        this.anchorRealtimeMs = anchorRealtimeMs;
+        this.speed = speed;
+        this.hasNext = hasNext;
+        this.hasPrevious = hasPrevious;
+    }
+
+    /** Position at {@code nowRealtimeMs}, moving only while playing and never past the duration. */
+    public long positionAt(long nowRealtimeMs) {
+        long pos = positionMs;
+        if (playing && !buffering) pos += (long) (Math.max(0, nowRealtimeMs - anchorRealtimeMs) * speed);
+        if (durationMs > 0) pos = Math.min(pos, durationMs);
+        return Math.max(0, pos);
+    }
+
+    /** Same file and artwork, i.e. nothing track-level to reload. */
+    public boolean sameTrack(PlaybackState o) {
+        return o != null && Objects.equals(path, o.path) && Objects.equals(imageUrl, o.imageUrl);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PlaybackState)) return false;
+        PlaybackState s = (PlaybackState) o;
+        return playing == s.playing && buffering == s.buffering && bufferPercent == s.bufferPercent
+                && positionMs == s.positionMs && durationMs == s.durationMs
+                && anchorRealtimeMs == s.anchorRealtimeMs && speed == s.speed
+                && hasNext == s.hasNext && hasPrevious == s.hasPrevious
+                && Objects.equals(title, s.title) && Objects.equals(path, s.path)
+                && Objects.equals(imageUrl, s.imageUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(title, path, imageUrl, playing, buffering, bufferPercent, positionMs, durationMs,
+                anchorRealtimeMs, speed, hasNext, hasPrevious);
+    }
+
+    @Override
+    public String toString() {
+        return "PlaybackState{title=" + title + ", playing=" + playing + ", buffering=" + buffering
+                + (buffering && bufferPercent >= 0 ? " " + bufferPercent + "%" : "")
+                + ", pos=" + positionMs + "/" + durationMs + "}";
+    }
+}
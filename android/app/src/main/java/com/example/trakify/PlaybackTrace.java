@@ -0,0 +1,257 @@
+package com.example.trakify;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Time to first audio: from a tap on a track until the player actually moves.
+ *
+ * A trace starts with {@link #tap} and is keyed by the track's {@link TrackIdentity#nameKey()};
+ * the engine marks it while the track is scheduled, resolved and playable, and from then on the
+ * service marks it by the path it was given ({@link #markPath}). A trace ends at
+ * {@link Span#FIRST_TICK}: every span's offset from the tap goes into its
+ * {@link LatencyHistogram} and one line into a rolling file (filesDir/perf/ttfa.tsv, the
+ * previous one kept as ttfa.1.tsv), which is read back on start so the numbers survive
+ * restarts. Marks for tracks nobody tapped (preloads, queue advances) are ignored.
+ */
+public class PlaybackTrace {
+    private static final String TAG = "PlaybackTrace";
+    private static PlaybackTrace instance;
+
+    public enum Span {
+        TAP,
+        SCHEDULED,  // DownloadEngine accepted the request
+        RESOLVED,   // the video and its audio URL are known (skipped when the file was on disk)
+        FILE_READY, // playable: on disk, or enough of the download to stream
+        PREPARE,    // service called prepareAsync
+        PREPARED,   // OnPreparedListener
+        FIRST_TICK  // playback position moved
+    }
+
+    // a trace that has not reached its first tick by then was abandoned (skip, error)
+    private static final long MAX_TRACE_MS = 3 * 60 * 1000;
+    private static final long MAX_FILE_BYTES = 256 * 1024;
+    private static final String DIR = "perf";
+    private static final String FILE = "ttfa.tsv";
+    private static final String OLD_FILE = "ttfa.1.tsv";
+
+    private static final class Trace {
+        final String key;
+        final long[] at = new long[Span.values().length];
+        boolean cached;
+
+        Trace(String key, long tapAt) {
+            this.key = key;
+            Arrays.fill(at, -1);
+            at[Span.TAP.ordinal()] = tapAt;
+        }
+    }
+
+    private final Map<String, Trace> active = new HashMap<>();
+    private final Map<String, Trace> byPath = new HashMap<>();
+    private final Map<Span, LatencyHistogram> histograms = new EnumMap<>(Span.class);
+    private int completed;
+    private int fromDisk;
+    private File dir;
+
+    private PlaybackTrace() {
+        for (Span s : Span.values()) histograms.put(s, new LatencyHistogram());
+    }
+
+    public static synchronized PlaybackTrace getInstance() {
+        if (instance == null) instance = new PlaybackTrace();
+        return instance;
+    }
+
+    public synchronized void init(Context ctx) {
+        if (ctx == null || dir != null) return;
+        dir = new File(ctx.getApplicationContext().getFilesDir(), DIR);
+        File d = dir;
+        AppExecutors.getInstance().get(AppExecutors.Pool.DISK).execute(() -> load(d));
+    }
+
+    /** The user tapped this track: start (or restart) its trace. */
+    public synchronized void tap(TrackIdentity id) {
+        if (id == null) return;
+        long now = SystemClock.elapsedRealtime();
+        prune(now);
+        Trace old = active.put(id.nameKey(), new Trace(id.nameKey(), now));
+        if (old != null) byPath.values().removeIf(t -> t == old);
+    }
+
+    public synchronized void mark(TrackIdentity id, Span span) {
+        if (id == null) return;
+        Trace t = active.get(id.nameKey());
+        if (t != null) set(t, span);
+    }
+
+    /** The track can be played from {@code path}; later marks come by that path. */
+    public synchronized void fileReady(TrackIdentity id, String path, boolean cached) {
+        if (id == null || path == null) return;
+        Trace t = active.get(id.nameKey());
+        if (t == null) return;
+        t.cached |= cached;
+        set(t, Span.FILE_READY);
+        byPath.put(path, t);
+    }
+
+    /** Marks from the player side, which only knows the path (a stream key or the final file). */
+    public synchronized void markPath(String path, Span span) {
+        Trace t = traceOf(path);
+        if (t == null) return;
+        set(t, span);
+        if (span == Span.FIRST_TICK) finish(t);
+    }
+
+    /** True while the player side should report marks for this path. */
+    public synchronized boolean isTraced(String path) {
+        return traceOf(path) != null;
+    }
+
+    /** Offsets of {@code span} from the tap, over all finished traces (live, thread-safe). */
+    public synchronized LatencyHistogram histogram(Span span) {
+        return histograms.get(span);
+    }
+
+    /** Traces finished since the app started. */
+    public synchronized int getCompleted() {
+        return completed;
+    }
+
+    /** Traces read back from the rolling file on start. */
+    public synchronized int getLoaded() {
+        return fromDisk;
+    }
+
+    public synchronized int getActive() {
+        return active.size();
+    }
+
+    // must hold lock
+    private Trace traceOf(String path) {
+        if (path == null || byPath.isEmpty()) return null;
+        Trace t = byPath.get(path);
+        if (t != null) return t;
+        // the stream key was swapped for the final file meanwhile
+        for (Map.Entry<String, Trace> e : byPath.entrySet()) {
+            if (path.equals(PartialDownload.resolve(e.getKey()))) return e.getValue();
+        }
+        return null;
+    }
+
+    // must hold lock; the first mark of a span wins
+    private void set(Trace t, Span span) {
+        if (t.at[span.ordinal()] < 0) t.at[span.ordinal()] = SystemClock.elapsedRealtime();
+    }
+
+    // must hold lock
+    private void finish(Trace t) {
+        active.remove(t.key, t);
+        byPath.values().removeIf(x -> x == t);
+        long tap = t.at[Span.TAP.ordinal()];
+        long[] offsets = new long[t.at.length];
+        for (Span s : Span.values()) {
+            long at = t.at[s.ordinal()];
+            offsets[s.ordinal()] = at >= 0 ? at - tap : -1;
+            if (s != Span.TAP && at >= 0) histograms.get(s).record(at - tap);
+        }
+        completed++;
+        Log.d(TAG, "ttfa " + offsets[Span.PREPARED.ordinal()] + " ms (" + (t.cached ? "on disk" : "download")
+                + "), first tick " + offsets[Span.FIRST_TICK.ordinal()] + " ms: " + t.key);
+
+        String line = lineOf(System.currentTimeMillis(), t.key, t.cached, offsets);
+        File d = dir;
+        if (d != null) AppExecutors.getInstance().get(AppExecutors.Pool.DISK).execute(() -> append(d, line));
+    }
+
+    // must hold lock
+    private void prune(long now) {
+        Iterator<Trace> it = active.values().iterator();
+        while (it.hasNext()) {
+            Trace t = it.next();
+            if (now - t.at[Span.TAP.ordinal()] > MAX_TRACE_MS) {
+                it.remove();
+                byPath.values().removeIf(x -> x == t);
+            }
+        }
+    }
+
+    // wall time, key, cached, then ms since the tap for every span after TAP (-1 = not reached)
+    private static String lineOf(long wallMs, String key, boolean cached, long[] offsets) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(wallMs).append('\t').append(key.replace('\t', ' ')).append('\t').append(cached ? 1 : 0);
+        for (Span s : Span.values()) {
+            if (s != Span.TAP) sb.append('\t').append(offsets[s.ordinal()]);
+        }
+        return sb.append('\n').toString();
+    }
+
+    private static void append(File dir, String line) {
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+        File file = new File(dir, FILE);
+        if (file.length() > MAX_FILE_BYTES) {
+            File old = new File(dir, OLD_FILE);
+            if (old.exists() && !old.delete()) Log.w(TAG, "could not delete " + old);
+            if (!file.renameTo(old)) Log.w(TAG, "could not rotate " + file);
+        }
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            w.write(line);
+        } catch (IOException e) {
+            Log.w(TAG, "could not write " + file, e);
+        }
+    }
+
+    private void load(File dir) {
+        int n = 0;
+        for (String name : new String[]{OLD_FILE, FILE}) {
+            File file = new File(dir, name);
+            if (!file.isFile()) continue;
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    if (loadLine(line)) n++;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "could not read " + file, e);
+            }
+        }
+        synchronized (this) {
+            fromDisk = n;
+        }
+        Log.d(TAG, "loaded " + n + " traces");
+    }
+
+    private boolean loadLine(String line) {
+        String[] f = line.split("\t");
+        Span[] spans = Span.values();
+        if (f.length != 3 + spans.length - 1) return false;
+        try {
+            synchronized (this) {
+                for (int i = 1; i < spans.length; i++) {
+                    long ms = Long.parseLong(f[2 + i]);
+                    if (ms >= 0) histograms.get(spans[i]).record(ms);
+                }
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.example.trakify;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -18,24 +19,27 @@ import androidx.fragment.app.Fragment;
 
 import com.bumptech.glide.Glide;
 
-public class PlayerFragment extends Fragment implements MusicPlayerManager.PlaybackListener {
+import java.util.Objects;
+
+public class PlayerFragment extends Fragment implements MusicPlayerManager.StateListener {
 
     private static final String TAG = "PlayerFragment";
+    private static final String DEFAULT_ART_URL = "https://img.freepik.com/premium-wektory/plyta-winylowa-i-wykres-dzwiekowy-na-czarnym-tle-ilustracja-muzyczna-ikona-wektor_484720-2957.jpg";
+
     private TextView tvTitle, tvElapsed, tvTotal;
     private SeekBar seekBar;
-    private final Handler checkHandler = new Handler(Looper.getMainLooper());
-    private int lastProgress = -1;
-    private int stalledCount = 0;
     private ImageButton btnPlayPause, btnNext, btnPrevious;
     private ImageView ivAlbumArt;
-    private Handler handler;
-    private Runnable updater;
+    private final Handler handler = new Handler(Looper.getMainLooper());
     private MusicPlayerManager player;
     private boolean userSeeking = false;
-    private static final int UPDATE_MS = 200;
 
-    private static final int MAX_STALLED_COUNT = 15; // 15 * 200ms = 3s
-    private Runnable checkRunnable;
+    // ostatni narysowany stan; render() porównuje z nim i dotyka tylko tego, co się zmieniło
+    private PlaybackState shown;
+    private long shownSecond = -1;
+
+    // przesuwa licznik czasu raz na pełną sekundę, tylko gdy gra
+    private final Runnable positionTicker = this::tickPosition;
 
     public PlayerFragment() { }
 
@@ -63,20 +67,6 @@ public class PlayerFragment extends Fragment implements MusicPlayerManager.Playb
         player = MusicPlayerManager.getInstance();
         if (player == null) throw new IllegalStateException("MusicPlayerManager not initialized");
 
-        handler = new Handler(Looper.getMainLooper());
-
-        updater = new Runnable() {
-            @Override
-            public void run() {
-                if (player != null) {
-                    if (!userSeeking) {
-                        updateUI();
-                    }
-                    handler.postDelayed(this, UPDATE_MS);
-                }
-            }
-        };
-
         // Play/Pause button
         btnPlayPause.setOnClickListener(v -> {
             Log.d(TAG, "Play/Pause clicked. Currently playing: " + player.isPlaying());
@@ -85,7 +75,6 @@ public class PlayerFragment extends Fragment implements MusicPlayerManager.Playb
             } else {
                 player.resume();
             }
-            updatePlayPauseIcon();
         });
 
         // Next button
@@ -105,7 +94,7 @@ public class PlayerFragment extends Fragment implements MusicPlayerManager.Playb
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 if (fromUser) {
-                    tvElapsed.setText(formatTime(progress * 1000));
+                    tvElapsed.setText(formatTime(progress * 1000L));
                 }
             }
 
@@ -119,25 +108,19 @@ public class PlayerFragment extends Fragment implements MusicPlayerManager.Playb
             public void onStopTrackingTouch(SeekBar seekBar) {
                 int seekMs = seekBar.getProgress() * 1000;
                 Log.d(TAG, "Seeking to: " + seekMs + "ms");
+                userSeeking = false;
+                // manager od razu publikuje nową kotwicę pozycji
                 player.seekTo(seekMs);
-
-                handler.postDelayed(() -> {
-                    userSeeking = false;
-                    updateUI();
-                }, 150);
             }
         });
-
-        updateUI();
     }
 
     @Override
     public void onStart() {
         super.onStart();
         Log.d(TAG, "onStart - registering listener");
+        shown = null; // po powrocie narysuj wszystko od nowa
         player.registerListener(this);
-        handler.removeCallbacks(updater);
-        handler.post(updater);
     }
 
     @Override
@@ -145,196 +128,119 @@ public class PlayerFragment extends Fragment implements MusicPlayerManager.Playb
         super.onStop();
         Log.d(TAG, "onStop - unregistering listener");
         player.unregisterListener(this);
-        handler.removeCallbacks(updater);
+        handler.removeCallbacks(positionTicker);
     }
 
-    private void updateUI() {
+    @Override
+    public void onStateChanged(PlaybackState state) {
         try {
-            // jeśli buforowanie — pokaż status ładowania tylko gdy serwis NIE MA duration
-            int pos = player.getCurrentPosition();
-            int dur = player.getDuration();
-
-            boolean hasDuration = dur > 0;
-
-            if (player.isBuffering() && !hasDuration) {
-                tvElapsed.setText("Ładowanie...");
-                tvTotal.setText("--:--");
-                seekBar.setEnabled(false);
-                seekBar.setProgress(0);
-                // ustaw ikonkę play (bo jeszcze nie gra)
-                btnPlayPause.setImageResource(android.R.drawable.ic_media_play);
-                // tytuł nadal aktualizujemy
-                String title = player.getCurrentTitle();
-                tvTitle.setText(title != null ? title : "Ładowanie...");
-                // album art: możesz zostawić placeholder
-                ivAlbumArt.setImageResource(R.drawable.ic_album_placeholder);
-                return;
-            }
-
-            // Jeśli mamy duration lub serwis nie jest w stanie 'bez-danych' - odblokuj seek
-            int maxSeconds = hasDuration ? dur / 1000 : 100;
-            seekBar.setMax(maxSeconds);
-            seekBar.setProgress(Math.max(0, pos / 1000));
-            seekBar.setEnabled(true); // OD BLOKOWANE: gdy już jest info o czasie, pozwól seekować
-
-            // Update time labels
-            tvElapsed.setText(formatTime(pos));
-            tvTotal.setText(hasDuration ? formatTime(dur) : "--:--");
-
-            // Update title
-            String title = player.getCurrentTitle();
-            tvTitle.setText(title != null ? title : "Brak utworu");
-            // Update album art
-            updateAlbumArt();
-
-            // Update buttons
-            updatePlayPauseIcon();
-            updateNavigationButtons();
+            render(state);
         } catch (Exception e) {
             Log.e(TAG, "Error updating UI", e);
         }
     }
 
+    private void render(PlaybackState state) {
+        PlaybackState old = shown;
+        shown = state;
+        boolean full = old == null;
 
+        if (full || !Objects.equals(old.title, state.title)) {
+            tvTitle.setText(state.title != null ? state.title : "Brak utworu");
+        }
 
-    private void updateAlbumArt() {
-        String defaultUrl = "https://img.freepik.com/premium-wektory/plyta-winylowa-i-wykres-dzwiekowy-na-czarnym-tle-ilustracja-muzyczna-ikona-wektor_484720-2957.jpg";
-        String imageUrl = player.getCurrentImageUrl();
-        // jeśli currentImageUrl jest null/empty -> użyj defaultUrl
-        String toLoad = (imageUrl != null ) ? imageUrl : defaultUrl;
-
-        // Glide ładuje, pokazuje placeholder i error
-        try {
-            Glide.with(ivAlbumArt.getContext())
-                    .load(toLoad)
-                    .placeholder(R.drawable.ic_album_placeholder) // masz taki placeholder?
-                    .error(R.drawable.ic_album_placeholder)
-                    .centerCrop()
-                    .into(ivAlbumArt);
-        } catch (Exception e) {
-            Log.e(TAG, "Glide load error", e);
-            // fallback - ustaw lokalny placeholder
-            ivAlbumArt.setImageResource(R.drawable.ic_album_placeholder);
+        // okładka: raz na zmianę utworu, nie przy każdej zmianie pozycji
+        if (full || !state.sameTrack(old)) {
+            loadAlbumArt(state.imageUrl);
         }
-    }
 
+        boolean loading = isLoading(state);
+        if (full || loading != isLoading(old) || state.playing != old.playing) {
+            btnPlayPause.setImageResource(state.playing && !state.buffering
+                    ? android.R.drawable.ic_media_pause
+                    : android.R.drawable.ic_media_play);
+        }
 
-    private void updatePlayPauseIcon() {
-        try {
-            if (player.isBuffering()) {
-                btnPlayPause.setImageResource(android.R.drawable.ic_media_play);
-                return;
+        if (full || loading != isLoading(old) || state.durationMs != old.durationMs
+                || state.bufferPercent != old.bufferPercent) {
+            if (loading) {
+                // buforowanie bez duration — status ładowania, z postępem pobierania jeśli jest
+                tvElapsed.setText(state.bufferPercent >= 0 ? "Ładowanie " + state.bufferPercent + "%" : "Ładowanie...");
+                tvTotal.setText("--:--");
+                seekBar.setEnabled(false);
+                seekBar.setMax(100);
+                seekBar.setProgress(0);
+                seekBar.setSecondaryProgress(Math.max(0, state.bufferPercent));
+            } else {
+                seekBar.setSecondaryProgress(0);
+                boolean hasDuration = state.durationMs > 0;
+                seekBar.setMax(hasDuration ? (int) (state.durationMs / 1000) : 100);
+                seekBar.setEnabled(true);
+                tvTotal.setText(hasDuration ? formatTime(state.durationMs) : "--:--");
             }
-            boolean playing = player.isPlaying();
-            btnPlayPause.setImageResource(playing ?
-                    android.R.drawable.ic_media_pause :
-                    android.R.drawable.ic_media_play);
-        } catch (Exception e) {
-            Log.e(TAG, "Error updating play/pause icon", e);
+            shownSecond = -1;
         }
-    }
-
 
-    private void updateNavigationButtons() {
-        // Enable/disable next/previous based on availability
-        btnNext.setEnabled(player.hasNext());
-        btnNext.setAlpha(player.hasNext() ? 1.0f : 0.3f);
+        if (full || state.hasNext != old.hasNext) {
+            btnNext.setEnabled(state.hasNext);
+            btnNext.setAlpha(state.hasNext ? 1.0f : 0.3f);
+        }
+        if (full || state.hasPrevious != old.hasPrevious) {
+            btnPrevious.setEnabled(state.hasPrevious);
+            btnPrevious.setAlpha(state.hasPrevious ? 1.0f : 0.3f);
+        }
 
-        btnPrevious.setEnabled(player.hasPrevious());
-        btnPrevious.setAlpha(player.hasPrevious() ? 1.0f : 0.3f);
+        handler.removeCallbacks(positionTicker);
+        tickPosition();
     }
 
-    private String formatTime(int ms) {
-        int totalSec = Math.max(0, ms / 1000);
-        int mins = totalSec / 60;
-        int secs = totalSec % 60;
-        return String.format("%02d:%02d", mins, secs);
+    private static boolean isLoading(PlaybackState state) {
+        return state.buffering && state.durationMs <= 0;
     }
 
-    @Override
-    public void onPrepared() {
-        Log.d(TAG, "onPrepared callback");
-        if (getActivity() != null) {
-            getActivity().runOnUiThread(() -> {
-                if (!userSeeking) {
-                    updateUI();
-                }
-            });
-        }
-    }
-    @Override
-    public void onResume() {
-        super.onResume();
-        startPlaybackMonitor();
-    }
-    @Override
-    public void onPause() {
-        super.onPause();
-        checkHandler.removeCallbacksAndMessages(null);
-    }
+    // Rysuje pozycję wyliczoną z kotwicy i planuje się na początek następnej sekundy
+    private void tickPosition() {
+        PlaybackState state = shown;
+        if (state == null || isLoading(state)) return;
 
-    @Override
-    public void onPlaybackStateChanged() {
-        Log.d(TAG, "onPlaybackStateChanged callback");
-        if (getActivity() != null) {
-            getActivity().runOnUiThread(() -> {
-                updateUI(); // pełny update UI (seekbar, times, buttons)
-            });
+        long pos = state.positionAt(SystemClock.elapsedRealtime());
+        long second = pos / 1000;
+        if (!userSeeking && second != shownSecond) {
+            shownSecond = second;
+            seekBar.setProgress((int) second);
+            tvElapsed.setText(formatTime(pos));
+        }
+        if (state.playing && !state.buffering) {
+            handler.postDelayed(positionTicker, 1000 - pos % 1000);
         }
     }
-    private void startPlaybackMonitor() {
-        if (checkRunnable != null) checkHandler.removeCallbacks(checkRunnable);
-
-        checkRunnable = new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    int pos = player.getCurrentPosition();
-                    int dur = player.getDuration();
-
-                    // jeśli duration == 0 -> nadal ładuje
-                    boolean notReady = dur <= 0;
-
-                    // jeśli progress się nie zmienia -> możliwe zablokowanie
-                    boolean stalled = 0 == lastProgress;
-                    lastProgress = pos;
-
-                    if (stalled) {
-                        stalledCount++;
-                    } else {
-                        stalledCount = 0;
-                    }
-
-                    if (notReady || stalledCount >= MAX_STALLED_COUNT) {
-                        Log.w(TAG, "Player seems stuck. Reloading track...");
-                        reloadCurrentTrack();
-                        stalledCount = 0;
-                    }
-
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in playback monitor", e);
-                } finally {
-                    checkHandler.postDelayed(this, 200); // co 200ms
-                }
-            }
-        };
 
-        checkHandler.post(checkRunnable);
-    }
-    private void reloadCurrentTrack() {
+    private void loadAlbumArt(String imageUrl) {
+        // jeśli imageUrl jest null -> użyj domyślnej okładki
+        String toLoad = imageUrl != null ? imageUrl : DEFAULT_ART_URL;
         try {
-            String path = player.getCurrentPath();
-            String title = player.getCurrentTitle();
-            String image = player.getCurrentImageUrl();
-
-            if (path != null && !path.isEmpty()) {
-                Log.d(TAG, "Reloading track: " + title);
-                player.play(path, title, image);
-            }
+            Glide.with(ivAlbumArt.getContext())
+                    .load(toLoad)
+                    .placeholder(R.drawable.ic_album_placeholder)
+                    .error(R.drawable.ic_album_placeholder)
+                    .centerCrop()
+                    .into(ivAlbumArt);
         } catch (Exception e) {
-            Log.e(TAG, "Failed to reload track", e);
+            Log.e(TAG, "Glide load error", e);
+            // fallback - ustaw lokalny placeholder
+            ivAlbumArt.setImageResource(R.drawable.ic_album_placeholder);
         }
     }
 
-
-}
\ No newline at end of file
+    // mm:ss bez String.format
+    private static String formatTime(long ms) {
+        long totalSec = Math.max(0, ms / 1000);
+        long mins = totalSec / 60;
+        int secs = (int) (totalSec % 60);
+        StringBuilder sb = new StringBuilder(5);
+        if (mins < 10) sb.append('0');
+        sb.append(mins).append(':');
+        if (secs < 10) sb.append('0');
+        return sb.append(secs).toString();
+    }
+}
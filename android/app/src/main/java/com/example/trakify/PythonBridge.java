@@ -0,0 +1,185 @@
+package com.example.trakify;
+
+import android.util.Log;
+
+import com.chaquo.python.PyObject;
+import com.chaquo.python.Python;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The one place Java calls into Chaquopy.
+ *
+ * Module handles are looked up once and kept, call results are converted and closed right
+ * away so the native Python objects don't wait for the Java GC, and catalog data comes back
+ * from bridge.py as packed rows (see {@link #parseRows}) instead of JSON. Every call records
+ * characters crossed, call time and parse time per function ({@link #getStats()}).
+ */
+public class PythonBridge {
+    private static final String TAG = "PythonBridge";
+    private static PythonBridge instance;
+
+    public static final char RECORD_SEPARATOR = '\u001e';
+    public static final char FIELD_SEPARATOR = '\u001f';
+
+    private final Map<String, PyObject> modules = new HashMap<>();
+    private final Map<String, CallStats> stats = new LinkedHashMap<>();
+
+    private PythonBridge() {}
+
+    public static synchronized PythonBridge getInstance() {
+        if (instance == null) instance = new PythonBridge();
+        return instance;
+    }
+
+    /** Rows of a bridge.py result; the first record names the columns. */
+    public static class Rows {
+        public final String[] columns;
+        public final List<String[]> rows;
+
+        Rows(String[] columns, List<String[]> rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        public int column(String name) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals(name)) return i;
+            }
+            return -1;
+        }
+
+        public static String get(String[] row, int column) {
+            return column >= 0 && column < row.length ? row[column] : "";
+        }
+
+        public static int getInt(String[] row, int column) {
+            String v = get(row, column);
+            if (v.isEmpty()) return 0;
+            try {
+                return (int) Double.parseDouble(v);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    public static class CallStats {
+        public final String name;
+        public int calls;
+        public long chars;
+        public long callNanos;
+        public long parseNanos;
+
+        CallStats(String name) {
+            this.name = name;
+        }
+
+        CallStats copy() {
+            CallStats c = new CallStats(name);
+            c.calls = calls;
+            c.chars = chars;
+            c.callNanos = callNanos;
+            c.parseNanos = parseNanos;
+            return c;
+        }
+    }
+
+    public synchronized PyObject module(String name) {
+        PyObject module = modules.get(name);
+        if (module == null) {
+            module = Python.getInstance().getModule(name);
+            modules.put(name, module);
+        }
+        return module;
+    }
+
+    /** Module attribute as a string ("" when missing). */
+    public String attr(String module, String name) {
+        try (PyObject value = module(module).get(name)) {
+            return value != null ? value.toString() : "";
+        }
+    }
+
+    /** Calls a function returning str (or None -> null). */
+    public String callString(String module, String function, Object... args) {
+        long start = System.nanoTime();
+        String result;
+        try (PyObject value = module(module).callAttr(function, args)) {
+            result = value != null ? value.toString() : null;
+        }
+        record(module + "." + function, result != null ? result.length() : 0, System.nanoTime() - start, 0);
+        return result;
+    }
+
+    /** Calls a bridge.py function and unpacks its rows. */
+    public Rows callRows(String function, Object... args) {
+        long start = System.nanoTime();
+        String packed;
+        try (PyObject value = module("bridge").callAttr(function, args)) {
+            packed = value != null ? value.toString() : "";
+        }
+        long called = System.nanoTime();
+        Rows rows = parseRows(packed);
+        long parsed = System.nanoTime();
+
+        record("bridge." + function, packed.length(), called - start, parsed - called);
+        Log.d(TAG, function + ": " + rows.rows.size() + " rows, " + packed.length() + " chars, call "
+                + (called - start) / 1_000_000 + " ms, parse " + (parsed - called) / 1000 + " us");
+        return rows;
+    }
+
+    public static Rows parseRows(String packed) {
+        List<String[]> rows = new ArrayList<>();
+        if (packed == null || packed.isEmpty()) return new Rows(new String[0], rows);
+
+        int end = packed.indexOf(RECORD_SEPARATOR);
+        String[] columns = split(packed, 0, end < 0 ? packed.length() : end, -1);
+        while (end >= 0) {
+            int start = end + 1;
+            end = packed.indexOf(RECORD_SEPARATOR, start);
+            rows.add(split(packed, start, end < 0 ? packed.length() : end, columns.length));
+        }
+        return new Rows(columns, rows);
+    }
+
+    private static String[] split(String s, int from, int to, int expected) {
+        int count = 1;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == FIELD_SEPARATOR) count++;
+        }
+        String[] fields = new String[Math.max(count, expected)];
+        int field = 0;
+        int start = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || s.charAt(i) == FIELD_SEPARATOR) {
+                fields[field++] = s.substring(start, i);
+                start = i + 1;
+            }
+        }
+        for (; field < fields.length; field++) fields[field] = "";
+        return fields;
+    }
+
+    public synchronized List<CallStats> getStats() {
+        List<CallStats> out = new ArrayList<>();
+        for (CallStats s : stats.values()) out.add(s.copy());
+        return out;
+    }
+
+    private synchronized void record(String name, int chars, long callNanos, long parseNanos) {
+        CallStats s = stats.get(name);
+        if (s == null) {
+            s = new CallStats(name);
+            stats.put(name, s);
+        }
+        s.calls++;
+        s.chars += chars;
+        s.callNanos += callNanos;
+        s.parseNanos += parseNanos;
+    }
+}
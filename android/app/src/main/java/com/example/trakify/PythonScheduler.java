@@ -0,0 +1,260 @@
+package com.example.trakify;
+
+import android.util.Log;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where all Python interpreter work runs.
+ *
+ * Work is split into lanes, each with its own small pool, so a multi-minute play_song in the
+ * background lane can never hold a worker the search screen needs. Inside a lane tasks run by
+ * rank, then FIFO. A task submitted with a supersede key cancels the previous task with the
+ * same key: a queued one is dropped, a running one can't be stopped (Python can't be
+ * interrupted) but its result is discarded.
+ */
+public class PythonScheduler {
+    private static final String TAG = "PythonScheduler";
+    private static PythonScheduler instance;
+
+    public enum Lane {
+        // catalog / search the user is waiting on
+        INTERACTIVE(2),
+        // now playing + next up downloads
+        PLAYBACK(2),
+        // album preload and other speculative work
+        BACKGROUND(1);
+
+        final int workers;
+
+        Lane(int workers) {
+            this.workers = workers;
+        }
+    }
+
+    private static final long KEEP_ALIVE_SEC = 30;
+
+    private final Map<Lane, ThreadPoolExecutor> executors = new EnumMap<>(Lane.class);
+    private final Map<Lane, LaneStats> stats = new EnumMap<>(Lane.class);
+    private final Map<String, Task<?>> latestByKey = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private PythonScheduler() {
+        for (Lane lane : Lane.values()) {
+            executors.put(lane, newLane("py-" + lane.name().toLowerCase(), lane.workers));
+            stats.put(lane, new LaneStats(lane));
+        }
+    }
+
+    public static synchronized PythonScheduler getInstance() {
+        if (instance == null) instance = new PythonScheduler();
+        return instance;
+    }
+
+    /** Queue depth and throughput of one lane. */
+    public static class LaneStats {
+        public final Lane lane;
+        public int queued;
+        public int running;
+        public int maxQueued;
+        public long completed;
+        public long cancelled;
+        public long failed;
+        public long waitNanos;
+
+        LaneStats(Lane lane) {
+            this.lane = lane;
+        }
+
+        LaneStats copy() {
+            LaneStats c = new LaneStats(lane);
+            c.queued = queued;
+            c.running = running;
+            c.maxQueued = maxQueued;
+            c.completed = completed;
+            c.cancelled = cancelled;
+            c.failed = failed;
+            c.waitNanos = waitNanos;
+            return c;
+        }
+    }
+
+    public final class Task<T> implements Runnable, Comparable<Task<?>> {
+        private final String key;
+        private final Callable<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private Lane lane;
+        private int rank;
+        private long seq;
+        private long queuedAt;
+        private boolean started = false;
+
+        Task(Lane lane, int rank, String key, Callable<T> work) {
+            this.lane = lane;
+            this.rank = rank;
+            this.key = key;
+            this.work = work;
+        }
+
+        public CompletableFuture<T> future() {
+            return future;
+        }
+
+        public Lane getLane() {
+            synchronized (PythonScheduler.this) {
+                return lane;
+            }
+        }
+
+        /** Drops the task if still queued; a running task finishes but its result is discarded. */
+        public void cancel() {
+            PythonScheduler.this.cancel(this);
+        }
+
+        @Override
+        public void run() {
+            synchronized (PythonScheduler.this) {
+                LaneStats s = stats.get(lane);
+                s.queued--;
+                if (future.isDone()) {
+                    // cancelled while a worker was already taking it off the queue
+                    s.cancelled++;
+                    return;
+                }
+                started = true;
+                s.running++;
+                s.waitNanos += System.nanoTime() - queuedAt;
+            }
+
+            T result = null;
+            Throwable error = null;
+            try {
+                result = work.call();
+            } catch (Throwable t) {
+                error = t;
+            }
+
+            synchronized (PythonScheduler.this) {
+                LaneStats s = stats.get(lane);
+                s.running--;
+                if (future.isCancelled()) s.cancelled++;
+                else if (error != null) s.failed++;
+                else s.completed++;
+                if (key != null && latestByKey.get(key) == this) latestByKey.remove(key);
+            }
+            if (error != null) future.completeExceptionally(error);
+            else future.complete(result);
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int c = Integer.compare(rank, other.rank);
+            return c != 0 ? c : Long.compare(seq, other.seq);
+        }
+    }
+
+    public <T> Task<T> submit(Lane lane, Callable<T> work) {
+        return submit(lane, 0, null, work);
+    }
+
+    /**
+     * @param rank         lower runs first within the lane
+     * @param supersedeKey tasks sharing a key replace each other (e.g. "search"); may be null
+     */
+    public <T> Task<T> submit(Lane lane, int rank, String supersedeKey, Callable<T> work) {
+        Task<T> task = new Task<>(lane, rank, supersedeKey, work);
+        Task<?> previous = null;
+        synchronized (this) {
+            if (supersedeKey != null) previous = latestByKey.put(supersedeKey, task);
+            enqueue(task);
+        }
+        if (previous != null) {
+            Log.d(TAG, "superseded " + supersedeKey + " in " + previous.getLane());
+            cancel(previous);
+        }
+        return task;
+    }
+
+    /** Blocking convenience for callers already off the main thread. */
+    public <T> T call(Lane lane, String supersedeKey, Callable<T> work) throws Exception {
+        AppExecutors.checkNotMainThread("PythonScheduler.call");
+        Task<T> task = submit(lane, 0, supersedeKey, work);
+        try {
+            return task.future().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        } catch (InterruptedException e) {
+            task.cancel();
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted");
+        }
+    }
+
+    /** Moves a not-yet-started task to another lane/rank. Returns false if it already started. */
+    public synchronized boolean move(Task<?> task, Lane lane, int rank) {
+        if (task.started || task.future.isDone()) return false;
+        if (task.lane == lane && task.rank == rank) return true;
+        if (!executors.get(task.lane).remove(task)) return false;
+        stats.get(task.lane).queued--;
+        task.lane = lane;
+        task.rank = rank;
+        enqueue(task);
+        return true;
+    }
+
+    public synchronized LaneStats getStats(Lane lane) {
+        return stats.get(lane).copy();
+    }
+
+    // completes the future outside our lock: its callbacks may take other locks (DownloadEngine)
+    private void cancel(Task<?> task) {
+        synchronized (this) {
+            if (task.future.isDone()) return;
+            // not removed -> a worker already has it; run() does the bookkeeping
+            if (!task.started && executors.get(task.lane).remove(task)) {
+                LaneStats s = stats.get(task.lane);
+                s.queued--;
+                s.cancelled++;
+            }
+            if (task.key != null && latestByKey.get(task.key) == task) latestByKey.remove(task.key);
+        }
+        task.future.cancel(false);
+    }
+
+    // must hold this
+    private void enqueue(Task<?> task) {
+        task.seq = sequence.incrementAndGet();
+        task.queuedAt = System.nanoTime();
+        LaneStats s = stats.get(task.lane);
+        s.queued++;
+        s.maxQueued = Math.max(s.maxQueued, s.queued);
+        executors.get(task.lane).execute(task);
+    }
+
+    private static ThreadPoolExecutor newLane(String name, int workers) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers,
+                KEEP_ALIVE_SEC, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.trakify;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which YouTube video a track resolved to, so a repeat download skips the ytsearch step.
+ *
+ * Keyed like {@link TrackStore}: the Spotify id key and the normalized artist/title key both
+ * point at the same row contents. Entries outlive the audio file (eviction, deleting from the
+ * library) and expire after {@link #TTL_MS}; a cached video that fails to download is
+ * invalidated by {@link DownloadEngine}, which then searches again. Disk access only, call it
+ * off the main thread.
+ */
+public class ResolutionCache {
+    private static final String TAG = "ResolutionCache";
+    private static ResolutionCache instance;
+
+    private static final String DB_NAME = "resolutions.db";
+    private static final int DB_VERSION = 1;
+    private static final String T = "resolutions";
+
+    /** Videos do get taken down or replaced; re-resolve once in a while. */
+    public static final long TTL_MS = 30L * 24 * 60 * 60 * 1000;
+
+    public static final class Resolution {
+        public final String key;
+        public final String videoId;
+        public final long durationSec;
+        public final String formatId;
+        public final String ext;
+        public final long resolvedAt;
+        public final int hits;
+
+        Resolution(String key, String videoId, long durationSec, String formatId, String ext,
+                   long resolvedAt, int hits) {
+            this.key = key;
+            this.videoId = videoId;
+            this.durationSec = durationSec;
+            this.formatId = formatId;
+            this.ext = ext;
+            this.resolvedAt = resolvedAt;
+            this.hits = hits;
+        }
+
+        public boolean isExpired(long now) {
+            return now - resolvedAt > TTL_MS;
+        }
+
+        @Override
+        public String toString() {
+            return key + " -> " + videoId + " (" + durationSec + " s, " + formatId + "/" + ext + ", hits=" + hits + ")";
+        }
+    }
+
+    private Helper helper;
+
+    private ResolutionCache() {}
+
+    public static synchronized ResolutionCache getInstance() {
+        if (instance == null) instance = new ResolutionCache();
+        return instance;
+    }
+
+    public synchronized void init(Context ctx) {
+        if (ctx == null || helper != null) return;
+        helper = new Helper(ctx.getApplicationContext());
+    }
+
+    /** The cached video for this track (id key first), or null when unknown or expired. */
+    public Resolution get(TrackIdentity id) {
+        SQLiteDatabase db = db();
+        if (db == null) return null;
+        long now = System.currentTimeMillis();
+        for (String key : keysOf(id)) {
+            Resolution r = read(db, key);
+            if (r == null) continue;
+            if (r.isExpired(now)) {
+                db.delete(T, "key = ?", new String[]{key});
+                continue;
+            }
+            db.execSQL("UPDATE " + T + " SET hits = hits + 1 WHERE key = ?", new Object[]{key});
+            return r;
+        }
+        return null;
+    }
+
+    public void put(TrackIdentity id, String videoId, long durationSec, String formatId, String ext) {
+        SQLiteDatabase db = db();
+        if (db == null || videoId == null || videoId.isEmpty()) return;
+        ContentValues v = new ContentValues();
+        v.put("video_id", videoId);
+        v.put("duration_s", durationSec);
+        v.put("format_id", formatId);
+        v.put("ext", ext);
+        v.put("resolved_at", System.currentTimeMillis());
+        v.put("hits", 0);
+        db.beginTransaction();
+        try {
+            for (String key : keysOf(id)) {
+                v.put("key", key);
+                db.insertWithOnConflict(T, null, v, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** The cached video did not work out: forget it under every key of the track. */
+    public void invalidate(TrackIdentity id) {
+        SQLiteDatabase db = db();
+        if (db == null) return;
+        for (String key : keysOf(id)) db.delete(T, "key = ?", new String[]{key});
+    }
+
+    /** Everything cached, newest first (for inspection / debugging). */
+    public List<Resolution> entries() {
+        List<Resolution> out = new ArrayList<>();
+        SQLiteDatabase db = db();
+        if (db == null) return out;
+        try (Cursor c = db.query(T, null, null, null, null, null, "resolved_at DESC")) {
+            while (c.moveToNext()) out.add(from(c));
+        }
+        return out;
+    }
+
+    public int size() {
+        SQLiteDatabase db = db();
+        if (db == null) return 0;
+        try (Cursor c = db.rawQuery("SELECT COUNT(*) FROM " + T, null)) {
+            return c.moveToFirst() ? c.getInt(0) : 0;
+        }
+    }
+
+    public void clear() {
+        SQLiteDatabase db = db();
+        if (db == null) return;
+        int n = db.delete(T, null, null);
+        Log.d(TAG, "cleared " + n + " resolutions");
+    }
+
+    private static String[] keysOf(TrackIdentity id) {
+        String idKey = id.idKey();
+        return idKey != null ? new String[]{idKey, id.nameKey()} : new String[]{id.nameKey()};
+    }
+
+    private static Resolution read(SQLiteDatabase db, String key) {
+        try (Cursor c = db.query(T, null, "key = ?", new String[]{key}, null, null, null)) {
+            return c.moveToFirst() ? from(c) : null;
+        }
+    }
+
+    private static Resolution from(Cursor c) {
+        return new Resolution(
+                c.getString(c.getColumnIndexOrThrow("key")),
+                c.getString(c.getColumnIndexOrThrow("video_id")),
+                c.getLong(c.getColumnIndexOrThrow("duration_s")),
+                c.getString(c.getColumnIndexOrThrow("format_id")),
+                c.getString(c.getColumnIndexOrThrow("ext")),
+                c.getLong(c.getColumnIndexOrThrow("resolved_at")),
+                c.getInt(c.getColumnIndexOrThrow("hits")));
+    }
+
+    private synchronized SQLiteDatabase db() {
+        if (helper == null) return null;
+        try {
+            return helper.getWritableDatabase();
+        } catch (Exception e) {
+            Log.e(TAG, "Could not open resolution cache", e);
+            return null;
+        }
+    }
+
+    private static final class Helper extends SQLiteOpenHelper {
+        Helper(Context ctx) {
+            super(ctx, DB_NAME, null, DB_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + T + " ("
+                    + "key TEXT PRIMARY KEY, "
+                    + "video_id TEXT NOT NULL, "
+                    + "duration_s INTEGER NOT NULL DEFAULT 0, "
+                    + "format_id TEXT, "
+                    + "ext TEXT, "
+                    + "resolved_at INTEGER NOT NULL, "
+                    + "hits INTEGER NOT NULL DEFAULT 0)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // only a cache: start over
+            db.execSQL("DROP TABLE IF EXISTS " + T);
+            onCreate(db);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.trakify;
+
+import com.example.trakify.model.SearchResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Small in-memory LRU of recent search query -> results.
+ *
+ * Besides exact hits it can answer a refinement from an older, shorter query: "radioh" cached
+ * means "radiohead ok" can be shown at once by filtering those results locally, while the real
+ * search for the longer query is still running. Keys are normalized (trimmed, lower case,
+ * single spaces), so "Radiohead " and "radiohead" share an entry.
+ */
+public class SearchCache {
+    private static final int DEFAULT_MAX_ENTRIES = 50;
+    private static final long DEFAULT_TTL_MS = 10 * 60 * 1000L;
+
+    private static SearchCache instance;
+
+    private final int maxEntries;
+    private final long ttlMs;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private static class Entry {
+        final List<SearchResult> results;
+        final long storedAt;
+
+        Entry(List<SearchResult> results, long storedAt) {
+            this.results = results;
+            this.storedAt = storedAt;
+        }
+    }
+
+    SearchCache(int maxEntries, long ttlMs, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+        // access order: get() moves an entry to the end, eviction takes the head
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > SearchCache.this.maxEntries;
+            }
+        };
+    }
+
+    public static synchronized SearchCache getInstance() {
+        if (instance == null) {
+            instance = new SearchCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MS, System::currentTimeMillis);
+        }
+        return instance;
+    }
+
+    public static String normalize(String query) {
+        if (query == null) return "";
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /** Results for exactly this query, or null. The returned list is a copy. */
+    public synchronized List<SearchResult> get(String query) {
+        Entry e = fresh(normalize(query));
+        return e != null ? new ArrayList<>(e.results) : null;
+    }
+
+    public synchronized void put(String query, List<SearchResult> results) {
+        String key = normalize(query);
+        if (key.isEmpty() || results == null) return;
+        entries.put(key, new Entry(new ArrayList<>(results), clock.getAsLong()));
+    }
+
+    /**
+     * Results of the longest cached query that is a prefix of this one, filtered down to rows
+     * matching every word of the new query. Null when no prefix is cached.
+     */
+    public synchronized List<SearchResult> fromPrefix(String query) {
+        String key = normalize(query);
+        for (int end = key.length() - 1; end > 0; end--) {
+            Entry e = fresh(key.substring(0, end));
+            if (e != null) return filter(e.results, key);
+        }
+        return null;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // must hold this
+    private Entry fresh(String key) {
+        Entry e = entries.get(key);
+        if (e == null) return null;
+        if (clock.getAsLong() - e.storedAt > ttlMs) {
+            entries.remove(key);
+            return null;
+        }
+        return e;
+    }
+
+    static List<SearchResult> filter(List<SearchResult> results, String normalizedQuery) {
+        String[] words = normalizedQuery.split(" ");
+        List<SearchResult> out = new ArrayList<>();
+        for (SearchResult r : results) {
+            String text = normalize(join(r.name, r.artist, r.album));
+            boolean all = true;
+            for (String word : words) {
+                if (!text.contains(word)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) out.add(r);
+        }
+        return out;
+    }
+
+    private static String join(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String p : parts) {
+            if (p != null && !p.isEmpty()) sb.append(p).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -21,15 +21,13 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 
-import java.io.File;
+import com.example.trakify.model.SearchResult;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 public class SearchFragment extends Fragment {
 
@@ -45,6 +43,11 @@ public class SearchFragment extends Fragment {
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final Handler searchHandler = new Handler(Looper.getMainLooper());
     private Runnable searchRunnable;
+    private TaskScope tasks;
+
+    // every performSearch gets a number; only the latest one may touch the list
+    private long searchSeq = 0;
+    private Future<?> inFlight;
 
     private static final int SEARCH_DELAY_MS = 500;
 
@@ -59,6 +62,7 @@ public class SearchFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
+        tasks = TaskScope.of(getViewLifecycleOwner());
 
         etSearch = view.findViewById(R.id.etSearch);
         btnManualDownload = view.findViewById(R.id.btnManualDownload);
@@ -67,6 +71,7 @@ public class SearchFragment extends Fragment {
         tvNoResults = view.findViewById(R.id.tvNoResults);
 
         rvSearchResults.setLayoutManager(new LinearLayoutManager(getContext()));
+        rvSearchResults.setHasFixedSize(true);
 
         adapter = new SearchResultAdapter(new ArrayList<>(), new SearchResultAdapter.OnResultClickListener() {
             @Override
@@ -95,12 +100,23 @@ public class SearchFragment extends Fragment {
                 String query = s.toString().trim();
 
                 if (query.isEmpty()) {
+                    cancelSearch();
+                    progressBar.setVisibility(View.GONE);
                     adapter.setItems(new ArrayList<>());
                     tvNoResults.setVisibility(View.GONE);
                     rvSearchResults.setVisibility(View.GONE);
                     return;
                 }
 
+                // backspace + retype: answer from memory, no need to wait for the debounce
+                List<SearchResult> cached = SearchCache.getInstance().get(query);
+                if (cached != null) {
+                    cancelSearch();
+                    progressBar.setVisibility(View.GONE);
+                    showResults(cached);
+                    return;
+                }
+
                 searchRunnable = () -> performSearch(query);
                 searchHandler.postDelayed(searchRunnable, SEARCH_DELAY_MS);
             }
@@ -123,42 +139,75 @@ public class SearchFragment extends Fragment {
         });
     }
 
-    private void performSearch(String query) {
-        progressBar.setVisibility(View.VISIBLE);
-        tvNoResults.setVisibility(View.GONE);
-
-        new Thread(() -> {
-            try {
-                Python py = Python.getInstance();
-                PyObject module = py.getModule("api_spotify");
+    @Override
+    public void onDestroyView() {
+        // a debounced search must not fire into a destroyed view
+        if (searchRunnable != null) searchHandler.removeCallbacks(searchRunnable);
+        super.onDestroyView();
+    }
 
-                PyObject result = module.callAttr("search_spotify", query, 8);
-                String json = result.toString();
+    private void performSearch(String query) {
+        SearchCache cache = SearchCache.getInstance();
+        long seq = cancelSearch();
+
+        List<SearchResult> cached = cache.get(query);
+        if (cached != null) {
+            progressBar.setVisibility(View.GONE);
+            showResults(cached);
+            return;
+        }
 
-                List<SearchResult> results = parseSearchResults(json);
+        // a refinement of a cached query: show the filtered old results while the real one loads
+        List<SearchResult> partial = cache.fromPrefix(query);
+        if (partial != null && !partial.isEmpty()) {
+            showResults(partial);
+        } else {
+            tvNoResults.setVisibility(View.GONE);
+        }
+        progressBar.setVisibility(View.VISIBLE);
 
-                mainHandler.post(() -> {
+        inFlight = tasks.submit(AppExecutors.Pool.NETWORK,
+                () -> {
+                    List<SearchResult> results = CatalogRepository.getInstance().search(query, 8);
+                    cache.put(query, results);
+                    return results;
+                },
+                results -> {
+                    // a newer query was typed while this one was running
+                    if (seq != searchSeq) return;
+                    inFlight = null;
                     progressBar.setVisibility(View.GONE);
-
-                    if (results.isEmpty()) {
-                        tvNoResults.setVisibility(View.VISIBLE);
-                        rvSearchResults.setVisibility(View.GONE);
-                    } else {
-                        tvNoResults.setVisibility(View.GONE);
-                        rvSearchResults.setVisibility(View.VISIBLE);
-                        adapter.setItems(results);
-                    }
-                });
-
-            } catch (Exception e) {
-                Log.e(TAG, "Search error", e);
-                mainHandler.post(() -> {
+                    showResults(results);
+                },
+                e -> {
+                    if (seq != searchSeq) return;
+                    inFlight = null;
+                    Log.e(TAG, "Search error", e);
                     progressBar.setVisibility(View.GONE);
-                    Toast.makeText(getContext(), "Search error: " + e.getMessage(),
+                    Toast.makeText(requireContext(), "Search error: " + e.getMessage(),
                             Toast.LENGTH_SHORT).show();
                 });
-            }
-        }).start();
+    }
+
+    /** Invalidates the running search (its result will be ignored) and returns the next number. */
+    private long cancelSearch() {
+        if (inFlight != null) {
+            // interrupting the waiting thread also drops the Python call if it's still queued
+            inFlight.cancel(true);
+            inFlight = null;
+        }
+        return ++searchSeq;
+    }
+
+    private void showResults(List<SearchResult> results) {
+        if (results.isEmpty()) {
+            tvNoResults.setVisibility(View.VISIBLE);
+            rvSearchResults.setVisibility(View.GONE);
+        } else {
+            tvNoResults.setVisibility(View.GONE);
+            rvSearchResults.setVisibility(View.VISIBLE);
+            adapter.setItems(results);
+        }
     }
 
     private void handleResultClick(SearchResult result) {
@@ -198,171 +247,42 @@ public class SearchFragment extends Fragment {
                 .commit();
     }
 
-    private void downloadAndPlay(SearchResult result) {
-        String query = result.type.equals("manual")
-                ? result.name
-                : result.artist + " " + result.name;
-
-        Toast.makeText(getContext(), "Downloading: " + result.name, Toast.LENGTH_SHORT).show();
-
-        new Thread(() -> {
-            try {
-                Python py = Python.getInstance();
-                PyObject mainModule = py.getModule("main");
-
-                File dir = requireActivity().getExternalFilesDir("Music");
-                if (dir == null) {
-                    mainHandler.post(() ->
-                            Toast.makeText(getContext(), "Storage error", Toast.LENGTH_SHORT).show());
-                    return;
-                }
-
-                String filename = (result.artist + "_" + result.name)
-                        .replaceAll("[^a-zA-Z0-9_\\-]", "_") + ".mp3";
-                File outFile = new File(dir, filename);
-                String outputPath = outFile.getAbsolutePath();
-
-                Log.d("dupa", "Downloading with query: " + query);
-                PyObject pyResult = mainModule.callAttr("play_song", query, outputPath);
-                String path = (pyResult != null) ? pyResult.toString() : null;
-                Log.d("dupa","path: "+ path);
-                if (path != null && !path.isEmpty()) {
-                    mainHandler.post(() -> {
-                        Toast.makeText(getContext(), "Playing: " + result.name, Toast.LENGTH_SHORT).show();
-
-                        MusicPlayerManager.getInstance().play(path, result.name,result.imageUrl);
-
-                        if (getActivity() instanceof MainActivity) {
-                            ((MainActivity) getActivity()).showMiniPlayer(result.name);
-                        }
-                    });
-                } else {
-                    mainHandler.post(() ->
-                            Toast.makeText(getContext(), "Download failed", Toast.LENGTH_SHORT).show());
-                }
-
-            } catch (Exception e) {
-                Log.e(TAG, "Download error", e);
-                mainHandler.post(() ->
-                        Toast.makeText(getContext(), "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
-            }
-        }).start();
+    // manual entries have no artist (nor id), so the engine searches by the typed name only
+    static TrackIdentity identityOf(SearchResult result) {
+        return "manual".equals(result.type)
+                ? TrackIdentity.of("", result.name)
+                : TrackIdentity.of(result.id, result.artist, result.name);
     }
 
-    private List<SearchResult> parseSearchResults(String json) throws Exception {
-        List<SearchResult> results = new ArrayList<>();
-        JSONObject root = new JSONObject(json);
-
-        // Parse ARTISTS first (priority)
-        if (root.has("artists")) {
-            JSONObject artists = root.getJSONObject("artists");
-            if (artists.has("items")) {
-                JSONArray items = artists.getJSONArray("items");
-
-                for (int i = 0; i < Math.min(2, items.length()); i++) {
-                    JSONObject artist = items.getJSONObject(i);
-
-                    SearchResult result = new SearchResult();
-                    result.type = "artist";
-                    result.id = artist.getString("id");
-                    result.name = artist.getString("name");
-                    result.artist = "";
-
-                    if (artist.has("images")) {
-                        JSONArray images = artist.getJSONArray("images");
-                        if (images.length() > 0) {
-                            result.imageUrl = images.getJSONObject(0).getString("url");
-                        }
-                    }
-
-                    results.add(result);
-                }
-            }
-        }
+    private void downloadAndPlay(SearchResult result) {
+        TrackIdentity id = identityOf(result);
 
-        // Parse ALBUMS second
-        if (root.has("albums")) {
-            JSONObject albums = root.getJSONObject("albums");
-            if (albums.has("items")) {
-                JSONArray items = albums.getJSONArray("items");
-
-                for (int i = 0; i < Math.min(3, items.length()); i++) {
-                    JSONObject album = items.getJSONObject(i);
-
-                    SearchResult result = new SearchResult();
-                    result.type = "album";
-                    result.id = album.getString("id");
-                    result.name = album.getString("name");
-
-                    if (album.has("artists")) {
-                        JSONArray artists = album.getJSONArray("artists");
-                        if (artists.length() > 0) {
-                            result.artist = artists.getJSONObject(0).getString("name");
-                        }
-                    }
+        Toast.makeText(getContext(), "Downloading: " + result.name, Toast.LENGTH_SHORT).show();
 
-                    if (album.has("images")) {
-                        JSONArray images = album.getJSONArray("images");
-                        if (images.length() > 0) {
-                            result.imageUrl = images.getJSONObject(0).getString("url");
-                        }
+        DownloadEngine.getInstance()
+                .requestPlayable(id, DownloadEngine.Priority.NOW_PLAYING)
+                .whenComplete((path, error) -> {
+                    if (error != null) {
+                        Log.e(TAG, "Download error", error);
+                        tasks.post(() ->
+                                Toast.makeText(requireContext(), "Error: " + error.getMessage(), Toast.LENGTH_SHORT).show());
+                        return;
                     }
 
-                    results.add(result);
-                }
-            }
-        }
-
-        // Parse TRACKS last
-        if (root.has("tracks")) {
-            JSONObject tracks = root.getJSONObject("tracks");
-            if (tracks.has("items")) {
-                JSONArray items = tracks.getJSONArray("items");
-
-                for (int i = 0; i < items.length(); i++) {
-                    JSONObject track = items.getJSONObject(i);
-
-                    SearchResult result = new SearchResult();
-                    result.type = "track";
-                    result.name = track.getString("name");
+                    if (path != null && !path.isEmpty()) {
+                        mainHandler.post(() -> MusicPlayerManager.getInstance().play(path, result.name,result.imageUrl));
 
-                    if (track.has("artists")) {
-                        JSONArray artists = track.getJSONArray("artists");
-                        if (artists.length() > 0) {
-                            result.artist = artists.getJSONObject(0).getString("name");
-                        }
-                    }
-
-                    if (track.has("album")) {
-                        JSONObject album = track.getJSONObject("album");
-                        result.album = album.optString("name", "");
+                        tasks.post(() -> {
+                            Toast.makeText(requireContext(), "Playing: " + result.name, Toast.LENGTH_SHORT).show();
 
-                        if (album.has("images")) {
-                            JSONArray images = album.getJSONArray("images");
-                            if (images.length() > 0) {
-                                result.imageUrl = images.getJSONObject(0).getString("url");
+                            if (getActivity() instanceof MainActivity) {
+                                ((MainActivity) getActivity()).showMiniPlayer(result.name);
                             }
-                        }
+                        });
+                    } else {
+                        tasks.post(() ->
+                                Toast.makeText(requireContext(), "Download failed", Toast.LENGTH_SHORT).show());
                     }
-
-                    result.durationMs = track.optInt("duration_ms", 0);
-                    result.id = track.optString("id", "");
-
-                    results.add(result);
-                }
-            }
-        }
-
-        return results;
-    }
-
-    public static class SearchResult {
-        public String id;
-        public String type;
-        public String name;
-        public String artist;
-        public String album;
-        public String imageUrl;
-        public int durationMs;
+                });
     }
-}
\ No newline at end of file
+}
@@ -8,16 +8,17 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
-import com.example.trakify.SearchFragment.SearchResult;
+import com.example.trakify.model.SearchResult;
 
+import java.util.ArrayList;
 import java.util.List;
 
-public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapter.SearchViewHolder> {
+public class SearchResultAdapter extends ListAdapter<SearchResult, SearchResultAdapter.SearchViewHolder> {
 
-    private List<SearchResult> results;
     private final OnResultClickListener listener;
 
     public interface OnResultClickListener {
@@ -26,13 +27,20 @@ public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapte
     }
 
     public SearchResultAdapter(List<SearchResult> results, OnResultClickListener listener) {
-        this.results = results;
+        super(Diffing.config(Diffing.SEARCH_RESULTS));
         this.listener = listener;
+        setHasStableIds(true);
+        setItems(results);
     }
 
+    /** Diffed against the current list in the background; only changed rows are rebound. */
     public void setItems(List<SearchResult> newResults) {
-        this.results = newResults;
-        notifyDataSetChanged();
+        submitList(newResults != null ? new ArrayList<>(newResults) : null);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return Diffing.stableId(Diffing.keyOf(getItem(position)));
     }
 
     @NonNull
@@ -40,13 +48,48 @@ public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapte
     public SearchViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_search_result, parent, false);
-        return new SearchViewHolder(view);
+        SearchViewHolder holder = new SearchViewHolder(view);
+        // Click listener + download button
+        View.OnClickListener click = v -> {
+            int pos = holder.getBindingAdapterPosition();
+            if (listener == null || pos == RecyclerView.NO_POSITION) return;
+            SearchResult result = getItem(pos);
+            // a track starts playing from here: time to first audio is measured from this tap
+            if (!SearchResult.TYPE_ARTIST.equals(result.type) && !SearchResult.TYPE_ALBUM.equals(result.type)) {
+                PlaybackTrace.getInstance().tap(SearchFragment.identityOf(result));
+            }
+            listener.onResultClick(result);
+        };
+        holder.itemView.setOnClickListener(click);
+        holder.btnDownload.setOnClickListener(click);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SearchViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(Diffing.PAYLOAD_TEXT)) {
+            bindText(holder, getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
     }
 
     @Override
     public void onBindViewHolder(@NonNull SearchViewHolder holder, int position) {
-        SearchResult result = results.get(position);
+        SearchResult result = getItem(position);
+        bindText(holder, result);
+
+        if (!result.imageUrl.isEmpty()) {
+            Glide.with(holder.itemView.getContext())
+                    .load(result.imageUrl)
+                    .placeholder(R.drawable.ic_album_placeholder)
+                    .into(holder.ivImage);
+        } else {
+            holder.ivImage.setImageResource(R.drawable.ic_album_placeholder);
+        }
+    }
 
+    private static void bindText(SearchViewHolder holder, SearchResult result) {
         holder.tvName.setText(result.name);
         holder.tvArtist.setText(result.artist);
 
@@ -86,31 +129,6 @@ public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapte
                 holder.tvType.setVisibility(View.GONE);
                 break;
         }
-
-        // TODO: Load image with Glide if you add the library
-//        holder.ivImage.setImageResource(R.drawable.ic_music_placeholder);
-        if (!result.imageUrl.isEmpty()) {
-            Glide.with(holder.itemView.getContext())
-                    .load(result.imageUrl)
-                    .placeholder(R.drawable.ic_album_placeholder)
-                    .into(holder.ivImage);
-        } else {
-            holder.ivImage.setImageResource(R.drawable.ic_album_placeholder);
-        }
-        // Click listener
-        holder.itemView.setOnClickListener(v -> {
-            if (listener != null) listener.onResultClick(result);
-        });
-
-        // Download button
-        holder.btnDownload.setOnClickListener(v -> {
-            if (listener != null) listener.onResultClick(result);
-        });
-    }
-
-    @Override
-    public int getItemCount() {
-        return results != null ? results.size() : 0;
     }
 
     static class SearchViewHolder extends RecyclerView.ViewHolder {
@@ -8,73 +8,89 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.File;
+import com.example.trakify.model.LibrarySong;
+
+import java.util.ArrayList;
 import java.util.List;
 
-public class SongAdapter extends RecyclerView.Adapter<SongAdapter.VH> {
+public class SongAdapter extends ListAdapter<LibrarySong, SongAdapter.VH> {
 
-    public List<File> getItems() {
-        return items;
+    /** Lista aktualnie pokazana (tylko do odczytu). */
+    public List<LibrarySong> getItems() {
+        return getCurrentList();
     }
 
     public interface SongActionListener {
-        void onPlay(File file);
-        void onDelete(File file, int position);
+        void onPlay(LibrarySong song);
+        void onDelete(LibrarySong song, int position);
+        void onToggleKeep(LibrarySong song);
     }
 
     private final Context ctx;
-    private List<File> items;
     private final SongActionListener listener;
 
-    public SongAdapter(Context ctx, List<File> items, SongActionListener listener) {
+    public SongAdapter(Context ctx, List<LibrarySong> items, SongActionListener listener) {
+        super(Diffing.config(Diffing.LIBRARY_SONGS));
         this.ctx = ctx;
-        this.items = items;
         this.listener = listener;
+        setHasStableIds(true);
+        setItems(items);
     }
 
-    public void setItems(List<File> newItems) {
-        this.items = newItems;
-        notifyDataSetChanged();
+    public void setItems(List<LibrarySong> newItems) {
+        setItems(newItems, null);
     }
 
-    public void removeAt(int pos) {
-        if (pos >= 0 && pos < items.size()) {
-            items.remove(pos);
-            notifyItemRemoved(pos);
-            notifyItemRangeChanged(pos, items.size());
-        }
+    /** Diff liczy się w tle; onCommitted rusza, gdy lista jest już w adapterze. */
+    public void setItems(List<LibrarySong> newItems, @Nullable Runnable onCommitted) {
+        submitList(newItems != null ? new ArrayList<>(newItems) : null, onCommitted);
+    }
+
+    // po pozycji nie można: lista mogła się zmienić, zanim usuwanie się skończyło
+    public void remove(LibrarySong song, @Nullable Runnable onCommitted) {
+        List<LibrarySong> next = new ArrayList<>(getCurrentList());
+        if (next.remove(song)) submitList(next, onCommitted);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return Diffing.stableId(getItem(position).path);
     }
 
     @NonNull
     @Override
     public VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View v = LayoutInflater.from(ctx).inflate(R.layout.item_song, parent, false);
-        return new VH(v);
-    }
+        VH holder = new VH(v);
 
-    @Override
-    public void onBindViewHolder(@NonNull VH holder, int position) {
-        File file = items.get(position);
-        String name = file.getName();
-        // usuń rozszerzenie jeśli chcesz
-        int idx = name.lastIndexOf('.');
-        if (idx > 0) name = name.substring(0, idx);
-        holder.tvName.setText(name);
-
-        holder.btnPlay.setOnClickListener(v -> {
-            if (listener != null) listener.onPlay(file);
+        holder.btnPlay.setOnClickListener(view -> {
+            int pos = holder.getBindingAdapterPosition();
+            if (listener != null && pos != RecyclerView.NO_POSITION) listener.onPlay(getItem(pos));
         });
 
-        holder.btnDelete.setOnClickListener(v -> {
-            if (listener != null) listener.onDelete(file, holder.getAdapterPosition());
+        holder.btnDelete.setOnClickListener(view -> {
+            int pos = holder.getBindingAdapterPosition();
+            if (listener != null && pos != RecyclerView.NO_POSITION) listener.onDelete(getItem(pos), pos);
         });
+
+        // przytrzymanie: zachowaj / przestań zachowywać (cache nie usuwa zachowanych)
+        v.setOnLongClickListener(view -> {
+            int pos = holder.getBindingAdapterPosition();
+            if (listener == null || pos == RecyclerView.NO_POSITION) return false;
+            listener.onToggleKeep(getItem(pos));
+            return true;
+        });
+        return holder;
     }
 
     @Override
-    public int getItemCount() {
-        return items != null ? items.size() : 0;
+    public void onBindViewHolder(@NonNull VH holder, int position) {
+        LibrarySong song = getItem(position);
+        holder.tvName.setText(song.kept ? "📌 " + song.displayName() : song.displayName());
     }
 
     static class VH extends RecyclerView.ViewHolder {
@@ -0,0 +1,311 @@
+package com.example.trakify;
+
+import com.example.trakify.model.Album;
+import com.example.trakify.model.CatalogJson;
+import com.example.trakify.model.SearchResult;
+import com.example.trakify.model.Track;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Plain-Java Spotify Web API client for the catalog screens.
+ *
+ * Replaces the per-call client-credentials POST done by api_spotify.py: the access token is
+ * cached until shortly before it expires, connections are left to the platform keep-alive pool
+ * (streams are fully drained and closed, never disconnect()ed), responses are requested gzipped
+ * and stream-parsed by {@link CatalogJson} straight into the app's model classes.
+ *
+ * Endpoints are injectable so the client can be pointed at a local stub server in tests.
+ */
+public class SpotifyCatalogClient {
+
+    public static final String DEFAULT_API_BASE = "https://api.spotify.com/v1";
+    public static final String DEFAULT_TOKEN_URL = "https://accounts.spotify.com/api/token";
+
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 15_000;
+    // refresh a bit early so a token never expires mid-request
+    private static final long TOKEN_EXPIRY_MARGIN_MS = 60_000;
+
+    private final String apiBase;
+    private final String tokenUrl;
+    private final String clientId;
+    private final String clientSecret;
+
+    private String accessToken;
+    private long tokenExpiresAt;
+    private int tokenRequests = 0;
+
+    public SpotifyCatalogClient(String clientId, String clientSecret) {
+        this(DEFAULT_API_BASE, DEFAULT_TOKEN_URL, clientId, clientSecret);
+    }
+
+    public SpotifyCatalogClient(String apiBase, String tokenUrl, String clientId, String clientSecret) {
+        this.apiBase = apiBase;
+        this.tokenUrl = tokenUrl;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+    }
+
+    public static class SpotifyException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public final int statusCode;
+
+        public SpotifyException(int statusCode, String message) {
+            super("HTTP " + statusCode + ": " + message);
+            this.statusCode = statusCode;
+        }
+    }
+
+    // ---------- catalog ----------
+
+    /** Same projection SearchFragment always used: 2 artists, 3 albums, then all tracks. */
+    public List<SearchResult> search(String query, int limit) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("q", query);
+        params.put("type", "track,album,artist");
+        params.put("limit", String.valueOf(limit));
+        return getJson("/search", params, in -> CatalogJson.readSearch(in, 2, 3));
+    }
+
+    public List<Album> getNewReleases(int limit) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("limit", String.valueOf(limit));
+        params.put("country", "US");
+        return getJson("/browse/new-releases", params, in -> CatalogJson.readAlbums(in, "albums"));
+    }
+
+    public List<Track> getAlbumTracks(String albumId) throws IOException {
+        String id = albumId.substring(albumId.lastIndexOf('/') + 1);
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("limit", "40");
+        return getJson("/albums/" + encode(id) + "/tracks", params, in -> CatalogJson.readTracks(in, "items"));
+    }
+
+    public List<Album> getArtistAlbums(String artistId, String artistName, int limit) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("limit", String.valueOf(limit));
+        params.put("include_groups", "album,single");
+        List<Album> albums = getJson("/artists/" + encode(artistId) + "/albums", params,
+                in -> CatalogJson.readAlbums(in, "items"));
+        for (Album album : albums) album.artist = artistName;
+        return albums;
+    }
+
+    /**
+     * Port of api_spotify.get_top_tracks: there is no chart endpoint for client-credentials
+     * apps, so we search a few well-known chart playlists per country and take the first one
+     * that yields tracks.
+     */
+    public List<Track> getTopTracks(String country, int limit) throws IOException {
+        String[] queries;
+        switch (country == null ? "GLOBAL" : country.toUpperCase()) {
+            case "PL":
+                queries = new String[]{"Top 50 - Polska", "Polskie Hity", "Top Hits Polska"};
+                break;
+            case "US":
+                queries = new String[]{"Top 50 - USA", "Today's Top Hits", "Top Hits USA"};
+                break;
+            default:
+                queries = new String[]{"Top 50 - Global", "Today's Top Hits", "Top Hits"};
+                break;
+        }
+
+        IOException lastError = null;
+        for (String q : queries) {
+            try {
+                String playlistId = findPlaylistId(q);
+                if (playlistId == null) continue;
+
+                Map<String, String> params = new LinkedHashMap<>();
+                params.put("limit", String.valueOf(limit));
+                List<Track> tracks = getJson("/playlists/" + encode(playlistId) + "/tracks", params,
+                        CatalogJson::readPlaylistTracks);
+                if (!tracks.isEmpty()) return tracks;
+            } catch (SpotifyException e) {
+                if (e.statusCode == 401 || e.statusCode == 403) throw e;
+                lastError = e;
+            }
+        }
+        if (lastError != null) throw lastError;
+        return new ArrayList<>();
+    }
+
+    private String findPlaylistId(String query) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("q", query);
+        params.put("type", "playlist");
+        params.put("limit", "40");
+        return getJson("/search", params, CatalogJson::readFirstPublicPlaylistId);
+    }
+
+    // ---------- token ----------
+
+    public synchronized String getToken() throws IOException {
+        long now = System.currentTimeMillis();
+        if (accessToken != null && now < tokenExpiresAt - TOKEN_EXPIRY_MARGIN_MS) {
+            return accessToken;
+        }
+
+        String body = "grant_type=client_credentials"
+                + "&client_id=" + encode(clientId)
+                + "&client_secret=" + encode(clientSecret);
+
+        HttpURLConnection conn = open(tokenUrl);
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        conn.setFixedLengthStreamingMode(bytes.length);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(bytes);
+        }
+
+        long[] expiresIn = {3600};
+        String token = readJson(conn, in -> {
+            String value = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("access_token".equals(name) && in.peek() == JsonToken.STRING) {
+                    value = in.nextString();
+                } else if ("expires_in".equals(name) && in.peek() == JsonToken.NUMBER) {
+                    expiresIn[0] = in.nextLong();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        });
+        tokenRequests++;
+        if (token == null || token.isEmpty()) {
+            throw new SpotifyException(conn.getResponseCode(), "no access_token in response");
+        }
+        accessToken = token;
+        tokenExpiresAt = now + expiresIn[0] * 1000L;
+        return accessToken;
+    }
+
+    public synchronized void invalidateToken() {
+        accessToken = null;
+        tokenExpiresAt = 0;
+    }
+
+    /** Number of token round trips made so far; lets tests and diagnostics see the cache work. */
+    public synchronized int getTokenRequestCount() {
+        return tokenRequests;
+    }
+
+    // ---------- http ----------
+
+    private interface Parser<T> {
+        T parse(JsonReader in) throws IOException;
+    }
+
+    private <T> T getJson(String path, Map<String, String> params, Parser<T> parser) throws IOException {
+        String url = apiBase + path + query(params);
+        try {
+            return getJsonOnce(url, parser);
+        } catch (SpotifyException e) {
+            // token revoked/expired early -> fetch a fresh one and retry once
+            if (e.statusCode != 401) throw e;
+            invalidateToken();
+            return getJsonOnce(url, parser);
+        }
+    }
+
+    private <T> T getJsonOnce(String url, Parser<T> parser) throws IOException {
+        HttpURLConnection conn = open(url);
+        conn.setRequestProperty("Authorization", "Bearer " + getToken());
+        return readJson(conn, parser);
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(READ_TIMEOUT_MS);
+        conn.setUseCaches(false);
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        return conn;
+    }
+
+    /** Parses the body straight off the (gzip) stream; error bodies are read as text for the message. */
+    private static <T> T readJson(HttpURLConnection conn, Parser<T> parser) throws IOException {
+        int code = conn.getResponseCode();
+        InputStream raw = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        if (raw == null) {
+            throw new SpotifyException(code, "empty response");
+        }
+        // we asked for gzip explicitly, so decoding is on us
+        try (InputStream in = "gzip".equalsIgnoreCase(conn.getContentEncoding())
+                ? new GZIPInputStream(raw) : raw) {
+            if (code >= 400) {
+                String text = readFully(in);
+                throw new SpotifyException(code, text.length() > 200 ? text.substring(0, 200) : text);
+            }
+            T result;
+            try {
+                result = parser.parse(new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+            } catch (IllegalStateException | MalformedJsonException e) {
+                throw new IOException("Invalid JSON from " + conn.getURL(), e);
+            }
+            // drain whatever is left so the connection can go back to the keep-alive pool
+            drain(in);
+            return result;
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            buf.write(chunk, 0, n);
+        }
+        return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] chunk = new byte[1024];
+        //noinspection StatementWithEmptyBody
+        while (in.read(chunk) != -1) {
+        }
+    }
+
+    private static String query(Map<String, String> params) {
+        if (params == null || params.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder("?");
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            if (sb.length() > 1) sb.append('&');
+            sb.append(encode(e.getKey())).append('=').append(encode(e.getValue()));
+        }
+        return sb.toString();
+    }
+
+    private static String encode(String s) {
+        try {
+            return URLEncoder.encode(s != null ? s : "", "UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.trakify;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Background work owned by a fragment's view.
+ *
+ * Create one in onViewCreated with {@code TaskScope.of(getViewLifecycleOwner())}. When the view
+ * is destroyed every task is cancelled (interrupting a thread that waits on Python also drops the
+ * queued Python call) and results that arrive later are never delivered. Callbacks always run on
+ * the main thread, so they can touch views and requireContext() safely.
+ */
+public final class TaskScope implements LifecycleEventObserver {
+    private static final String TAG = "TaskScope";
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private final Set<Future<?>> running = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile boolean active = true;
+
+    // handed out by submit() after the view is gone
+    private static final Future<?> CANCELLED = new CompletableFuture<Void>();
+
+    static {
+        CANCELLED.cancel(false);
+    }
+
+    public interface Work<T> {
+        T run() throws Exception;
+    }
+
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    public interface ErrorCallback {
+        void onError(Exception e);
+    }
+
+    private TaskScope() {}
+
+    public static TaskScope of(LifecycleOwner viewLifecycleOwner) {
+        TaskScope scope = new TaskScope();
+        viewLifecycleOwner.getLifecycle().addObserver(scope);
+        return scope;
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            source.getLifecycle().removeObserver(this);
+            cancel();
+        }
+    }
+
+    /**
+     * Runs work on the pool and hands its result (or error) to the main thread. The returned
+     * future can be cancelled early, e.g. when a newer request supersedes this one.
+     */
+    public <T> Future<?> submit(AppExecutors.Pool pool, Work<T> work, Callback<T> onResult, ErrorCallback onError) {
+        if (!active) return CANCELLED;
+        Future<?>[] self = new Future<?>[1];
+        Runnable task = () -> {
+            try {
+                T result = work.run();
+                if (onResult != null) post(() -> onResult.onResult(result));
+            } catch (CancellationException | InterruptedException e) {
+                // superseded or view gone: nobody is waiting for this any more
+                Log.d(TAG, "task cancelled: " + e.getMessage());
+            } catch (Exception e) {
+                if (onError != null) post(() -> onError.onError(e));
+                else Log.e(TAG, "task failed", e);
+            } finally {
+                synchronized (self) {
+                    if (self[0] != null) running.remove(self[0]);
+                }
+            }
+        };
+        synchronized (self) {
+            // the task's finally blocks on this lock, so it can't remove itself before it's added
+            self[0] = AppExecutors.getInstance().get(pool).submit(task);
+            running.add(self[0]);
+        }
+        if (!active) cancel();
+        return self[0];
+    }
+
+    /** For work that reports through its own listener; use {@link #post} inside it. */
+    public Future<?> execute(AppExecutors.Pool pool, Action action, ErrorCallback onError) {
+        return submit(pool, () -> {
+            action.run();
+            return null;
+        }, null, onError);
+    }
+
+    /** Runs on the main thread unless the scope was cancelled in the meantime. */
+    public void post(Runnable uiAction) {
+        MAIN.post(() -> {
+            if (active) uiAction.run();
+        });
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void cancel() {
+        active = false;
+        for (Future<?> f : running) {
+            f.cancel(true);
+        }
+        running.clear();
+    }
+}
@@ -1,4 +1,3 @@
-
 // TrackAdapter.java
 package com.example.trakify;
 
@@ -9,16 +8,17 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
-import com.example.trakify.HomeFragment.Track;
+import com.example.trakify.model.Track;
 
+import java.util.ArrayList;
 import java.util.List;
 
-public class TrackAdapter extends RecyclerView.Adapter<TrackAdapter.TrackViewHolder> {
+public class TrackAdapter extends ListAdapter<Track, TrackAdapter.TrackViewHolder> {
 
-    private List<Track> tracks;
     private final OnTrackClickListener listener;
 
     public interface OnTrackClickListener {
@@ -26,14 +26,20 @@ public class TrackAdapter extends RecyclerView.Adapter<TrackAdapter.TrackViewHol
     }
 
     public TrackAdapter(List<Track> tracks, OnTrackClickListener listener) {
-        this.tracks = tracks;
+        super(Diffing.config(Diffing.TRACKS));
         this.listener = listener;
+        setHasStableIds(true);
+        setItems(tracks);
     }
 
+    /** Diffed against the current list in the background; only changed rows are rebound. */
     public void setItems(List<Track> newTracks) {
-        this.tracks.clear();
-        this.tracks = newTracks;
-        notifyDataSetChanged();
+        submitList(newTracks != null ? new ArrayList<>(newTracks) : null);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return Diffing.stableId(Diffing.keyOf(getItem(position)));
     }
 
     @NonNull
@@ -41,12 +47,43 @@ public class TrackAdapter extends RecyclerView.Adapter<TrackAdapter.TrackViewHol
     public TrackViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_track, parent, false);
-        return new TrackViewHolder(view);
+        TrackViewHolder holder = new TrackViewHolder(view);
+        holder.itemView.setOnClickListener(v -> {
+            int pos = holder.getBindingAdapterPosition();
+            if (listener == null || pos == RecyclerView.NO_POSITION) return;
+            Track track = getItem(pos);
+            // time to first audio is measured from this tap
+            PlaybackTrace.getInstance().tap(TrackIdentity.of(track.id, track.artist, track.name));
+            listener.onTrackClick(track);
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TrackViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(Diffing.PAYLOAD_TEXT)) {
+            bindText(holder, getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
     }
 
     @Override
     public void onBindViewHolder(@NonNull TrackViewHolder holder, int position) {
-        Track track = tracks.get(position);
+        Track track = getItem(position);
+        bindText(holder, track);
+
+        if (!track.imageUrl.isEmpty()) {
+            Glide.with(holder.itemView.getContext())
+                    .load(track.imageUrl)
+                    .placeholder(R.drawable.ic_album_placeholder)
+                    .into(holder.ivTrack);
+        } else {
+            holder.ivTrack.setImageResource(R.drawable.ic_album_placeholder);
+        }
+    }
+
+    private static void bindText(TrackViewHolder holder, Track track) {
         holder.tvTrackName.setText(track.name);
         holder.tvArtistName.setText(track.artist);
 
@@ -65,25 +102,6 @@ public class TrackAdapter extends RecyclerView.Adapter<TrackAdapter.TrackViewHol
         } else {
             holder.tvDuration.setText("");
         }
-
-        // TODO: Load image with Glide if you add the library
-//        holder.ivTrack.setImageResource(R.drawable.ic_music_placeholder);
-        if (!track.imageUrl.isEmpty()) {
-            Glide.with(holder.itemView.getContext())
-                    .load(track.imageUrl)
-                    .placeholder(R.drawable.ic_album_placeholder)
-                    .into(holder.ivTrack);
-        } else {
-            holder.ivTrack.setImageResource(R.drawable.ic_album_placeholder);
-        }
-        holder.itemView.setOnClickListener(v -> {
-            if (listener != null) listener.onTrackClick(track);
-        });
-    }
-
-    @Override
-    public int getItemCount() {
-        return tracks != null ? tracks.size() : 0;
     }
 
     static class TrackViewHolder extends RecyclerView.ViewHolder {
@@ -102,4 +120,4 @@ public class TrackAdapter extends RecyclerView.Adapter<TrackAdapter.TrackViewHol
             tvDuration = itemView.findViewById(R.id.tvDuration);
         }
     }
-}
\ No newline at end of file
+}
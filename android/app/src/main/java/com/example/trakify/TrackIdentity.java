@@ -0,0 +1,114 @@
+package com.example.trakify;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Who a track is, independent of which screen asks for it.
+ *
+ * The Spotify track id is the primary key when the screen has one; the fallback is the
+ * normalized artist + title (case, diacritics and punctuation folded, non-Latin letters kept),
+ * so "Ćma" by "Kult" from the album screen and from search is the same track. The file a track
+ * is stored in is derived from the name key only, which keeps it stable whether or not the id
+ * was known at download time.
+ */
+public final class TrackIdentity {
+    private static final int MAX_SLUG = 80;
+
+    public final String trackId; // null when unknown
+    public final String artist;
+    public final String title;
+
+    private final String nameKey;
+
+    private TrackIdentity(String trackId, String artist, String title) {
+        this.trackId = trackId != null && !trackId.isEmpty() ? trackId : null;
+        this.artist = artist != null ? artist.trim() : "";
+        this.title = title != null ? title.trim() : "";
+        this.nameKey = "n:" + LibrarySearch.normalize(this.artist) + "|" + LibrarySearch.normalize(this.title);
+    }
+
+    public static TrackIdentity of(String trackId, String artist, String title) {
+        return new TrackIdentity(trackId, artist, title);
+    }
+
+    public static TrackIdentity of(String artist, String title) {
+        return new TrackIdentity(null, artist, title);
+    }
+
+    /** "sp:&lt;id&gt;", or null without an id. */
+    public String idKey() {
+        return trackId != null ? "sp:" + trackId : null;
+    }
+
+    /** Normalized artist + title; always present. Also the in-flight dedupe key. */
+    public String nameKey() {
+        return nameKey;
+    }
+
+    /**
+     * Storage name without extension: a readable ASCII slug plus a hash of the name key (both
+     * independent of spelling case), so titles that slug the same (e.g. entirely non-Latin ones) never share a file.
+     */
+    public String fileStem() {
+        long h = fnv1a(nameKey);
+        return slug(artist + "_" + title) + "-" + String.format(Locale.ROOT, "%08x", (int) (h ^ (h >>> 32)));
+    }
+
+    /** Name the app used before identities existed ("Artist_Title"), for adopting old files. */
+    public String legacyStem() {
+        StringBuilder sb = new StringBuilder(artist.length() + title.length() + 1);
+        String raw = artist + "_" + title;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            sb.append(isSafe(c) ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    // "Artist_Title.mp3" and the "Artist_Title.mp3.webm" the old outtmpl produced
+    static String legacyStemOf(String fileName) {
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        int mp3 = lower.indexOf(".mp3");
+        if (mp3 > 0) return lower.substring(0, mp3);
+        int dot = lower.lastIndexOf('.');
+        return dot > 0 ? lower.substring(0, dot) : lower;
+    }
+
+    // lowercase ASCII letters/digits (diacritics stripped), '_' elsewhere, runs collapsed
+    static String slug(String s) {
+        String plain = Normalizer.normalize(s, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(Math.min(plain.length(), MAX_SLUG));
+        for (int i = 0; i < plain.length() && sb.length() < MAX_SLUG; i++) {
+            char c = plain.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (c == 'ł') c = 'l'; // nie rozkłada się w NFD
+            else if (c == 'Ł') c = 'L';
+            if (isSafe(c) && c != '_') {
+                sb.append(Character.toLowerCase(c));
+            } else if (sb.length() > 0 && sb.charAt(sb.length() - 1) != '_') {
+                sb.append('_');
+            }
+        }
+        while (sb.length() > 0 && sb.charAt(sb.length() - 1) == '_') sb.setLength(sb.length() - 1);
+        return sb.length() > 0 ? sb.toString() : "track";
+    }
+
+    private static boolean isSafe(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+    }
+
+    private static long fnv1a(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return trackId != null ? idKey() + " (" + nameKey + ")" : nameKey;
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.trakify;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where each {@link TrackIdentity} lives in the music dir.
+ *
+ * A small manifest (identity key -> file name, id and name keys both pointing at the same
+ * file) is kept in memory and appended to a text file under filesDir, together with the set
+ * of files present in the music dir. "Is this track downloaded?" is therefore a map lookup,
+ * not a File.exists() per row, and it no longer depends on how the caller spelled the artist.
+ * Files downloaded under the old "Artist_Title.mp3" scheme are adopted on first lookup.
+ * {@link LibraryIndex} reports deletions so the set stays honest.
+ */
+public class TrackStore {
+    private static final String TAG = "TrackStore";
+    private static TrackStore instance;
+
+    private static final String MANIFEST = "tracks.manifest";
+
+    private final Map<String, String> manifest = new HashMap<>(); // key -> file name
+    private final Set<String> present = new HashSet<>();         // file names in musicDir
+    private final Map<String, String> legacy = new HashMap<>();  // lowercase old stem -> file name
+    private File musicDir;
+    private File manifestFile;
+    private boolean loaded;
+
+    private TrackStore() {}
+
+    public static synchronized TrackStore getInstance() {
+        if (instance == null) instance = new TrackStore();
+        return instance;
+    }
+
+    /** Loads the manifest and lists the music dir on DISK. */
+    public synchronized void init(Context ctx) {
+        if (ctx == null || musicDir != null) return;
+        Context app = ctx.getApplicationContext();
+        musicDir = app.getExternalFilesDir("Music");
+        manifestFile = new File(app.getFilesDir(), MANIFEST);
+        AppExecutors.getInstance().get(AppExecutors.Pool.DISK).execute(this::ensureLoaded);
+    }
+
+    public File getMusicDir() {
+        return musicDir;
+    }
+
+    /** Path the downloader should write to; the backend may pick another extension. */
+    public File outputFileFor(TrackIdentity id) {
+        return musicDir != null ? new File(musicDir, id.fileStem() + ".mp3") : null;
+    }
+
+    /** Local path of the track, or null when it is not downloaded. */
+    public synchronized String lookup(TrackIdentity id) {
+        if (musicDir == null) return null;
+        ensureLoaded();
+        String name = null;
+        String idKey = id.idKey();
+        if (idKey != null) name = presentOrNull(manifest.get(idKey));
+        if (name == null) name = presentOrNull(manifest.get(id.nameKey()));
+        if (name == null) {
+            name = legacy.get(id.legacyStem().toLowerCase(Locale.ROOT));
+            if (name != null) {
+                Log.d(TAG, "adopted " + name + " for " + id);
+                put(id, name);
+            }
+        }
+        return name != null ? new File(musicDir, name).getAbsolutePath() : null;
+    }
+
+    /** A download for {@code id} finished at {@code path}. */
+    public synchronized void record(TrackIdentity id, String path) {
+        if (path == null || musicDir == null) return;
+        ensureLoaded();
+        File f = new File(path);
+        if (!musicDir.equals(f.getParentFile())) return; // only files we manage
+        present.add(f.getName());
+        put(id, f.getName());
+    }
+
+    /**
+     * Cheap existence check for a queue item's path: files in the music dir are answered from
+     * memory, anything else (or an unknown name) falls back to the file system.
+     */
+    public boolean isPresent(String path) {
+        if (path == null) return false;
+        File f = new File(path);
+        synchronized (this) {
+            if (loaded && musicDir != null && musicDir.equals(f.getParentFile())) {
+                if (present.contains(f.getName())) return true;
+            }
+        }
+        boolean exists = f.isFile();
+        if (exists) {
+            synchronized (this) {
+                if (musicDir != null && musicDir.equals(f.getParentFile())) present.add(f.getName());
+            }
+        }
+        return exists;
+    }
+
+    public synchronized void onRemoved(File file) {
+        present.remove(file.getName());
+        legacy.values().remove(file.getName());
+    }
+
+    public synchronized void onCleared() {
+        present.clear();
+        legacy.clear();
+        manifest.clear();
+        if (manifestFile != null && manifestFile.exists() && !manifestFile.delete()) {
+            Log.w(TAG, "could not delete manifest");
+        }
+    }
+
+    // must hold lock
+    private String presentOrNull(String name) {
+        return name != null && present.contains(name) ? name : null;
+    }
+
+    // must hold lock
+    private void put(TrackIdentity id, String name) {
+        StringBuilder lines = new StringBuilder();
+        String idKey = id.idKey();
+        if (idKey != null && !name.equals(manifest.put(idKey, name))) {
+            lines.append(idKey).append('\t').append(name).append('\n');
+        }
+        if (!name.equals(manifest.put(id.nameKey(), name))) {
+            lines.append(id.nameKey()).append('\t').append(name).append('\n');
+        }
+        if (lines.length() > 0) append(lines.toString());
+    }
+
+    // a line per mapping; the last line for a key wins on load
+    private void append(String lines) {
+        if (manifestFile == null) return;
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(manifestFile, true), StandardCharsets.UTF_8)) {
+            w.write(lines);
+        } catch (IOException e) {
+            Log.w(TAG, "manifest append failed", e);
+        }
+    }
+
+    // must hold lock (or be the DISK init task, which takes it here)
+    private synchronized void ensureLoaded() {
+        if (loaded || musicDir == null) return;
+        loaded = true;
+        long start = System.nanoTime();
+
+        File[] files = musicDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!f.isFile() || AudioCache.isTemp(f.getName())) continue;
+                present.add(f.getName());
+                legacy.put(TrackIdentity.legacyStemOf(f.getName()), f.getName());
+            }
+        }
+
+        int stale = 0;
+        if (manifestFile.exists()) {
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab <= 0) continue;
+                    String name = line.substring(tab + 1);
+                    if (present.contains(name)) manifest.put(line.substring(0, tab), name);
+                    else stale++;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "manifest read failed", e);
+            }
+        }
+        // files the manifest knows are not legacy candidates
+        legacy.values().removeAll(new HashSet<>(manifest.values()));
+        if (stale > 0) rewrite();
+        Log.d(TAG, "loaded " + manifest.size() + " keys, " + present.size() + " files ("
+                + stale + " stale) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // compacts the manifest to the live mappings
+    private void rewrite() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : manifest.entrySet()) {
+            sb.append(e.getKey()).append('\t').append(e.getValue()).append('\n');
+        }
+        File tmp = new File(manifestFile.getPath() + ".tmp");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            w.write(sb.toString());
+        } catch (IOException e) {
+            Log.w(TAG, "manifest rewrite failed", e);
+            return;
+        }
+        if (!tmp.renameTo(manifestFile)) Log.w(TAG, "manifest rename failed");
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.trakify.model;
+
+/** An album (or single) as shown on the home, artist and search screens. */
+public class Album {
+    public String id;
+    public String name;
+    public String artist;
+    public String imageUrl;
+}
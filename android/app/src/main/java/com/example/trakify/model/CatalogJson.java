@@ -0,0 +1,370 @@
+package com.example.trakify.model;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming (pull) parser for every catalog payload the app reads: Spotify Web API responses,
+ * the flattened JSON returned by api_spotify.py and the catalog cache files.
+ *
+ * Only the fields the models keep are materialized. Everything else (available_markets,
+ * external_urls, copyrights, extra images...) is skipped token by token, so a large search
+ * response never becomes a tree of JSONObjects and Strings we throw away.
+ *
+ * The object readers accept both shapes of the same entity: Spotify's nested one
+ * (artists[0].name, images[0].url, album{}) and the flat one (artist, image, album as a string).
+ */
+public final class CatalogJson {
+
+    private CatalogJson() {}
+
+    /** Reads one array element; may return null to drop the element. */
+    public interface ItemReader<T> {
+        T read(JsonReader in) throws IOException;
+    }
+
+    public static JsonReader reader(String json) {
+        return new JsonReader(new StringReader(json));
+    }
+
+    // ---------- whole payloads ----------
+
+    /** Albums under {@code field}, either a plain array or a Spotify paging object. */
+    public static List<Album> readAlbums(JsonReader in, String field) throws IOException {
+        return readListField(in, field, CatalogJson::readAlbum);
+    }
+
+    /** Tracks under {@code field}, either a plain array or a Spotify paging object. */
+    public static List<Track> readTracks(JsonReader in, String field) throws IOException {
+        return readListField(in, field, CatalogJson::readTrack);
+    }
+
+    /** /playlists/{id}/tracks: every item wraps the track, unavailable ones are null. */
+    public static List<Track> readPlaylistTracks(JsonReader in) throws IOException {
+        return readListField(in, "items", item -> {
+            Track track = null;
+            item.beginObject();
+            while (item.hasNext()) {
+                if ("track".equals(item.nextName()) && item.peek() == JsonToken.BEGIN_OBJECT) {
+                    track = readTrack(item);
+                } else {
+                    item.skipValue();
+                }
+            }
+            item.endObject();
+            return track;
+        });
+    }
+
+    /** /search?type=playlist: id of the first playlist that isn't explicitly private. */
+    public static String readFirstPublicPlaylistId(JsonReader in) throws IOException {
+        List<String> ids = readListField(in, "playlists", item -> {
+            String id = null;
+            boolean isPublic = true;
+            item.beginObject();
+            while (item.hasNext()) {
+                switch (item.nextName()) {
+                    case "id":
+                        id = nextString(item, null);
+                        break;
+                    case "public":
+                        if (item.peek() == JsonToken.BOOLEAN) isPublic = item.nextBoolean();
+                        else item.skipValue();
+                        break;
+                    default:
+                        item.skipValue();
+                }
+            }
+            item.endObject();
+            return isPublic ? id : null;
+        });
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * /search?type=track,album,artist projected the way the search screen shows it:
+     * at most {@code maxArtists} artists, then {@code maxAlbums} albums, then every track.
+     * Artists/albums beyond the limits are skipped without being parsed.
+     */
+    public static List<SearchResult> readSearch(JsonReader in, int maxArtists, int maxAlbums) throws IOException {
+        List<SearchResult> artists = new ArrayList<>();
+        List<SearchResult> albums = new ArrayList<>();
+        List<SearchResult> tracks = new ArrayList<>();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "artists":
+                    readList(in, maxArtists, item -> toResult(SearchResult.TYPE_ARTIST, readAlbum(item)), artists);
+                    break;
+                case "albums":
+                    readList(in, maxAlbums, item -> toResult(SearchResult.TYPE_ALBUM, readAlbum(item)), albums);
+                    break;
+                case "tracks":
+                    readList(in, Integer.MAX_VALUE, item -> toResult(readTrack(item)), tracks);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        List<SearchResult> results = new ArrayList<>(artists.size() + albums.size() + tracks.size());
+        results.addAll(artists);
+        results.addAll(albums);
+        results.addAll(tracks);
+        return results;
+    }
+
+    // ---------- flat writer (catalog cache) ----------
+
+    public static String writeAlbums(List<Album> albums) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonWriter w = new JsonWriter(out)) {
+            w.beginObject().name("albums").beginArray();
+            for (Album a : albums) {
+                w.beginObject()
+                        .name("id").value(a.id)
+                        .name("name").value(a.name)
+                        .name("artist").value(a.artist)
+                        .name("image").value(a.imageUrl)
+                        .endObject();
+            }
+            w.endArray().endObject();
+        }
+        return out.toString();
+    }
+
+    public static String writeTracks(List<Track> tracks) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonWriter w = new JsonWriter(out)) {
+            w.beginObject().name("tracks").beginArray();
+            for (Track t : tracks) {
+                w.beginObject()
+                        .name("id").value(t.id)
+                        .name("name").value(t.name)
+                        .name("artist").value(t.artist)
+                        .name("album").value(t.album)
+                        .name("image").value(t.imageUrl)
+                        .name("duration_ms").value(t.durationMs)
+                        .name("track_number").value(t.trackNumber)
+                        .endObject();
+            }
+            w.endArray().endObject();
+        }
+        return out.toString();
+    }
+
+    // ---------- entities ----------
+
+    public static Album readAlbum(JsonReader in) throws IOException {
+        Album album = new Album();
+        album.id = "";
+        album.name = "";
+        album.artist = "";
+        album.imageUrl = "";
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    album.id = nextString(in, "");
+                    break;
+                case "name":
+                    album.name = nextString(in, "");
+                    break;
+                case "artist":
+                    album.artist = nextString(in, "");
+                    break;
+                case "artists":
+                    album.artist = firstField(in, "name");
+                    break;
+                case "image":
+                    album.imageUrl = nextString(in, "");
+                    break;
+                case "images":
+                    album.imageUrl = firstField(in, "url");
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return album;
+    }
+
+    public static Track readTrack(JsonReader in) throws IOException {
+        Track track = new Track();
+        track.id = "";
+        track.name = "";
+        track.artist = "";
+        track.album = "";
+        track.imageUrl = "";
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    track.id = nextString(in, "");
+                    break;
+                case "name":
+                    track.name = nextString(in, "");
+                    break;
+                case "artist":
+                    track.artist = nextString(in, "");
+                    break;
+                case "artists":
+                    track.artist = firstField(in, "name");
+                    break;
+                case "album":
+                    if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                        // Spotify: the cover lives on the nested album
+                        Album album = readAlbum(in);
+                        track.album = album.name;
+                        track.imageUrl = album.imageUrl;
+                    } else {
+                        track.album = nextString(in, "");
+                    }
+                    break;
+                case "image":
+                    track.imageUrl = nextString(in, "");
+                    break;
+                case "duration_ms":
+                    track.durationMs = nextInt(in, 0);
+                    break;
+                case "track_number":
+                    track.trackNumber = nextInt(in, 0);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return track;
+    }
+
+    private static SearchResult toResult(String type, Album album) {
+        SearchResult result = new SearchResult();
+        result.type = type;
+        result.id = album.id;
+        result.name = album.name;
+        result.artist = SearchResult.TYPE_ARTIST.equals(type) ? "" : album.artist;
+        result.imageUrl = album.imageUrl;
+        return result;
+    }
+
+    private static SearchResult toResult(Track track) {
+        SearchResult result = new SearchResult();
+        result.type = SearchResult.TYPE_TRACK;
+        result.id = track.id;
+        result.name = track.name;
+        result.artist = track.artist;
+        result.album = track.album;
+        result.imageUrl = track.imageUrl;
+        result.durationMs = track.durationMs;
+        return result;
+    }
+
+    // ---------- token helpers ----------
+
+    private static <T> List<T> readListField(JsonReader in, String field, ItemReader<T> itemReader) throws IOException {
+        List<T> out = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            if (field.equals(in.nextName())) {
+                readList(in, Integer.MAX_VALUE, itemReader, out);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return out;
+    }
+
+    /** Reads a plain array or a paging object's "items"; null elements and ones past max are skipped. */
+    private static <T> void readList(JsonReader in, int max, ItemReader<T> itemReader, List<T> out) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.BEGIN_OBJECT) {
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("items".equals(in.nextName())) {
+                    readList(in, max, itemReader, out);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return;
+        }
+        if (token != JsonToken.BEGIN_ARRAY) {
+            in.skipValue();
+            return;
+        }
+
+        int taken = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (taken >= max || in.peek() != JsonToken.BEGIN_OBJECT) {
+                in.skipValue();
+                continue;
+            }
+            T item = itemReader.read(in);
+            if (item != null) {
+                out.add(item);
+                taken++;
+            }
+        }
+        in.endArray();
+    }
+
+    /** {@code field} of the first object in an array (artists[0].name, images[0].url). */
+    private static String firstField(JsonReader in, String field) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            in.skipValue();
+            return "";
+        }
+        String value = null;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (value != null || in.peek() != JsonToken.BEGIN_OBJECT) {
+                in.skipValue();
+                continue;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (value == null && field.equals(name)) {
+                    value = nextString(in, "");
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+        in.endArray();
+        return value != null ? value : "";
+    }
+
+    private static String nextString(JsonReader in, String fallback) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) return in.nextString();
+        in.skipValue();
+        return fallback;
+    }
+
+    private static int nextInt(JsonReader in, int fallback) throws IOException {
+        if (in.peek() != JsonToken.NUMBER) {
+            in.skipValue();
+            return fallback;
+        }
+        // nextDouble never throws on a NUMBER token (nextInt does on "1.0")
+        return (int) in.nextDouble();
+    }
+}
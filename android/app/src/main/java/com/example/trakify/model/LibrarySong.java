@@ -0,0 +1,51 @@
+package com.example.trakify.model;
+
+import java.io.File;
+
+/**
+ * A downloaded file as stored in the library index. Title/artist/album come from the download
+ * request or the file's tags; for files of unknown origin the title is derived from the name.
+ */
+public class LibrarySong {
+    public String path;
+    public String fileName;
+    public long size;
+    public long mtime;
+    public String title;
+    public String artist;
+    public String album;
+    public int durationMs;
+    // source ids, empty until known
+    public String trackId;
+    public String videoId;
+    // cache bookkeeping: last play (0 = never), plays, and whether the user keeps it (never evicted)
+    public long lastPlayed;
+    public int playCount;
+    public boolean kept;
+
+    public File file() {
+        return new File(path);
+    }
+
+    /**
+     * What the library list shows: "Artist - Title" when known. Download file names carry a
+     * hash suffix and lose non-Latin letters, so the name is only the last resort.
+     */
+    public String displayName() {
+        if (title != null && !title.isEmpty()) {
+            return artist != null && !artist.isEmpty() ? artist + " - " + title : title;
+        }
+        int idx = fileName.lastIndexOf('.');
+        return idx > 0 ? fileName.substring(0, idx) : fileName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LibrarySong && path.equals(((LibrarySong) o).path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+}
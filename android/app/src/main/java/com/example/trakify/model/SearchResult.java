@@ -0,0 +1,16 @@
+package com.example.trakify.model;
+
+/** One row of the search screen: an artist, an album or a track. */
+public class SearchResult {
+    public static final String TYPE_ARTIST = "artist";
+    public static final String TYPE_ALBUM = "album";
+    public static final String TYPE_TRACK = "track";
+
+    public String id;
+    public String type;
+    public String name;
+    public String artist;
+    public String album;
+    public String imageUrl;
+    public int durationMs;
+}
@@ -0,0 +1,15 @@
+package com.example.trakify.model;
+
+/**
+ * A catalog track. Album listings leave {@link #album}/{@link #imageUrl} empty (the screen
+ * knows them) and chart/search listings leave {@link #trackNumber} at 0.
+ */
+public class Track {
+    public String id;
+    public String name;
+    public String artist;
+    public String album;
+    public String imageUrl;
+    public int durationMs;
+    public int trackNumber;
+}
@@ -16,8 +16,8 @@ def get_token():
     )
     return token_resp.json().get("access_token")
 
-def search_spotify(q: str, limit=20):
-    """Search for tracks, albums, and artists on Spotify"""
+def _search(q: str, limit=20):
+    """Raw Spotify /search response (dict) for tracks, albums and artists"""
     token = get_token()
     headers = {"Authorization": f"Bearer {token}"}
     r = rq.get(
@@ -25,13 +25,15 @@ def search_spotify(q: str, limit=20):
         headers=headers,
         params={"q": q, "type": "track,album,artist", "limit": limit}
     )
-    data = r.json()
+    return r.json()
 
-    # Return the full response - Java will parse what it needs
-    return json.dumps(data)
+def search_spotify(q: str, limit=20):
+    """Search for tracks, albums, and artists on Spotify"""
+    # Return the full response - Java will parse what it needs (bridge.search sends a projection)
+    return json.dumps(_search(q, limit))
 
-def get_new_releases(limit=20):
-    """Get new album releases"""
+def _new_releases(limit=20):
+    """New album releases as a list of flat dicts"""
     token = get_token()
     headers = {"Authorization": f"Bearer {token}"}
     r = rq.get(
@@ -52,7 +54,11 @@ def get_new_releases(limit=20):
                 "image": album["images"][0]["url"] if album.get("images") else "",
                 "release_date": album.get("release_date", ""),
             })
-    return json.dumps({"albums": albums})
+    return albums
+
+def get_new_releases(limit=20):
+    """Get new album releases"""
+    return json.dumps({"albums": _new_releases(limit)})
 
 def get_featured_playlists(limit=10):
     """Get featured playlists"""
@@ -76,8 +82,8 @@ def get_featured_playlists(limit=10):
             })
     return json.dumps({"playlists": playlists})
 
-def get_album_tracks(album_id: str):
-    """Get tracks from a specific album"""
+def _album_tracks(album_id: str):
+    """Tracks of an album as a list of flat dicts"""
     album_id = album_id.split("/")[-1]
     token = get_token()
     headers = {"Authorization": f"Bearer {token}"}
@@ -98,7 +104,11 @@ def get_album_tracks(album_id: str):
                 "duration_ms": track.get("duration_ms", 0),
                 "track_number": track.get("track_number", 0),
             })
-    return json.dumps({"tracks": tracks})
+    return tracks
+
+def get_album_tracks(album_id: str):
+    """Get tracks from a specific album"""
+    return json.dumps({"tracks": _album_tracks(album_id)})
 
 # def get_top_tracks(limit=20):
 #     """Get popular tracks (using a popular playlist as proxy)"""
@@ -185,7 +195,8 @@ def _search_playlist_and_get_id(token, query="top hits", limit=40):
 
     return None
 
-def get_top_tracks(country,limit=40):
+def _top_tracks(country, limit=40):
+    """Top tracks result dict: {"tracks": [...], ...} or {"tracks": [], "error": ...}"""
     country = str(country).upper()
     token = get_token()
     headers = {"Authorization": f"Bearer {token}"}
@@ -221,25 +232,29 @@ def get_top_tracks(country,limit=40):
 
         tracks, items_count = _parse_playlist_tracks_response(r)
         if tracks:
-            return json.dumps({
+            return {
                 "tracks": tracks,
                 "status_code": 200,
                 "playlist_id": pid,
                 "items_count": items_count,
                 "tracks_parsed": len(tracks),
                 "search_query": q
-            })
+            }
         else:
             last_error = {"status_code": 200, "message": "no parseable tracks", "items_count": items_count, "playlist_id": pid, "search_query": q}
 
     # jeśli nic nie dało -> zwróć ostatni błąd
-    return json.dumps({
+    return {
         "tracks": [],
         "error": last_error or {"message":"no playable playlists found"},
         "status": "no_data"
-    })
-def get_artist_albums(artist_id: str, limit=20):
-    """Get albums from a specific artist"""
+    }
+
+def get_top_tracks(country,limit=40):
+    return json.dumps(_top_tracks(country, limit))
+
+def _artist_albums(artist_id: str, limit=20):
+    """Albums of an artist as a list of flat dicts"""
     token = get_token()
     headers = {"Authorization": f"Bearer {token}"}
     r = rq.get(
@@ -259,7 +274,11 @@ def get_artist_albums(artist_id: str, limit=20):
                 "release_date": album.get("release_date", ""),
                 "total_tracks": album.get("total_tracks", 0),
             })
-    return json.dumps({"albums": albums})
+    return albums
+
+def get_artist_albums(artist_id: str, limit=20):
+    """Get albums from a specific artist"""
+    return json.dumps({"albums": _artist_albums(artist_id, limit)})
 
 if __name__ == "__main__":
     import sys
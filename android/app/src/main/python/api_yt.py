@@ -6,6 +6,8 @@ import urllib.request
 import traceback
 import sys
 import re
+import threading
+import time
 
 # ---------- konfiguracja ----------
 API_KEY = os.environ.get("YOUTUBE_API_KEY", "")  # ustaw jeśli chcesz użyć YouTube Data API
@@ -78,24 +80,333 @@ def _sanitize_filename(name: str) -> str:
     return res.strip()
 
 def _choose_downloaded_file(out_dir, base_name):
-    """Znajdź plik najbliższy base_name w katalogu (używane gdy backend doda rozszerzenie)."""
+    """Znajdź plik base_name z dowolnym rozszerzeniem (backend sam je dobiera).
+
+    Tylko dokładny rdzeń nazwy: plik innej piosenki z tym samym prefiksem albo
+    niedokończony .part nie może zostać zwrócony jako wynik.
+    """
     base_no_ext = os.path.splitext(base_name)[0]
     candidates = []
-    for root, dirs, files in os.walk(out_dir):
-        for f in files:
-            if f.startswith(base_no_ext):
-                candidates.append(os.path.join(root, f))
+    for f in os.listdir(out_dir):
+        path = os.path.join(out_dir, f)
+        if not os.path.isfile(path) or f.endswith((".part", ".ytdl", ".temp", ".tmp")):
+            continue
+        if f == base_no_ext or f.startswith(base_no_ext + "."):
+            candidates.append(path)
     if not candidates:
-        # fallback: wybierz największy plik w katalogu out_dir
-        files = [os.path.join(out_dir, f) for f in os.listdir(out_dir) if os.path.isfile(os.path.join(out_dir, f))]
-        if not files:
-            return None
-        files.sort(key=lambda p: os.path.getsize(p), reverse=True)
-        return files[0]
+        return None
     candidates.sort(key=lambda p: os.path.getsize(p), reverse=True)
     return candidates[0]
 
+def _requested_filepath(info):
+    """Ścieżka zapisanego pliku z info yt-dlp (nowsze wersje), albo None."""
+    try:
+        for d in (info or {}).get("requested_downloads") or []:
+            path = d.get("filepath") or d.get("_filename")
+            if path and os.path.isfile(path):
+                return path
+    except Exception:
+        pass
+    return None
+
+_PROGRESS_STEP = 64 * 1024  # co tyle bajtów wołamy Javę (hook yt-dlp przychodzi co blok)
+
+class DownloadCancelled(Exception):
+    """Java (PartialDownload.cancel) już tego nie chce; .part zostaje do wznowienia."""
+
+def check_cancelled(progress):
+    """Rzuć DownloadCancelled, jeśli progress (PartialDownload) został anulowany."""
+    try:
+        cancelled = progress is not None and bool(progress.isCancelled())
+    except Exception:
+        return  # obiekt bez isCancelled (np. w testach)
+    if cancelled:
+        raise DownloadCancelled()
+
+def _progress_hook(progress):
+    """Hook yt-dlp przekazujący plik tymczasowy i postęp do PartialDownload (Java)."""
+    last = [-_PROGRESS_STEP]
+
+    def hook(d):
+        status = d.get("status")
+        try:
+            done = int(d.get("downloaded_bytes") or 0)
+            total = int(d.get("total_bytes") or 0)  # estymata się nie nadaje na rozmiar źródła
+            if status == "downloading":
+                if done - last[0] < _PROGRESS_STEP:
+                    return
+                last[0] = done
+                progress.onProgress(d.get("tmpfilename") or d.get("filename"), done, total)
+            elif status == "finished":
+                # po zmianie nazwy .part -> plik docelowy
+                progress.onProgress(d.get("filename"), done, total or done)
+        except Exception as e:
+            # postęp jest tylko podpowiedzią, nie może przerwać pobierania
+            print("⚠️ progress hook:", e)
+        # ...ale anulowanie już tak (wyjątek z hooka przerywa yt-dlp)
+        if status == "downloading":
+            check_cancelled(progress)
+
+    return hook
+
+def stage_done(progress, stats, name, t0):
+    """
+    Koniec etapu (search / resolve / transfer / finalize) rozpoczętego o t0 (time.time()):
+    czas trafia do DownloadStats.recordStage i PartialDownload.onStage. Zwraca nowe t0.
+    """
+    now = time.time()
+    ms = int((now - t0) * 1000)
+    try:
+        if stats is not None:
+            stats.recordStage(name, ms)
+        if progress is not None:
+            progress.onStage(name, ms)
+    except Exception as e:
+        print("⚠️ stage", name, e)
+    return now
+
+# ---------- profil / segmentowane pobieranie ----------
+_SIDECAR = ".segments"  # obok .part: które kawałki już są (wznawianie po przerwaniu)
+_READ_BLOCK = 64 * 1024
+_SEGMENT_ATTEMPTS = 2  # pełne podejścia segmentowane, zanim yt-dlp dociągnie resztę
+
+def _profile_value(profile, name, default):
+    """Pole DownloadProfile z Javy (albo default bez profilu)."""
+    try:
+        return int(getattr(profile, name)) if profile is not None else default
+    except Exception:
+        return default
+
+def _profile_opts(profile):
+    """Opcje yt-dlp z profilu: wznawianie zawsze, reszta według pokręteł."""
+    retries = _profile_value(profile, "retries", 10)
+    opts = {"continuedl": True, "retries": retries, "fragment_retries": retries}
+    connections = _profile_value(profile, "connections", 1)
+    if connections > 1:
+        opts["concurrent_fragment_downloads"] = connections  # tylko formaty fragmentowane (DASH/HLS)
+    chunk = _profile_value(profile, "chunkBytes", 0)
+    if chunk > 0:
+        opts["http_chunk_size"] = chunk
+    rate = _profile_value(profile, "rateLimitBytes", 0)
+    if rate > 0:
+        opts["ratelimit"] = rate
+    return opts
+
+def _segmentable(info):
+    """Pojedynczy format po http(s) ze znanym rozmiarem — da się go ciąć na zakresy."""
+    if not info or info.get("requested_formats"):
+        return False
+    return (info.get("protocol") in ("http", "https") and info.get("url")
+            and int(info.get("filesize") or 0) > 0)
+
+def _fetch_range(url, headers, fd, start, end, rate, on_bytes):
+    """Zapisz bajty [start, end] z url w fd pod ich offsetem."""
+    h = dict(headers or {})
+    h["Range"] = "bytes=%d-%d" % (start, end)
+    expected = end - start + 1
+    got = 0
+    t0 = time.time()
+    with urllib.request.urlopen(urllib.request.Request(url, headers=h), timeout=20) as resp:
+        if resp.getcode() != 206:
+            raise IOError("range not honoured (HTTP %s)" % resp.getcode())
+        while got < expected:
+            buf = resp.read(min(_READ_BLOCK, expected - got))
+            if not buf:
+                break
+            os.pwrite(fd, buf, start + got)
+            got += len(buf)
+            on_bytes(got)
+            if rate > 0:
+                ahead = got / rate - (time.time() - t0)
+                if ahead > 0:
+                    time.sleep(ahead)
+    if got < expected:
+        raise IOError("short read %d/%d at %d" % (got, expected, start))
+
+def _load_done_chunks(part_path, size, chunk, count):
+    """Kawałki gotowe z poprzedniego uruchomienia."""
+    sidecar = part_path + _SIDECAR
+    if not os.path.exists(part_path):
+        return set()
+    if os.path.exists(sidecar):
+        try:
+            with open(sidecar) as f:
+                meta = json.load(f)
+            if meta.get("size") == size and meta.get("chunk") == chunk:
+                return set(i for i in meta.get("done", []) if 0 <= i < count)
+        except Exception:
+            pass
+        return set()
+    # .part zwykłego yt-dlp jest pisany po kolei: pełne kawałki z jego początku są dobre
+    have = min(os.path.getsize(part_path), size)
+    return set(range(have // chunk))
+
+def _segmented_download(info, final_path, profile, progress, stats, on_transferred=None):
+    """
+    Pobierz format z info w kawałkach przez kilka połączeń do final_path(.part).
+
+    Kawałki są rozdawane po kolei, więc początek pliku dochodzi pierwszy; progress dostaje
+    długość ciągłego prefiksu (tyle da się już odtwarzać). Stan kawałków ląduje w pliku
+    .segments, więc przerwane pobieranie rusza od miejsca, w którym stanęło.
+    on_transferred: wołane, gdy wszystkie bajty są na dysku, przed przeniesieniem pliku.
+    """
+    url = info["url"]
+    headers = info.get("http_headers") or {}
+    size = int(info["filesize"])
+    connections = max(1, _profile_value(profile, "connections", 1))
+    chunk = _profile_value(profile, "chunkBytes", 0) or 1024 * 1024
+    retries = _profile_value(profile, "retries", 10)
+    rate = _profile_value(profile, "rateLimitBytes", 0) / connections
+    count = (size + chunk - 1) // chunk
+
+    part_path = final_path + ".part"
+    sidecar = part_path + _SIDECAR
+    done = _load_done_chunks(part_path, size, chunk, count)
+    resumed = sum(min(chunk, size - i * chunk) for i in done)
+    pending = [i for i in range(count) if i not in done]
+
+    lock = threading.Lock()
+    state = {"next": 0, "prefix": 0, "fetched": 0, "error": None}
+
+    def advance_prefix():
+        while state["prefix"] < count and state["prefix"] in done:
+            state["prefix"] += 1
+
+    def report(written):
+        if progress is not None:
+            try:
+                progress.onProgress(part_path, written, size)
+            except Exception as e:
+                print("⚠️ progress:", e)
+
+    def save_sidecar():
+        tmp = sidecar + ".tmp"
+        with open(tmp, "w") as f:
+            json.dump({"size": size, "chunk": chunk, "done": sorted(done)}, f)
+        os.replace(tmp, sidecar)
+
+    fd = os.open(part_path, os.O_RDWR | os.O_CREAT, 0o644)
+    t0 = time.time()
+    try:
+        os.ftruncate(fd, size)
+        with lock:
+            advance_prefix()
+            save_sidecar()
+        report(min(size, state["prefix"] * chunk))
+
+        def worker():
+            while True:
+                try:
+                    check_cancelled(progress)
+                except DownloadCancelled as e:
+                    with lock:
+                        state["error"] = e
+                    return
+                with lock:
+                    if state["error"] is not None or state["next"] >= len(pending):
+                        return
+                    i = pending[state["next"]]
+                    state["next"] += 1
+                start = i * chunk
+                end = min(size, start + chunk) - 1
+
+                def on_bytes(got, i=i, start=start):
+                    # postęp wewnątrz kawałka liczy się tylko na końcu ciągłego prefiksu
+                    if state["prefix"] == i:
+                        report(start + got)
+
+                for attempt in range(retries + 1):
+                    try:
+                        _fetch_range(url, headers, fd, start, end, rate, on_bytes)
+                        break
+                    except Exception as e:
+                        if attempt >= retries:
+                            with lock:
+                                state["error"] = e
+                            return
+                        time.sleep(min(0.5 * (2 ** attempt), 8))
+                with lock:
+                    done.add(i)
+                    state["fetched"] += end - start + 1
+                    advance_prefix()
+                    save_sidecar()
+                    written = min(size, state["prefix"] * chunk)
+                report(written)
+
+        threads = [threading.Thread(target=worker, daemon=True) for _ in range(min(connections, max(1, len(pending))))]
+        for t in threads:
+            t.start()
+        for t in threads:
+            t.join()
+    finally:
+        os.close(fd)
+
+    elapsed_ms = int((time.time() - t0) * 1000)
+    if stats is not None:
+        stats.record("segmented", state["fetched"], resumed, elapsed_ms, connections, chunk)
+    if state["error"] is not None:
+        raise state["error"]
+
+    if on_transferred is not None:
+        on_transferred()
+    os.replace(part_path, final_path)
+    try:
+        os.remove(sidecar)
+    except OSError:
+        pass
+    report(size)
+    print("✅ segmented:", final_path, "%d B in %d ms (%d resumed, %d conn)"
+          % (state["fetched"], elapsed_ms, resumed, connections))
+    return final_path
+
+def _segments_to_prefix(final_path, size):
+    """
+    Zostaw z segmentowanego .part tylko ciągły początek, żeby yt-dlp (continuedl) dociągnął resztę.
+    Sidecar od innego rozmiaru (zmienił się format) — wtedy .part nic nie jest wart i idzie w całości.
+    """
+    part_path = final_path + ".part"
+    sidecar = part_path + _SIDECAR
+    if not os.path.exists(sidecar):
+        return
+    keep = 0
+    try:
+        with open(sidecar) as f:
+            meta = json.load(f)
+        chunk = int(meta.get("chunk") or 0)
+        if size > 0 and meta.get("size") == size and chunk > 0 and os.path.exists(part_path):
+            done = set(meta.get("done", []))
+            n = 0
+            while n in done:
+                n += 1
+            keep = min(size, n * chunk)
+    except Exception as e:
+        print("⚠️ segments sidecar:", e)
+    try:
+        if keep > 0:
+            os.truncate(part_path, keep)
+            print("🔹 resuming", part_path, "from", keep, "B")
+        elif os.path.exists(part_path):
+            os.remove(part_path)
+    except OSError as e:
+        print("⚠️ segments prefix:", e)
+    try:
+        os.remove(sidecar)
+    except OSError:
+        pass
+
+def _record_resolution(stats, video_id, duration, format_id, ext):
+    if stats is None or not video_id:
+        return
+    try:
+        stats.recordResolution(str(video_id), int(duration or 0), format_id, ext)
+    except Exception as e:
+        print("⚠️ recordResolution:", e)
+
 # ---------- search ----------
+def watch_url(video_id: str) -> str:
+    """URL strony wideo dla id zapamiętanego przez Javę."""
+    return f"https://www.youtube.com/watch?v={video_id}"
+
 def search_youtube(query: str):
     """Zwraca URL do pierwszego wyniku lub None."""
     q = (query or "").strip()
@@ -160,22 +471,28 @@ def search_youtube(query: str):
     return None
 
 # ---------- download ----------
-def download_audio(video_url: str, filepath: str):
+def download_audio(video_url: str, filepath: str, progress=None, profile=None, stats=None):
     """
     Pobierz audio do filepath (nie zawsze dokładnie takiego rozszerzenia).
     Zwraca pełną ścieżkę do pliku lub None.
+    progress: opcjonalny obiekt z onProgress(tmp_path, downloaded, total) — tylko yt-dlp.
+    profile: DownloadProfile (connections, chunkBytes, retries, rateLimitBytes) albo None.
+    stats: DownloadStats, dostaje record(mode, bytes, resumed, elapsed_ms, connections, chunk).
+    Czasy etapów resolve / transfer / finalize idą przez stage_done.
     """
     print("▶ download_audio called:", video_url, filepath)
     out_dir = os.path.dirname(filepath) or "."
     base_name = os.path.basename(filepath) or "song"
     base_name = _sanitize_filename(base_name)
+    # Java podaje nazwę z .mp3, ale rozszerzenie wybiera backend: "x.mp3" -> "x.webm", nie "x.mp3.webm"
+    base_stem = os.path.splitext(base_name)[0] or "song"
     os.makedirs(out_dir, exist_ok=True)
 
     # 1) yt-dlp / youtube_dl backend
     if _YDL is not None:
         try:
             # zapisz z placeholderem rozszerzenia — backend doda właściwe
-            outtmpl = os.path.join(out_dir, base_name + ".%(ext)s")
+            outtmpl = os.path.join(out_dir, base_stem + ".%(ext)s")
             opts = {
                 "format": "bestaudio/best",
                 "outtmpl": outtmpl,
@@ -185,18 +502,59 @@ def download_audio(video_url: str, filepath: str):
                 # nie wymuszamy konwersji do mp3 (na urządzeniu może nie być ffmpeg)
                 # "postprocessors": [{"key":"FFmpegExtractAudio", "preferredcodec":"mp3", "preferredquality":"192"}],
             }
+            opts.update(_profile_opts(profile))
+            if progress is not None:
+                opts["progress_hooks"] = [_progress_hook(progress)]
             with _YDL(opts) as ydl:
-                info = ydl.extract_info(video_url, download=True)
-                # spróbuj znaleźć zapisany plik
-                saved = None
-                # info może zawierać 'requested_downloads' albo 'url' + ext - spróbujemy heurystyk
-                # odpalemy search w katalogu
-                saved = _choose_downloaded_file(out_dir, base_name)
+                # najpierw tylko wybór formatu: pojedynczy plik http da się pobrać kawałkami
+                t_stage = time.time()
+                info = ydl.extract_info(video_url, download=False)
+                _record_resolution(stats, info.get("id"), info.get("duration"),
+                                   info.get("format_id"), info.get("ext"))
+                t_stage = stage_done(progress, stats, "resolve", t_stage)
+                check_cancelled(progress)
+                final_path = os.path.join(out_dir, base_stem + "." + (info.get("ext") or "webm"))
+                has_segments = os.path.exists(final_path + ".part" + _SIDECAR)
+                if _segmentable(info) and (has_segments or _profile_value(profile, "connections", 1) > 1):
+                    clock = {"t": t_stage}
+
+                    def transferred():
+                        clock["t"] = stage_done(progress, stats, "transfer", clock["t"])
+
+                    for attempt in range(_SEGMENT_ATTEMPTS):
+                        try:
+                            # kolejna próba rusza od kawałków zapisanych w .segments
+                            saved = _segmented_download(info, final_path, profile, progress, stats, transferred)
+                            stage_done(progress, stats, "finalize", clock["t"])
+                            return saved
+                        except DownloadCancelled:
+                            raise  # .segments zostaje, następne pobieranie ruszy od niego
+                        except Exception as e:
+                            print("⚠️ segmented download failed (%d/%d):" % (attempt + 1, _SEGMENT_ATTEMPTS), e)
+                    print("⚠️ falling back to", _backend)
+                    t_stage = stage_done(progress, stats, "transfer", clock["t"])
+                _segments_to_prefix(final_path, int(info.get("filesize") or 0) if _segmentable(info) else 0)
+
+                part = final_path + ".part"
+                resumed = os.path.getsize(part) if os.path.exists(part) else 0
+                t0 = time.time()
+                info = ydl.process_ie_result(info, download=True)
+                t_stage = stage_done(progress, stats, "transfer", t_stage)
+                # yt-dlp podaje zapisaną ścieżkę; starsze backendy nie, wtedy szukamy po rdzeniu nazwy
+                saved = _requested_filepath(info) or _choose_downloaded_file(out_dir, base_stem)
+                stage_done(progress, stats, "finalize", t_stage)
                 if saved:
+                    if stats is not None:
+                        size = os.path.getsize(saved)
+                        stats.record(_backend, max(0, size - resumed), resumed, int((time.time() - t0) * 1000),
+                                     1, _profile_value(profile, "chunkBytes", 0))
                     print("✅ downloaded (via)", _backend, "->", saved)
                     return saved
                 else:
                     print("⚠️ Could not find downloaded file after", _backend)
+        except DownloadCancelled:
+            print("⏹ download cancelled:", filepath)
+            raise
         except Exception as e:
             print("⚠️ download via", _backend, "failed:", e)
             traceback.print_exc()
@@ -204,8 +562,10 @@ def download_audio(video_url: str, filepath: str):
     # 2) pytubefix fallback - używaj strumieni pytubefix/pytube
     if YouTube is not None:
         try:
+            t0 = t_stage = time.time()
             yt = YouTube(video_url)
             print("🔹 pytubefix YouTube object, title:", getattr(yt, "title", "<no-title>"))
+            _record_resolution(stats, getattr(yt, "video_id", None), getattr(yt, "length", 0), None, None)
             # wybierz audio stream
             stream = None
             try:
@@ -219,6 +579,7 @@ def download_audio(video_url: str, filepath: str):
                             stream = s
                             break
 
+            t_stage = stage_done(progress, stats, "resolve", t_stage)
             if stream is None:
                 print("🔴 pytubefix: no audio stream found")
             else:
@@ -229,12 +590,13 @@ def download_audio(video_url: str, filepath: str):
                 except TypeError:
                     saved = stream.download(out_dir)
                     saved_path = saved if saved else os.path.join(out_dir, base_name)
+                t_stage = stage_done(progress, stats, "transfer", t_stage)
 
                 # jeśli zwrócono katalog, poszukaj pliku wewnątrz
                 if os.path.isdir(saved_path):
                     candidate = _choose_downloaded_file(saved_path, base_name)
                     if candidate:
-                        dest = os.path.join(out_dir, base_name + os.path.splitext(candidate)[1])
+                        dest = os.path.join(out_dir, base_stem + os.path.splitext(candidate)[1])
                         try:
                             os.rename(candidate, dest)
                             try:
@@ -245,7 +607,11 @@ def download_audio(video_url: str, filepath: str):
                         except Exception:
                             pass
 
+                stage_done(progress, stats, "finalize", t_stage)
                 if os.path.exists(saved_path) and os.path.isfile(saved_path):
+                    if stats is not None:
+                        stats.record("pytube", os.path.getsize(saved_path), 0,
+                                     int((time.time() - t0) * 1000), 1, 0)
                     print("✅ downloaded (via pytubefix) ->", saved_path)
                     return saved_path
                 else:
@@ -259,4 +625,4 @@ def download_audio(video_url: str, filepath: str):
     return None
 
 # expose helpers for other modules
-__all__ = ["search_youtube", "download_audio", "_backend", "YouTube"]
+__all__ = ["search_youtube", "download_audio", "stage_done", "_backend", "YouTube"]
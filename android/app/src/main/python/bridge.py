@@ -0,0 +1,77 @@
+# bridge.py — compact hand-off of catalog data to Java (PythonBridge.callRows)
+#
+# Each function returns ONE str instead of a json.dumps document: records are separated by
+# RS (\x1e), fields by US (\x1f), and the first record holds the column names. Only the
+# columns the app shows are sent, so e.g. search no longer pushes Spotify's whole raw
+# response (available_markets, external_urls, ...) through the bridge, and Java splits the
+# string with indexOf instead of building a JSON tree.
+import api_spotify as sp
+
+RS = "\x1e"
+US = "\x1f"
+
+ALBUM_COLUMNS = ("id", "name", "artist", "image")
+TRACK_COLUMNS = ("id", "name", "artist", "album", "image", "duration_ms", "track_number")
+SEARCH_COLUMNS = ("type", "id", "name", "artist", "album", "image", "duration_ms")
+
+
+def _field(value):
+    if value is None:
+        return ""
+    s = str(value)
+    if RS in s or US in s:
+        s = s.replace(RS, " ").replace(US, " ")
+    return s
+
+
+def pack(columns, rows):
+    out = [US.join(columns)]
+    for row in rows:
+        out.append(US.join(_field(row.get(c)) for c in columns))
+    return RS.join(out)
+
+
+def _items(data, key):
+    return ((data or {}).get(key) or {}).get("items") or []
+
+
+def _first(values, key):
+    return ((values or [{}])[0] or {}).get(key, "")
+
+
+def new_releases(limit=20):
+    return pack(ALBUM_COLUMNS, sp._new_releases(limit))
+
+
+def artist_albums(artist_id, limit=20):
+    return pack(ALBUM_COLUMNS, sp._artist_albums(artist_id, limit))
+
+
+def album_tracks(album_id):
+    return pack(TRACK_COLUMNS, sp._album_tracks(album_id))
+
+
+def top_tracks(country, limit=40):
+    return pack(TRACK_COLUMNS, sp._top_tracks(country, limit).get("tracks", []))
+
+
+def search(q, limit=8):
+    """Same projection the search screen shows: 2 artists, 3 albums, then every track."""
+    data = sp._search(q, limit)
+    rows = []
+    for a in [a for a in _items(data, "artists") if a][:2]:
+        rows.append({"type": "artist", "id": a.get("id"), "name": a.get("name"),
+                     "image": _first(a.get("images"), "url")})
+    for a in [a for a in _items(data, "albums") if a][:3]:
+        rows.append({"type": "album", "id": a.get("id"), "name": a.get("name"),
+                     "artist": _first(a.get("artists"), "name"),
+                     "image": _first(a.get("images"), "url")})
+    for t in _items(data, "tracks"):
+        if not t:
+            continue
+        album = t.get("album") or {}
+        rows.append({"type": "track", "id": t.get("id"), "name": t.get("name"),
+                     "artist": _first(t.get("artists"), "name"),
+                     "album": album.get("name"), "image": _first(album.get("images"), "url"),
+                     "duration_ms": t.get("duration_ms", 0)})
+    return pack(SEARCH_COLUMNS, rows)
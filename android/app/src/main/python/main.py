@@ -1,17 +1,88 @@
 # main.py
+import time
+from concurrent.futures import ThreadPoolExecutor
+
 import api_yt
 
-def play_song(query: str, output_path: str):
+def play_song(query: str, output_path: str, progress=None, profile=None, stats=None, video_id=None):
     """
     Wywoływane z Androida:
-      mainModule.callAttr("play_song", title, path)
+      mainModule.callAttr("play_song", title, path, progress, profile, stats, video_id)
     Musi zwrócić pełną ścieżkę do pobranego pliku (albo None).
+    progress (opcjonalnie) to PartialDownload z Javy: dostaje onProgress(tmp, bajty, rozmiar),
+    żeby odtwarzanie mogło ruszyć przed końcem pobierania.
+    profile (DownloadProfile) ustawia połączenia/kawałki/limit, stats (DownloadStats) dostaje wynik
+    i wybrane wideo (recordResolution), które Java zapamiętuje w ResolutionCache.
+    video_id: wideo znane z poprzedniego razu — wtedy bez wyszukiwania.
+    Czasy etapów (search, resolve, transfer, finalize) dostają stats i progress.
+    Gdy Java anuluje progress (PartialDownload.cancel), leci api_yt.DownloadCancelled.
     """
-    print("▶ play_song called:", query, output_path)
-    video = api_yt.search_youtube(query)
+    print("▶ play_song called:", query, output_path, video_id)
+    if video_id:
+        video = api_yt.watch_url(video_id)
+    else:
+        t0 = time.time()
+        video = api_yt.search_youtube(query)
+        api_yt.stage_done(progress, stats, "search", t0)
     if not video:
         print("🔹 Brak wyników")
         return None
-    saved = api_yt.download_audio(video, output_path)
+    api_yt.check_cancelled(progress)  # rzuca DownloadCancelled, Java wie, co z tym zrobić
+    saved = api_yt.download_audio(video, output_path, progress, profile, stats)
     print("▶ play_song result:", saved)
     return saved
+
+def play_songs(batch, workers=3):
+    """
+    Cały album w jednym wywołaniu:
+      mainModule.callAttr("play_songs", batch, workers)
+    batch to DownloadBatch z Javy: size(), query(i), outputPath(i), videoId(i), progress(i),
+    stats(i), profile(), wanted(i), claim(i), onResult(i, path).
+    Najpierw wszystkie wyszukiwania naraz (to głównie czekanie na sieć), potem pobieranie
+    w puli `workers` wątków. Każdy utwór trafia do Javy przez onResult, gdy tylko jest gotowy.
+    Utwór, który Java zabrała w międzyczasie (claim == False), jest pomijany.
+    Zwraca "pobrane/wszystkie".
+    """
+    n = int(batch.size())
+    print("▶ play_songs called:", n, "tracks")
+    if n == 0:
+        return "0/0"
+
+    def resolve(i):
+        video_id = batch.videoId(i)
+        if video_id:
+            return api_yt.watch_url(video_id)
+        if not batch.wanted(i):
+            return None
+        t0 = time.time()
+        try:
+            return api_yt.search_youtube(batch.query(i))
+        except Exception as e:
+            print("⚠️ play_songs search failed:", batch.query(i), e)
+            return None
+        finally:
+            api_yt.stage_done(batch.progress(i), batch.stats(i), "search", t0)
+
+    with ThreadPoolExecutor(max_workers=min(n, 8)) as pool:
+        videos = list(pool.map(resolve, range(n)))
+
+    def download(i):
+        if not batch.claim(i):
+            return False
+        saved = None
+        if videos[i]:
+            try:
+                saved = api_yt.download_audio(videos[i], batch.outputPath(i), batch.progress(i),
+                                              batch.profile(), batch.stats(i))
+            except Exception as e:
+                print("⚠️ play_songs download failed:", batch.query(i), e)
+        else:
+            print("🔹 Brak wyników:", batch.query(i))
+        batch.onResult(i, saved)
+        return bool(saved)
+
+    # kolejność jak w albumie: pierwsze utwory są gotowe najwcześniej
+    with ThreadPoolExecutor(max_workers=max(1, min(n, int(workers)))) as pool:
+        done = sum(1 for ok in pool.map(download, range(n)) if ok)
+    print("▶ play_songs result:", done, "/", n)
+    return f"{done}/{n}"
@@ -0,0 +1,49 @@
+package com.example.trakify;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DownloadMetricsTest {
+
+    private static DownloadStats stats(long searchMs, long transferMs, long bytes) {
+        DownloadStats s = new DownloadStats("n:a|b", DownloadEngine.Priority.NOW_PLAYING, DownloadProfile.BALANCED);
+        if (searchMs >= 0) s.recordStage("search", searchMs);
+        s.recordStage("transfer", transferMs);
+        s.record("ytdlp", bytes, 0, transferMs, 1, 0);
+        return s;
+    }
+
+    @Test
+    public void stagesAddUpAcrossRetries() {
+        DownloadStats s = stats(100, 1_000, 0);
+        s.recordStage("SEARCH", 50);
+        s.recordStage("no-such-stage", 10);
+        assertEquals(150, s.stageMs(DownloadStats.Stage.SEARCH));
+        assertEquals(-1, s.stageMs(DownloadStats.Stage.RESOLVE));
+    }
+
+    @Test
+    public void aggregatesPerStageAndThroughput() {
+        DownloadMetrics m = new DownloadMetrics();
+        m.record(stats(200, 1_000, 1_000_000), true);
+        m.record(stats(-1, 3_000, 1_000_000), true); // cached video, no search
+        m.record(stats(600, 500, 0), false);
+
+        DownloadMetrics.StageTotals search = m.stage(DownloadStats.Stage.SEARCH);
+        assertEquals(2, search.count);
+        assertEquals(400, search.averageMs());
+        assertEquals(600, search.maxMs);
+        assertEquals(3, m.stage(DownloadStats.Stage.TRANSFER).count);
+        assertEquals(0, m.stage(DownloadStats.Stage.FINALIZE).count);
+
+        // failed runs do not count towards throughput
+        assertEquals(500_000, m.throughput());
+        assertEquals(3, m.downloads());
+        assertEquals(1, m.failures());
+
+        m.reset();
+        assertEquals(0, m.downloads());
+        assertEquals(0, m.throughput());
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.trakify;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.count());
+        assertEquals(0, h.percentile(50));
+        assertEquals(0, h.meanMs());
+    }
+
+    @Test
+    public void percentilesStayWithinOneBucket() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 1000; ms++) h.record(ms);
+
+        assertEquals(1000, h.count());
+        assertEquals(500, h.meanMs());
+        assertEquals(1000, h.maxMs());
+        // buckets are ~20 % wide
+        assertBetween(500, 600, h.percentile(50));
+        assertBetween(950, 1000, h.percentile(95));
+        assertBetween(990, 1000, h.percentile(99));
+        assertEquals(1000, h.percentile(100));
+    }
+
+    @Test
+    public void neverReportsMoreThanTheMaximum() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(1_234);
+        h.record(1_234);
+        assertEquals(1_234, h.percentile(50));
+        assertEquals(1_234, h.percentile(99));
+
+        // beyond the last bucket
+        h.record(3_600_000);
+        assertEquals(3_600_000, h.percentile(100));
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(42);
+        h.clear();
+        assertEquals(0, h.count());
+        assertEquals(0, h.maxMs());
+        assertEquals(0, h.percentile(99));
+    }
+
+    private static void assertBetween(long lo, long hi, long actual) {
+        assertTrue(actual + " not in [" + lo + ", " + hi + "]", actual >= lo && actual <= hi);
+    }
+}
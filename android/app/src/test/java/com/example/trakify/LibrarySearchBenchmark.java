@@ -0,0 +1,86 @@
+package com.example.trakify;
+
+import com.example.trakify.model.LibrarySong;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-keystroke cost of {@link LibrarySearch} on a synthetic 20k-song library, typing a query
+ * one character at a time (with a typo). Prints build time and the worst keystroke; the
+ * assertion is deliberately loose (a frame is 16 ms). Not part of the default test run, timings
+ * on a loaded box are noise: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+ */
+public class LibrarySearchBenchmark {
+
+    private static final int SONGS = 20_000;
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void keystrokesOn20kSongsFitInAFrame() {
+        List<LibrarySong> songs = library(SONGS);
+
+        long start = System.nanoTime();
+        LibrarySearch search = LibrarySearch.build(songs);
+        double buildMs = (System.nanoTime() - start) / 1e6;
+
+        // one more download: the rebuild reuses every other song's trigrams
+        List<LibrarySong> grown = library(SONGS + 1);
+        start = System.nanoTime();
+        LibrarySearch.build(grown, search);
+        double rebuildMs = (System.nanoTime() - start) / 1e6;
+
+        String typed = "artst 42 song";
+        // warm up
+        for (int r = 0; r < 5; r++) type(search, typed);
+
+        double worst = 0, total = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            double[] times = type(search, typed);
+            for (double t : times) {
+                worst = Math.max(worst, t);
+                total += t;
+            }
+        }
+        double avg = total / (ROUNDS * typed.length());
+
+        System.out.printf("library %d songs, build %.1f ms, rebuild after a download %.1f ms%n",
+                SONGS, buildMs, rebuildMs);
+        System.out.printf("  keystroke avg %.3f ms, worst %.3f ms%n", avg, worst);
+
+        assertFalse(search.search("artst 42").isEmpty());
+        assertTrue("average keystroke should fit in a frame", avg < 16);
+    }
+
+    private static double[] type(LibrarySearch search, String query) {
+        double[] times = new double[query.length()];
+        for (int i = 1; i <= query.length(); i++) {
+            long t = System.nanoTime();
+            search.search(query.substring(0, i));
+            times[i - 1] = (System.nanoTime() - t) / 1e6;
+        }
+        return times;
+    }
+
+    private static List<LibrarySong> library(int n) {
+        Random rnd = new Random(7);
+        String[] words = {"love", "night", "dance", "heart", "fire", "summer", "dream", "city",
+                "blue", "road", "light", "rain", "gold", "wild", "home", "time"};
+        List<LibrarySong> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            LibrarySong s = new LibrarySong();
+            s.artist = "Artist " + (i % 500);
+            s.title = words[rnd.nextInt(words.length)] + " " + words[rnd.nextInt(words.length)] + " song " + i;
+            s.album = "Album " + (i % 1500);
+            s.fileName = (s.artist + "_" + s.title).replace(' ', '_') + ".mp3";
+            s.path = "/music/" + s.fileName;
+            out.add(s);
+        }
+        return out;
+    }
+}
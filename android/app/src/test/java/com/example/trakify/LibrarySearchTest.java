@@ -0,0 +1,90 @@
+package com.example.trakify;
+
+import com.example.trakify.model.LibrarySong;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LibrarySearchTest {
+
+    private static LibrarySong song(String title, String artist, String album) {
+        LibrarySong s = new LibrarySong();
+        s.path = "/music/" + artist + "_" + title + ".mp3";
+        s.fileName = (artist + "_" + title).replace(' ', '_') + ".mp3";
+        s.title = title;
+        s.artist = artist;
+        s.album = album;
+        return s;
+    }
+
+    private static final List<LibrarySong> SONGS = Arrays.asList(
+            song("Creep", "Radiohead", "Pablo Honey"),
+            song("Karma Police", "Radiohead", "OK Computer"),
+            song("Ćma", "Kult", "Spokojnie"),
+            song("Supermassive Black Hole", "Muse", "Black Holes and Revelations"),
+            song("Radio Ga Ga", "Queen", "The Works"));
+
+    private static List<String> titles(List<LibrarySong> songs) {
+        List<String> out = new ArrayList<>();
+        for (LibrarySong s : songs) out.add(s.title);
+        return out;
+    }
+
+    @Test
+    public void toleratesTyposAndSwappedLetters() {
+        LibrarySearch search = LibrarySearch.build(SONGS);
+
+        assertEquals(Arrays.asList("Creep", "Karma Police"), titles(search.search("radiohed")).subList(0, 2));
+        assertTrue(titles(search.search("karma polcie")).contains("Karma Police"));
+        assertFalse(titles(search.search("karma polcie")).contains("Creep"));
+    }
+
+    @Test
+    public void exactSubstringRanksFirst() {
+        LibrarySearch search = LibrarySearch.build(SONGS);
+
+        List<String> radio = titles(search.search("radio ga"));
+        assertEquals("Radio Ga Ga", radio.get(0));
+    }
+
+    @Test
+    public void ignoresCaseDiacriticsAndUnderscores() {
+        LibrarySearch search = LibrarySearch.build(SONGS);
+
+        assertEquals(Arrays.asList("Ćma"), titles(search.search("CMA KULT")));
+        assertEquals(Arrays.asList("Supermassive Black Hole"), titles(search.search("muse_super")));
+    }
+
+    @Test
+    public void shortQueriesAndRefinementsNarrow() {
+        LibrarySearch search = LibrarySearch.build(SONGS);
+
+        assertEquals(SONGS.size(), search.search("").size());
+        assertEquals(3, search.search("ra").size());
+        assertEquals(Arrays.asList("Radio Ga Ga"), titles(search.search("radio ga ga")));
+        // the narrowed set must not hide songs once the query stops extending the previous one
+        assertEquals("Creep", titles(search.search("creep")).get(0));
+    }
+
+    @Test
+    public void rebuildFromPreviousSeesAddedAndRenamedSongs() {
+        LibrarySearch first = LibrarySearch.build(SONGS);
+        first.search("radio"); // a memo in the old index must not leak into the new one
+
+        List<LibrarySong> changed = new ArrayList<>(SONGS);
+        changed.add(song("Paranoid Android", "Radiohead", "OK Computer"));
+        changed.set(2, song("Arahja", "Kult", "Spokojnie")); // same file, new tags
+        changed.get(2).path = SONGS.get(2).path;
+        LibrarySearch next = LibrarySearch.build(changed, first);
+
+        assertEquals(changed.size(), next.size());
+        assertEquals(titles(LibrarySearch.build(changed).search("radiohed")), titles(next.search("radiohed")));
+        assertEquals(Arrays.asList("Arahja"), titles(next.search("arahja")));
+        assertTrue(next.search("cma kult").isEmpty());
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.trakify;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlaybackStateTest {
+
+    private static PlaybackState state(boolean playing, boolean buffering, long pos, long dur, long anchor) {
+        return state(playing, buffering, pos, dur, anchor, 1f);
+    }
+
+    private static PlaybackState state(boolean playing, boolean buffering, long pos, long dur, long anchor, float speed) {
+        return new PlaybackState("Creep", "/music/creep.mp3", null, playing, buffering,
+                -1, pos, dur, anchor, speed, false, false);
+    }
+
+    @Test
+    public void extrapolatesOnlyWhilePlaying() {
+        assertEquals(13_500, state(true, false, 10_000, 200_000, 1_000).positionAt(4_500));
+        assertEquals(10_000, state(false, false, 10_000, 200_000, 1_000).positionAt(4_500));
+        assertEquals(10_000, state(true, true, 10_000, 200_000, 1_000).positionAt(4_500));
+    }
+
+    @Test
+    public void extrapolatesAtPlaybackSpeed() {
+        assertEquals(16_000, state(true, false, 10_000, 200_000, 0, 1.5f).positionAt(4_000));
+        assertEquals(12_000, state(true, false, 10_000, 200_000, 0, 0.5f).positionAt(4_000));
+    }
+
+    @Test
+    public void clampsToDurationAndZero() {
+        assertEquals(200_000, state(true, false, 199_000, 200_000, 0).positionAt(5_000));
+        // zegar sprzed kotwicy nie cofa pozycji
+        assertEquals(10_000, state(true, false, 10_000, 200_000, 5_000).positionAt(1_000));
+    }
+
+    @Test
+    public void sameTrackIgnoresPositionAndFlags() {
+        PlaybackState a = state(true, false, 1_000, 200_000, 0);
+        PlaybackState b = state(false, true, 9_000, 0, 7_000);
+        assertTrue(a.sameTrack(b));
+        assertFalse(a.equals(b));
+        assertFalse(a.sameTrack(new PlaybackState("Creep", "/music/other.mp3", null,
+                true, false, -1, 0, 0, 0, 1f, false, false)));
+    }
+
+    @Test
+    public void bufferProgressIsAChange() {
+        PlaybackState a = new PlaybackState("Creep", "/music/creep.mp3", null, false, true,
+                10, 0, 0, 0, 1f, false, false);
+        PlaybackState b = new PlaybackState("Creep", "/music/creep.mp3", null, false, true,
+                60, 0, 0, 0, 1f, false, false);
+        assertFalse(a.equals(b));
+        assertEquals(a, new PlaybackState("Creep", "/music/creep.mp3", null, false, true,
+                10, 0, 0, 0, 1f, false, false));
+    }
+}
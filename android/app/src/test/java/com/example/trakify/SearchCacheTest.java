@@ -0,0 +1,73 @@
+package com.example.trakify;
+
+import com.example.trakify.model.SearchResult;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SearchCacheTest {
+
+    private long now = 0;
+
+    private static SearchResult result(String type, String name, String artist) {
+        SearchResult r = new SearchResult();
+        r.type = type;
+        r.name = name;
+        r.artist = artist;
+        return r;
+    }
+
+    @Test
+    public void normalizedQueriesShareAnEntry() {
+        SearchCache cache = new SearchCache(10, 60_000, () -> now);
+        cache.put("  Radiohead ", Arrays.asList(result("artist", "Radiohead", "")));
+
+        assertEquals(1, cache.get("radiohead").size());
+        assertEquals(1, cache.get("RADIOHEAD").size());
+        assertNull(cache.get("radio"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        SearchCache cache = new SearchCache(2, 60_000, () -> now);
+        cache.put("a", Arrays.asList());
+        cache.put("b", Arrays.asList());
+        cache.get("a");
+        cache.put("c", Arrays.asList());
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void expiredEntriesAreDropped() {
+        SearchCache cache = new SearchCache(10, 1_000, () -> now);
+        cache.put("muse", Arrays.asList());
+        now = 1_001;
+
+        assertNull(cache.get("muse"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void refinementIsAnsweredFromLongestCachedPrefix() {
+        SearchCache cache = new SearchCache(10, 60_000, () -> now);
+        cache.put("rad", Arrays.asList(result("artist", "Radiohead", "")));
+        cache.put("radiohead", Arrays.asList(
+                result("track", "Karma Police", "Radiohead"),
+                result("track", "Creep", "Radiohead"),
+                result("album", "OK Computer", "Radiohead")));
+
+        List<SearchResult> partial = cache.fromPrefix("Radiohead  k");
+        assertEquals(2, partial.size());
+        assertEquals("Karma Police", partial.get(0).name);
+        assertEquals("OK Computer", partial.get(1).name);
+
+        assertNull(cache.fromPrefix("muse"));
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.trakify;
+
+import com.example.trakify.model.SearchResult;
+import com.example.trakify.model.Track;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link SpotifyCatalogClient} against a local stub of the token and catalog endpoints.
+ */
+public class SpotifyCatalogClientTest {
+
+    private HttpServer server;
+    private SpotifyCatalogClient client;
+    private final AtomicInteger tokenHits = new AtomicInteger();
+    private volatile boolean revokeOnce = false;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", ex -> {
+            tokenHits.incrementAndGet();
+            respond(ex, 200, "{\"access_token\":\"tok-" + tokenHits.get() + "\",\"expires_in\":3600}", false);
+        });
+        server.createContext("/v1/search", ex -> {
+            if (revokeOnce) {
+                revokeOnce = false;
+                respond(ex, 401, "{\"error\":\"expired\"}", false);
+                return;
+            }
+            boolean gzip = String.valueOf(ex.getRequestHeaders().getFirst("Accept-Encoding")).contains("gzip");
+            respond(ex, 200, SEARCH_JSON, gzip);
+        });
+        server.createContext("/v1/albums/abc/tracks", ex -> respond(ex, 200, ALBUM_TRACKS_JSON, true));
+        server.start();
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        client = new SpotifyCatalogClient(base + "/v1", base + "/token", "id", "secret");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void tokenIsCachedAcrossCalls() throws IOException {
+        client.search("a", 8);
+        client.search("b", 8);
+        client.getAlbumTracks("abc");
+
+        assertEquals(1, tokenHits.get());
+        assertEquals(1, client.getTokenRequestCount());
+    }
+
+    @Test
+    public void expiredTokenIsRefreshedOnce() throws IOException {
+        client.search("a", 8);
+        revokeOnce = true;
+
+        List<SearchResult> results = client.search("a", 8);
+
+        assertEquals(2, tokenHits.get());
+        assertFalse(results.isEmpty());
+    }
+
+    @Test
+    public void searchKeepsTheScreenProjection() throws IOException {
+        List<SearchResult> results = client.search("x", 8);
+
+        // 2 artists max, 3 albums max, then every track
+        assertEquals(2 + 3 + 1, results.size());
+        assertEquals("artist", results.get(0).type);
+        assertEquals("", results.get(1).imageUrl);
+        assertEquals("album", results.get(2).type);
+        SearchResult track = results.get(5);
+        assertEquals("track", track.type);
+        assertEquals("Song", track.name);
+        assertEquals("Band", track.artist);
+        assertEquals("Record", track.album);
+        assertEquals("http://img/track", track.imageUrl);
+        assertEquals(180000, track.durationMs);
+    }
+
+    @Test
+    public void gzippedAlbumTracksAreDecoded() throws IOException {
+        List<Track> tracks = client.getAlbumTracks("spotify:album/abc");
+
+        assertEquals(1, tracks.size());
+        assertEquals("t1", tracks.get(0).id);
+        assertEquals("Band", tracks.get(0).artist);
+        assertEquals(3, tracks.get(0).trackNumber);
+    }
+
+    private static void respond(HttpExchange ex, int code, String body, boolean gzip) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (gzip) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(buf)) {
+                out.write(bytes);
+            }
+            bytes = buf.toByteArray();
+            ex.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static final String SEARCH_JSON = "{"
+            + "\"artists\":{\"items\":["
+            + "{\"id\":\"a1\",\"name\":\"Band\",\"images\":[{\"url\":\"http://img/a1\"}]},"
+            + "{\"id\":\"a2\",\"name\":\"Other\",\"images\":[]},"
+            + "{\"id\":\"a3\",\"name\":\"Third\"}]},"
+            + "\"albums\":{\"items\":["
+            + "{\"id\":\"l1\",\"name\":\"Record\",\"artists\":[{\"name\":\"Band\"}],\"images\":[{\"url\":\"http://img/l1\"}]},"
+            + "{\"id\":\"l2\",\"name\":\"Two\",\"artists\":[]},"
+            + "{\"id\":\"l3\",\"name\":\"Three\"},"
+            + "{\"id\":\"l4\",\"name\":\"Four\"}]},"
+            + "\"tracks\":{\"items\":["
+            + "{\"id\":\"t1\",\"name\":\"Song\",\"duration_ms\":180000,\"artists\":[{\"name\":\"Band\"}],"
+            + "\"album\":{\"name\":\"Record\",\"images\":[{\"url\":\"http://img/track\"}]}}]}"
+            + "}";
+
+    private static final String ALBUM_TRACKS_JSON = "{\"items\":["
+            + "{\"id\":\"t1\",\"name\":\"Song\",\"duration_ms\":1000,\"track_number\":3,\"artists\":[{\"name\":\"Band\"}]}]}";
+}
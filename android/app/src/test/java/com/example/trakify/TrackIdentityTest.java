@@ -0,0 +1,47 @@
+package com.example.trakify;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrackIdentityTest {
+
+    @Test
+    public void spellingVariantsShareOneIdentity() {
+        TrackIdentity a = TrackIdentity.of("Kult", "Ćma");
+        TrackIdentity b = TrackIdentity.of(" KULT ", "cma");
+        assertEquals(a.nameKey(), b.nameKey());
+        assertEquals(a.fileStem(), b.fileStem());
+    }
+
+    @Test
+    public void idKeyOnlyWithId() {
+        assertNull(TrackIdentity.of("Kult", "Ćma").idKey());
+        assertEquals("sp:4uLU6hMCjMI75M1A2tKUQC", TrackIdentity.of("4uLU6hMCjMI75M1A2tKUQC", "Kult", "Ćma").idKey());
+        // the id never changes where the file goes
+        assertEquals(TrackIdentity.of("Kult", "Ćma").fileStem(),
+                TrackIdentity.of("4uLU6hMCjMI75M1A2tKUQC", "Kult", "Ćma").fileStem());
+    }
+
+    @Test
+    public void nonLatinTitlesGetDistinctFiles() {
+        TrackIdentity a = TrackIdentity.of("ヨルシカ", "だから僕は音楽を辞めた");
+        TrackIdentity b = TrackIdentity.of("ヨルシカ", "ただ君に晴れ");
+        assertFalse(a.nameKey().equals(b.nameKey()));
+        assertFalse(a.fileStem().equals(b.fileStem()));
+    }
+
+    @Test
+    public void stemIsAsciiSlugWithHash() {
+        String stem = TrackIdentity.of("Sanah", "Ostatnia nadzieja (feat. Dawid Podsiadło)").fileStem();
+        assertTrue(stem, stem.matches("sanah_ostatnia_nadzieja_feat_dawid_podsiadlo-[0-9a-f]{8}"));
+    }
+
+    @Test
+    public void legacyNamesAreRecognised() {
+        assertEquals("Kult__ma", TrackIdentity.of("Kult", "Ćma").legacyStem());
+        assertEquals("kult__ma", TrackIdentity.legacyStemOf("Kult__ma.mp3"));
+        assertEquals("kult__ma", TrackIdentity.legacyStemOf("Kult__ma.mp3.webm"));
+        assertEquals("kult__ma", TrackIdentity.legacyStemOf("Kult__ma.m4a"));
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.trakify.model;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streaming {@link CatalogJson#readSearch} vs the org.json DOM projection it replaced, on a
+ * search response shaped like Spotify's (limit=50, every item carrying available_markets,
+ * external_urls, three images...). Prints per-parse latency and allocation; only the
+ * allocation win is asserted since timings on a shared CI box are noisy. Not part of the default
+ * test run: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+ */
+public class CatalogJsonBenchmark {
+
+    private static final int WARMUP = 30;
+    private static final int RUNS = 100;
+
+    @Test
+    public void streamingSearchParseAllocatesLessThanDom() throws Exception {
+        String payload = searchPayload(50);
+        assertEquals(parseDom(payload).size(), CatalogJson.readSearch(CatalogJson.reader(payload), 2, 3).size());
+
+        Result dom = measure(() -> parseDom(payload));
+        Result stream = measure(() -> CatalogJson.readSearch(CatalogJson.reader(payload), 2, 3));
+
+        System.out.printf("search payload %d KB%n", payload.length() / 1024);
+        System.out.printf("  org.json DOM : %7.3f ms  %8d KB allocated / parse%n", dom.millis, dom.bytes / 1024);
+        System.out.printf("  JsonReader   : %7.3f ms  %8d KB allocated / parse%n", stream.millis, stream.bytes / 1024);
+
+        if (dom.bytes > 0) {
+            assertTrue("streaming should allocate less than the DOM parse", stream.bytes < dom.bytes);
+        }
+    }
+
+    private interface Parse {
+        List<?> run() throws Exception;
+    }
+
+    private static final class Result {
+        double millis;
+        long bytes;
+    }
+
+    private static Result measure(Parse parse) throws Exception {
+        for (int i = 0; i < WARMUP; i++) parse.run();
+
+        long before = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) parse.run();
+        Result r = new Result();
+        r.millis = (System.nanoTime() - start) / 1e6 / RUNS;
+        r.bytes = (allocatedBytes() - before) / RUNS;
+        return r;
+    }
+
+    // 0 where the JVM doesn't expose per-thread allocation counters
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /** The projection SearchFragment used to do on a fully materialized JSONObject. */
+    private static List<SearchResult> parseDom(String json) throws Exception {
+        List<SearchResult> results = new ArrayList<>();
+        JSONObject root = new JSONObject(json);
+
+        JSONArray artists = root.getJSONObject("artists").getJSONArray("items");
+        for (int i = 0; i < Math.min(2, artists.length()); i++) {
+            JSONObject artist = artists.getJSONObject(i);
+            SearchResult r = new SearchResult();
+            r.type = "artist";
+            r.id = artist.getString("id");
+            r.name = artist.getString("name");
+            r.imageUrl = artist.getJSONArray("images").getJSONObject(0).getString("url");
+            results.add(r);
+        }
+        JSONArray albums = root.getJSONObject("albums").getJSONArray("items");
+        for (int i = 0; i < Math.min(3, albums.length()); i++) {
+            JSONObject album = albums.getJSONObject(i);
+            SearchResult r = new SearchResult();
+            r.type = "album";
+            r.id = album.getString("id");
+            r.name = album.getString("name");
+            r.artist = album.getJSONArray("artists").getJSONObject(0).getString("name");
+            r.imageUrl = album.getJSONArray("images").getJSONObject(0).getString("url");
+            results.add(r);
+        }
+        JSONArray tracks = root.getJSONObject("tracks").getJSONArray("items");
+        for (int i = 0; i < tracks.length(); i++) {
+            JSONObject track = tracks.getJSONObject(i);
+            JSONObject album = track.getJSONObject("album");
+            SearchResult r = new SearchResult();
+            r.type = "track";
+            r.id = track.getString("id");
+            r.name = track.getString("name");
+            r.artist = track.getJSONArray("artists").getJSONObject(0).getString("name");
+            r.album = album.getString("name");
+            r.imageUrl = album.getJSONArray("images").getJSONObject(0).getString("url");
+            r.durationMs = track.getInt("duration_ms");
+            results.add(r);
+        }
+        return results;
+    }
+
+    // ---------- synthetic Spotify-shaped payload ----------
+
+    private static String searchPayload(int limit) {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"artists\":").append(page("artists", limit, i -> artist(i)));
+        sb.append(",\"albums\":").append(page("albums", limit, i -> album(i)));
+        sb.append(",\"tracks\":").append(page("tracks", limit, i -> track(i)));
+        return sb.append('}').toString();
+    }
+
+    private interface Item {
+        String json(int i);
+    }
+
+    private static String page(String type, int limit, Item item) {
+        StringBuilder sb = new StringBuilder("{\"href\":\"https://api.spotify.com/v1/search?type=" + type + "\",\"items\":[");
+        for (int i = 0; i < limit; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(item.json(i));
+        }
+        return sb.append("],\"limit\":").append(limit).append(",\"next\":null,\"offset\":0,\"previous\":null,\"total\":1000}").toString();
+    }
+
+    private static String artist(int i) {
+        return "{\"external_urls\":{\"spotify\":\"https://open.spotify.com/artist/ar" + i + "\"},"
+                + "\"followers\":{\"href\":null,\"total\":" + (1000 * i) + "},\"genres\":[\"pop\",\"dance pop\"],"
+                + "\"href\":\"https://api.spotify.com/v1/artists/ar" + i + "\",\"id\":\"ar" + i + "\","
+                + "\"images\":" + images("ar" + i) + ",\"name\":\"Artist " + i + "\",\"popularity\":70,"
+                + "\"type\":\"artist\",\"uri\":\"spotify:artist:ar" + i + "\"}";
+    }
+
+    private static String album(int i) {
+        return "{\"album_type\":\"album\",\"artists\":[" + artistRef(i) + "],\"available_markets\":" + MARKETS + ","
+                + "\"external_urls\":{\"spotify\":\"https://open.spotify.com/album/al" + i + "\"},"
+                + "\"href\":\"https://api.spotify.com/v1/albums/al" + i + "\",\"id\":\"al" + i + "\","
+                + "\"images\":" + images("al" + i) + ",\"name\":\"Album " + i + "\",\"release_date\":\"2024-01-01\","
+                + "\"release_date_precision\":\"day\",\"total_tracks\":12,\"type\":\"album\",\"uri\":\"spotify:album:al" + i + "\"}";
+    }
+
+    private static String track(int i) {
+        return "{\"album\":" + album(i) + ",\"artists\":[" + artistRef(i) + "],\"available_markets\":" + MARKETS + ","
+                + "\"disc_number\":1,\"duration_ms\":" + (180000 + i) + ",\"explicit\":false,"
+                + "\"external_ids\":{\"isrc\":\"PLA0000000" + i + "\"},"
+                + "\"external_urls\":{\"spotify\":\"https://open.spotify.com/track/tr" + i + "\"},"
+                + "\"href\":\"https://api.spotify.com/v1/tracks/tr" + i + "\",\"id\":\"tr" + i + "\",\"is_local\":false,"
+                + "\"name\":\"Track " + i + "\",\"popularity\":60,\"preview_url\":null,\"track_number\":" + (i % 12 + 1) + ","
+                + "\"type\":\"track\",\"uri\":\"spotify:track:tr" + i + "\"}";
+    }
+
+    private static String artistRef(int i) {
+        return "{\"external_urls\":{\"spotify\":\"https://open.spotify.com/artist/ar" + i + "\"},"
+                + "\"href\":\"https://api.spotify.com/v1/artists/ar" + i + "\",\"id\":\"ar" + i + "\","
+                + "\"name\":\"Artist " + i + "\",\"type\":\"artist\",\"uri\":\"spotify:artist:ar" + i + "\"}";
+    }
+
+    private static String images(String id) {
+        return "[{\"height\":640,\"url\":\"https://i.scdn.co/image/" + id + "-640\",\"width\":640},"
+                + "{\"height\":300,\"url\":\"https://i.scdn.co/image/" + id + "-300\",\"width\":300},"
+                + "{\"height\":64,\"url\":\"https://i.scdn.co/image/" + id + "-64\",\"width\":64}]";
+    }
+
+    private static final String MARKETS;
+
+    static {
+        String[] codes = java.util.Locale.getISOCountries();
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < Math.min(185, codes.length); i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(codes[i]).append('"');
+        }
+        MARKETS = sb.append(']').toString();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.trakify.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CatalogJsonTest {
+
+    @Test
+    public void readsSpotifyAndFlatTracksAlike() throws IOException {
+        String spotify = "{\"items\":[{\"id\":\"t1\",\"name\":\"Song\",\"duration_ms\":1000,\"track_number\":3,"
+                + "\"available_markets\":[\"PL\",\"US\"],\"artists\":[{\"name\":\"Band\"},{\"name\":\"Feat\"}],"
+                + "\"album\":{\"name\":\"Record\",\"images\":[{\"url\":\"http://img/1\"},{\"url\":\"http://img/2\"}]}},"
+                + "null]}";
+        String flat = "{\"tracks\":[{\"id\":\"t1\",\"name\":\"Song\",\"artist\":\"Band\",\"album\":\"Record\","
+                + "\"image\":\"http://img/1\",\"duration_ms\":1000,\"track_number\":3}],\"status_code\":200}";
+
+        List<List<Track>> parsed = Arrays.asList(
+                CatalogJson.readTracks(CatalogJson.reader(spotify), "items"),
+                CatalogJson.readTracks(CatalogJson.reader(flat), "tracks"));
+        for (List<Track> tracks : parsed) {
+            assertEquals(1, tracks.size());
+            Track t = tracks.get(0);
+            assertEquals("t1", t.id);
+            assertEquals("Band", t.artist);
+            assertEquals("Record", t.album);
+            assertEquals("http://img/1", t.imageUrl);
+            assertEquals(1000, t.durationMs);
+            assertEquals(3, t.trackNumber);
+        }
+    }
+
+    @Test
+    public void missingAndNullFieldsBecomeEmpty() throws IOException {
+        String json = "{\"albums\":{\"items\":[{\"id\":\"a\",\"name\":null,\"images\":[],\"artists\":null}]}}";
+
+        Album album = CatalogJson.readAlbums(CatalogJson.reader(json), "albums").get(0);
+
+        assertEquals("a", album.id);
+        assertEquals("", album.name);
+        assertEquals("", album.artist);
+        assertEquals("", album.imageUrl);
+    }
+
+    @Test
+    public void cacheRoundTripKeepsEveryField() throws IOException {
+        Track t = new Track();
+        t.id = "t1";
+        t.name = "Zażółć \"quoted\"";
+        t.artist = "Band";
+        t.album = "Record";
+        t.imageUrl = "http://img";
+        t.durationMs = 1234;
+        t.trackNumber = 7;
+
+        String payload = CatalogJson.writeTracks(java.util.Collections.singletonList(t));
+        Track back = CatalogJson.readTracks(CatalogJson.reader(payload), "tracks").get(0);
+
+        assertEquals(t.name, back.name);
+        assertEquals(t.album, back.album);
+        assertEquals(t.imageUrl, back.imageUrl);
+        assertEquals(1234, back.durationMs);
+        assertEquals(7, back.trackNumber);
+    }
+
+    @Test
+    public void playlistHelpersSkipUnavailableEntries() throws IOException {
+        String playlists = "{\"playlists\":{\"items\":[null,{\"id\":\"p0\",\"public\":false},{\"id\":\"p1\",\"public\":true}]}}";
+        String items = "{\"items\":[{\"track\":null},{\"added_at\":\"x\",\"track\":{\"id\":\"t\",\"name\":\"n\"}}]}";
+
+        assertEquals("p1", CatalogJson.readFirstPublicPlaylistId(CatalogJson.reader(playlists)));
+        List<Track> tracks = CatalogJson.readPlaylistTracks(CatalogJson.reader(items));
+        assertEquals(1, tracks.size());
+        assertEquals("t", tracks.get(0).id);
+    }
+}